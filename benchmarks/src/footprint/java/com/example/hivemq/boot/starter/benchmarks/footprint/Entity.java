@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks.footprint;
+
+/**
+ * Entity types held by the broker, whose heap footprint is measured
+ */
+enum Entity {
+
+    /**
+     * Connected clients, each with a session of its own
+     */
+    sessions,
+
+    /**
+     * Subscriptions of a single connected client
+     */
+    subscriptions,
+
+    /**
+     * Messages queued for a single offline persistent session
+     */
+    queued,
+
+    /**
+     * Retained messages on distinct topics
+     */
+    retained
+}
@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks.footprint;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Boots the embedded broker with in-memory persistence, lets a {@link FootprintLoader} process load
+ * entities of one type and prints the retained heap per entity. The footprint is the difference of
+ * the live heap before and after loading, taken from class histograms, which force a full GC.
+ * Clients run in a process of their own, so their heap is not measured.
+ * <p>
+ * Arguments: entity count folder max-heap
+ */
+@SpringBootApplication
+public class FootprintBroker {
+
+    /**
+     * Prefix of the line carrying the result, followed by entity, count, histogram and heap bytes per entity
+     */
+    static final String resultPrefix = "footprint-result ";
+
+    /**
+     * Prefix of lines carrying the classes that grew the most, followed by entity, count, class, instances and bytes
+     */
+    static final String classPrefix = "footprint-class ";
+
+    private static final Pattern histogramLine = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+).*$");
+    private static final int topClasses = 10;
+
+    public static void main(String[] args) throws Exception {
+
+        final Entity entity = Entity.valueOf(args[0]);
+        final long count = Long.parseLong(args[1]);
+        final String folder = args[2];
+        final String maxHeap = args[3];
+
+        final ConfigurableApplicationContext context = new SpringApplication(FootprintBroker.class).run(
+                "--spring.main.banner-mode=off",
+                "--hivemq.config.folder=" + folder + "/conf",
+                "--hivemq.data.folder=" + folder + "/data",
+                "--hivemq.extensions.folder=" + folder + "/extensions",
+                "--hivemq.log.folder=" + folder + "/log",
+                "--hivemq.log.level=warn",
+                "--hivemq.config.listeners.tcp-listeners[0].name=footprint",
+                "--hivemq.config.listeners.tcp-listeners[0].bind-address=127.0.0.1",
+                "--hivemq.config.listeners.tcp-listeners[0].port=0",
+                "--hivemq.config.persistence.mode=in-memory",
+                "--hivemq.config.mqtt.queued-messages.max-queue-size=" + Math.max(1000, count),
+                "--hivemq.config.mqtt.queued-messages.strategy=discard");
+
+        try {
+            final String port = context.getEnvironment().getRequiredProperty("local.hivemq.port");
+
+            final Map<String, long[]> before = histogram();
+            final long heapBefore = usedHeap();
+
+            final Process loader = FootprintProcesses.start(FootprintLoader.class, "-Xmx" + maxHeap,
+                    entity.name(), Long.toString(count), port);
+            try (BufferedReader out = loader.inputReader(StandardCharsets.UTF_8)) {
+                FootprintProcesses.await(out, FootprintLoader.ready, loader);
+
+                final Map<String, long[]> after = histogram();
+                final long heapAfter = usedHeap();
+
+                System.out.println(resultPrefix + String.join(" ", entity.name(), Long.toString(count),
+                        Long.toString((total(after) - total(before)) / count),
+                        Long.toString((heapAfter - heapBefore) / count)));
+                growth(before, after).stream()
+                        .limit(topClasses)
+                        .forEach(line -> System.out.println(classPrefix + entity.name() + " " + count + " " + line));
+            } finally {
+                loader.outputWriter().close();
+                loader.waitFor();
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * @return Instances and bytes of live objects by class, triggers a full GC
+     */
+    private static Map<String, long[]> histogram() throws Exception {
+
+        final String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[]{ new String[0] }, new String[]{ String[].class.getName() });
+
+        final Map<String, long[]> classes = new HashMap<>();
+        for (String line : histogram.split("\\R")) {
+            final Matcher matcher = histogramLine.matcher(line);
+            if (matcher.matches())
+                classes.put(matcher.group(3), new long[]{ Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) });
+        }
+        return classes;
+    }
+
+    private static long total(Map<String, long[]> histogram) {
+        return histogram.values().stream().mapToLong(c -> c[1]).sum();
+    }
+
+    /**
+     * @return Classes ordered by growth in bytes, formatted as class, instances and bytes
+     */
+    private static List<String> growth(Map<String, long[]> before, Map<String, long[]> after) {
+        final List<Map.Entry<String, long[]>> grown = new ArrayList<>();
+        after.forEach((name, counts) -> {
+            final long[] previous = before.getOrDefault(name, new long[2]);
+            if (counts[1] > previous[1])
+                grown.add(Map.entry(name, new long[]{ counts[0] - previous[0], counts[1] - previous[1] }));
+        });
+        grown.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        return grown.stream()
+                .map(e -> e.getKey() + " " + e.getValue()[0] + " " + e.getValue()[1])
+                .toList();
+    }
+
+    /**
+     * @return Heap in use as reported by the memory MX bean, read right after the full GC of the last histogram
+     */
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks.footprint;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscribe;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscription;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads entities of one type into the broker through local MQTT clients, prints {@link #ready}
+ * and keeps all connections open until its input is closed.
+ * <p>
+ * Arguments: entity count port
+ */
+public class FootprintLoader {
+
+    static final String ready = "footprint-ready";
+
+    private static final String host = "127.0.0.1";
+    private static final int window = 1_000;
+    private static final int connectionsPerAddress = 20_000;
+    private static final byte[] payload = new byte[64];
+
+    private final int port;
+    private final List<Mqtt5AsyncClient> clients = new ArrayList<>();
+
+    private FootprintLoader(int port) {
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        final Entity entity = Entity.valueOf(args[0]);
+        final long count = Long.parseLong(args[1]);
+        final FootprintLoader loader = new FootprintLoader(Integer.parseInt(args[2]));
+
+        switch (entity) {
+            case sessions -> loader.sessions(count);
+            case subscriptions -> loader.subscriptions(count);
+            case queued -> loader.queued(count);
+            case retained -> loader.retained(count);
+        }
+
+        System.out.println(ready);
+        System.out.flush();
+
+        // Hold connections until the broker measured the heap
+        while (System.in.read() >= 0);
+        loader.clients.forEach(client -> client.disconnect().join());
+    }
+
+    /**
+     * Connects clients, spread over loopback addresses, as each address has only about 28k ephemeral ports
+     */
+    private void sessions(long count) throws UnknownHostException {
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            final long address = 1 + i / connectionsPerAddress;
+            final Mqtt5AsyncClient client = Mqtt5Client.builder()
+                    .identifier("footprint-session-" + i)
+                    .transportConfig()
+                        .serverHost(host)
+                        .serverPort(this.port)
+                        .localAddress(InetAddress.getByAddress(new byte[]{ 127, 0, (byte) (address >> 8), (byte) address }))
+                        .applyTransportConfig()
+                    .buildAsync();
+            this.clients.add(client);
+            pending.add(client.connect());
+            joinIfFull(pending);
+        }
+        join(pending);
+    }
+
+    private void subscriptions(long count) {
+        final Mqtt5AsyncClient client = connect("footprint-subscriber", true);
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; i < count; i += window) {
+            final List<Mqtt5Subscription> subscriptions = new ArrayList<>();
+            for (long j = i; j < Math.min(count, i + window); j++)
+                subscriptions.add(Mqtt5Subscription.builder().topicFilter("footprint/subscriptions/" + j).qos(MqttQos.AT_LEAST_ONCE).build());
+            pending.add(client.subscribe(Mqtt5Subscribe.builder().addSubscriptions(subscriptions).build()));
+            joinIfFull(pending);
+        }
+        join(pending);
+    }
+
+    private void queued(long count) {
+        final Mqtt5AsyncClient subscriber = connect("footprint-queue", false);
+        subscriber.subscribeWith().topicFilter("footprint/queued").qos(MqttQos.AT_LEAST_ONCE).send().join();
+        subscriber.disconnect().join();
+
+        final Mqtt5AsyncClient publisher = connect("footprint-publisher", true);
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            pending.add(publisher.publishWith().topic("footprint/queued").qos(MqttQos.AT_LEAST_ONCE).payload(payload).send());
+            joinIfFull(pending);
+        }
+        join(pending);
+    }
+
+    private void retained(long count) {
+        final Mqtt5AsyncClient publisher = connect("footprint-publisher", true);
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            pending.add(publisher.publishWith().topic("footprint/retained/" + i).qos(MqttQos.AT_LEAST_ONCE).retain(true).payload(payload).send());
+            joinIfFull(pending);
+        }
+        join(pending);
+    }
+
+    private Mqtt5AsyncClient connect(String identifier, boolean cleanStart) {
+        final Mqtt5AsyncClient client = Mqtt5Client.builder()
+                .identifier(identifier)
+                .serverHost(host)
+                .serverPort(this.port)
+                .buildAsync();
+        client.connectWith()
+                .cleanStart(cleanStart)
+                .sessionExpiryInterval(cleanStart ? 0 : 3600)
+                .send()
+                .join();
+        if (cleanStart)
+            this.clients.add(client);
+        return client;
+    }
+
+    private static void joinIfFull(List<CompletableFuture<?>> pending) {
+        if (pending.size() >= window)
+            join(pending);
+    }
+
+    private static void join(List<CompletableFuture<?>> pending) {
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        pending.clear();
+    }
+}
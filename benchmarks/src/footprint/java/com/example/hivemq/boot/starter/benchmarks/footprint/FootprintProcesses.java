@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks.footprint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts child JVMs with the classpath of the current one
+ */
+final class FootprintProcesses {
+
+    private FootprintProcesses() {}
+
+    static Process start(Class<?> main, String jvmArgs, String... args) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(List.of(jvmArgs.trim().split("\\s+")));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main.getName());
+        command.addAll(List.of(args));
+
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Reads the output of a process up to a line, passing on all other lines
+     */
+    static void await(BufferedReader out, String line, Process process) throws IOException {
+        String read;
+        while ((read = out.readLine()) != null) {
+            if (read.equals(line))
+                return;
+            System.out.println(read);
+        }
+        throw new IllegalStateException(process.info().commandLine().orElse("Process") + " exited before '" + line + "'");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks.footprint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the retained heap of the embedded broker per connected client, subscription, queued message
+ * and retained message at the given scales, each in a {@link FootprintBroker} process of its own with a GC log.
+ * Writes a report and fails, if any footprint exceeds its budget.
+ * <p>
+ * Arguments: scales (comma separated) report-folder budgets-file max-heap (of both broker and client processes)
+ */
+public class HeapFootprint {
+
+    public static void main(String[] args) throws Exception {
+
+        final long[] scales = Arrays.stream(args[0].split(",")).map(String::strip).mapToLong(Long::parseLong).toArray();
+        final Path report = Path.of(args[1]).toAbsolutePath();
+        final Properties budgets = new Properties();
+        try (Reader in = Files.newBufferedReader(Path.of(args[2]))) {
+            budgets.load(in);
+        }
+        final String maxHeap = args[3];
+
+        final List<String> results = new ArrayList<>();
+        final List<String> classes = new ArrayList<>();
+        final List<String> violations = new ArrayList<>();
+
+        for (Entity entity : Entity.values()) {
+            for (long count : scales) {
+                final Path folder = report.resolve(entity + "-" + count);
+                Files.createDirectories(folder);
+
+                final Process broker = FootprintProcesses.start(FootprintBroker.class,
+                        "-Xmx" + maxHeap + " -XX:+UseG1GC -Xlog:gc*:file=" + folder.resolve("gc.log"),
+                        entity.name(), Long.toString(count), folder.toString(), maxHeap);
+
+                try (BufferedReader out = broker.inputReader(StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = out.readLine()) != null) {
+                        if (line.startsWith(FootprintBroker.resultPrefix)) {
+                            final String[] result = line.substring(FootprintBroker.resultPrefix.length()).split(" ");
+                            results.add(String.join(",", result));
+                            System.out.printf("%-13s %,10d: %,8d bytes per entity (histogram), %,8d bytes (heap after GC)%n",
+                                    entity, count, Long.parseLong(result[2]), Long.parseLong(result[3]));
+
+                            final String budget = budgets.getProperty(entity.name());
+                            if (budget != null && Long.parseLong(result[2]) > Long.parseLong(budget))
+                                violations.add(entity + " at " + count + ": " + result[2] + " bytes exceed budget of " + budget);
+                        } else if (line.startsWith(FootprintBroker.classPrefix)) {
+                            classes.add(String.join(",", line.substring(FootprintBroker.classPrefix.length()).split(" ")));
+                        }
+                    }
+                }
+                if (broker.waitFor() != 0)
+                    throw new IllegalStateException("Measuring " + entity + " at " + count + " failed");
+            }
+        }
+
+        write(report.resolve("footprint.csv"), "entity,count,histogram-bytes-per-entity,heap-bytes-per-entity", results);
+        write(report.resolve("classes.csv"), "entity,count,class,instances,bytes", classes);
+        System.out.println("Report written to " + report);
+
+        if (!violations.isEmpty()) {
+            violations.forEach(System.err::println);
+            System.exit(1);
+        }
+    }
+
+    private static void write(Path file, String header, List<String> lines) throws IOException {
+        final List<String> content = new ArrayList<>();
+        content.add(header);
+        content.addAll(lines);
+        Files.write(file, content);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.tracing.HiveMQEmbeddedTracing;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelPropagator;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.micrometer.tracing.propagation.Propagator;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-message overhead of trace propagation for a publish with one delivery,
+ * with tracing disabled, head sampled and fully on. Spans are recorded by the
+ * OpenTelemetry SDK, but not exported.
+ */
+@State(Scope.Thread)
+public class TracingBenchmark {
+
+    private static final Propagator.Getter<Map<String, String>> getter = Map::get;
+    private static final Propagator.Setter<Map<String, String>> setter = Map::put;
+
+    @Param({ "0", "0.01", "1" })
+    double sampleRate;
+
+    private SdkTracerProvider tracerProvider;
+    private HiveMQEmbeddedTracing tracing;
+    private final Map<String, String> carrier = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        final HiveMQEmbeddedProperties.Tracing properties = new HiveMQEmbeddedProperties.Tracing();
+        properties.setSampleRate(this.sampleRate);
+
+        this.tracerProvider = SdkTracerProvider.builder().build();
+        final Tracer tracer = this.tracerProvider.get("benchmark");
+        this.tracing = new HiveMQEmbeddedTracing(properties,
+                new OtelTracer(tracer, new OtelCurrentTraceContext(), event -> {}),
+                new OtelPropagator(ContextPropagators.create(W3CTraceContextPropagator.getInstance()), tracer));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.tracerProvider.close();
+    }
+
+    @Benchmark
+    public boolean publishWithDelivery() {
+        this.carrier.clear();
+
+        final long timestamp = System.currentTimeMillis();
+        this.tracing.ingress("telemetry/device-1", "sender", 1, timestamp, this.carrier, getter, setter);
+        return this.tracing.delivery("telemetry/device-1", "receiver", 1, timestamp, this.carrier, getter, setter);
+    }
+}
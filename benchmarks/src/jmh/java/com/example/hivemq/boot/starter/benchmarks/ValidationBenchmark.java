@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.benchmarks;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.validation.HiveMQEmbeddedValidation;
+import com.example.hivemq.boot.starter.services.validation.JsonSchemaValidator;
+import com.example.hivemq.boot.starter.services.validation.JsonValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Per-message overhead of payload validation for a small telemetry payload,
+ * for a topic without schema, well-formed JSON only and a JSON schema.
+ */
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    private static final String schema = """
+            {
+              "$schema": "https://json-schema.org/draft/2020-12/schema",
+              "type": "object",
+              "properties": {
+                "device": { "type": "string" },
+                "timestamp": { "type": "integer" },
+                "temperature": { "type": "number", "minimum": -50, "maximum": 150 },
+                "humidity": { "type": "number", "minimum": 0, "maximum": 100 }
+              },
+              "required": [ "device", "timestamp", "temperature" ]
+            }
+            """;
+
+    @Param({ "none", "json", "json-schema" })
+    String type;
+
+    private HiveMQEmbeddedValidation validation;
+    private final ByteBuffer payload = ByteBuffer.wrap(
+            "{\"device\":\"device-1\",\"timestamp\":1760000000000,\"temperature\":21.5,\"humidity\":40.2}"
+                    .getBytes(StandardCharsets.UTF_8));
+
+    @Setup
+    public void setup() {
+        final HiveMQEmbeddedProperties properties = new HiveMQEmbeddedProperties();
+        final HiveMQEmbeddedProperties.Schema mapping = new HiveMQEmbeddedProperties.Schema();
+        mapping.setTopicFilters(List.of("telemetry/+/state"));
+        mapping.setType(this.type);
+        mapping.setLocation("schema.json");
+        properties.getValidation().setSchemas(this.type.equals("none") ? List.of() : List.of(mapping));
+
+        this.validation = new HiveMQEmbeddedValidation(properties,
+                List.of(new JsonValidator(), new JsonSchemaValidator()),
+                new DefaultResourceLoader() {
+                    @Override
+                    public Resource getResource(String location) {
+                        return new ByteArrayResource(schema.getBytes(StandardCharsets.UTF_8));
+                    }
+                },
+                null, null, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String validate() {
+        return this.validation.validate("telemetry/device-1/state", this.payload);
+    }
+}
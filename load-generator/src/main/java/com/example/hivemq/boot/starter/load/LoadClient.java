@@ -0,0 +1,183 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.load;
+
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.connect.Mqtt5ConnectBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.connect.connack.Mqtt5ConnAck;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated client, running its script on a virtual thread with the blocking MQTT client API
+ */
+@Slf4j
+final class LoadClient implements Runnable {
+
+    private final LoadProperties properties;
+    private final LoadMetrics metrics;
+    private final int index;
+    private final String identifier;
+    private final long end;
+    private final Mqtt5BlockingClient client;
+
+    private boolean connected;
+
+    LoadClient(LoadProperties properties, LoadMetrics metrics, Mqtt5ClientBuilder builder, int index, long end) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.index = index;
+        this.identifier = properties.getClientIdPrefix() + index;
+        this.end = end;
+        this.client = builder.identifier(this.identifier).buildBlocking();
+
+        this.client.toAsync().publishes(MqttGlobalPublishFilter.ALL, publish -> metrics.received());
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!connect())
+                return;
+
+            run(this.properties.getSetup());
+            while (this.connected && System.nanoTime() < this.end && !Thread.currentThread().isInterrupted())
+                run(this.properties.getLoop());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void run(List<LoadProperties.Step> steps) throws InterruptedException {
+        for (LoadProperties.Step step : steps) {
+            if (!this.connected)
+                return;
+
+            switch (step.getAction()) {
+                case subscribe -> subscribe(step);
+                case unsubscribe -> unsubscribe(step);
+                case publish -> publish(step);
+                case pause -> TimeUnit.NANOSECONDS.sleep(
+                        Math.min(step.getDuration().toNanos(), Math.max(0, this.end - System.nanoTime())));
+                case reconnect -> {
+                    disconnect();
+                    connect();
+                }
+            }
+        }
+    }
+
+    private boolean connect() {
+        final Mqtt5ConnectBuilder.Send<Mqtt5ConnAck> connect = this.client.connectWith()
+                .cleanStart(this.properties.isCleanStart())
+                .sessionExpiryInterval(this.properties.getSessionExpiry().toSeconds())
+                .keepAlive(this.properties.getKeepAlive());
+
+        final LoadProperties.Target target = this.properties.getTarget();
+        if (target.getUsername() != null)
+            connect.simpleAuth()
+                    .username(target.getUsername())
+                    .password(target.getPassword() == null ? new byte[0] : target.getPassword().getBytes(StandardCharsets.UTF_8))
+                    .applySimpleAuth();
+
+        final long started = System.nanoTime();
+        try {
+            connect.send();
+            this.metrics.connected(System.nanoTime() - started);
+            this.connected = true;
+        } catch (RuntimeException rte) {
+            this.metrics.connectFailed();
+            log.debug("Client '{}' failed to connect.", this.identifier, rte);
+        }
+        return this.connected;
+    }
+
+    private void disconnect() {
+        if (!this.connected)
+            return;
+
+        this.connected = false;
+        this.metrics.disconnected();
+        try {
+            this.client.disconnect();
+        } catch (RuntimeException rte) {
+            log.debug("Client '{}' failed to disconnect.", this.identifier, rte);
+        }
+    }
+
+    private void subscribe(LoadProperties.Step step) {
+        try {
+            this.client.subscribeWith()
+                    .topicFilter(topic(step))
+                    .qos(MqttQos.fromCode(step.getQos()))
+                    .send();
+            this.metrics.subscribed(true);
+        } catch (RuntimeException rte) {
+            this.metrics.subscribed(false);
+            connectionLost();
+        }
+    }
+
+    private void unsubscribe(LoadProperties.Step step) {
+        try {
+            this.client.unsubscribeWith()
+                    .topicFilter(topic(step))
+                    .send();
+        } catch (RuntimeException rte) {
+            connectionLost();
+        }
+    }
+
+    private void publish(LoadProperties.Step step) {
+        try {
+            final Mqtt5PublishResult result = this.client.publishWith()
+                    .topic(topic(step))
+                    .qos(MqttQos.fromCode(step.getQos()))
+                    .retain(step.isRetain())
+                    .payload(new byte[(int) step.getPayloadSize().toBytes()])
+                    .send();
+            this.metrics.published(result.getError().isEmpty());
+        } catch (RuntimeException rte) {
+            this.metrics.published(false);
+            connectionLost();
+        }
+    }
+
+    /**
+     * Stops the client's script, if a failed request was caused by a lost connection
+     */
+    private void connectionLost() {
+        if (this.connected && !this.client.getState().isConnected()) {
+            this.connected = false;
+            this.metrics.connectionLost();
+        }
+    }
+
+    private String topic(LoadProperties.Step step) {
+        return step.getTopic()
+                .replace("{client}", this.identifier)
+                .replace("{index}", Integer.toString(this.index));
+    }
+}
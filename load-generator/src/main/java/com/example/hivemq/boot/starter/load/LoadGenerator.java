@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.load;
+
+import com.hivemq.client.mqtt.MqttClientSslConfig;
+import com.hivemq.client.mqtt.MqttClientSslConfigBuilder;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connects the configured number of clients at the configured rate, each on a virtual thread of its own,
+ * and lets them run their script until the end of the test
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoadGenerator implements ApplicationRunner {
+
+    private final LoadProperties properties;
+    private final Environment environment;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+
+        final Mqtt5ClientBuilder builder = clientBuilder();
+        final long start = System.nanoTime();
+        final long end = start + this.properties.getDuration().toNanos();
+        final double interval = TimeUnit.SECONDS.toNanos(1) / this.properties.getConnectRate();
+
+        log.info("Starting {} clients at {} connects per second for {}.",
+                this.properties.getClients(), this.properties.getConnectRate(), this.properties.getDuration());
+
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("load-reporter").daemon().factory());
+
+        try (LoadMetrics metrics = new LoadMetrics(Path.of(this.properties.getReport()))) {
+            reporter.scheduleAtFixedRate(metrics::report, this.properties.getReportInterval().toMillis(),
+                    this.properties.getReportInterval().toMillis(), TimeUnit.MILLISECONDS);
+
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < this.properties.getClients() && System.nanoTime() < end; i++) {
+                    LockSupport.parkNanos(start + (long) (i * interval) - System.nanoTime());
+                    clients.execute(new LoadClient(this.properties, metrics, builder, i, end));
+                }
+            }
+
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        log.info("Report written to '{}'.", Path.of(this.properties.getReport()).toAbsolutePath());
+    }
+
+    private Mqtt5ClientBuilder clientBuilder() throws Exception {
+
+        final LoadProperties.Target target = this.properties.getTarget();
+        final int port = Optional.ofNullable(target.getPort())
+                .orElseGet(() -> this.environment.getRequiredProperty(
+                        target.isTls() ? "local.hivemq.tls-port" : "local.hivemq.port", Integer.class));
+
+        final Mqtt5ClientBuilder builder = Mqtt5Client.builder()
+                .serverHost(target.getHost())
+                .serverPort(port);
+
+        if (target.isTls()) {
+            final MqttClientSslConfigBuilder ssl = MqttClientSslConfig.builder();
+            if (target.getTruststore() != null) {
+                final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                trustManagerFactory.init(KeyStore.getInstance(new File(target.getTruststore()),
+                        Optional.ofNullable(target.getTruststorePassword()).map(String::toCharArray).orElse(null)));
+                ssl.trustManagerFactory(trustManagerFactory)
+                        // Certificates of brokers under test rarely match the host name
+                        .hostnameVerifier((host, session) -> true);
+            }
+            builder.sslConfig(ssl.build());
+        }
+
+        return builder;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a load test, reported per interval to the log and a CSV file.
+ * CONNACK latencies are recorded in microseconds by an HdrHistogram recorder, which is swapped on each report.
+ * CPU and heap usage are those of the whole process, which runs both broker and clients.
+ */
+@Slf4j
+final class LoadMetrics implements AutoCloseable {
+
+    private static final int significantDigits = 3;
+    private static final String header = "time,connected,connects,connect-errors,connack-p50-us,connack-p90-us,connack-p99-us,connack-max-us,connections-lost,"
+            + "publishes,publish-errors,subscribes,subscribe-errors,received,cpu,heap-used-bytes";
+
+    private final Recorder connackLatencies = new Recorder(significantDigits);
+    private final Histogram connackTotal = new Histogram(significantDigits);
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder connectErrors = new LongAdder();
+    private final LongAdder connectionsLost = new LongAdder();
+    private final LongAdder publishes = new LongAdder();
+    private final LongAdder publishErrors = new LongAdder();
+    private final LongAdder subscribes = new LongAdder();
+    private final LongAdder subscribeErrors = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    private final com.sun.management.OperatingSystemMXBean os =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final long start = System.nanoTime();
+    private final PrintWriter csv;
+    private Histogram interval;
+
+    LoadMetrics(Path report) throws IOException {
+        this.csv = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8));
+        this.csv.println(header);
+    }
+
+    void connected(long nanos) {
+        this.connackLatencies.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        this.connects.increment();
+        this.connected.incrementAndGet();
+    }
+
+    void connectFailed() {
+        this.connectErrors.increment();
+    }
+
+    void disconnected() {
+        this.connected.decrementAndGet();
+    }
+
+    void connectionLost() {
+        this.connectionsLost.increment();
+        this.connected.decrementAndGet();
+    }
+
+    void published(boolean success) {
+        (success ? this.publishes : this.publishErrors).increment();
+    }
+
+    void subscribed(boolean success) {
+        (success ? this.subscribes : this.subscribeErrors).increment();
+    }
+
+    void received() {
+        this.received.increment();
+    }
+
+    /**
+     * Reports the statistics of the interval since the last report
+     */
+    synchronized void report() {
+
+        this.interval = this.connackLatencies.getIntervalHistogram(this.interval);
+        this.connackTotal.add(this.interval);
+
+        final long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.start);
+        final long connects = this.connects.sumThenReset();
+        final long connectErrors = this.connectErrors.sumThenReset();
+        final long connectionsLost = this.connectionsLost.sumThenReset();
+        final long publishes = this.publishes.sumThenReset();
+        final long publishErrors = this.publishErrors.sumThenReset();
+        final long subscribes = this.subscribes.sumThenReset();
+        final long subscribeErrors = this.subscribeErrors.sumThenReset();
+        final long received = this.received.sumThenReset();
+        final double cpu = this.os.getProcessCpuLoad();
+        final long heap = this.memory.getHeapMemoryUsage().getUsed();
+
+        log.info("{}s: {} connected, {} connects ({} errors), CONNACK p50/p90/p99/max {}/{}/{}/{} us, {} lost, "
+                        + "{} publishes ({} errors), {} subscribes ({} errors), {} received, cpu {}%, heap {} MB",
+                seconds, this.connected.get(), connects, connectErrors,
+                this.interval.getValueAtPercentile(50), this.interval.getValueAtPercentile(90),
+                this.interval.getValueAtPercentile(99), this.interval.getMaxValue(), connectionsLost,
+                publishes, publishErrors, subscribes, subscribeErrors, received,
+                Math.round(cpu * 100), heap >> 20);
+
+        this.csv.println(String.join(",",
+                Long.toString(seconds), Integer.toString(this.connected.get()),
+                Long.toString(connects), Long.toString(connectErrors),
+                Long.toString(this.interval.getValueAtPercentile(50)), Long.toString(this.interval.getValueAtPercentile(90)),
+                Long.toString(this.interval.getValueAtPercentile(99)), Long.toString(this.interval.getMaxValue()),
+                Long.toString(connectionsLost),
+                Long.toString(publishes), Long.toString(publishErrors),
+                Long.toString(subscribes), Long.toString(subscribeErrors),
+                Long.toString(received), String.format(Locale.ROOT, "%.3f", cpu), Long.toString(heap)));
+        this.csv.flush();
+    }
+
+    /**
+     * Reports the last interval and the CONNACK latencies of the whole test
+     */
+    @Override
+    public synchronized void close() {
+        report();
+        log.info("CONNACK latencies of {} connects: p50 {} us, p90 {} us, p99 {} us, p99.9 {} us, max {} us",
+                this.connackTotal.getTotalCount(),
+                this.connackTotal.getValueAtPercentile(50), this.connackTotal.getValueAtPercentile(90),
+                this.connackTotal.getValueAtPercentile(99), this.connackTotal.getValueAtPercentile(99.9),
+                this.connackTotal.getMaxValue());
+        this.csv.close();
+    }
+}
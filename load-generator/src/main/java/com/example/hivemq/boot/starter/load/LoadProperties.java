@@ -0,0 +1,219 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.load;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Validated
+@ConfigurationProperties(prefix = "load")
+public class LoadProperties {
+
+    /**
+     * Number of simulated clients
+     */
+    @Min(1)
+    private int clients = 1000;
+
+    /**
+     * Clients to connect per second during ramp-up
+     */
+    @Positive
+    private double connectRate = 100;
+
+    /**
+     * Duration of the test, including ramp-up
+     */
+    @NotNull
+    private Duration duration = Duration.ofMinutes(1);
+
+    /**
+     * Interval to report statistics at
+     */
+    @NotNull
+    private Duration reportInterval = Duration.ofSeconds(5);
+
+    /**
+     * CSV file to write statistics to
+     */
+    @NotBlank
+    private String report = "load-report.csv";
+
+    /**
+     * Prefix of client identifiers, followed by the client's index
+     */
+    @NotBlank
+    private String clientIdPrefix = "load-";
+
+    /**
+     * Whether clients start a clean session
+     */
+    private boolean cleanStart = true;
+
+    /**
+     * Session expiry interval requested by clients
+     */
+    @NotNull
+    private Duration sessionExpiry = Duration.ZERO;
+
+    /**
+     * Keep alive requested by clients in seconds
+     */
+    @Min(0)
+    @Max(65535)
+    private int keepAlive = 60;
+
+    /**
+     * Listener to connect to
+     */
+    @Valid
+    private Target target = new Target();
+
+    /**
+     * Steps each client runs once after connecting
+     */
+    @Valid
+    private List<Step> setup = new ArrayList<>();
+
+    /**
+     * Steps each client runs repeatedly until the end of the test
+     */
+    @Valid
+    private List<Step> loop = new ArrayList<>();
+
+    @Data
+    @Validated
+    public static class Target {
+
+        /**
+         * Host to connect to
+         */
+        @NotBlank
+        private String host = "127.0.0.1";
+
+        /**
+         * Port to connect to, defaults to the first tcp or tls tcp listener of the embedded broker
+         */
+        private Integer port;
+
+        /**
+         * Whether to connect with TLS
+         */
+        private boolean tls = false;
+
+        /**
+         * Truststore to verify the broker's certificate with, defaults to the JVM's one
+         */
+        private String truststore;
+
+        /**
+         * Truststore password
+         */
+        private String truststorePassword;
+
+        /**
+         * Username to authenticate with
+         */
+        private String username;
+
+        /**
+         * Password to authenticate with
+         */
+        private String password;
+    }
+
+    @Data
+    @Validated
+    public static class Step {
+
+        /**
+         * Action of this step
+         */
+        @NotNull
+        private Action action;
+
+        /**
+         * Topic to publish to or topic filter to subscribe to,
+         * '{client}' is replaced by the client identifier and '{index}' by the client's index
+         */
+        private String topic;
+
+        /**
+         * Quality of service to publish or subscribe with
+         */
+        @Min(0)
+        @Max(2)
+        private int qos = 0;
+
+        /**
+         * Whether to publish retained messages
+         */
+        private boolean retain = false;
+
+        /**
+         * Size of published payloads
+         */
+        @NotNull
+        private DataSize payloadSize = DataSize.ofBytes(64);
+
+        /**
+         * Duration to pause for
+         */
+        @NotNull
+        private Duration duration = Duration.ofSeconds(1);
+
+        public enum Action {
+
+            /**
+             * Subscribes to the topic filter
+             */
+            subscribe,
+
+            /**
+             * Unsubscribes from the topic filter
+             */
+            unsubscribe,
+
+            /**
+             * Publishes a message to the topic
+             */
+            publish,
+
+            /**
+             * Pauses for the duration
+             */
+            pause,
+
+            /**
+             * Disconnects and connects again
+             */
+            reconnect
+        }
+    }
+}
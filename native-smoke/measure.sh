@@ -0,0 +1,57 @@
+#!/usr/bin/env bash
+#
+#    Copyright 2024-present Jan Haenel
+#
+#    Licensed under the Apache License, Version 2.0 (the "License");
+#    you may not use this file except in compliance with the License.
+#    You may obtain a copy of the License at
+#
+#        http://www.apache.org/licenses/LICENSE-2.0
+#
+#    Unless required by applicable law or agreed to in writing, software
+#    distributed under the License is distributed on an "AS IS" BASIS,
+#    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+#    See the License for the specific language governing permissions and
+#    limitations under the License.
+#
+# Starts the JVM and the native build of the smoke application, waits until HiveMQ is started
+# and reports the time to get there and the resident memory. Linux only, as RSS is read from /proc.
+set -euo pipefail
+cd "$(dirname "$0")"
+
+jar=build/libs/native-smoke.jar
+binary=build/native/nativeCompile/native-smoke
+timeout=${SMOKE_TIMEOUT:-120}
+
+measure() {
+    local name=$1; shift
+    local log; log=$(mktemp)
+    local start; start=$(date +%s%N)
+
+    "$@" > "$log" 2>&1 &
+    local pid=$!
+
+    until grep -q "Started SmokeApplication" "$log"; do
+        if ! kill -0 "$pid" 2> /dev/null || (( ($(date +%s%N) - start) / 1000000000 > timeout )); then
+            echo "$name: failed to start, see $log" >&2
+            kill "$pid" 2> /dev/null || true
+            return 1
+        fi
+        sleep 0.05
+    done
+
+    local elapsed=$(( ($(date +%s%N) - start) / 1000000 ))
+    local rss; rss=$(awk '/VmRSS/ { print $2 }' "/proc/$pid/status")
+
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    rm -f "$log"
+
+    printf '%-8s %10s ms %10s MiB\n' "$name" "$elapsed" "$(( rss / 1024 ))"
+}
+
+[[ -f $jar ]] || { echo "Missing $jar, run ./gradlew :native-smoke:bootJar" >&2; exit 1; }
+[[ -x $binary ]] || { echo "Missing $binary, run ./gradlew :native-smoke:nativeCompile" >&2; exit 1; }
+
+measure jvm java -jar "$jar"
+measure native "$binary"
@@ -15,12 +15,18 @@
  */
 package com.example.hivemq.boot.starter.config;
 
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedAuthorizer;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedClasspathExtensions;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedClientListener;
 import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedLifecycleListener;
 import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
 import com.hivemq.embedded.EmbeddedExtension;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Value;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -29,46 +35,114 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.util.ClassUtils;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Value
 @AutoConfiguration
 @ConditionalOnClass(com.hivemq.HiveMQServer.class)
 @EnableConfigurationProperties(HiveMQEmbeddedProperties.class)
 @ConditionalOnProperty(value = "hivemq.enabled", havingValue = "true", matchIfMissing = true)
+@ImportRuntimeHints(HiveMQEmbeddedRuntimeHints.class)
 public class HiveMQEmbeddedAutoConfiguration {
 
+    /**
+     * Name of the property source providing the actually used listener ports
+     */
+    public static final String portsPropertySource = "hivemq.ports";
+
     HiveMQEmbeddedProperties properties;
 
     @Getter(AccessLevel.NONE)
     List<EmbeddedExtension> extensions;
 
+    @Getter(AccessLevel.NONE)
+    ConfigurableEnvironment environment;
+
     @Bean("hiveMQEmbeddedExtensionsCollector")
     @ConditionalOnMissingBean
     @ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "true", matchIfMissing = true)
-    public HiveMQEmbeddedExtensionsCollector hiveMQEmbeddedExtensionsCollector(BuildProperties buildProperties) {
+    public HiveMQEmbeddedExtensionsCollector hiveMQEmbeddedExtensionsCollector(BuildProperties buildProperties,
+                                                                               ObjectProvider<HiveMQEmbeddedStage> stages,
+                                                                               ObjectProvider<HiveMQEmbeddedClientListener> clientListeners,
+                                                                               ObjectProvider<HiveMQEmbeddedAuthorizer> authorizers) {
         return new HiveMQEmbeddedExtensionsCollector(buildProperties,
                 this.properties.getExtensions().getCollector().getInfo(),
-                this.extensions.stream()
+                Stream.concat(this.extensions.stream(), classpathExtensions())
                         .map(HiveMQEmbeddedExtensionsCollector.HiveMQEmbeddedExtensionWrapper::wrap)
                         .sorted(Comparator.comparing(EmbeddedExtension::getStartPriority).reversed())
-                        .toList());
+                        .toList(),
+                stages.orderedStream().toList(),
+                clientListeners.orderedStream().toList(),
+                authorizers.orderedStream().toList());
+    }
+
+    private Stream<EmbeddedExtension> classpathExtensions() {
+        final HiveMQEmbeddedProperties.Extensions.Classpath classpath = this.properties.getExtensions().getClasspath();
+        return classpath.isEnabled()
+                ? HiveMQEmbeddedClasspathExtensions.discover(ClassUtils.getDefaultClassLoader(), classpath.getDescriptor()).stream()
+                : Stream.empty();
     }
 
     @Bean("hiveMQEmbeddedServiceWithExtensions")
     @ConditionalOnMissingBean(type = "HiveMQEmbeddedService")
     @ConditionalOnBean(value = HiveMQEmbeddedExtensionsCollector.class)
     @ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "true", matchIfMissing = true)
-    public HiveMQEmbeddedService hiveMQEmbeddedServiceWithExtensions(HiveMQEmbeddedExtensionsCollector extensionsCollector) {
-        return new HiveMQEmbeddedService(this.properties, extensionsCollector);
+    public HiveMQEmbeddedService hiveMQEmbeddedServiceWithExtensions(HiveMQEmbeddedExtensionsCollector extensionsCollector,
+                                                                     ObjectProvider<HiveMQEmbeddedLifecycleListener> listeners) {
+        return publishPorts(new HiveMQEmbeddedService(this.properties, extensionsCollector, listeners.orderedStream().toList()));
     }
 
     @Bean("hiveMQEmbeddedServiceWithoutExtensions")
     @ConditionalOnMissingBean(type = "HiveMQEmbeddedService")
     @ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "false")
-    public HiveMQEmbeddedService hiveMQEmbeddedServiceWithoutExtensions() {
-        return new HiveMQEmbeddedService(this.properties);
+    public HiveMQEmbeddedService hiveMQEmbeddedServiceWithoutExtensions(ObjectProvider<HiveMQEmbeddedLifecycleListener> listeners) {
+        return publishPorts(new HiveMQEmbeddedService(this.properties, listeners.orderedStream().toList()));
+    }
+
+    /**
+     * Provides the ports of the first tcp and tls tcp listener as 'local.hivemq.port' and 'local.hivemq.tls-port',
+     * like 'local.server.port' for web servers, as they are picked on startup for port 0
+     */
+    private HiveMQEmbeddedService publishPorts(HiveMQEmbeddedService service) {
+
+        this.environment.getPropertySources().remove(portsPropertySource);
+        this.environment.getPropertySources().addFirst(new PortsPropertySource(service));
+
+        return service;
+    }
+
+    /**
+     * Reads the ports from the service on every access, as they are picked again on restarts and retried startups
+     */
+    private static final class PortsPropertySource extends PropertySource<HiveMQEmbeddedService> {
+
+        PortsPropertySource(HiveMQEmbeddedService service) {
+            super(portsPropertySource, service);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+
+            final HiveMQEmbeddedProperties.Listeners listeners = getSource().getConfig().getListeners();
+            if (listeners == null)
+                return null;
+
+            return switch (name) {
+                case "local.hivemq.port" -> listeners.getTcpListeners() != null && !listeners.getTcpListeners().isEmpty()
+                        ? listeners.getTcpListeners().getFirst().getPort()
+                        : null;
+                case "local.hivemq.tls-port" -> listeners.getTlsTcpListeners() != null && !listeners.getTlsTcpListeners().isEmpty()
+                        ? listeners.getTlsTcpListeners().getFirst().getPort()
+                        : null;
+                default -> null;
+            };
+        }
     }
 }
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedConfigFile;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Renders config.xml at build time from the application properties seen by Spring AOT.
+ * At runtime, the rendered file is used as long as the configuration did not change,
+ * instead of rendering it again. Configurations with TLS passwords are not rendered, to keep them out of the artifact.
+ */
+@Slf4j
+public class HiveMQEmbeddedConfigAotProcessor implements BeanFactoryInitializationAotProcessor {
+
+    @Override
+    public BeanFactoryInitializationAotContribution processAheadOfTime(ConfigurableListableBeanFactory beanFactory) {
+
+        if (beanFactory.getBeanNamesForType(HiveMQEmbeddedService.class, true, false).length == 0
+                || beanFactory.getBeanNamesForType(Environment.class, true, false).length == 0)
+            return null;
+
+        final HiveMQEmbeddedProperties properties = Binder.get(beanFactory.getBean(Environment.class))
+                .bindOrCreate("hivemq", HiveMQEmbeddedProperties.class);
+
+        if (hasSecrets(properties.getConfig())) {
+            log.info("Not rendering HiveMQ configuration at build time, as its TLS listeners configure passwords.");
+            return null;
+        }
+
+        final String content = HiveMQEmbeddedConfigFile.render(properties.getConfig());
+
+        return (generationContext, beanFactoryInitializationCode) -> {
+            generationContext.getGeneratedFiles().addResourceFile(HiveMQEmbeddedConfigFile.prerenderedResource, content);
+            generationContext.getRuntimeHints().resources().registerPattern(HiveMQEmbeddedConfigFile.prerenderedResource);
+            log.info("Rendered HiveMQ configuration to '{}'.", HiveMQEmbeddedConfigFile.prerenderedResource);
+        };
+    }
+
+    /**
+     * @param config HiveMQ configuration
+     * @return Whether any TLS listener configures a keystore, private key or truststore password
+     */
+    static boolean hasSecrets(HiveMQEmbeddedProperties.Config config) {
+
+        final HiveMQEmbeddedProperties.Listeners listeners = config.getListeners();
+        if (listeners == null)
+            return false;
+
+        return Stream.concat(
+                        Optional.ofNullable(listeners.getTlsTcpListeners()).orElse(List.of()).stream()
+                                .map(HiveMQEmbeddedProperties.SecureTcpListener::getTls),
+                        Optional.ofNullable(listeners.getTlsWebsocketListeners()).orElse(List.of()).stream()
+                                .map(HiveMQEmbeddedProperties.SecureWebsocketListener::getTls))
+                .filter(Objects::nonNull)
+                .anyMatch(tls -> (tls.getKeystore() != null
+                                && (tls.getKeystore().getPassword() != null || tls.getKeystore().getPrivateKeyPassword() != null))
+                        || (tls.getTruststore() != null && tls.getTruststore().getPassword() != null));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.inventory.HiveMQEmbeddedInventory;
+import com.example.hivemq.boot.starter.services.inventory.HiveMQEmbeddedInventoryEndpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@AutoConfiguration
+@ConditionalOnClass(com.hivemq.HiveMQServer.class)
+@ConditionalOnProperty(value = "hivemq.enabled", havingValue = "true", matchIfMissing = true)
+public class HiveMQEmbeddedInventoryAutoConfiguration {
+
+    @Bean("hiveMQEmbeddedInventory")
+    @ConditionalOnMissingBean
+    public HiveMQEmbeddedInventory hiveMQEmbeddedInventory() {
+        return new HiveMQEmbeddedInventory();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    static class EndpointConfiguration {
+
+        @Bean("hiveMQEmbeddedInventoryEndpoint")
+        @ConditionalOnMissingBean
+        @ConditionalOnBean(HiveMQEmbeddedInventory.class)
+        public HiveMQEmbeddedInventoryEndpoint hiveMQEmbeddedInventoryEndpoint(HiveMQEmbeddedInventory inventory) {
+            return new HiveMQEmbeddedInventoryEndpoint(inventory);
+        }
+    }
+}
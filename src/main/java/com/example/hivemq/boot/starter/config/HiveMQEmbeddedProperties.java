@@ -18,18 +18,25 @@ package com.example.hivemq.boot.starter.config;
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import lombok.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Data
 @Validated
@@ -63,6 +70,114 @@ public class HiveMQEmbeddedProperties {
     @NotNull
     private Extensions extensions = new Extensions();
 
+    /**
+     * Batching sink for inbound publishes
+     */
+    @NotNull
+    private Batching batching = new Batching();
+
+    /**
+     * In-process publisher
+     */
+    @NotNull
+    private Publisher publisher = new Publisher();
+
+    /**
+     * Retained messages
+     */
+    @NotNull
+    private Retained retained = new Retained();
+
+    /**
+     * Topic history log
+     */
+    @NotNull
+    private History history = new History();
+
+    /**
+     * Claim-check offloading of large payloads
+     */
+    @NotNull
+    private ClaimCheck claimCheck = new ClaimCheck();
+
+    /**
+     * In-process cache of the last publish per topic
+     */
+    @NotNull
+    private LastValue lastValue = new LastValue();
+
+    /**
+     * Sampling profiler of topic prefixes
+     */
+    @NotNull
+    private Profiler profiler = new Profiler();
+
+    /**
+     * Flight recorder events
+     */
+    @NotNull
+    private Jfr jfr = new Jfr();
+
+    /**
+     * Trace context propagation through user properties
+     */
+    @NotNull
+    private Tracing tracing = new Tracing();
+
+    /**
+     * Watchdog of the extension executor and the broker's I/O threads
+     */
+    @NotNull
+    private LagMonitor lagMonitor = new LagMonitor();
+
+    /**
+     * Spring task executor and scheduler backed by the extension executor
+     */
+    @NotNull
+    private Executor executor = new Executor();
+
+    /**
+     * Batched application events for client lifecycle
+     */
+    @NotNull
+    private ClientEvents clientEvents = new ClientEvents();
+
+    /**
+     * Development support
+     */
+    @NotNull
+    private Devtools devtools = new Devtools();
+
+    /**
+     * Reload of the HiveMQ configuration on environment changes
+     */
+    @NotNull
+    private Reload reload = new Reload();
+
+    /**
+     * Store-and-forward bridge to a remote broker
+     */
+    @NotNull
+    private Bridge bridge = new Bridge();
+
+    /**
+     * MQTT delivery scheduling, unlike config.mqtt not part of the HiveMQ configuration file
+     */
+    @NotNull
+    private Delivery mqtt = new Delivery();
+
+    /**
+     * Validation of inbound payloads against schemas
+     */
+    @NotNull
+    private Validation validation = new Validation();
+
+    /**
+     * Multi-tenant topic namespaces
+     */
+    @NotNull
+    private Tenancy tenancy = new Tenancy();
+
     /**
      * HiveMQ configuration
      */
@@ -73,78 +188,814 @@ public class HiveMQEmbeddedProperties {
                     null, null, null),
                     null, null, null);
 
-    @Value
+    @Value
+    @Validated
+    public static class Folder {
+
+        /**
+         * Storage folder
+         */
+        @NotBlank
+        String folder;
+
+        @ConstructorBinding
+        public Folder(String folder) {
+            this.folder = folder;
+        }
+    }
+
+    @Data
+    @Validated
+    public static class Extensions {
+
+        /**
+         * HiveMQ extensions storage folder
+         */
+        @NotBlank
+        private String folder = defaultExtensionsFolder;
+
+        /**
+         * HiveMQ collector for Spring Boot managed embedded extensions
+         */
+        private Collector collector = new Collector();
+
+        /**
+         * HiveMQ extensions packaged as jars on the application classpath
+         */
+        private Classpath classpath = new Classpath();
+
+        public String getFolder() {
+            return Optional.of(this.folder.strip())
+                    .filter(f -> !f.isEmpty())
+                    .orElse(defaultExtensionsFolder);
+        }
+
+        @Data
+        @Validated
+        public static class Collector {
+
+            /**
+             * Enable Spring Boot managed embedded extensions
+             */
+            private boolean enabled = true;
+
+            /**
+             * Publish info for Spring Boot managed embedded extensions
+             */
+            private PublishInfo info = new PublishInfo();
+        }
+
+        @Data
+        @Validated
+        public static class Classpath {
+
+            /**
+             * Whether to discover extensions on the classpath
+             */
+            private boolean enabled = false;
+
+            /**
+             * Classpath location of the extension descriptor within an extension jar
+             */
+            @NotBlank
+            private String descriptor = "META-INF/hivemq-extension.xml";
+        }
+
+        @Data
+        @Validated
+        public static class PublishInfo {
+
+            /**
+             * Whether to publish info
+             */
+            private boolean publish = true;
+
+            /**
+             * Topic to publish info to
+             */
+            @NotBlank
+            private String topic = defaultInfoTopic;
+
+            public String getTopic() {
+                return Optional.of(this.topic.strip())
+                        .filter(f -> !f.isEmpty())
+                        .orElse(defaultInfoTopic);
+            }
+        }
+    }
+
+    @Data
+    @Validated
+    public static class Batching {
+
+        /**
+         * Whether to collect inbound publishes into batches
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to collect
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Number of preallocated slots for pending publishes
+         */
+        @Min(1)
+        private int capacity = 8192;
+
+        /**
+         * Maximum number of publishes per batch
+         */
+        @Min(1)
+        private int maxBatchSize = 500;
+
+        /**
+         * Maximum time a publish waits before its batch gets flushed
+         */
+        @NotNull
+        private Duration maxLatency = Duration.ofMillis(100);
+
+        /**
+         * Maximum time acknowledgements of QoS 1 and 2 publishes are deferred
+         */
+        @NotNull
+        private Duration ackTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Delay before a failed batch gets delivered again
+         */
+        @NotNull
+        private Duration retryInterval = Duration.ofSeconds(1);
+    }
+
+    @Data
+    @Validated
+    public static class Publisher {
+
+        /**
+         * Whether to provide an in-process publisher
+         */
+        private boolean enabled = true;
+
+        /**
+         * Buffer for publishes issued before HiveMQ got started
+         */
+        @NotNull
+        private Buffer buffer = new Buffer();
+
+        @Data
+        @Validated
+        public static class Buffer {
+
+            /**
+             * Maximum number of buffered publishes
+             */
+            @Min(1)
+            private int maxMessages = 10_000;
+
+            /**
+             * Maximum size of all buffered publishes
+             */
+            @NotNull
+            private DataSize maxSize = DataSize.ofMegabytes(16);
+
+            /**
+             * What to do with new publishes if the buffer is full
+             */
+            @NotNull
+            private Overflow overflow = Overflow.reject;
+
+            /**
+             * Whether to keep buffered publishes in a memory-mapped file within the data folder
+             */
+            private boolean mapped = false;
+
+            /**
+             * Name of the memory-mapped buffer file
+             */
+            @NotBlank
+            private String file = "publish-buffer.bin";
+
+            public enum Overflow {
+                reject, dropOldest
+            }
+        }
+    }
+
+    @Data
+    @Validated
+    public static class Retained {
+
+        /**
+         * Snapshot of retained messages
+         */
+        @NotNull
+        private Snapshot snapshot = new Snapshot();
+
+        @Data
+        @Validated
+        public static class Snapshot {
+
+            /**
+             * Whether to snapshot retained messages on shutdown and restore them on startup
+             */
+            private boolean enabled = false;
+
+            /**
+             * Name of the snapshot file within the data folder
+             */
+            @NotBlank
+            private String file = "retained-messages.bin";
+
+            /**
+             * Maximum time to wait for a snapshot to complete
+             */
+            @NotNull
+            private Duration timeout = Duration.ofSeconds(30);
+        }
+    }
+
+    @Data
+    @Validated
+    public static class History {
+
+        /**
+         * Whether to record inbound publishes to a history log
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to record
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Name of the history folder within the data folder
+         */
+        @NotBlank
+        private String folder = "history";
+
+        /**
+         * Size of each memory-mapped log segment
+         */
+        @NotNull
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * How long publishes are kept
+         */
+        @NotNull
+        private Duration retention = Duration.ofMinutes(15);
+
+        /**
+         * Maximum size of all log segments
+         */
+        @NotNull
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+    }
+
+    @Data
+    @Validated
+    public static class ClaimCheck {
+
+        /**
+         * Whether to offload large payloads to a blob store
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to offload
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Payloads larger than this get offloaded
+         */
+        @NotNull
+        private DataSize threshold = DataSize.ofMegabytes(1);
+
+        /**
+         * Name of the blob folder within the data folder
+         */
+        @NotBlank
+        private String folder = "claim-check";
+
+        /**
+         * Maximum time a blob is kept, even if not received by all subscribers
+         */
+        @NotNull
+        private Duration maxAge = Duration.ofHours(1);
+
+        /**
+         * Whether to restore offloaded payloads when delivering to clients
+         */
+        private boolean rehydrate = true;
+    }
+
+    @Data
+    @Validated
+    public static class LastValue {
+
+        /**
+         * Whether to cache the last publish per topic
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to cache
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Maximum number of cached topics
+         */
+        @Min(1)
+        private int maxEntries = 100_000;
+
+        /**
+         * Maximum size of all cached topics and payloads
+         */
+        @NotNull
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+    }
+
+    @Data
+    @Validated
+    public static class Profiler {
+
+        /**
+         * Whether to profile sampled publishes and deliveries per topic prefix
+         */
+        private boolean enabled = false;
+
+        /**
+         * Ratio of publishes and deliveries to sample
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double sampleRate = 0.01;
+
+        /**
+         * Number of topic levels forming a topic prefix
+         */
+        @Min(1)
+        private int topicLevels = 2;
+
+        /**
+         * Maximum number of profiled topic prefixes, further ones are aggregated
+         */
+        @Min(1)
+        private int maxPrefixes = 1000;
+
+        /**
+         * Number of topic prefixes to publish as metrics
+         */
+        @Min(0)
+        private int top = 10;
+
+        /**
+         * Interval to report statistics for
+         */
+        @NotNull
+        private Duration window = Duration.ofMinutes(1);
+    }
+
+    @Data
+    @Validated
+    public static class Jfr {
+
+        /**
+         * Whether to emit flight recorder events
+         */
+        private boolean enabled = false;
+
+        /**
+         * Ratio of deliveries to emit publish delivery events for
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double publishSampleRate = 0.01;
+    }
+
+    @Data
+    @Validated
+    public static class Tracing {
+
+        /**
+         * Whether to propagate trace context and create spans for publishes
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to trace
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Ratio of publishes without trace context to start a new trace for
+         */
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double sampleRate = 0.1;
+
+        /**
+         * Whether to create a span for each delivery of a traced publish
+         */
+        private boolean deliverySpans = true;
+    }
+
+    @Data
+    @Validated
+    public static class LagMonitor {
+
+        /**
+         * Whether to monitor the extension executor and the broker's I/O threads
+         */
+        private boolean enabled = false;
+
+        /**
+         * Interval to probe the extension executor and sample the I/O threads
+         */
+        @NotNull
+        private Duration interval = Duration.ofSeconds(1);
+
+        /**
+         * Lag to log stack traces of the offending threads at
+         */
+        @NotNull
+        private Duration threshold = Duration.ofMillis(500);
+
+        /**
+         * Name prefixes of the broker's I/O threads
+         */
+        @NotNull
+        private List<String> ioThreadPrefixes = List.of("hivemq-eventloop");
+    }
+
+    @Data
     @Validated
-    public static class Folder {
+    public static class Executor {
 
         /**
-         * Storage folder
+         * Whether to provide the extension executor as task executor and scheduler bean
+         */
+        private boolean enabled = false;
+    }
+
+    @Data
+    @Validated
+    public static class ClientEvents {
+
+        /**
+         * Whether to publish client lifecycle events as application events
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of pending events, the oldest ones get dropped on overflow
+         */
+        @Min(1)
+        private int capacity = 65536;
+
+        /**
+         * Maximum number of events per batch
+         */
+        @Min(1)
+        private int maxBatchSize = 1000;
+
+        /**
+         * Maximum time an event waits before its batch gets published
+         */
+        @NotNull
+        private Duration maxLatency = Duration.ofMillis(100);
+    }
+
+    @Data
+    @Validated
+    public static class Devtools {
+
+        /**
+         * Whether to keep HiveMQ running across application context restarts
+         */
+        private boolean keepAlive = false;
+    }
+
+    @Data
+    @Validated
+    public static class Reload {
+
+        /**
+         * Whether to apply HiveMQ configuration changes on environment changes
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether to restart HiveMQ for changes that cannot be applied live, otherwise they are only logged
+         */
+        private boolean restart = false;
+    }
+
+    @Data
+    @Validated
+    public static class Bridge {
+
+        /**
+         * Whether to forward inbound publishes to a remote broker
+         */
+        private boolean enabled = false;
+
+        /**
+         * Topic filters of publishes to forward
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of("#");
+
+        /**
+         * Prefix removed from topics of forwarded publishes, if present
+         */
+        @NotNull
+        private String localPrefix = "";
+
+        /**
+         * Prefix prepended to topics of forwarded publishes
+         */
+        @NotNull
+        private String remotePrefix = "";
+
+        /**
+         * Host of the remote broker
          */
         @NotBlank
-        String folder;
+        private String host = "localhost";
 
-        @ConstructorBinding
-        public Folder(String folder) {
-            this.folder = folder;
-        }
+        /**
+         * Port of the remote broker
+         */
+        @Min(1)
+        @Max(65535)
+        private int port = 1883;
+
+        /**
+         * Client identifier at the remote broker
+         */
+        @NotBlank
+        private String clientId = "hivemq-bridge";
+
+        /**
+         * User name at the remote broker, if required
+         */
+        private String username;
+
+        /**
+         * Password at the remote broker, if required
+         */
+        private String password;
+
+        /**
+         * Maximum number of forwarded publishes awaiting acknowledgement by the remote broker
+         */
+        @Min(1)
+        @Max(65535)
+        private int maxInFlight = 64;
+
+        /**
+         * Time the remote broker keeps the session of the bridge while the link is down
+         */
+        @NotNull
+        private Duration sessionExpiry = Duration.ofHours(1);
+
+        /**
+         * Initial delay between reconnect attempts, doubled after each failed attempt
+         */
+        @NotNull
+        private Duration reconnectInitialDelay = Duration.ofSeconds(1);
+
+        /**
+         * Maximum delay between reconnect attempts
+         */
+        @NotNull
+        private Duration reconnectMaxDelay = Duration.ofMinutes(2);
+
+        /**
+         * Name of the spool file within the data folder
+         */
+        @NotBlank
+        private String spoolFile = "bridge-spool.bin";
+
+        /**
+         * Maximum size of the spool, further publishes get dropped while it is full
+         */
+        @NotNull
+        private DataSize spoolSize = DataSize.ofMegabytes(64);
     }
 
     @Data
     @Validated
-    public static class Extensions {
+    public static class Delivery {
 
         /**
-         * HiveMQ extensions storage folder
+         * Topic priority lanes
+         */
+        @NotNull
+        private Priority priority = new Priority();
+    }
+
+    @Data
+    @Validated
+    public static class Priority {
+
+        /**
+         * Whether to prefer higher priority lanes under congestion
+         */
+        private boolean enabled = false;
+
+        /**
+         * Smoothed delivery latency at which the broker is considered congested
+         */
+        @NotNull
+        private Duration congestionLatency = Duration.ofMillis(200);
+
+        /**
+         * Lanes in order of descending priority, publishes belong to the first lane matching their topic
+         */
+        @NotNull
+        private List<Lane> lanes = List.of();
+    }
+
+    @Data
+    @Validated
+    public static class Lane {
+
+        /**
+         * Name of this lane, used as metrics tag
          */
         @NotBlank
-        private String folder = defaultExtensionsFolder;
+        private String name;
 
         /**
-         * HiveMQ collector for Spring Boot managed embedded extensions
+         * Topic filters of publishes belonging to this lane
          */
-        private Collector collector = new Collector();
+        @NotEmpty
+        private List<String> topicFilters = List.of();
 
-        public String getFolder() {
-            return Optional.of(this.folder.strip())
-                    .filter(f -> !f.isEmpty())
-                    .orElse(defaultExtensionsFolder);
-        }
+        /**
+         * Whether to drop QoS 0 publishes of this lane under congestion
+         */
+        private boolean shedQos0 = false;
 
-        @Data
-        @Validated
-        public static class Collector {
+        /**
+         * Delay of inbound publishes of this lane under congestion
+         */
+        @NotNull
+        private Duration defer = Duration.ZERO;
+
+        /**
+         * Maximum time QoS 0 publishes of this lane may wait for delivery, older ones are dropped
+         */
+        private Duration maxLatency;
+    }
+
+    @Data
+    @Validated
+    public static class Validation {
+
+        /**
+         * Whether to validate inbound payloads
+         */
+        private boolean enabled = false;
+
+        /**
+         * What to do with invalid publishes
+         */
+        @NotNull
+        private Action action = Action.reject;
+
+        /**
+         * Topic prefix invalid publishes get dead-lettered to
+         */
+        @NotBlank
+        private String deadLetterTopic = "dead-letter";
+
+        /**
+         * Maximum number of topics to cache the matching schema for
+         */
+        @Min(1)
+        private int topicCacheSize = 10_000;
+
+        /**
+         * Schemas in order of precedence, a publish is validated against the first one matching its topic
+         */
+        @NotNull
+        private List<Schema> schemas = List.of();
+
+        public enum Action {
 
             /**
-             * Enable Spring Boot managed embedded extensions
+             * Invalid publishes are rejected
              */
-            private boolean enabled = true;
+            reject,
 
             /**
-             * Publish info for Spring Boot managed embedded extensions
+             * Invalid publishes are forwarded to the dead letter topic
              */
-            private PublishInfo info = new PublishInfo();
+            deadLetter
         }
+    }
 
-        @Data
-        @Validated
-        public static class PublishInfo {
+    @Data
+    @Validated
+    public static class Schema {
+
+        /**
+         * Topic filters of publishes to validate against this schema
+         */
+        @NotEmpty
+        private List<String> topicFilters = List.of();
+
+        /**
+         * Type of validator to use
+         */
+        @NotBlank
+        private String type = "json-schema";
+
+        /**
+         * Resource location of the schema, if the validator requires one
+         */
+        private String location;
+    }
+
+    @Data
+    @Validated
+    public static class Tenancy {
+
+        /**
+         * Whether to isolate tenants in topic namespaces
+         */
+        private boolean enabled = false;
+
+        /**
+         * Where to derive the tenant of a client from
+         */
+        @NotNull
+        private Source source = Source.clientId;
+
+        /**
+         * Separator between tenant and the rest of the client id or user name
+         */
+        @NotBlank
+        private String separator = ":";
+
+        /**
+         * Connection attribute carrying the tenant, set by a custom authenticator
+         */
+        @NotBlank
+        private String attribute = "tenant";
+
+        /**
+         * Topic level all tenant namespaces are located below
+         */
+        @NotBlank
+        private String root = "tenants";
+
+        /**
+         * Whether clients without tenant are denied to publish and subscribe
+         */
+        private boolean required = true;
+
+        /**
+         * Known tenants, any tenant is accepted if empty
+         */
+        @NotNull
+        private Set<String> tenants = Set.of();
+
+        /**
+         * Maximum number of tenants with connected clients, if any tenant is accepted
+         */
+        @Min(1)
+        private int maxTenants = 1_000;
+
+        public enum Source {
 
             /**
-             * Whether to publish info
+             * The tenant is the client id up to the separator
              */
-            private boolean publish = true;
+            clientId,
 
             /**
-             * Topic to publish info to
+             * The tenant is the user name up to the separator
              */
-            @NotBlank
-            private String topic = defaultInfoTopic;
+            userName,
 
-            public String getTopic() {
-                return Optional.of(this.topic.strip())
-                        .filter(f -> !f.isEmpty())
-                        .orElse(defaultInfoTopic);
-            }
+            /**
+             * The tenant is the value of the connection attribute
+             */
+            attribute
         }
     }
 
@@ -264,11 +1115,16 @@ public class HiveMQEmbeddedProperties {
         String bindAddress;
 
         /**
-         * Port to listen od
+         * Port to listen on, 0 picks a free port on startup
          */
-        @Min(1025)
         @Max(65535)
         Integer port;
+
+        @JsonIgnore
+        @AssertTrue(message = "Port must be 0 or above 1024")
+        public boolean isUnprivilegedPort() {
+            return this.port == null || this.port == 0 || this.port > 1024;
+        }
     }
 
     @Value
@@ -290,9 +1146,8 @@ public class HiveMQEmbeddedProperties {
         String bindAddress;
 
         /**
-         * Port to listen on
+         * Port to listen on, 0 picks a free port on startup
          */
-        @Min(1025)
         @Max(65535)
         Integer port;
 
@@ -301,6 +1156,12 @@ public class HiveMQEmbeddedProperties {
          */
         @NotNull
         TLS tls;
+
+        @JsonIgnore
+        @AssertTrue(message = "Port must be 0 or above 1024")
+        public boolean isUnprivilegedPort() {
+            return this.port == null || this.port == 0 || this.port > 1024;
+        }
     }
 
     @Value
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import com.example.hivemq.boot.starter.services.reload.HiveMQEmbeddedLimits;
+import com.example.hivemq.boot.starter.services.reload.HiveMQEmbeddedReloader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Value;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+@Value
+@AutoConfiguration(after = HiveMQEmbeddedAutoConfiguration.class)
+@ConditionalOnClass(com.hivemq.HiveMQServer.class)
+@EnableConfigurationProperties(HiveMQEmbeddedProperties.class)
+@ConditionalOnProperty(value = "hivemq.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(value = "hivemq.reload.enabled", havingValue = "true")
+public class HiveMQEmbeddedReloadAutoConfiguration {
+
+    HiveMQEmbeddedProperties properties;
+
+    @Bean("hiveMQEmbeddedLimits")
+    @ConditionalOnMissingBean
+    public HiveMQEmbeddedLimits hiveMQEmbeddedLimits(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new HiveMQEmbeddedLimits(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean("hiveMQEmbeddedReloader")
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(HiveMQEmbeddedService.class)
+    public HiveMQEmbeddedReloader hiveMQEmbeddedReloader(HiveMQEmbeddedService service, HiveMQEmbeddedLimits limits,
+                                                         Environment environment) {
+        return new HiveMQEmbeddedReloader(this.properties, service, limits, environment);
+    }
+}
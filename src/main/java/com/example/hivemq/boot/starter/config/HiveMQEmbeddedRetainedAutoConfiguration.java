@@ -0,0 +1,50 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.retained.HiveMQEmbeddedRetainedMessages;
+import com.example.hivemq.boot.starter.services.retained.HiveMQEmbeddedRetainedSnapshot;
+import lombok.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+@Value
+@AutoConfiguration
+@ConditionalOnClass(com.hivemq.HiveMQServer.class)
+@EnableConfigurationProperties(HiveMQEmbeddedProperties.class)
+@ConditionalOnProperty(value = "hivemq.enabled", havingValue = "true", matchIfMissing = true)
+public class HiveMQEmbeddedRetainedAutoConfiguration {
+
+    HiveMQEmbeddedProperties properties;
+
+    @Bean("hiveMQEmbeddedRetainedMessages")
+    @ConditionalOnMissingBean
+    public HiveMQEmbeddedRetainedMessages hiveMQEmbeddedRetainedMessages() {
+        return new HiveMQEmbeddedRetainedMessages();
+    }
+
+    @Bean("hiveMQEmbeddedRetainedSnapshot")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(value = "hivemq.retained.snapshot.enabled", havingValue = "true")
+    public HiveMQEmbeddedRetainedSnapshot hiveMQEmbeddedRetainedSnapshot(HiveMQEmbeddedRetainedMessages retainedMessages) {
+        return new HiveMQEmbeddedRetainedSnapshot(retainedMessages, this.properties);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.hivemq.extension.sdk.api.services.Services;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.support.BindingReflectionHintsRegistrar;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+
+/**
+ * Runtime hints for GraalVM native images.
+ * Covers the configuration serialized to config.xml, the extension info serialized to json
+ * and the configuration entities HiveMQ reads with JAXB.
+ */
+@Slf4j
+public class HiveMQEmbeddedRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final String entityPackage = "com.hivemq.configuration.entity";
+
+    private static final MemberCategory[] entityCategories = {
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_DECLARED_METHODS,
+            MemberCategory.ACCESS_DECLARED_FIELDS
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                HiveMQEmbeddedProperties.Config.class,
+                HiveMQEmbeddedExtensionsCollector.class);
+
+        // Registrations of collected extensions are recorded by decorating the services injected by HiveMQ
+        hints.reflection().registerType(Services.class, MemberCategory.ACCESS_DECLARED_FIELDS);
+
+        hints.resources().registerPattern("logback-spring-hivemq.xml");
+        hints.resources().registerPattern("config.xsd");
+
+        registerEntities(hints, classLoader);
+    }
+
+    /**
+     * HiveMQ binds config.xml to its entity classes with JAXB, which needs reflection on all of them.
+     * The classes are scanned at build time, so the hints follow the HiveMQ version on the classpath.
+     */
+    private static void registerEntities(RuntimeHints hints, ClassLoader classLoader) {
+
+        final String root = entityPackage.replace('.', '/') + "/";
+        final Resource[] resources;
+        try {
+            resources = new PathMatchingResourcePatternResolver(classLoader)
+                    .getResources("classpath*:" + root + "**/*.class");
+        } catch (IOException ioe) {
+            log.warn("Failed to scan HiveMQ configuration entities, config.xml may not be readable in a native image.", ioe);
+            return;
+        }
+
+        for (Resource resource : resources) {
+            final String url;
+            try {
+                url = resource.getURL().toString();
+            } catch (IOException ioe) {
+                continue;
+            }
+
+            final int start = url.lastIndexOf(root);
+            if (start < 0)
+                continue;
+
+            final String name = url.substring(start, url.length() - ".class".length()).replace('/', '.');
+            hints.reflection().registerTypeIfPresent(classLoader, name, entityCategories);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.claimcheck.HiveMQEmbeddedClaimCheck;
+import com.example.hivemq.boot.starter.services.tenancy.HiveMQEmbeddedTenancy;
+import com.example.hivemq.boot.starter.services.validation.HiveMQEmbeddedPayloadValidator;
+import com.example.hivemq.boot.starter.services.validation.HiveMQEmbeddedValidation;
+import com.example.hivemq.boot.starter.services.validation.JsonSchemaValidator;
+import com.example.hivemq.boot.starter.services.validation.JsonValidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Value;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+@Value
+@AutoConfiguration
+@ConditionalOnClass(com.hivemq.HiveMQServer.class)
+@EnableConfigurationProperties(HiveMQEmbeddedProperties.class)
+@ConditionalOnProperty(value = "hivemq.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(value = "hivemq.extensions.collector.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(value = "hivemq.validation.enabled", havingValue = "true")
+public class HiveMQEmbeddedValidationAutoConfiguration {
+
+    HiveMQEmbeddedProperties properties;
+
+    @Bean("hiveMQEmbeddedValidation")
+    @ConditionalOnMissingBean
+    public HiveMQEmbeddedValidation hiveMQEmbeddedValidation(ObjectProvider<HiveMQEmbeddedPayloadValidator> validators,
+                                                             ResourceLoader resourceLoader,
+                                                             ObjectProvider<HiveMQEmbeddedClaimCheck> claimCheck,
+                                                             ObjectProvider<HiveMQEmbeddedTenancy> tenancy,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        return new HiveMQEmbeddedValidation(this.properties, validators.orderedStream().toList(), resourceLoader,
+                claimCheck.getIfAvailable(), tenancy.getIfAvailable(), meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean("hiveMQEmbeddedJsonValidator")
+    @ConditionalOnMissingBean(JsonValidator.class)
+    public JsonValidator hiveMQEmbeddedJsonValidator() {
+        return new JsonValidator();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "com.networknt.schema.JsonSchemaFactory")
+    static class JsonSchemaConfiguration {
+
+        @Bean("hiveMQEmbeddedJsonSchemaValidator")
+        @ConditionalOnMissingBean(JsonSchemaValidator.class)
+        public JsonSchemaValidator hiveMQEmbeddedJsonSchemaValidator() {
+            return new JsonSchemaValidator();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.events.EventRegistry;
+import com.hivemq.extension.sdk.api.events.client.ClientLifecycleEventListenerProvider;
+import com.hivemq.extension.sdk.api.interceptor.connack.ConnackOutboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptorProvider;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.auth.SecurityRegistry;
+import com.hivemq.extension.sdk.api.services.auth.provider.AuthenticatorProvider;
+import com.hivemq.extension.sdk.api.services.auth.provider.AuthorizerProvider;
+import com.hivemq.extension.sdk.api.services.auth.provider.EnhancedAuthenticatorProvider;
+import com.hivemq.extension.sdk.api.services.interceptor.InterceptorRegistry;
+import com.hivemq.extension.sdk.api.services.intializer.ClientInitializer;
+import com.hivemq.extension.sdk.api.services.intializer.InitializerRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the registrations collected extensions make while they start.
+ * HiveMQ sees all collected extensions as a single one, and keeps only the last registration of each kind,
+ * so registrations of the same kind by several extensions, or by an extension and the collector, replace each other.
+ * <p>
+ * The registries are decorated by replacing the services HiveMQ injects into {@link Services} until closed.
+ * If the services are not accessible, nothing is recorded.
+ */
+@Slf4j
+final class ExtensionRegistrations implements AutoCloseable {
+
+    static final String clientInitializer = "client initializer";
+    static final String authenticatorProvider = "authenticator provider";
+    static final String enhancedAuthenticatorProvider = "enhanced authenticator provider";
+    static final String authorizerProvider = "authorizer provider";
+    static final String clientLifecycleEventListener = "client lifecycle event listener";
+    static final String connectInboundInterceptorProvider = "connect inbound interceptor provider";
+    static final String connackOutboundInterceptorProvider = "connack outbound interceptor provider";
+
+    private static final String servicesField = "services";
+
+    private final Field field;
+    private final Map<String, Object> services;
+    private final Set<String> recorded = new LinkedHashSet<>();
+
+    private ExtensionRegistrations(final Field field, final Map<String, Object> services) {
+        this.field = field;
+        this.services = services;
+    }
+
+    /**
+     * Starts recording registrations
+     * @return The recorded registrations, to be closed once the extensions started
+     */
+    @SuppressWarnings("unchecked")
+    static ExtensionRegistrations record() {
+        try {
+            final Field field = Services.class.getDeclaredField(servicesField);
+            field.setAccessible(true);
+
+            final Map<String, Object> services = (Map<String, Object>) field.get(null);
+            if (services == null)
+                return new ExtensionRegistrations(null, null);
+
+            final ExtensionRegistrations registrations = new ExtensionRegistrations(field, services);
+            final Map<String, Object> decorated = new HashMap<>(services);
+            decorated.computeIfPresent(InitializerRegistry.class.getCanonicalName(),
+                    (name, registry) -> registrations.new Initializers((InitializerRegistry) registry));
+            decorated.computeIfPresent(SecurityRegistry.class.getCanonicalName(),
+                    (name, registry) -> registrations.new Security((SecurityRegistry) registry));
+            decorated.computeIfPresent(EventRegistry.class.getCanonicalName(),
+                    (name, registry) -> registrations.new Events((EventRegistry) registry));
+            decorated.computeIfPresent(InterceptorRegistry.class.getCanonicalName(),
+                    (name, registry) -> registrations.new Interceptors((InterceptorRegistry) registry));
+
+            field.set(null, decorated);
+            return registrations;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("Not recording registrations of collected extensions.", ex);
+            return new ExtensionRegistrations(null, null);
+        }
+    }
+
+    /**
+     * @return The kinds of registrations made since the last call, and clears them
+     */
+    synchronized Set<String> take() {
+        final Set<String> taken = Set.copyOf(this.recorded);
+        this.recorded.clear();
+        return taken;
+    }
+
+    @Override
+    public void close() {
+        if (this.field == null)
+            return;
+
+        try {
+            this.field.set(null, this.services);
+        } catch (IllegalAccessException iae) {
+            log.warn("Failed to restore HiveMQ services after starting collected extensions.", iae);
+        }
+    }
+
+    private synchronized void recorded(String registration) {
+        this.recorded.add(registration);
+    }
+
+    private final class Initializers implements InitializerRegistry {
+
+        private final InitializerRegistry delegate;
+
+        private Initializers(final InitializerRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setClientInitializer(@NotNull ClientInitializer initializer) {
+            recorded(clientInitializer);
+            this.delegate.setClientInitializer(initializer);
+        }
+    }
+
+    private final class Security implements SecurityRegistry {
+
+        private final SecurityRegistry delegate;
+
+        private Security(final SecurityRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setAuthenticatorProvider(@NotNull AuthenticatorProvider provider) {
+            recorded(authenticatorProvider);
+            this.delegate.setAuthenticatorProvider(provider);
+        }
+
+        @Override
+        public void setEnhancedAuthenticatorProvider(@NotNull EnhancedAuthenticatorProvider provider) {
+            recorded(enhancedAuthenticatorProvider);
+            this.delegate.setEnhancedAuthenticatorProvider(provider);
+        }
+
+        @Override
+        public void setAuthorizerProvider(@NotNull AuthorizerProvider provider) {
+            recorded(authorizerProvider);
+            this.delegate.setAuthorizerProvider(provider);
+        }
+    }
+
+    private final class Events implements EventRegistry {
+
+        private final EventRegistry delegate;
+
+        private Events(final EventRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setClientLifecycleEventListener(@NotNull ClientLifecycleEventListenerProvider provider) {
+            recorded(clientLifecycleEventListener);
+            this.delegate.setClientLifecycleEventListener(provider);
+        }
+    }
+
+    private final class Interceptors implements InterceptorRegistry {
+
+        private final InterceptorRegistry delegate;
+
+        private Interceptors(final InterceptorRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setConnectInboundInterceptorProvider(@NotNull ConnectInboundInterceptorProvider provider) {
+            recorded(connectInboundInterceptorProvider);
+            this.delegate.setConnectInboundInterceptorProvider(provider);
+        }
+
+        @Override
+        public void setConnackOutboundInterceptorProvider(@NotNull ConnackOutboundInterceptorProvider provider) {
+            recorded(connackOutboundInterceptorProvider);
+            this.delegate.setConnackOutboundInterceptorProvider(provider);
+        }
+    }
+}
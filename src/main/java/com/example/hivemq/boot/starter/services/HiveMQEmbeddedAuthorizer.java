@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerInput;
+import org.springframework.core.Ordered;
+
+/**
+ * An authorizer decides whether clients of embedded HiveMQ may publish or subscribe.
+ * As HiveMQ accepts only a single authorizer provider per extension,
+ * all authorizers get combined into one provider by the {@link HiveMQEmbeddedExtensionsCollector}.
+ * Authorizers are asked in order, the lowest order comes first, and the first decision other than
+ * {@link Decision#next} wins. If all authorizers pass, the decision is left to other extensions or the default.
+ */
+public interface HiveMQEmbeddedAuthorizer extends Ordered {
+
+    /**
+     * @return The authorizer name, used for logging
+     */
+    default @NotNull String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return The authorizer order, lowest comes first
+     */
+    @Override
+    default int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * @param publishAuthorizerInput The publish to authorize, including will publishes
+     * @return The decision
+     */
+    default @NotNull Decision authorizePublish(@NotNull PublishAuthorizerInput publishAuthorizerInput) {
+        return Decision.next;
+    }
+
+    /**
+     * @param subscriptionAuthorizerInput The subscription to authorize
+     * @return The decision
+     */
+    default @NotNull Decision authorizeSubscription(@NotNull SubscriptionAuthorizerInput subscriptionAuthorizerInput) {
+        return Decision.next;
+    }
+
+    enum Decision {
+
+        /**
+         * The client is authorized
+         */
+        allow,
+
+        /**
+         * The client is not authorized
+         */
+        deny,
+
+        /**
+         * The decision is left to the next authorizer
+         */
+        next
+    }
+}
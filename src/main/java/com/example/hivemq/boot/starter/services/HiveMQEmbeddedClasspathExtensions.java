@@ -0,0 +1,215 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.embedded.EmbeddedExtension;
+import com.hivemq.extension.sdk.api.ExtensionMain;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Discovers HiveMQ extensions packaged as jars on the application classpath and adapts them to embedded extensions.
+ * An extension jar is recognized by its descriptor, which has the format of the hivemq-extension.xml of an
+ * extension folder. Its main class is taken from the service file for {@link ExtensionMain} within the same jar.
+ * <p>
+ * Nothing is extracted to the extensions folder, and the main class is not loaded before the extension starts.
+ * Unlike extensions loaded from the extensions folder, these are not isolated by a class loader of their own.
+ */
+@Slf4j
+public final class HiveMQEmbeddedClasspathExtensions {
+
+    private static final String serviceFile = "META-INF/services/" + ExtensionMain.class.getName();
+    private static final int defaultPriority = 0;
+    private static final int defaultStartPriority = 1000;
+
+    private HiveMQEmbeddedClasspathExtensions() {}
+
+    /**
+     * Discovers extensions on the classpath, skipping invalid descriptors and duplicate ids
+     * @param classLoader Class loader to discover extensions with and load their main classes from
+     * @param descriptor Classpath location of the extension descriptor within an extension jar
+     * @return The discovered extensions
+     */
+    @SneakyThrows({ IOException.class })
+    public static @NotNull List<EmbeddedExtension> discover(@NotNull ClassLoader classLoader, @NotNull String descriptor) {
+
+        final List<EmbeddedExtension> extensions = new ArrayList<>();
+        final Set<String> ids = new HashSet<>();
+
+        for (URL location : Collections.list(classLoader.getResources(descriptor))) {
+            try {
+                final ClasspathExtension extension = read(classLoader, descriptor, location);
+                if (ids.add(extension.getId())) {
+                    extensions.add(extension);
+                    log.debug("Discovered extension '{}' version {} at '{}'.", extension.getName(), extension.getVersion(), location);
+                } else {
+                    log.warn("Skipping extension at '{}', as id '{}' is already in use.", location, extension.getId());
+                }
+            } catch (IOException | IllegalArgumentException | ParserConfigurationException | SAXException | URISyntaxException ex) {
+                log.warn("Skipping extension at '{}' due to an invalid descriptor.", location, ex);
+            }
+        }
+
+        return extensions;
+    }
+
+    private static ClasspathExtension read(ClassLoader classLoader, String descriptor, URL location)
+            throws IOException, ParserConfigurationException, SAXException, URISyntaxException {
+
+        final Document document;
+        try (InputStream in = location.openStream()) {
+            document = documentBuilder().parse(in);
+        }
+
+        final Node root = document.getDocumentElement();
+        final String mainClass = mainClass(descriptor, location)
+                .orElseThrow(() -> new IllegalArgumentException("Missing " + serviceFile));
+
+        return new ClasspathExtension(
+                required(root, "id"),
+                required(root, "name"),
+                required(root, "version"),
+                text(root, "author").orElse(null),
+                text(root, "priority").map(Integer::parseInt).orElse(defaultPriority),
+                text(root, "start-priority").map(Integer::parseInt).orElse(defaultStartPriority),
+                new LazyExtensionMain(classLoader, mainClass));
+    }
+
+    /**
+     * @return The first class name listed in the service file next to the descriptor
+     */
+    private static Optional<String> mainClass(String descriptor, URL location) throws IOException, URISyntaxException {
+
+        final String root = location.toString();
+        final URL services = new URI(root.substring(0, root.length() - descriptor.length()) + serviceFile).toURL();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(services.openStream(), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .map(line -> line.replaceFirst("#.*", "").strip())
+                    .filter(line -> !line.isEmpty())
+                    .findFirst();
+        } catch (IOException ioe) {
+            return Optional.empty();
+        }
+    }
+
+    private static DocumentBuilder documentBuilder() throws ParserConfigurationException {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return factory.newDocumentBuilder();
+    }
+
+    private static String required(Node root, String name) {
+        return text(root, name).orElseThrow(() -> new IllegalArgumentException("Missing element '" + name + "'"));
+    }
+
+    private static Optional<String> text(Node root, String name) {
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName()))
+                return Optional.of(node.getTextContent().strip()).filter(text -> !text.isEmpty());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Extension described by a descriptor on the classpath
+     */
+    @Value
+    static class ClasspathExtension implements EmbeddedExtension {
+
+        String id;
+        String name;
+        String version;
+        String author;
+        int priority;
+        int startPriority;
+        ExtensionMain extensionMain;
+    }
+
+    /**
+     * Loads and instantiates the main class of an extension on its first start
+     */
+    @RequiredArgsConstructor
+    static final class LazyExtensionMain implements ExtensionMain {
+
+        private final ClassLoader classLoader;
+        private final String className;
+
+        private volatile ExtensionMain delegate;
+
+        @Override
+        public void extensionStart(@NotNull ExtensionStartInput extensionStartInput,
+                                   @NotNull ExtensionStartOutput extensionStartOutput) {
+            delegate().extensionStart(extensionStartInput, extensionStartOutput);
+        }
+
+        @Override
+        public void extensionStop(@NotNull ExtensionStopInput extensionStopInput,
+                                  @NotNull ExtensionStopOutput extensionStopOutput) {
+            if (this.delegate != null)
+                this.delegate.extensionStop(extensionStopInput, extensionStopOutput);
+        }
+
+        /**
+         * @return Whether the main class has been instantiated
+         */
+        boolean isLoaded() {
+            return this.delegate != null;
+        }
+
+        @SneakyThrows({ ReflectiveOperationException.class })
+        private synchronized ExtensionMain delegate() {
+            if (this.delegate == null) {
+                this.delegate = Class.forName(this.className, true, this.classLoader)
+                        .asSubclass(ExtensionMain.class)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            }
+            return this.delegate;
+        }
+    }
+}
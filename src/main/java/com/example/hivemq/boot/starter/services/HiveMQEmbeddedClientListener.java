@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.events.client.ClientLifecycleEventListener;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionStartInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import org.springframework.core.Ordered;
+
+/**
+ * A client listener gets notified about lifecycle events of every client connecting to embedded HiveMQ.
+ * As HiveMQ accepts only a single client lifecycle event listener provider per extension,
+ * all client listeners get combined into one provider by the {@link HiveMQEmbeddedExtensionsCollector}.
+ * Client listeners are notified in order, the lowest order comes first.
+ */
+public interface HiveMQEmbeddedClientListener extends ClientLifecycleEventListener, Ordered {
+
+    /**
+     * @return The client listener name, used for logging
+     */
+    default @NotNull String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return The client listener order, lowest comes first
+     */
+    @Override
+    default int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    default void onMqttConnectionStart(@NotNull ConnectionStartInput connectionStartInput) {}
+
+    @Override
+    default void onAuthenticationSuccessful(@NotNull AuthenticationSuccessfulInput authenticationSuccessfulInput) {}
+
+    @Override
+    default void onDisconnect(@NotNull DisconnectEventInput disconnectEventInput) {}
+}
@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Writes config.xml for HiveMQ. The file carries a fingerprint of the configuration it was rendered from,
+ * so it is only rewritten if the configuration changed. A config.xml rendered at build time by
+ * Spring AOT is used instead of rendering it at runtime, if its fingerprint matches.
+ * Thus, startup does not need to load the Jackson XML stack as long as the configuration is unchanged.
+ */
+@Slf4j
+public final class HiveMQEmbeddedConfigFile {
+
+    /**
+     * Name of the configuration file within the configuration folder
+     */
+    public static final String fileName = "config.xml";
+
+    /**
+     * Classpath location of the configuration file rendered at build time
+     */
+    public static final String prerenderedResource = "META-INF/hivemq/" + fileName;
+
+    private static final String fingerprintPrefix = "<!-- fingerprint: ";
+    private static final String fingerprintSuffix = " -->";
+    private static final int fingerprintLines = 3;
+
+    private HiveMQEmbeddedConfigFile() {}
+
+    /**
+     * Writes config.xml to the configuration folder, unless it already contains the given configuration
+     * @param config HiveMQ configuration
+     * @param classLoader Class loader to look up the configuration file rendered at build time
+     * @return Whether config.xml got written
+     */
+    @SneakyThrows({ IOException.class })
+    public static boolean write(HiveMQEmbeddedProperties.Config config, ClassLoader classLoader) {
+
+        final Path file = Path.of(config.getFolder(), fileName).toAbsolutePath();
+        final String fingerprint = fingerprint(config);
+
+        if (Files.isRegularFile(file) && readFingerprint(file).filter(fingerprint::equals).isPresent()) {
+            log.debug("Configuration unchanged, keeping '{}'.", file);
+            return false;
+        }
+
+        final String content = prerendered(classLoader)
+                .filter(prerendered -> prerendered.contains(fingerprintPrefix + fingerprint + fingerprintSuffix))
+                .orElseGet(() -> render(config));
+
+        // Write to a temporary file first, so HiveMQ never reads a partially written one
+        final Path temporary = Files.createTempFile(file.getParent(), fileName, ".tmp");
+        try {
+            Files.writeString(temporary, content, StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        log.debug("Wrote configuration to '{}'.", file);
+        return true;
+    }
+
+    /**
+     * Renders config.xml, including the fingerprint of the configuration
+     * @param config HiveMQ configuration
+     * @return The content of config.xml
+     */
+    @SneakyThrows({ IOException.class })
+    public static String render(HiveMQEmbeddedProperties.Config config) {
+
+        final String xml = XmlMapper.xmlBuilder()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .enable(ToXmlGenerator.Feature.WRITE_XML_DECLARATION)
+                .build()
+                .writeValueAsString(config);
+
+        // The fingerprint follows the xml declaration, which has to come first
+        final int declarationEnd = xml.indexOf("?>") + 2;
+        return xml.substring(0, declarationEnd)
+                + System.lineSeparator() + fingerprintPrefix + fingerprint(config) + fingerprintSuffix
+                + xml.substring(declarationEnd);
+    }
+
+    /**
+     * The fingerprint is derived from the string representation of the configuration,
+     * which covers all its values without rendering xml
+     * @param config HiveMQ configuration
+     * @return The fingerprint of the configuration
+     */
+    public static String fingerprint(HiveMQEmbeddedProperties.Config config) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(config.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 is not supported.", nsae);
+        }
+    }
+
+    private static Optional<String> readFingerprint(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < fingerprintLines; i++) {
+                final String line = reader.readLine();
+                if (line == null)
+                    break;
+
+                final String stripped = line.strip();
+                if (stripped.startsWith(fingerprintPrefix) && stripped.endsWith(fingerprintSuffix))
+                    return Optional.of(stripped.substring(fingerprintPrefix.length(), stripped.length() - fingerprintSuffix.length()));
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<String> prerendered(ClassLoader classLoader) throws IOException {
+        try (InputStream in = classLoader.getResourceAsStream(prerenderedResource)) {
+            return in != null
+                    ? Optional.of(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                    : Optional.empty();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.example.hivemq.boot.starter.services;
 
 import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.jfr.ExtensionPhaseEvent;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
@@ -24,7 +25,23 @@ import com.hivemq.embedded.EmbeddedExtension;
 import com.hivemq.extension.sdk.api.ExtensionMain;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.auth.PublishAuthorizer;
+import com.hivemq.extension.sdk.api.auth.SubscriptionAuthorizer;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerOutput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerOutput;
+import com.hivemq.extension.sdk.api.events.client.ClientLifecycleEventListener;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ClientInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionLostInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionStartInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ServerInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
 import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.parameter.ClientBasedInput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
@@ -32,7 +49,10 @@ import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
 import com.hivemq.extension.sdk.api.services.Services;
 import com.hivemq.extension.sdk.api.services.admin.LifecycleStage;
 import com.hivemq.extension.sdk.api.services.builder.Builders;
+import com.hivemq.extension.sdk.api.services.intializer.ClientInitializer;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.Value;
@@ -41,10 +61,18 @@ import org.springframework.boot.info.BuildProperties;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Collects wrapped embedded extensions.
@@ -69,43 +97,199 @@ public class HiveMQEmbeddedExtensionsCollector implements ExtensionMain {
 
     List<HiveMQEmbeddedExtensionWrapper> extensions;
 
+    @JsonIgnore
+    List<HiveMQEmbeddedStage> stages;
+
+    @JsonIgnore
+    List<HiveMQEmbeddedClientListener> clientListeners;
+
+    @JsonIgnore
+    List<HiveMQEmbeddedAuthorizer> authorizers;
+
+    /**
+     * Registrations of collected extensions replaced by others, as found on their last start
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    List<String> conflicts = new CopyOnWriteArrayList<>();
+
     @Override
     public void extensionStart(@NotNull ExtensionStartInput extensionStartInput,
                                @NotNull ExtensionStartOutput extensionStartOutput) {
 
-        this.extensions.forEach(extension -> {
-            try {
-                extension.getExtensionMain().extensionStart(extensionStartInput, extensionStartOutput);
-                extension.setStatus(Status.started);
+        startExtensions(extensionStartInput, extensionStartOutput);
 
-                log.info("Embedded extension '{}' version {} started successfully.", extension.getName(), extension.getVersion());
-            } catch (Throwable th) {
-                log.error("Embedded extension '{}' failed during startup.", extension.getName(), th);
-                extension.setStatus(Status.failed);
-            }
-        });
+        // Combine all stages into a single client initializer ...
+        if (!this.stages.isEmpty()) {
+            Services.initializerRegistry().setClientInitializer(clientInitializer());
 
-        // Additional publish info if required ...
-        if (this.publishInfo.isPublish()) {
-            publishInfo();
+            log.info("Registered client initializer for stages {}.",
+                    this.stages.stream().map(HiveMQEmbeddedStage::getName).toList());
+
+            final ConnectInboundInterceptor connectInterceptor = connectInboundInterceptor();
+            if (connectInterceptor != null)
+                Services.interceptorRegistry().setConnectInboundInterceptorProvider(input -> connectInterceptor);
+        }
+
+        // ... and all client listeners into a single lifecycle event listener
+        if (!this.clientListeners.isEmpty()) {
+            final ClientLifecycleEventListener listener = clientLifecycleEventListener();
+            Services.eventRegistry().setClientLifecycleEventListener(input -> listener);
+
+            log.info("Registered client lifecycle event listener for client listeners {}.",
+                    this.clientListeners.stream().map(HiveMQEmbeddedClientListener::getName).toList());
         }
+
+        // ... and all authorizers into a single authorizer
+        if (!this.authorizers.isEmpty()) {
+            final Authorizers authorizer = authorizer();
+            Services.securityRegistry().setAuthorizerProvider(input -> authorizer);
+
+            log.info("Registered authorizer provider for authorizers {}.",
+                    this.authorizers.stream().map(HiveMQEmbeddedAuthorizer::getName).toList());
+        }
+
+        publishInfoIfRequired();
     }
 
     @Override
     public void extensionStop(@NotNull ExtensionStopInput extensionStopInput,
                               @NotNull ExtensionStopOutput extensionStopOutput) {
+        stopExtensions(extensionStopInput, extensionStopOutput);
+    }
+
+    void startExtensions(ExtensionStartInput extensionStartInput, ExtensionStartOutput extensionStartOutput) {
+
+        final Map<String, List<String>> registrants = new LinkedHashMap<>();
+        try (ExtensionRegistrations registrations = ExtensionRegistrations.record()) {
+            this.extensions.forEach(extension -> {
+                final ExtensionPhaseEvent event = ExtensionPhaseEvent.of(extension, ExtensionPhaseEvent.start);
+                event.begin();
+                try {
+                    extension.getExtensionMain().extensionStart(extensionStartInput, extensionStartOutput);
+                    extension.setStatus(Status.started);
+                    event.succeeded();
+
+                    log.info("Embedded extension '{}' version {} started successfully.", extension.getName(), extension.getVersion());
+                } catch (Throwable th) {
+                    log.error("Embedded extension '{}' failed during startup.", extension.getName(), th);
+                    extension.setStatus(Status.failed);
+                } finally {
+                    event.commit();
+                    registrations.take().forEach(registration ->
+                            registrants.computeIfAbsent(registration, ignored -> new ArrayList<>()).add(extension.getName()));
+                }
+            });
+        }
+
+        reportConflicts(registrants);
+    }
+
+    /**
+     * Logs registrations of collected extensions, which get replaced by the ones of the collector or of
+     * other collected extensions started later
+     * @param registrants Names of the extensions by registration, in start order
+     */
+    private void reportConflicts(Map<String, List<String>> registrants) {
+
+        final Set<String> own = new HashSet<>();
+        if (!this.stages.isEmpty()) {
+            own.add(ExtensionRegistrations.clientInitializer);
+            if (connectInboundInterceptor() != null)
+                own.add(ExtensionRegistrations.connectInboundInterceptorProvider);
+        }
+        if (!this.clientListeners.isEmpty())
+            own.add(ExtensionRegistrations.clientLifecycleEventListener);
+        if (!this.authorizers.isEmpty())
+            own.add(ExtensionRegistrations.authorizerProvider);
+
+        this.conflicts.clear();
+        registrants.forEach((registration, names) -> {
+            if (own.contains(registration)) {
+                this.conflicts.add(registration);
+                log.error("Embedded extensions {} registered a {}, which gets replaced by the one of the extensions collector. "
+                        + "Contribute a stage, client listener or authorizer bean instead.", names, registration);
+            } else if (names.size() > 1) {
+                this.conflicts.add(registration);
+                log.error("Embedded extensions {} all registered a {}, only the one of '{}' is in effect. "
+                        + "Collected extensions share a single HiveMQ extension, enable only one of them.",
+                        names, registration, names.getLast());
+            }
+        });
+    }
+
+    void stopExtensions(ExtensionStopInput extensionStopInput, ExtensionStopOutput extensionStopOutput) {
 
         this.extensions.forEach(extension -> {
+            final ExtensionPhaseEvent event = ExtensionPhaseEvent.of(extension, ExtensionPhaseEvent.stop);
+            event.begin();
             try {
                 extension.getExtensionMain().extensionStop(extensionStopInput, extensionStopOutput);
+                event.succeeded();
 
                 log.info("Embedded extension '{}' version {} stopped successfully.", extension.getName(), extension.getVersion());
             } catch (Throwable th) {
                 log.error("Embedded extension '{}' failed during shutdown.", extension.getName(), th);
+            } finally {
+                event.commit();
             }
         });
     }
 
+    /**
+     * @return Client initializer combining all stages
+     */
+    ClientInitializer clientInitializer() {
+        return (initializerInput, clientContext) ->
+                this.stages.forEach(stage -> {
+                    try {
+                        stage.initialize(initializerInput, clientContext);
+                    } catch (Throwable th) {
+                        log.error("Stage '{}' failed to initialize client '{}'.",
+                                stage.getName(), initializerInput.getClientInformation().getClientId(), th);
+                    }
+                });
+    }
+
+    /**
+     * @return Connect inbound interceptor combining those of all stages, or null if no stage intercepts connects
+     */
+    @Nullable ConnectInboundInterceptor connectInboundInterceptor() {
+        final List<HiveMQEmbeddedStage> intercepting = this.stages.stream()
+                .filter(stage -> stage.getConnectInboundInterceptor() != null)
+                .toList();
+
+        return intercepting.isEmpty() ? null : (connectInboundInput, connectInboundOutput) ->
+                intercepting.forEach(stage -> {
+                    try {
+                        stage.getConnectInboundInterceptor().onConnect(connectInboundInput, connectInboundOutput);
+                    } catch (Throwable th) {
+                        log.error("Stage '{}' failed to intercept connect of client '{}'.",
+                                stage.getName(), connectInboundInput.getClientInformation().getClientId(), th);
+                    }
+                });
+    }
+
+    /**
+     * @return Client lifecycle event listener combining all client listeners
+     */
+    ClientLifecycleEventListener clientLifecycleEventListener() {
+        return new ClientListeners(this.clientListeners);
+    }
+
+    /**
+     * @return Authorizer combining all authorizers
+     */
+    Authorizers authorizer() {
+        return new Authorizers(this.authorizers);
+    }
+
+    void publishInfoIfRequired() {
+        if (this.publishInfo.isPublish()) {
+            publishInfo();
+        }
+    }
+
     private void publishInfo() {
 
         // Await startup completion and then start everything ...
@@ -180,6 +364,108 @@ public class HiveMQEmbeddedExtensionsCollector implements ExtensionMain {
         return mapper.writeValueAsString(value);
     }
 
+    /**
+     * Notifies all client listeners in order, isolating them from failures of each other
+     */
+    @RequiredArgsConstructor
+    private static final class ClientListeners implements ClientLifecycleEventListener {
+
+        private final List<HiveMQEmbeddedClientListener> listeners;
+
+        @Override
+        public void onMqttConnectionStart(@NotNull ConnectionStartInput connectionStartInput) {
+            dispatch(connectionStartInput, listener -> listener.onMqttConnectionStart(connectionStartInput));
+        }
+
+        @Override
+        public void onAuthenticationSuccessful(@NotNull AuthenticationSuccessfulInput authenticationSuccessfulInput) {
+            dispatch(authenticationSuccessfulInput, listener -> listener.onAuthenticationSuccessful(authenticationSuccessfulInput));
+        }
+
+        @Override
+        public void onDisconnect(@NotNull DisconnectEventInput disconnectEventInput) {
+            dispatch(disconnectEventInput, listener -> listener.onDisconnect(disconnectEventInput));
+        }
+
+        @Override
+        public void onAuthenticationFailedDisconnect(@NotNull AuthenticationFailedInput authenticationFailedInput) {
+            dispatch(authenticationFailedInput, listener -> listener.onAuthenticationFailedDisconnect(authenticationFailedInput));
+        }
+
+        @Override
+        public void onConnectionLost(@NotNull ConnectionLostInput connectionLostInput) {
+            dispatch(connectionLostInput, listener -> listener.onConnectionLost(connectionLostInput));
+        }
+
+        @Override
+        public void onClientInitiatedDisconnect(@NotNull ClientInitiatedDisconnectInput clientInitiatedDisconnectInput) {
+            dispatch(clientInitiatedDisconnectInput, listener -> listener.onClientInitiatedDisconnect(clientInitiatedDisconnectInput));
+        }
+
+        @Override
+        public void onServerInitiatedDisconnect(@NotNull ServerInitiatedDisconnectInput serverInitiatedDisconnectInput) {
+            dispatch(serverInitiatedDisconnectInput, listener -> listener.onServerInitiatedDisconnect(serverInitiatedDisconnectInput));
+        }
+
+        private void dispatch(ClientBasedInput input, Consumer<HiveMQEmbeddedClientListener> event) {
+            this.listeners.forEach(listener -> {
+                try {
+                    event.accept(listener);
+                } catch (Throwable th) {
+                    log.error("Client listener '{}' failed for client '{}'.",
+                            listener.getName(), input.getClientInformation().getClientId(), th);
+                }
+            });
+        }
+    }
+
+    /**
+     * Asks all authorizers in order until one decides, denying if an authorizer fails
+     */
+    @RequiredArgsConstructor
+    static final class Authorizers implements PublishAuthorizer, SubscriptionAuthorizer {
+
+        private final List<HiveMQEmbeddedAuthorizer> authorizers;
+
+        @Override
+        public void authorizePublish(@NotNull PublishAuthorizerInput publishAuthorizerInput,
+                                     @NotNull PublishAuthorizerOutput publishAuthorizerOutput) {
+
+            switch (decide(publishAuthorizerInput, authorizer -> authorizer.authorizePublish(publishAuthorizerInput))) {
+                case allow -> publishAuthorizerOutput.authorizeSuccessfully();
+                case deny -> publishAuthorizerOutput.failAuthorization();
+                case next -> publishAuthorizerOutput.nextExtensionOrDefault();
+            }
+        }
+
+        @Override
+        public void authorizeSubscribe(@NotNull SubscriptionAuthorizerInput subscriptionAuthorizerInput,
+                                       @NotNull SubscriptionAuthorizerOutput subscriptionAuthorizerOutput) {
+
+            switch (decide(subscriptionAuthorizerInput, authorizer -> authorizer.authorizeSubscription(subscriptionAuthorizerInput))) {
+                case allow -> subscriptionAuthorizerOutput.authorizeSuccessfully();
+                case deny -> subscriptionAuthorizerOutput.failAuthorization();
+                case next -> subscriptionAuthorizerOutput.nextExtensionOrDefault();
+            }
+        }
+
+        private HiveMQEmbeddedAuthorizer.Decision decide(ClientBasedInput input,
+                                                         Function<HiveMQEmbeddedAuthorizer, HiveMQEmbeddedAuthorizer.Decision> decision) {
+            for (HiveMQEmbeddedAuthorizer authorizer : this.authorizers) {
+                try {
+                    final HiveMQEmbeddedAuthorizer.Decision decided = decision.apply(authorizer);
+                    if (decided != HiveMQEmbeddedAuthorizer.Decision.next)
+                        return decided;
+                } catch (Throwable th) {
+                    log.error("Authorizer '{}' failed for client '{}', denying.",
+                            authorizer.getName(), input.getClientInformation().getClientId(), th);
+                    return HiveMQEmbeddedAuthorizer.Decision.deny;
+                }
+            }
+            return HiveMQEmbeddedAuthorizer.Decision.next;
+        }
+    }
+
     public enum Status {
         loaded, started, failed
     }
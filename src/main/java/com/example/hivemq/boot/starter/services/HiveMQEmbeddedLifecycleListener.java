@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+/**
+ * Listener for startup and shutdown of embedded HiveMQ.
+ * Beans of this type get notified by the {@link HiveMQEmbeddedService}.
+ */
+public interface HiveMQEmbeddedLifecycleListener {
+
+    /**
+     * Called after the embedded mqtt-broker started successfully
+     */
+    default void onStarted() {}
+
+    /**
+     * Called before the embedded mqtt-broker gets stopped
+     */
+    default void onStopping() {}
+}
@@ -16,11 +16,12 @@
 package com.example.hivemq.boot.starter.services;
 
 import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import com.example.hivemq.boot.starter.services.jfr.BrokerPhaseEvent;
+import com.example.hivemq.boot.starter.services.jfr.HiveMQEmbeddedEvents;
 import com.hivemq.embedded.EmbeddedExtension;
 import com.hivemq.embedded.EmbeddedHiveMQ;
+import com.hivemq.embedded.EmbeddedHiveMQBuilder;
+import com.hivemq.extension.sdk.api.ExtensionMain;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.*;
@@ -29,6 +30,8 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * Encapsulates HiveMQ-CE embedded broker
@@ -36,8 +39,27 @@ import java.nio.file.Path;
 @Slf4j
 public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
 
-    private final EmbeddedHiveMQ embeddedHiveMQ;
+    private static final int startAttempts = 3;
+
+    private final HiveMQEmbeddedProperties properties;
+    private final Function<ExtensionMain, EmbeddedExtension> embedded;
     private final boolean autoStart;
+    private final boolean keepAlive;
+    private final HiveMQEmbeddedExtensionsCollector extensionsCollector;
+    private final List<HiveMQEmbeddedLifecycleListener> listeners;
+
+    /**
+     * The HiveMQ configuration written to config.xml, with ephemeral ports resolved
+     */
+    @Getter
+    private volatile HiveMQEmbeddedProperties.Config config;
+
+    /**
+     * The HiveMQ configuration as configured, with ephemeral ports unresolved
+     */
+    private volatile HiveMQEmbeddedProperties.Config requested;
+
+    private EmbeddedHiveMQ embeddedHiveMQ;
 
     @Getter
     private volatile boolean running = false;
@@ -47,18 +69,17 @@ public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
      * @param properties Configuration properties
      */
     public HiveMQEmbeddedService(final HiveMQEmbeddedProperties properties) {
+        this(properties, List.of());
+    }
 
-        prepareEnvironment(properties);
-
-        this.embeddedHiveMQ =
-                EmbeddedHiveMQ.builder()
-                        .withConfigurationFolder(Path.of(properties.getConfig().getFolder()).toAbsolutePath())
-                        .withDataFolder(Path.of(properties.getData().getFolder()).toAbsolutePath())
-                        .withExtensionsFolder(Path.of(properties.getExtensions().getFolder()).toAbsolutePath())
-                        .withoutLoggingBootstrap()
-                        .build();
-
-        this.autoStart = properties.isAutoStart();
+    /**
+     * Creates an embedded mqtt-broker without embedded extensions
+     * @param properties Configuration properties
+     * @param listeners Listeners to notify on startup and shutdown
+     */
+    public HiveMQEmbeddedService(final HiveMQEmbeddedProperties properties,
+                                 final List<HiveMQEmbeddedLifecycleListener> listeners) {
+        this(properties, null, listeners, ignored -> null);
     }
 
     /**
@@ -68,35 +89,123 @@ public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
      */
     public HiveMQEmbeddedService(final HiveMQEmbeddedProperties properties,
                                  final HiveMQEmbeddedExtensionsCollector extensionsCollector) {
+        this(properties, extensionsCollector, List.of());
+    }
+
+    /**
+     * Creates an embedded mqtt-broker with embedded extensions
+     * @param properties Configuration properties
+     * @param extensionsCollector Collection of embedded extensions
+     * @param listeners Listeners to notify on startup and shutdown
+     */
+    public HiveMQEmbeddedService(final HiveMQEmbeddedProperties properties,
+                                 final HiveMQEmbeddedExtensionsCollector extensionsCollector,
+                                 final List<HiveMQEmbeddedLifecycleListener> listeners) {
+        this(properties, extensionsCollector, listeners, extensionMain ->
+                EmbeddedExtension.builder()
+                        .withId(extensionsCollector.getId())
+                        .withName(extensionsCollector.getName())
+                        .withAuthor(extensionsCollector.getAuthor())
+                        .withVersion(extensionsCollector.getVersion())
+                        .withPriority(extensionsCollector.getPriority())
+                        .withStartPriority(extensionsCollector.getStartPriority())
+                        .withExtensionMain(extensionMain)
+                        .build());
+    }
+
+    private HiveMQEmbeddedService(final HiveMQEmbeddedProperties properties,
+                                  final HiveMQEmbeddedExtensionsCollector extensionsCollector,
+                                  final List<HiveMQEmbeddedLifecycleListener> listeners,
+                                  final Function<ExtensionMain, EmbeddedExtension> embedded) {
+
+        this.properties = properties;
+        this.embedded = embedded;
+        this.autoStart = properties.isAutoStart();
+        this.keepAlive = properties.getDevtools().isKeepAlive();
+        this.extensionsCollector = extensionsCollector;
+        this.listeners = listeners;
+
+        this.requested = properties.getConfig();
+
+        if (this.keepAlive) {
+            retain();
+        } else {
+            this.config = ListenerPorts.resolve(this.requested);
+            prepareEnvironment(properties, this.config);
+            this.embeddedHiveMQ = build(properties, this.config, embedded.apply(extensionsCollector));
+        }
+    }
+
+    /**
+     * Obtains the retained broker, the retained broker embeds a stable extension, the collector gets attached on startup
+     */
+    private void retain() {
+        final RetainedHiveMQ.Retained retained = RetainedHiveMQ.obtain(configurationKey(this.properties), extensionMain -> {
+            final HiveMQEmbeddedProperties.Config resolved = ListenerPorts.resolve(this.requested);
+            prepareEnvironment(this.properties, resolved);
+            return new RetainedHiveMQ.Retained(resolved, build(this.properties, resolved, this.embedded.apply(extensionMain)));
+        });
+
+        this.config = retained.config();
+        this.embeddedHiveMQ = retained.hiveMQ();
+    }
+
+    /**
+     * Replaces the broker by a new one, with ephemeral ports resolved again
+     */
+    private void rebuild() {
+
+        if (this.keepAlive) {
+            RetainedHiveMQ.release();
+            retain();
+            return;
+        }
+
+        try {
+            this.embeddedHiveMQ.close();
+        } catch (Exception ex) {
+            log.warn("Failed to close HiveMQ.", ex);
+        }
+
+        this.config = ListenerPorts.resolve(this.requested);
+        prepareEnvironment(this.properties, this.config);
+        this.embeddedHiveMQ = build(this.properties, this.config, this.embedded.apply(this.extensionsCollector));
+    }
 
-        prepareEnvironment(properties);
+    private static EmbeddedHiveMQ build(HiveMQEmbeddedProperties properties, HiveMQEmbeddedProperties.Config config,
+                                        EmbeddedExtension extension) {
 
-        this.embeddedHiveMQ =
+        final EmbeddedHiveMQBuilder builder =
                 EmbeddedHiveMQ.builder()
-                        .withConfigurationFolder(Path.of(properties.getConfig().getFolder()).toAbsolutePath())
+                        .withConfigurationFolder(Path.of(config.getFolder()).toAbsolutePath())
                         .withDataFolder(Path.of(properties.getData().getFolder()).toAbsolutePath())
-                        .withExtensionsFolder(Path.of(properties.getExtensions().getFolder()).toAbsolutePath())
-                        .withEmbeddedExtension(
-                                EmbeddedExtension.builder()
-                                        .withId(extensionsCollector.getId())
-                                        .withName(extensionsCollector.getName())
-                                        .withAuthor(extensionsCollector.getAuthor())
-                                        .withVersion(extensionsCollector.getVersion())
-                                        .withPriority(extensionsCollector.getPriority())
-                                        .withStartPriority(extensionsCollector.getStartPriority())
-                                        .withExtensionMain(extensionsCollector)
-                                        .build())
-                        .withoutLoggingBootstrap()
-                        .build();
+                        .withExtensionsFolder(Path.of(properties.getExtensions().getFolder()).toAbsolutePath());
 
-        this.autoStart = properties.isAutoStart();
+        if (extension != null)
+            builder.withEmbeddedExtension(extension);
+
+        return builder
+                .withoutLoggingBootstrap()
+                .build();
+    }
+
+    private static String configurationKey(HiveMQEmbeddedProperties properties) {
+        return String.join("|",
+                Path.of(properties.getConfig().getFolder()).toAbsolutePath().toString(),
+                Path.of(properties.getData().getFolder()).toAbsolutePath().toString(),
+                Path.of(properties.getExtensions().getFolder()).toAbsolutePath().toString(),
+                HiveMQEmbeddedConfigFile.fingerprint(properties.getConfig()));
     }
 
     @SneakyThrows({ IOException.class })
-    private void prepareEnvironment(HiveMQEmbeddedProperties properties) {
+    private void prepareEnvironment(HiveMQEmbeddedProperties properties, HiveMQEmbeddedProperties.Config config) {
 
-        if (!Files.isDirectory(Path.of(properties.getConfig().getFolder()).toAbsolutePath())) {
-            Files.createDirectories(Path.of(properties.getConfig().getFolder()).toAbsolutePath());
+        if (properties.getJfr().isEnabled()) {
+            HiveMQEmbeddedEvents.register();
+        }
+
+        if (!Files.isDirectory(Path.of(config.getFolder()).toAbsolutePath())) {
+            Files.createDirectories(Path.of(config.getFolder()).toAbsolutePath());
         }
 
         if (!Files.isDirectory(Path.of(properties.getData().getFolder()).toAbsolutePath())) {
@@ -107,16 +216,7 @@ public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
             Files.createDirectories(Path.of(properties.getExtensions().getFolder()).toAbsolutePath());
         }
 
-        if (Files.isRegularFile(Path.of(properties.getConfig().getFolder(), "config.xml")))
-            Files.delete(Path.of(properties.getConfig().getFolder(), "config.xml"));
-
-        XmlMapper.xmlBuilder()
-                .enable(SerializationFeature.INDENT_OUTPUT)
-                .enable(ToXmlGenerator.Feature.WRITE_XML_DECLARATION)
-                .build()
-                .writeValue(
-                        Files.createFile(Path.of(properties.getConfig().getFolder(), "config.xml").toAbsolutePath()).toFile(),
-                        properties.getConfig());
+        HiveMQEmbeddedConfigFile.write(config, HiveMQEmbeddedService.class.getClassLoader());
     }
 
     @PostConstruct
@@ -131,11 +231,45 @@ public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
     @Synchronized
     @Override
     public void startup() {
+        final BrokerPhaseEvent event = new BrokerPhaseEvent(BrokerPhaseEvent.start);
+        event.begin();
         try{
-            this.embeddedHiveMQ.start().join();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    start();
+                    break;
+                } catch (RuntimeException rte) {
+                    // Another process may have bound a free port picked for an ephemeral listener in the meantime
+                    if (attempt >= startAttempts || !ListenerPorts.hasEphemeral(this.requested))
+                        throw rte;
+
+                    log.warn("Failed to start HiveMQ, retrying with other free ports.", rte.getCause());
+                    rebuild();
+                }
+            }
             this.running = true;
+            event.succeeded();
         } catch (RuntimeException rte) {
             log.error("Failed to start HiveMQ.", rte.getCause());
+            return;
+        } finally {
+            event.commit();
+        }
+
+        this.listeners.forEach(listener -> {
+            try {
+                listener.onStarted();
+            } catch (RuntimeException rte) {
+                log.error("Lifecycle listener failed after startup of HiveMQ.", rte);
+            }
+        });
+    }
+
+    private void start() {
+        if (this.keepAlive) {
+            RetainedHiveMQ.start(this.extensionsCollector);
+        } else {
+            this.embeddedHiveMQ.start().join();
         }
     }
 
@@ -146,11 +280,54 @@ public final class HiveMQEmbeddedService implements HiveMQEmbeddedStarter {
     @Synchronized
     @Override
     public void shutdown() {
+        if (this.running) {
+            this.listeners.forEach(listener -> {
+                try {
+                    listener.onStopping();
+                } catch (RuntimeException rte) {
+                    log.error("Lifecycle listener failed before shutdown of HiveMQ.", rte);
+                }
+            });
+        }
+
+        // A retained broker keeps running, only the extensions of this context get detached
+        if (this.keepAlive) {
+            RetainedHiveMQ.detach();
+            this.running = false;
+            return;
+        }
+
+        final BrokerPhaseEvent event = new BrokerPhaseEvent(BrokerPhaseEvent.stop);
+        event.begin();
         try {
             this.embeddedHiveMQ.stop().join();
             this.running = false;
+            event.succeeded();
         } catch (RuntimeException rte) {
             log.error("Failed to shutdown HiveMQ.", rte.getCause());
+        } finally {
+            event.commit();
         }
     }
+
+    /**
+     * Restarts the embedded mqtt-broker with another HiveMQ configuration.
+     * All clients get disconnected, so this is only meant for changes HiveMQ cannot apply while running.
+     * @param config HiveMQ configuration to restart with
+     */
+    @Synchronized
+    public void restart(HiveMQEmbeddedProperties.Config config) {
+
+        if (this.keepAlive)
+            throw new IllegalStateException("HiveMQ kept alive across context restarts cannot be reconfigured.");
+
+        final boolean wasRunning = this.running;
+        shutdown();
+
+        this.requested = config;
+        rebuild();
+
+        if (wasRunning)
+            startup();
+    }
 }
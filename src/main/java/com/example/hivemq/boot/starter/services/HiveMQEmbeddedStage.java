@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
+import com.hivemq.extension.sdk.api.services.intializer.ClientInitializer;
+import org.springframework.core.Ordered;
+
+/**
+ * A stage contributes interceptors to every client connecting to embedded HiveMQ.
+ * As HiveMQ accepts only a single client initializer per extension,
+ * all stages get combined into one initializer by the {@link HiveMQEmbeddedExtensionsCollector}.
+ * Stages are initialized in order, the lowest order comes first.
+ * Stages may add publish inbound and outbound, subscribe inbound, unsubscribe inbound, puback inbound
+ * and pubcomp inbound interceptors, which are the ones removed from connected clients when extensions
+ * get detached from a retained broker.
+ * Additionally, a stage may intercept the CONNECT packet of every client, before it gets initialized.
+ */
+public interface HiveMQEmbeddedStage extends ClientInitializer, Ordered {
+
+    /**
+     * @return The stage name, used for logging
+     */
+    default @NotNull String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return The stage order, lowest comes first
+     */
+    @Override
+    default int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    /**
+     * @return Interceptor for the CONNECT packet of every client, or null if not required
+     */
+    default @Nullable ConnectInboundInterceptor getConnectInboundInterceptor() {
+        return null;
+    }
+}
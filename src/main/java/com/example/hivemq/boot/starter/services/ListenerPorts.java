@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Resolves ephemeral listener ports, as HiveMQ does not expose the ports it actually bound.
+ * A free port is picked by binding and releasing it right before HiveMQ binds it again.
+ * As another process may bind it in between, startup gets retried with other free ports.
+ */
+final class ListenerPorts {
+
+    private ListenerPorts() {}
+
+    /**
+     * @param config HiveMQ configuration
+     * @return The configuration with all tcp listener ports of 0 replaced by free ports
+     */
+    static HiveMQEmbeddedProperties.Config resolve(HiveMQEmbeddedProperties.Config config) {
+
+        final HiveMQEmbeddedProperties.Listeners listeners = config.getListeners();
+        if (listeners == null)
+            return config;
+
+        final List<HiveMQEmbeddedProperties.TcpListener> tcpListeners = Optional.ofNullable(listeners.getTcpListeners())
+                .map(list -> list.stream()
+                        .map(listener -> isEphemeral(listener.getPort())
+                                ? new HiveMQEmbeddedProperties.TcpListener(listener.getName(), listener.getBindAddress(),
+                                        freePort(listener.getBindAddress()))
+                                : listener)
+                        .toList())
+                .orElse(null);
+
+        final List<HiveMQEmbeddedProperties.SecureTcpListener> tlsTcpListeners = Optional.ofNullable(listeners.getTlsTcpListeners())
+                .map(list -> list.stream()
+                        .map(listener -> isEphemeral(listener.getPort())
+                                ? new HiveMQEmbeddedProperties.SecureTcpListener(listener.getName(), listener.getBindAddress(),
+                                        freePort(listener.getBindAddress()), listener.getTls())
+                                : listener)
+                        .toList())
+                .orElse(null);
+
+        return new HiveMQEmbeddedProperties.Config(config.getFolder(),
+                new HiveMQEmbeddedProperties.Listeners(tcpListeners, tlsTcpListeners,
+                        listeners.getWebsocketListeners(), listeners.getTlsWebsocketListeners()),
+                config.getMqtt(), config.getSecurity(), config.getPersistence());
+    }
+
+    /**
+     * @param config HiveMQ configuration
+     * @return Whether any tcp listener port is 0, so it gets resolved to another free port every time
+     */
+    static boolean hasEphemeral(HiveMQEmbeddedProperties.Config config) {
+
+        final HiveMQEmbeddedProperties.Listeners listeners = config.getListeners();
+        if (listeners == null)
+            return false;
+
+        return Optional.ofNullable(listeners.getTcpListeners()).orElse(List.of()).stream()
+                        .anyMatch(listener -> isEphemeral(listener.getPort()))
+                || Optional.ofNullable(listeners.getTlsTcpListeners()).orElse(List.of()).stream()
+                        .anyMatch(listener -> isEphemeral(listener.getPort()));
+    }
+
+    private static boolean isEphemeral(Integer port) {
+        return port != null && port == 0;
+    }
+
+    @SneakyThrows({ IOException.class })
+    private static int freePort(String bindAddress) {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(bindAddress))) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import com.hivemq.extension.sdk.api.ExtensionMain;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.PublishAuthorizer;
+import com.hivemq.extension.sdk.api.auth.SubscriptionAuthorizer;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerOutput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerOutput;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.events.client.ClientLifecycleEventListener;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ClientInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionLostInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionStartInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ServerInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
+import com.hivemq.extension.sdk.api.parameter.ExtensionInformation;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
+import com.hivemq.extension.sdk.api.parameter.ServerInformation;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.intializer.ClientInitializer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps embedded HiveMQ running across application context restarts, e.g. by Spring Boot DevTools.
+ * The state is static, so it survives as long as this class lives in a restart-stable class loader.
+ * <p>
+ * HiveMQ only knows a stable embedded extension, which forwards to the extensions collector currently attached.
+ * On detach, the collected extensions get stopped and all interceptors of the types stages may add get removed
+ * from connected clients; on attach, the extensions get started and connected clients get initialized again.
+ * Authorization and connect interception are forwarded to the collector currently attached.
+ * The broker itself gets stopped when the JVM exits or an incompatible configuration shows up.
+ */
+@Slf4j
+final class RetainedHiveMQ {
+
+    private static final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private static String key;
+    private static HiveMQEmbeddedProperties.Config config;
+    private static EmbeddedHiveMQ hiveMQ;
+    private static Thread shutdownHook;
+    private static boolean started;
+
+    private static ExtensionStartInput startInput;
+    private static ExtensionStartOutput startOutput;
+    private static volatile Attachment attachment;
+
+    private RetainedHiveMQ() {}
+
+    /**
+     * Reuses the retained broker if it was created with the same configuration, otherwise replaces it
+     * @param key Identifies the configuration of the broker
+     * @param factory Creates a new broker, given the stable extension to embed, and its resolved configuration
+     * @return The retained broker
+     */
+    static synchronized Retained obtain(@NotNull String key,
+                                       @NotNull Function<ExtensionMain, Retained> factory) {
+
+        if (hiveMQ != null && key.equals(RetainedHiveMQ.key)) {
+            log.info("Reusing retained HiveMQ.");
+            return new Retained(config, hiveMQ);
+        }
+
+        release();
+
+        final Retained retained = factory.apply(new StableExtension());
+        RetainedHiveMQ.key = key;
+        RetainedHiveMQ.config = retained.config();
+        RetainedHiveMQ.hiveMQ = retained.hiveMQ();
+
+        shutdownHook = Thread.ofPlatform().name("hivemq-retained-shutdown").unstarted(RetainedHiveMQ::release);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        return retained;
+    }
+
+    /**
+     * Starts the retained broker, if not yet running, and attaches an extensions collector
+     * @param extensionsCollector The collector to attach, may be null
+     */
+    static synchronized void start(HiveMQEmbeddedExtensionsCollector extensionsCollector) {
+
+        if (!started) {
+            attachment = Attachment.of(extensionsCollector);
+            hiveMQ.start().join();
+            started = true;
+        } else if (extensionsCollector != null) {
+            attach(extensionsCollector);
+        }
+    }
+
+    /**
+     * Detaches the current extensions collector, but keeps the broker running
+     */
+    static synchronized void detach() {
+
+        final Attachment detached = attachment;
+        attachment = null;
+
+        if (detached == null || startInput == null)
+            return;
+
+        detached.collector().stopExtensions(new DetachInput(startInput), new DetachOutput());
+        clients.values().forEach(client -> removeInterceptors(client.context()));
+
+        log.info("Detached extensions collector from retained HiveMQ.");
+    }
+
+    private static void attach(HiveMQEmbeddedExtensionsCollector extensionsCollector) {
+
+        final Attachment attached = Attachment.of(extensionsCollector);
+        attachment = attached;
+        if (startInput == null)
+            return;
+
+        extensionsCollector.startExtensions(startInput, startOutput);
+        clients.values().forEach(client -> attached.initializer().initialize(client.input(), client.context()));
+        extensionsCollector.publishInfoIfRequired();
+
+        log.info("Attached extensions collector to retained HiveMQ, reinitialized {} connected clients.", clients.size());
+    }
+
+    /**
+     * Stops the retained broker, if any
+     */
+    static synchronized void release() {
+
+        if (hiveMQ == null)
+            return;
+
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+
+        try {
+            hiveMQ.stop().join();
+            hiveMQ.close();
+        } catch (Exception ex) {
+            log.warn("Failed to stop retained HiveMQ.", ex);
+        }
+
+        hiveMQ = null;
+        key = null;
+        config = null;
+        started = false;
+        startInput = null;
+        startOutput = null;
+        clients.clear();
+    }
+
+    /**
+     * Removes the interceptors stages may add, see {@link HiveMQEmbeddedStage}
+     */
+    private static void removeInterceptors(ClientContext context) {
+        List.copyOf(context.getPublishInboundInterceptors()).forEach(context::removePublishInboundInterceptor);
+        List.copyOf(context.getPublishOutboundInterceptors()).forEach(context::removePublishOutboundInterceptor);
+        List.copyOf(context.getSubscribeInboundInterceptors()).forEach(context::removeSubscribeInboundInterceptor);
+        List.copyOf(context.getUnsubscribeInboundInterceptors()).forEach(context::removeUnsubscribeInboundInterceptor);
+        List.copyOf(context.getPubackInboundInterceptors()).forEach(context::removePubackInboundInterceptor);
+        List.copyOf(context.getPubcompInboundInterceptors()).forEach(context::removePubcompInboundInterceptor);
+    }
+
+    record Retained(HiveMQEmbeddedProperties.Config config, EmbeddedHiveMQ hiveMQ) {}
+
+    private record Client(InitializerInput input, ClientContext context) {}
+
+    /**
+     * Stop input for collected extensions getting detached, while the broker and its extension keep running
+     */
+    private record DetachInput(ExtensionStartInput startInput) implements ExtensionStopInput {
+
+        @Override
+        public @NotNull ExtensionInformation getExtensionInformation() {
+            return this.startInput.getExtensionInformation();
+        }
+
+        @Override
+        public @NotNull ServerInformation getServerInformation() {
+            return this.startInput.getServerInformation();
+        }
+
+        @Override
+        public @NotNull Map<String, @NotNull ExtensionInformation> getEnabledExtensions() {
+            return this.startInput.getEnabledExtensions();
+        }
+
+        @Override
+        public @NotNull ClassLoader getExtensionClassloader() {
+            return this.startInput.getExtensionClassloader();
+        }
+    }
+
+    private static final class DetachOutput implements ExtensionStopOutput {}
+
+    private record Attachment(HiveMQEmbeddedExtensionsCollector collector, ClientInitializer initializer,
+                              ClientLifecycleEventListener listener,
+                              HiveMQEmbeddedExtensionsCollector.Authorizers authorizer,
+                              ConnectInboundInterceptor connectInterceptor) {
+
+        static Attachment of(HiveMQEmbeddedExtensionsCollector collector) {
+            return collector != null
+                    ? new Attachment(collector, collector.clientInitializer(), collector.clientLifecycleEventListener(),
+                            collector.getAuthorizers().isEmpty() ? null : collector.authorizer(),
+                            collector.connectInboundInterceptor())
+                    : null;
+        }
+    }
+
+    /**
+     * The embedded extension HiveMQ knows, forwarding to the collector currently attached
+     */
+    private static final class StableExtension implements ExtensionMain {
+
+        @Override
+        public void extensionStart(@NotNull ExtensionStartInput extensionStartInput,
+                                   @NotNull ExtensionStartOutput extensionStartOutput) {
+
+            startInput = extensionStartInput;
+            startOutput = extensionStartOutput;
+
+            final ClientLifecycleEventListener listener = new ForwardingListener();
+            Services.initializerRegistry().setClientInitializer((initializerInput, clientContext) -> {
+                clients.put(initializerInput.getClientInformation().getClientId(), new Client(initializerInput, clientContext));
+                Optional.ofNullable(attachment)
+                        .ifPresent(current -> current.initializer().initialize(initializerInput, clientContext));
+            });
+            Services.eventRegistry().setClientLifecycleEventListener(input -> listener);
+
+            final ConnectInboundInterceptor connectInterceptor = (connectInboundInput, connectInboundOutput) ->
+                    Optional.ofNullable(attachment)
+                            .map(Attachment::connectInterceptor)
+                            .ifPresent(current -> current.onConnect(connectInboundInput, connectInboundOutput));
+            Services.interceptorRegistry().setConnectInboundInterceptorProvider(input -> connectInterceptor);
+
+            // Clients connecting while no authorizers are attached stay unrestricted
+            final ForwardingAuthorizer authorizer = new ForwardingAuthorizer();
+            Services.securityRegistry().setAuthorizerProvider(input ->
+                    Optional.ofNullable(attachment).map(Attachment::authorizer).isPresent() ? authorizer : null);
+
+            Optional.ofNullable(attachment)
+                    .ifPresent(current -> {
+                        current.collector().startExtensions(extensionStartInput, extensionStartOutput);
+                        current.collector().publishInfoIfRequired();
+                    });
+        }
+
+        @Override
+        public void extensionStop(@NotNull ExtensionStopInput extensionStopInput,
+                                  @NotNull ExtensionStopOutput extensionStopOutput) {
+            Optional.ofNullable(attachment)
+                    .ifPresent(current -> current.collector().stopExtensions(extensionStopInput, extensionStopOutput));
+        }
+    }
+
+    /**
+     * Forwards authorization to the collector currently attached, leaving the decision to others if none
+     */
+    private static final class ForwardingAuthorizer implements PublishAuthorizer, SubscriptionAuthorizer {
+
+        @Override
+        public void authorizePublish(@NotNull PublishAuthorizerInput publishAuthorizerInput,
+                                     @NotNull PublishAuthorizerOutput publishAuthorizerOutput) {
+            Optional.ofNullable(attachment)
+                    .map(Attachment::authorizer)
+                    .ifPresentOrElse(current -> current.authorizePublish(publishAuthorizerInput, publishAuthorizerOutput),
+                            publishAuthorizerOutput::nextExtensionOrDefault);
+        }
+
+        @Override
+        public void authorizeSubscribe(@NotNull SubscriptionAuthorizerInput subscriptionAuthorizerInput,
+                                       @NotNull SubscriptionAuthorizerOutput subscriptionAuthorizerOutput) {
+            Optional.ofNullable(attachment)
+                    .map(Attachment::authorizer)
+                    .ifPresentOrElse(current -> current.authorizeSubscribe(subscriptionAuthorizerInput, subscriptionAuthorizerOutput),
+                            subscriptionAuthorizerOutput::nextExtensionOrDefault);
+        }
+    }
+
+    /**
+     * Forwards client lifecycle events to the collector currently attached and tracks connected clients
+     */
+    private static final class ForwardingListener implements ClientLifecycleEventListener {
+
+        @Override
+        public void onMqttConnectionStart(@NotNull ConnectionStartInput connectionStartInput) {
+            forward(listener -> listener.onMqttConnectionStart(connectionStartInput));
+        }
+
+        @Override
+        public void onAuthenticationSuccessful(@NotNull AuthenticationSuccessfulInput authenticationSuccessfulInput) {
+            forward(listener -> listener.onAuthenticationSuccessful(authenticationSuccessfulInput));
+        }
+
+        @Override
+        public void onDisconnect(@NotNull DisconnectEventInput disconnectEventInput) {
+            disconnected(disconnectEventInput, listener -> listener.onDisconnect(disconnectEventInput));
+        }
+
+        @Override
+        public void onAuthenticationFailedDisconnect(@NotNull AuthenticationFailedInput authenticationFailedInput) {
+            disconnected(authenticationFailedInput, listener -> listener.onAuthenticationFailedDisconnect(authenticationFailedInput));
+        }
+
+        @Override
+        public void onConnectionLost(@NotNull ConnectionLostInput connectionLostInput) {
+            disconnected(connectionLostInput, listener -> listener.onConnectionLost(connectionLostInput));
+        }
+
+        @Override
+        public void onClientInitiatedDisconnect(@NotNull ClientInitiatedDisconnectInput clientInitiatedDisconnectInput) {
+            disconnected(clientInitiatedDisconnectInput, listener -> listener.onClientInitiatedDisconnect(clientInitiatedDisconnectInput));
+        }
+
+        @Override
+        public void onServerInitiatedDisconnect(@NotNull ServerInitiatedDisconnectInput serverInitiatedDisconnectInput) {
+            disconnected(serverInitiatedDisconnectInput, listener -> listener.onServerInitiatedDisconnect(serverInitiatedDisconnectInput));
+        }
+
+        private static void disconnected(DisconnectEventInput input, Consumer<ClientLifecycleEventListener> event) {
+            clients.remove(input.getClientInformation().getClientId());
+            forward(event);
+        }
+
+        private static void forward(Consumer<ClientLifecycleEventListener> event) {
+            final Attachment current = attachment;
+            if (current != null)
+                event.accept(current.listener());
+        }
+    }
+}
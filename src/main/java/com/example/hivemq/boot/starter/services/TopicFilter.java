@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import lombok.EqualsAndHashCode;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A precompiled MQTT topic filter.
+ * Matching walks the topic in place, so it neither uses regular expressions
+ * nor allocates any objects per message.
+ */
+@EqualsAndHashCode(of = "filter")
+public final class TopicFilter {
+
+    private static final String singleLevel = "+";
+    private static final String multiLevel = "#";
+
+    private final String filter;
+    private final String[] levels;
+
+    private TopicFilter(final String filter) {
+        this.filter = filter;
+        this.levels = filter.split("/", -1);
+    }
+
+    /**
+     * Compiles a topic filter
+     * @param filter The MQTT topic filter, may contain wildcards
+     * @return The compiled topic filter
+     * @throws IllegalArgumentException If the filter is empty or contains misplaced wildcards
+     */
+    public static @NotNull TopicFilter compile(@NotNull String filter) {
+        if (filter.isEmpty())
+            throw new IllegalArgumentException("Topic filter must not be empty.");
+
+        final TopicFilter compiled = new TopicFilter(filter);
+        for (int i = 0; i < compiled.levels.length; i++) {
+            final String level = compiled.levels[i];
+            if (level.contains(multiLevel) && (!level.equals(multiLevel) || i < compiled.levels.length - 1))
+                throw new IllegalArgumentException("Multi-level wildcard must be the last level of topic filter '" + filter + "'.");
+            if (level.contains(singleLevel) && !level.equals(singleLevel))
+                throw new IllegalArgumentException("Single-level wildcard must occupy an entire level of topic filter '" + filter + "'.");
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Compiles a collection of topic filters
+     * @param filters The MQTT topic filters
+     * @return The compiled topic filters
+     */
+    public static @NotNull List<TopicFilter> compile(@NotNull Collection<String> filters) {
+        return filters.stream()
+                .map(String::strip)
+                .map(TopicFilter::compile)
+                .toList();
+    }
+
+    /**
+     * Checks whether any of the given filters matches a topic
+     * @param filters The compiled topic filters
+     * @param topic The topic to check
+     * @return True, if at least one filter matches
+     */
+    public static boolean anyMatch(@NotNull List<TopicFilter> filters, @NotNull String topic) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i).matches(topic))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The original topic filter
+     */
+    public @NotNull String getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * @return True, if this filter contains any wildcard
+     */
+    public boolean isWildcard() {
+        return this.filter.contains(singleLevel) || this.filter.contains(multiLevel);
+    }
+
+    /**
+     * Checks whether this filter matches a topic
+     * @param topic The topic to check
+     * @return True, if the topic matches
+     */
+    public boolean matches(@NotNull String topic) {
+
+        final int length = topic.length();
+
+        // Wildcards on the first level never match system topics
+        if (length > 0 && topic.charAt(0) == '$' && isWildcardLevel(this.levels[0]))
+            return false;
+
+        int position = 0;
+        for (String level : this.levels) {
+            if (level.equals(multiLevel))
+                return true;
+
+            // Topic has fewer levels than this filter
+            if (position > length)
+                return false;
+
+            int end = topic.indexOf('/', position);
+            if (end < 0)
+                end = length;
+
+            if (!level.equals(singleLevel) &&
+                    (end - position != level.length() || !topic.regionMatches(position, level, 0, level.length())))
+                return false;
+
+            position = end + 1;
+        }
+
+        return position == length + 1;
+    }
+
+    @Override
+    public String toString() {
+        return this.filter;
+    }
+
+    private static boolean isWildcardLevel(String level) {
+        return level.equals(singleLevel) || level.equals(multiLevel);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.batching;
+
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of pending publishes, backed by preallocated parallel arrays.
+ * Many producers (the broker's I/O threads) offer publishes, a single consumer drains
+ * them into size- and time-bounded batches.
+ */
+final class BatchRing {
+
+    private final String[] topics;
+    private final String[] clientIds;
+    private final Qos[] qos;
+    private final ByteBuffer[] payloads;
+    private final long[] timestamps;
+    private final long[] arrivals;
+    private final Async<PublishInboundOutput>[] acks;
+
+    private final int batchSize;
+    private final long maxLatencyNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = this.lock.newCondition();
+
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    @SuppressWarnings("unchecked")
+    BatchRing(final int capacity, final int batchSize, final long maxLatency, final TimeUnit unit) {
+        this.topics = new String[capacity];
+        this.clientIds = new String[capacity];
+        this.qos = new Qos[capacity];
+        this.payloads = new ByteBuffer[capacity];
+        this.timestamps = new long[capacity];
+        this.arrivals = new long[capacity];
+        this.acks = new Async[capacity];
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+    }
+
+    /**
+     * Offers a publish
+     * @return False, if the ring is full or closed
+     */
+    boolean offer(String topic, String clientId, Qos qos, ByteBuffer payload,
+                  long timestamp, Async<PublishInboundOutput> ack) {
+
+        this.lock.lock();
+        try {
+            if (this.closed || this.count == this.topics.length)
+                return false;
+
+            final int tail = (this.head + this.count) % this.topics.length;
+            this.topics[tail] = topic;
+            this.clientIds[tail] = clientId;
+            this.qos[tail] = qos;
+            this.payloads[tail] = payload;
+            this.timestamps[tail] = timestamp;
+            this.arrivals[tail] = System.nanoTime();
+            this.acks[tail] = ack;
+            this.count++;
+
+            // Wake up the consumer to start its latency timer or to flush a full batch
+            if (this.count == 1 || this.count == this.batchSize)
+                this.ready.signal();
+
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until either a full batch is available or the oldest pending publish
+     * exceeded the maximum latency, then moves pending publishes into the given batch.
+     * @return The number of publishes drained, zero only if the ring got closed and is empty
+     */
+    int drainTo(HiveMQEmbeddedBatch batch) throws InterruptedException {
+
+        this.lock.lockInterruptibly();
+        try {
+            while (this.count == 0) {
+                if (this.closed)
+                    return 0;
+
+                this.ready.await();
+            }
+
+            final long deadline = this.arrivals[this.head] + this.maxLatencyNanos;
+            final int limit = Math.min(this.batchSize, batch.capacity());
+
+            long remaining;
+            while (!this.closed && this.count < limit && (remaining = deadline - System.nanoTime()) > 0) {
+                this.ready.awaitNanos(remaining);
+            }
+
+            final int drained = Math.min(this.count, limit);
+            for (int i = 0; i < drained; i++) {
+                final int slot = (this.head + i) % this.topics.length;
+                batch.set(i, this.topics[slot], this.clientIds[slot], this.qos[slot], this.payloads[slot],
+                        this.timestamps[slot], this.arrivals[slot], this.acks[slot]);
+
+                this.topics[slot] = null;
+                this.clientIds[slot] = null;
+                this.qos[slot] = null;
+                this.payloads[slot] = null;
+                this.acks[slot] = null;
+            }
+
+            batch.resize(drained);
+            this.head = (this.head + drained) % this.topics.length;
+            this.count -= drained;
+
+            return drained;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of pending publishes
+     */
+    int size() {
+        this.lock.lock();
+        try {
+            return this.count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects further publishes and lets the consumer drain remaining ones without waiting
+     */
+    void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.ready.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.batching;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A batch of inbound publishes.
+ * All data is held in arrays preallocated for the maximum batch size,
+ * which get reused from flush to flush.
+ */
+public final class HiveMQEmbeddedBatch {
+
+    private final String[] topics;
+    private final String[] clientIds;
+    private final Qos[] qos;
+    private final ByteBuffer[] payloads;
+    private final long[] timestamps;
+    private final long[] arrivals;
+    private final Async<PublishInboundOutput>[] acks;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    HiveMQEmbeddedBatch(final int capacity) {
+        this.topics = new String[capacity];
+        this.clientIds = new String[capacity];
+        this.qos = new Qos[capacity];
+        this.payloads = new ByteBuffer[capacity];
+        this.timestamps = new long[capacity];
+        this.arrivals = new long[capacity];
+        this.acks = new Async[capacity];
+    }
+
+    /**
+     * @return The number of publishes in this batch
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return True, if this batch contains no publishes
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param index Index of the publish
+     * @return The publish topic
+     */
+    public @NotNull String getTopic(int index) {
+        return this.topics[Objects.checkIndex(index, this.size)];
+    }
+
+    /**
+     * @param index Index of the publish
+     * @return The id of the client, which sent the publish
+     */
+    public @NotNull String getClientId(int index) {
+        return this.clientIds[Objects.checkIndex(index, this.size)];
+    }
+
+    /**
+     * @param index Index of the publish
+     * @return The publish quality of service
+     */
+    public @NotNull Qos getQos(int index) {
+        return this.qos[Objects.checkIndex(index, this.size)];
+    }
+
+    /**
+     * @param index Index of the publish
+     * @return The read-only publish payload, empty if the publish had none
+     */
+    public @NotNull ByteBuffer getPayload(int index) {
+        return this.payloads[Objects.checkIndex(index, this.size)];
+    }
+
+    /**
+     * @param index Index of the publish
+     * @return The time the broker received the publish, in milliseconds since epoch
+     */
+    public long getTimestamp(int index) {
+        return this.timestamps[Objects.checkIndex(index, this.size)];
+    }
+
+    int capacity() {
+        return this.topics.length;
+    }
+
+    long oldestArrival() {
+        return this.arrivals[0];
+    }
+
+    void set(int index, String topic, String clientId, Qos qos, ByteBuffer payload,
+             long timestamp, long arrival, Async<PublishInboundOutput> ack) {
+        this.topics[index] = topic;
+        this.clientIds[index] = clientId;
+        this.qos[index] = qos;
+        this.payloads[index] = payload;
+        this.timestamps[index] = timestamp;
+        this.arrivals[index] = arrival;
+        this.acks[index] = ack;
+    }
+
+    void resize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Lets HiveMQ acknowledge and route all deferred publishes of this batch
+     */
+    void acknowledge() {
+        for (int i = 0; i < this.size; i++) {
+            if (this.acks[i] != null)
+                this.acks[i].resume();
+        }
+    }
+
+    /**
+     * Lets HiveMQ reject all deferred publishes of this batch, so senders deliver them again
+     */
+    void reject() {
+        for (int i = 0; i < this.size; i++) {
+            if (this.acks[i] != null) {
+                this.acks[i].getOutput().preventPublishDelivery(AckReasonCode.UNSPECIFIED_ERROR, "Batch consumer unavailable");
+                this.acks[i].resume();
+            }
+        }
+    }
+
+    /**
+     * Releases all references, so payloads can get collected
+     */
+    void clear() {
+        Arrays.fill(this.topics, 0, this.size, null);
+        Arrays.fill(this.clientIds, 0, this.size, null);
+        Arrays.fill(this.qos, 0, this.size, null);
+        Arrays.fill(this.payloads, 0, this.size, null);
+        Arrays.fill(this.acks, 0, this.size, null);
+        this.size = 0;
+    }
+}
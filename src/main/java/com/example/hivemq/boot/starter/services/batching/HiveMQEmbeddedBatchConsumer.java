@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.batching;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * Callback for batches of inbound publishes, to be provided as a Spring bean.
+ * Publishes with QoS 1 or 2 get acknowledged to their senders only
+ * after the batch containing them has been consumed successfully.
+ */
+@FunctionalInterface
+public interface HiveMQEmbeddedBatchConsumer {
+
+    /**
+     * Consumes a batch of inbound publishes.
+     * The batch is only valid during this call, as it gets reused afterwards.
+     * If this method throws, the same batch will be delivered again.
+     * @param batch The batch to consume
+     * @throws Exception If the batch could not get consumed
+     */
+    void consume(@NotNull HiveMQEmbeddedBatch batch) throws Exception;
+}
@@ -0,0 +1,207 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.batching;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects inbound publishes matching the configured topic filters into
+ * size- and time-bounded batches and hands them to a {@link HiveMQEmbeddedBatchConsumer}.
+ * Acknowledgements of QoS 1 and 2 publishes are deferred until their batch got consumed,
+ * which gives at-least-once semantics: If the consumer fails until the acknowledgement
+ * times out, the sender gets a negative acknowledgement and delivers the publish again.
+ */
+@Slf4j
+public final class HiveMQEmbeddedBatchingSink implements HiveMQEmbeddedStage, PublishInboundInterceptor {
+
+    private static final ByteBuffer emptyPayload = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final HiveMQEmbeddedProperties.Batching properties;
+    private final HiveMQEmbeddedBatchConsumer consumer;
+    private final List<TopicFilter> topicFilters;
+    private final BatchRing ring;
+    private final HiveMQEmbeddedBatch batch;
+
+    private final Counter accepted;
+    private final Counter dropped;
+    private final Counter rejected;
+    private final Counter failures;
+    private final DistributionSummary batchSize;
+    private final Timer flushLatency;
+
+    private volatile boolean running = false;
+    private Thread flusher;
+
+    /**
+     * Creates a batching sink
+     * @param properties Batching configuration
+     * @param consumer Consumer of all batches
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedBatchingSink(final HiveMQEmbeddedProperties.Batching properties,
+                                      final HiveMQEmbeddedBatchConsumer consumer,
+                                      final MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+        this.consumer = consumer;
+        this.topicFilters = TopicFilter.compile(properties.getTopicFilters());
+        this.ring = new BatchRing(properties.getCapacity(), properties.getMaxBatchSize(),
+                properties.getMaxLatency().toNanos(), TimeUnit.NANOSECONDS);
+        this.batch = new HiveMQEmbeddedBatch(properties.getMaxBatchSize());
+
+        this.accepted = meterRegistry.counter("hivemq.batching.messages", "outcome", "accepted");
+        this.dropped = meterRegistry.counter("hivemq.batching.messages", "outcome", "dropped");
+        this.rejected = meterRegistry.counter("hivemq.batching.messages", "outcome", "rejected");
+        this.failures = meterRegistry.counter("hivemq.batching.failures");
+        this.batchSize = DistributionSummary.builder("hivemq.batching.batch.size")
+                .description("Number of publishes per consumed batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("hivemq.batching.flush.latency")
+                .description("Time from arrival of the oldest publish until its batch got consumed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("hivemq.batching.pending", this.ring, BatchRing::size)
+                .description("Number of publishes waiting for their batch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    private void start() {
+        this.running = true;
+        this.flusher = Thread.ofPlatform()
+                .name("hivemq-batching-sink")
+                .daemon()
+                .start(this::flushLoop);
+    }
+
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        this.running = false;
+        this.ring.close();
+        this.flusher.join(this.properties.getAckTimeout().toMillis());
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "batching-sink";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        if (!TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        final String clientId = publishInboundInput.getClientInformation().getClientId();
+        final ByteBuffer payload = packet.getPayload().orElse(emptyPayload);
+
+        // Fire and forget, nothing to acknowledge ...
+        if (packet.getQos() == Qos.AT_MOST_ONCE) {
+            if (this.ring.offer(packet.getTopic(), clientId, packet.getQos(), payload, packet.getTimestamp(), null))
+                this.accepted.increment();
+            else
+                this.dropped.increment();
+
+            return;
+        }
+
+        // Defer acknowledgement until the batch got consumed ...
+        final Async<PublishInboundOutput> ack =
+                publishInboundOutput.async(this.properties.getAckTimeout(), TimeoutFallback.FAILURE);
+
+        if (this.ring.offer(packet.getTopic(), clientId, packet.getQos(), payload, packet.getTimestamp(), ack)) {
+            this.accepted.increment();
+        } else {
+            publishInboundOutput.preventPublishDelivery(AckReasonCode.QUOTA_EXCEEDED, "Batching sink is full");
+            ack.resume();
+            this.rejected.increment();
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (this.ring.drainTo(this.batch) > 0) {
+                deliver();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.info("Batching sink stopped.");
+    }
+
+    private void deliver() throws InterruptedException {
+        try {
+            while (true) {
+                try {
+                    this.consumer.consume(this.batch);
+
+                    this.batchSize.record(this.batch.size());
+                    this.flushLatency.record(System.nanoTime() - this.batch.oldestArrival(), TimeUnit.NANOSECONDS);
+                    this.batch.acknowledge();
+                    return;
+                } catch (Exception ex) {
+                    this.failures.increment();
+
+                    if (!this.running) {
+                        log.error("Batch consumer failed during shutdown, rejecting {} publishes.", this.batch.size(), ex);
+                        this.batch.reject();
+                        return;
+                    }
+
+                    log.warn("Batch consumer failed for {} publishes, retrying in {}.",
+                            this.batch.size(), this.properties.getRetryInterval(), ex);
+                    Thread.sleep(this.properties.getRetryInterval());
+                }
+            }
+        } finally {
+            this.batch.clear();
+        }
+    }
+}
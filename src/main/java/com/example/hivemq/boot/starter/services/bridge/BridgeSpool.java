@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.bridge;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Queue of publishes to forward within a memory-mapped file, not thread-safe.
+ * Entries are read in order and only removed once committed, i.e. acknowledged by the remote broker.
+ * As the file is kept on close, entries not committed before a restart get forwarded again on next startup.
+ * <p>
+ * Layout: A header of magic, count, start and end position, followed by a ring of entries of
+ * topic length, topic, retain flag, payload length and payload. Entries are never split, an entry not fitting
+ * before the end of the file is written to the front instead, marking the skipped rest with a topic length of -1.
+ * The header is only updated after an entry got written, so a crash never points it to incomplete entries.
+ */
+@Slf4j
+final class BridgeSpool implements AutoCloseable {
+
+    private static final int magic = 0x48_4D_42_53;
+    private static final int headerSize = 16;
+    private static final int entryOverhead = 9;
+    private static final int wrapMarker = -1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private int count;
+    private int start;
+    private int end;
+
+    /**
+     * Position of the next entry to read, between start and end
+     */
+    private int read;
+    private int unread;
+
+    @SneakyThrows({ IOException.class })
+    BridgeSpool(final Path file, final long maxBytes) {
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.min(Integer.MAX_VALUE, headerSize + maxBytes));
+
+        if (this.buffer.getInt(0) == magic && isValid(this.buffer.getInt(4), this.buffer.getInt(8), this.buffer.getInt(12))) {
+            this.count = this.buffer.getInt(4);
+            this.start = this.buffer.getInt(8);
+            this.end = this.buffer.getInt(12);
+
+            if (this.count > 0)
+                log.info("Recovered {} spooled publishes from '{}'.", this.count, file);
+        } else {
+            this.buffer.putInt(0, magic);
+            this.count = 0;
+            this.start = headerSize;
+            this.end = headerSize;
+            writeHeader();
+        }
+
+        this.read = this.start;
+        this.unread = this.count;
+    }
+
+    /**
+     * Appends a publish
+     * @return False, if the spool has no room left
+     */
+    boolean offer(String topic, byte[] payload, boolean retain) {
+
+        final byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        final int length = entryOverhead + topicBytes.length + payload.length;
+
+        final int position;
+        if (isWrapped()) {
+            if (length > this.start - this.end)
+                return false;
+            position = this.end;
+        } else if (length <= this.buffer.capacity() - this.end) {
+            position = this.end;
+        } else if (length <= this.start - headerSize) {
+            // Continue at the front, the reader skips the rest of the file
+            if (this.buffer.capacity() - this.end >= Integer.BYTES)
+                this.buffer.putInt(this.end, wrapMarker);
+            position = headerSize;
+        } else {
+            return false;
+        }
+
+        this.buffer.position(position);
+        this.buffer.putInt(topicBytes.length)
+                .put(topicBytes)
+                .put((byte) (retain ? 1 : 0))
+                .putInt(payload.length)
+                .put(payload);
+
+        this.end = position + length;
+        this.count++;
+        this.unread++;
+        writeHeader();
+
+        return true;
+    }
+
+    /**
+     * Reads the next publish not read yet
+     * @return The publish, or null if all publishes got read
+     */
+    BridgedPublish next() {
+        if (this.unread == 0)
+            return null;
+
+        this.read = entryAt(this.read);
+        this.buffer.position(this.read);
+        final byte[] topic = new byte[this.buffer.getInt()];
+        this.buffer.get(topic);
+        final boolean retain = this.buffer.get() != 0;
+        final byte[] payload = new byte[this.buffer.getInt()];
+        this.buffer.get(payload);
+
+        this.read = this.buffer.position();
+        this.unread--;
+
+        return new BridgedPublish(new String(topic, StandardCharsets.UTF_8), payload, retain);
+    }
+
+    /**
+     * Removes the oldest publish, which has to be read already
+     */
+    void commit() {
+        if (this.count == this.unread)
+            throw new IllegalStateException("No read publish to commit");
+
+        this.start = entryAt(this.start);
+        final int topicLength = this.buffer.getInt(this.start);
+        final int payloadLength = this.buffer.getInt(this.start + 5 + topicLength);
+
+        this.start += entryOverhead + topicLength + payloadLength;
+        this.count--;
+
+        if (this.count > 0)
+            this.start = entryAt(this.start);
+
+        // Rewind to the front once empty, so the file is used from the beginning again
+        if (this.count == 0) {
+            this.start = headerSize;
+            this.end = headerSize;
+            this.read = headerSize;
+        }
+
+        writeHeader();
+    }
+
+    /**
+     * @return The number of spooled publishes, read or not
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * @return The number of publishes not read yet
+     */
+    int unread() {
+        return this.unread;
+    }
+
+    /**
+     * @return The number of bytes occupied by spooled publishes
+     */
+    long bytes() {
+        if (this.count == 0)
+            return 0;
+
+        return isWrapped()
+                ? this.buffer.capacity() - this.start + this.end - headerSize
+                : this.end - this.start;
+    }
+
+    @Override
+    @SneakyThrows({ IOException.class })
+    public void close() {
+        this.buffer.force();
+        this.channel.close();
+    }
+
+    private boolean isValid(int count, int start, int end) {
+        return count >= 0
+                && start >= headerSize && start <= this.buffer.capacity()
+                && end >= headerSize && end <= this.buffer.capacity()
+                && (start <= end || count > 0);
+    }
+
+    /**
+     * Entries end before the start, after continuing at the front
+     */
+    private boolean isWrapped() {
+        return this.count > 0 && this.end <= this.start;
+    }
+
+    /**
+     * @return The position of the entry at the given position, or the front if the rest of the file was skipped
+     */
+    private int entryAt(int position) {
+        return position + Integer.BYTES > this.buffer.capacity() || this.buffer.getInt(position) == wrapMarker
+                ? headerSize
+                : position;
+    }
+
+    private void writeHeader() {
+        this.buffer.putInt(4, this.count);
+        this.buffer.putInt(8, this.start);
+        this.buffer.putInt(12, this.end);
+    }
+}
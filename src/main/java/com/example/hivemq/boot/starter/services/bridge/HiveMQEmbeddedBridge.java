@@ -0,0 +1,376 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.bridge;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
+import com.hivemq.client.mqtt.mqtt5.message.auth.Mqtt5SimpleAuth;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Forwards inbound publishes matching the configured topic filters to a remote broker.
+ * Publishes are spooled to a memory-mapped file within the data folder first, and removed once
+ * the remote broker acknowledged them. They are forwarded with QoS 1, pipelined up to the in-flight window,
+ * which gives at-least-once semantics across link failures and restarts.
+ * While the link is down, the window fills up and further publishes stay in the spool until it is back.
+ */
+@Slf4j
+public final class HiveMQEmbeddedBridge implements HiveMQEmbeddedStage, PublishInboundInterceptor {
+
+    private static final byte[] emptyPayload = new byte[0];
+
+    private final HiveMQEmbeddedProperties.Bridge properties;
+    private final Path file;
+    private final List<TopicFilter> topicFilters;
+    private final MeterRegistry meterRegistry;
+
+    private final Counter spooled;
+    private final Counter dropped;
+    private final Counter forwarded;
+    private final Counter rejected;
+    private final Counter retried;
+    private final Counter reconnects;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = this.lock.newCondition();
+    private final Semaphore window;
+
+    /**
+     * Publishes read from the spool, but not acknowledged yet, by sequence number
+     */
+    private final Map<Long, BridgedPublish> inFlight = new HashMap<>();
+    private final ArrayDeque<Long> retries = new ArrayDeque<>();
+    private long nextSequence = 0;
+    private long commitSequence = 0;
+
+    private BridgeSpool spool;
+    private Mqtt5AsyncClient client;
+    private Thread forwarder;
+    private volatile boolean running = false;
+    private volatile boolean connected = false;
+
+    /**
+     * Creates a bridge
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedBridge(final HiveMQEmbeddedProperties properties, final MeterRegistry meterRegistry) {
+
+        this.properties = properties.getBridge();
+        this.file = Path.of(properties.getData().getFolder(), this.properties.getSpoolFile()).toAbsolutePath();
+        this.topicFilters = TopicFilter.compile(this.properties.getTopicFilters());
+        this.window = new Semaphore(this.properties.getMaxInFlight());
+
+        this.meterRegistry = meterRegistry;
+        this.spooled = meterRegistry.counter("hivemq.bridge.messages", "outcome", "spooled");
+        this.dropped = meterRegistry.counter("hivemq.bridge.messages", "outcome", "dropped");
+        this.forwarded = meterRegistry.counter("hivemq.bridge.messages", "outcome", "forwarded");
+        this.rejected = meterRegistry.counter("hivemq.bridge.messages", "outcome", "rejected");
+        this.retried = meterRegistry.counter("hivemq.bridge.messages", "outcome", "retried");
+        this.reconnects = meterRegistry.counter("hivemq.bridge.reconnects");
+    }
+
+    @PostConstruct
+    void start() {
+        this.spool = new BridgeSpool(this.file, this.properties.getSpoolSize().toBytes());
+
+        Gauge.builder("hivemq.bridge.backlog", this, HiveMQEmbeddedBridge::getBacklog)
+                .description("Number of spooled publishes not acknowledged by the remote broker")
+                .register(this.meterRegistry);
+        Gauge.builder("hivemq.bridge.backlog.size", this, HiveMQEmbeddedBridge::getBacklogSize)
+                .description("Size of all spooled publishes")
+                .baseUnit("bytes")
+                .register(this.meterRegistry);
+        Gauge.builder("hivemq.bridge.in-flight", this.window, w -> this.properties.getMaxInFlight() - w.availablePermits())
+                .description("Number of forwarded publishes awaiting acknowledgement")
+                .register(this.meterRegistry);
+        Gauge.builder("hivemq.bridge.connected", this, bridge -> bridge.connected ? 1 : 0)
+                .description("Whether the link to the remote broker is up")
+                .register(this.meterRegistry);
+
+        final Mqtt5ClientBuilder builder = Mqtt5Client.builder()
+                .identifier(this.properties.getClientId())
+                .serverHost(this.properties.getHost())
+                .serverPort(this.properties.getPort())
+                .automaticReconnect()
+                    .initialDelay(this.properties.getReconnectInitialDelay().toMillis(), TimeUnit.MILLISECONDS)
+                    .maxDelay(this.properties.getReconnectMaxDelay().toMillis(), TimeUnit.MILLISECONDS)
+                    .applyAutomaticReconnect()
+                .addConnectedListener(context -> {
+                    this.connected = true;
+                    log.info("Bridge connected to {}:{}.", this.properties.getHost(), this.properties.getPort());
+                })
+                .addDisconnectedListener(context -> {
+                    if (this.connected) {
+                        this.reconnects.increment();
+                        log.warn("Bridge disconnected from {}:{}, spooling publishes until reconnected.",
+                                this.properties.getHost(), this.properties.getPort(), context.getCause());
+                    }
+                    this.connected = false;
+                });
+
+        if (this.properties.getUsername() != null) {
+            builder.simpleAuth(Mqtt5SimpleAuth.builder()
+                    .username(this.properties.getUsername())
+                    .password(this.properties.getPassword() != null
+                            ? this.properties.getPassword().getBytes(StandardCharsets.UTF_8)
+                            : emptyPayload)
+                    .build());
+        }
+
+        this.client = builder.buildAsync();
+
+        // Keep the session, so publishes in flight survive reconnects
+        this.client.connectWith()
+                .cleanStart(false)
+                .sessionExpiryInterval(this.properties.getSessionExpiry().toSeconds())
+                .send()
+                .whenComplete((connAck, th) -> {
+                    if (th != null)
+                        log.warn("Bridge failed to connect to {}:{}, retrying.",
+                                this.properties.getHost(), this.properties.getPort(), th);
+                });
+
+        this.running = true;
+        this.forwarder = Thread.ofPlatform()
+                .name("hivemq-bridge")
+                .daemon()
+                .start(this::forwardLoop);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        this.running = false;
+        this.forwarder.interrupt();
+        this.forwarder.join(TimeUnit.SECONDS.toMillis(5));
+
+        try {
+            this.client.disconnect().get(5, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            log.debug("Bridge failed to disconnect cleanly.", ex);
+        }
+
+        this.lock.lock();
+        try {
+            this.spool.close();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "bridge";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        if (!TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        final byte[] payload = packet.getPayload()
+                .map(HiveMQEmbeddedBridge::toBytes)
+                .orElse(emptyPayload);
+
+        final boolean offered;
+        this.lock.lock();
+        try {
+            offered = this.running && this.spool.offer(remap(packet.getTopic()), payload, packet.getRetain());
+            if (offered)
+                this.available.signal();
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (offered)
+            this.spooled.increment();
+        else
+            this.dropped.increment();
+    }
+
+    /**
+     * @param topic Local topic
+     * @return The remote topic, without local and with remote prefix
+     */
+    String remap(String topic) {
+        final String stripped = topic.startsWith(this.properties.getLocalPrefix())
+                ? topic.substring(this.properties.getLocalPrefix().length())
+                : topic;
+        return this.properties.getRemotePrefix() + stripped;
+    }
+
+    /**
+     * @return Whether the link to the remote broker is up
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * @return The number of spooled publishes not acknowledged by the remote broker
+     */
+    public int getBacklog() {
+        this.lock.lock();
+        try {
+            return this.spool.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private long getBacklogSize() {
+        this.lock.lock();
+        try {
+            return this.spool.bytes();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void forwardLoop() {
+        try {
+            while (this.running) {
+                this.window.acquire();
+
+                final long sequence;
+                final BridgedPublish publish;
+
+                this.lock.lock();
+                try {
+                    while (this.retries.isEmpty() && this.spool.unread() == 0)
+                        this.available.await();
+
+                    if (!this.retries.isEmpty()) {
+                        sequence = this.retries.poll();
+                        publish = this.inFlight.get(sequence);
+                    } else {
+                        sequence = this.nextSequence++;
+                        publish = this.spool.next();
+                        this.inFlight.put(sequence, publish);
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+
+                send(sequence, publish);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.info("Bridge stopped.");
+    }
+
+    private void send(long sequence, BridgedPublish publish) {
+        this.client.publishWith()
+                .topic(publish.topic())
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .retain(publish.retain())
+                .payload(publish.payload())
+                .send()
+                .whenComplete((result, th) -> {
+                    this.window.release();
+
+                    if (th == null && result.getError().isEmpty()) {
+                        if (result instanceof Mqtt5PublishResult.Mqtt5Qos1Result qos1
+                                && qos1.getPubAck().getReasonCode().isError()) {
+                            // Retrying would block the spool forever, the remote broker will reject it again
+                            log.warn("Remote broker rejected publish on topic '{}' with reason code {}, dropping it.",
+                                    publish.topic(), qos1.getPubAck().getReasonCode());
+                            this.rejected.increment();
+                        } else {
+                            this.forwarded.increment();
+                        }
+                        acknowledge(sequence);
+                    } else {
+                        this.retried.increment();
+                        CompletableFuture.delayedExecutor(this.properties.getReconnectInitialDelay().toMillis(), TimeUnit.MILLISECONDS)
+                                .execute(() -> retry(sequence));
+                    }
+                });
+    }
+
+    private void acknowledge(long sequence) {
+        this.lock.lock();
+        try {
+            this.inFlight.remove(sequence);
+
+            // Spooled publishes are removed in order, once all older ones got acknowledged as well
+            while (this.commitSequence < this.nextSequence && !this.inFlight.containsKey(this.commitSequence)) {
+                if (this.running)
+                    this.spool.commit();
+                this.commitSequence++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void retry(long sequence) {
+        this.lock.lock();
+        try {
+            this.retries.add(sequence);
+            this.available.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
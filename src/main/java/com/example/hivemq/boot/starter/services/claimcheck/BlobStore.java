@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.claimcheck;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Store of memory-mapped blobs, one file each, released by reference count or age
+ */
+@Slf4j
+final class BlobStore {
+
+    private static final String suffix = ".blob";
+
+    /**
+     * Reference count of blobs recovered from a previous run, which are only released by age
+     */
+    private static final int unknownReferences = -1;
+
+    private final Path folder;
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    private record Blob(ByteBuffer content, AtomicInteger references, Set<String> released, long created) {
+
+        Blob(ByteBuffer content, int references, long created) {
+            this(content, new AtomicInteger(references), ConcurrentHashMap.newKeySet(), created);
+        }
+    }
+
+    BlobStore(final Path folder) throws IOException {
+        this.folder = folder;
+
+        Files.createDirectories(folder);
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(suffix)).toList()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    final String name = file.getFileName().toString();
+                    this.blobs.put(name.substring(0, name.length() - suffix.length()),
+                            new Blob(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                                    unknownReferences,
+                                    Files.getLastModifiedTime(file).toMillis()));
+                }
+            }
+        }
+
+        if (!this.blobs.isEmpty())
+            log.info("Recovered {} claim-check blobs from '{}'.", this.blobs.size(), folder);
+    }
+
+    /**
+     * Stores a blob
+     * @param content The content to store
+     * @param references Number of releases until the blob gets deleted
+     * @return The id of the blob
+     */
+    String put(ByteBuffer content, int references) throws IOException {
+
+        final String id = UUID.randomUUID().toString();
+        try (FileChannel channel = FileChannel.open(file(id),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, content.remaining());
+            mapped.put(content.duplicate());
+
+            this.blobs.put(id, new Blob(mapped.flip().asReadOnlyBuffer(), references, System.currentTimeMillis()));
+        }
+
+        return id;
+    }
+
+    /**
+     * @return The read-only content of a blob, if still available
+     */
+    Optional<ByteBuffer> get(String id) {
+        return Optional.ofNullable(this.blobs.get(id))
+                .map(blob -> blob.content().duplicate());
+    }
+
+    boolean contains(String id) {
+        return this.blobs.containsKey(id);
+    }
+
+    /**
+     * Releases a single reference, deleting the blob once all references got released
+     * @param id The id of the blob
+     * @param delivery Identifies the delivery, repeated releases of the same delivery are ignored
+     */
+    void release(String id, String delivery) {
+        final Blob blob = this.blobs.get(id);
+        if (blob != null && blob.references().get() != unknownReferences && blob.released().add(delivery)
+                && blob.references().decrementAndGet() == 0)
+            delete(id);
+    }
+
+    /**
+     * Deletes all blobs created before the given time
+     * @return The number of deleted blobs
+     */
+    int expire(long createdBefore) {
+        int expired = 0;
+        for (Map.Entry<String, Blob> entry : this.blobs.entrySet()) {
+            if (entry.getValue().created() < createdBefore) {
+                delete(entry.getKey());
+                expired++;
+            }
+        }
+
+        return expired;
+    }
+
+    int count() {
+        return this.blobs.size();
+    }
+
+    long bytes() {
+        return this.blobs.values().stream()
+                .mapToLong(blob -> blob.content().capacity())
+                .sum();
+    }
+
+    private void delete(String id) {
+        if (this.blobs.remove(id) == null)
+            return;
+
+        // Mapped content stays valid for pending deliveries until it gets garbage collected
+        try {
+            Files.deleteIfExists(file(id));
+        } catch (IOException ioe) {
+            log.warn("Failed to delete claim-check blob '{}'.", id, ioe);
+        }
+    }
+
+    private Path file(String id) {
+        return this.folder.resolve(id + suffix);
+    }
+}
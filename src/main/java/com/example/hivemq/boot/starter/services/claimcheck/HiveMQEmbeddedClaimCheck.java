@@ -0,0 +1,329 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.claimcheck;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.puback.PubackInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.puback.parameter.PubackInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.puback.parameter.PubackInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.pubcomp.PubcompInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.pubcomp.parameter.PubcompInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.pubcomp.parameter.PubcompInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.ModifiablePublishPacket;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.subscription.SubscriptionType;
+import com.hivemq.extension.sdk.api.services.subscription.TopicSubscription;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offloads payloads above a threshold to memory-mapped blobs within the data folder
+ * and forwards a small reference message instead, carrying the blob id as payload and user property.
+ * Blobs are released once every subscriber matching at publish time has received the message,
+ * counting each shared subscription group once, or at the latest after the maximum age.
+ * Deliveries with QoS 1 and 2 only count as received when acknowledged by PUBACK or PUBCOMP,
+ * so redeliveries after a reconnect still find their blob.
+ * <p>
+ * This stage runs right after the tenancy stage, so other stages see the reference message
+ * and can use {@link #rehydrate(ByteBuffer)}.
+ * Retained publishes are never offloaded, as they may be delivered at any time later.
+ */
+@Slf4j
+public final class HiveMQEmbeddedClaimCheck implements HiveMQEmbeddedStage, PublishInboundInterceptor, PublishOutboundInterceptor,
+        PubackInboundInterceptor, PubcompInboundInterceptor {
+
+    /**
+     * User property carrying the blob id of an offloaded payload
+     */
+    public static final String userProperty = "hivemq-claim-check";
+
+    private static final String referencePrefix = userProperty + ":";
+    private static final String sharePrefix = "$share/";
+    private static final Duration countTimeout = Duration.ofSeconds(10);
+
+    private final HiveMQEmbeddedProperties.ClaimCheck properties;
+    private final Path folder;
+    private final List<TopicFilter> topicFilters;
+    private final long threshold;
+
+    private final Counter offloaded;
+    private final Counter rehydrated;
+    private final Counter missing;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Blob ids of deliveries with QoS 1 and 2 not acknowledged yet, by client id and packet id
+     */
+    private final Map<String, String> unacknowledged = new ConcurrentHashMap<>();
+
+    private BlobStore store;
+    private ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a claim-check stage
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedClaimCheck(final HiveMQEmbeddedProperties properties, final MeterRegistry meterRegistry) {
+
+        this.properties = properties.getClaimCheck();
+        this.folder = Path.of(properties.getData().getFolder(), this.properties.getFolder()).toAbsolutePath();
+        this.topicFilters = TopicFilter.compile(this.properties.getTopicFilters());
+        this.threshold = this.properties.getThreshold().toBytes();
+
+        this.meterRegistry = meterRegistry;
+        this.offloaded = meterRegistry.counter("hivemq.claimcheck.payloads", "outcome", "offloaded");
+        this.rehydrated = meterRegistry.counter("hivemq.claimcheck.payloads", "outcome", "rehydrated");
+        this.missing = meterRegistry.counter("hivemq.claimcheck.payloads", "outcome", "missing");
+    }
+
+    @PostConstruct
+    @SneakyThrows({ IOException.class })
+    private void open() {
+        this.store = new BlobStore(this.folder);
+
+        Gauge.builder("hivemq.claimcheck.blobs", this.store, BlobStore::count)
+                .description("Number of stored blobs")
+                .register(this.meterRegistry);
+        Gauge.builder("hivemq.claimcheck.size", this.store, BlobStore::bytes)
+                .description("Size of all stored blobs")
+                .baseUnit("bytes")
+                .register(this.meterRegistry);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("hivemq-claim-check-housekeeper").daemon().factory());
+        this.housekeeper.scheduleWithFixedDelay(() -> {
+            final int expired = this.store.expire(System.currentTimeMillis() - this.properties.getMaxAge().toMillis());
+            if (expired > 0)
+                log.debug("Expired {} claim-check blobs.", expired);
+
+            // Deliveries never acknowledged, e.g. to sessions that expired, are dropped with their blob
+            this.unacknowledged.values().removeIf(id -> !this.store.contains(id));
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void close() {
+        this.housekeeper.shutdownNow();
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "claim-check";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+        clientContext.addPublishOutboundInterceptor(this);
+        clientContext.addPubackInboundInterceptor(this);
+        clientContext.addPubcompInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        final Optional<ByteBuffer> payload = packet.getPayload();
+
+        if (payload.isEmpty() || payload.get().remaining() <= this.threshold || packet.getRetain()
+                || !TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        // Count subscribers first, blob is released after each of them received the message
+        final Async<PublishInboundOutput> async = publishInboundOutput.async(countTimeout, TimeoutFallback.SUCCESS);
+        final AtomicInteger subscribers = new AtomicInteger();
+
+        Services.subscriptionStore()
+                .iterateAllSubscribersForTopic(packet.getTopic(), SubscriptionType.INDIVIDUAL,
+                        (context, subscriber) -> subscribers.incrementAndGet())
+                .thenCompose(ignored -> countSharedGroups(packet.getTopic()))
+                .whenComplete((groups, th) -> {
+                    try {
+                        if (th == null && subscribers.get() + groups > 0)
+                            offload(async.getOutput().getPublishPacket(), payload.get(), subscribers.get() + groups);
+                    } catch (IOException ioe) {
+                        log.warn("Failed to offload payload on topic '{}', forwarding it unchanged.", packet.getTopic(), ioe);
+                    } finally {
+                        async.resume();
+                    }
+                });
+    }
+
+    @Override
+    public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                  @NotNull PublishOutboundOutput publishOutboundOutput) {
+
+        final PublishPacket packet = publishOutboundInput.getPublishPacket();
+        final Optional<String> id = packet.getUserProperties().getFirst(userProperty);
+
+        if (id.isEmpty())
+            return;
+
+        if (this.properties.isRehydrate()) {
+            final Optional<ByteBuffer> content = this.store.get(id.get());
+            if (content.isPresent()) {
+                final ModifiablePublishPacket modifiable = publishOutboundOutput.getPublishPacket();
+                modifiable.setPayload(content.get());
+                modifiable.getUserProperties().removeName(userProperty);
+                this.rehydrated.increment();
+            } else {
+                this.missing.increment();
+            }
+        }
+
+        // Deliveries with QoS 1 and 2 may be redelivered until acknowledged, keeping their packet id
+        final String delivery = delivery(publishOutboundInput.getClientInformation().getClientId(), packet.getPacketId());
+        if (packet.getQos() == Qos.AT_MOST_ONCE)
+            this.store.release(id.get(), delivery);
+        else
+            this.unacknowledged.put(delivery, id.get());
+    }
+
+    @Override
+    public void onInboundPuback(@NotNull PubackInboundInput pubackInboundInput,
+                                @NotNull PubackInboundOutput pubackInboundOutput) {
+        acknowledged(delivery(pubackInboundInput.getClientInformation().getClientId(),
+                pubackInboundInput.getPubackPacket().getPacketIdentifier()));
+    }
+
+    @Override
+    public void onInboundPubcomp(@NotNull PubcompInboundInput pubcompInboundInput,
+                                 @NotNull PubcompInboundOutput pubcompInboundOutput) {
+        acknowledged(delivery(pubcompInboundInput.getClientInformation().getClientId(),
+                pubcompInboundInput.getPubcompPacket().getPacketIdentifier()));
+    }
+
+    private void acknowledged(String delivery) {
+        final String id = this.unacknowledged.remove(delivery);
+        if (id != null)
+            this.store.release(id, delivery);
+    }
+
+    private static String delivery(String clientId, int packetId) {
+        return clientId + "/" + packetId;
+    }
+
+    /**
+     * Restores an offloaded payload
+     * @param payload The payload of a received message
+     * @return The original payload, the given one if it is no reference message,
+     * or empty if the referenced blob is no longer available
+     */
+    public @NotNull Optional<ByteBuffer> rehydrate(@NotNull ByteBuffer payload) {
+        return getBlobId(payload)
+                .map(this.store::get)
+                .orElseGet(() -> Optional.of(payload));
+    }
+
+    /**
+     * @param payload The payload of a received message
+     * @return The blob id, if the payload is a reference message
+     */
+    public @NotNull Optional<String> getBlobId(@NotNull ByteBuffer payload) {
+        if (payload.remaining() <= referencePrefix.length() || payload.remaining() > referencePrefix.length() + 64)
+            return Optional.empty();
+
+        final String reference = StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+        return reference.startsWith(referencePrefix)
+                ? Optional.of(reference.substring(referencePrefix.length()))
+                : Optional.empty();
+    }
+
+    /**
+     * Counts the shared subscription groups matching a topic, as only one member of each group receives a publish
+     */
+    private CompletableFuture<Integer> countSharedGroups(String topic) {
+
+        final Set<String> members = ConcurrentHashMap.newKeySet();
+        return Services.subscriptionStore()
+                .iterateAllSubscribersForTopic(topic, SubscriptionType.SHARED,
+                        (context, subscriber) -> members.add(subscriber.getClientId()))
+                .thenCompose(ignored -> {
+                    final Set<String> groups = ConcurrentHashMap.newKeySet();
+                    return CompletableFuture.allOf(members.stream()
+                                    .map(member -> Services.subscriptionStore()
+                                            .getSubscriptions(member)
+                                            .thenAccept(subscriptions -> subscriptions.stream()
+                                                    .map(TopicSubscription::getTopicFilter)
+                                                    .filter(filter -> isSharedMatch(filter, topic))
+                                                    .forEach(groups::add)))
+                                    .toArray(CompletableFuture[]::new))
+                            .thenApply(done -> groups.size());
+                });
+    }
+
+    private static boolean isSharedMatch(String filter, String topic) {
+        if (!filter.startsWith(sharePrefix))
+            return false;
+
+        final int group = filter.indexOf('/', sharePrefix.length());
+        return group > 0 && TopicFilter.compile(filter.substring(group + 1)).matches(topic);
+    }
+
+    private void offload(ModifiablePublishPacket packet, ByteBuffer payload, int subscribers) throws IOException {
+
+        final String id = this.store.put(payload, subscribers);
+
+        packet.setPayload(ByteBuffer.wrap((referencePrefix + id).getBytes(StandardCharsets.UTF_8)));
+        packet.getUserProperties().addUserProperty(userProperty, id);
+
+        this.offloaded.increment();
+    }
+}
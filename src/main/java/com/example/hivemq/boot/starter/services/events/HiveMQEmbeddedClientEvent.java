@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.events;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Lifecycle event of a single client
+ * @param type The kind of event
+ * @param clientId The client id
+ * @param timestamp Time the event occurred
+ * @param reasonCode The disconnect reason code, if any
+ */
+public record HiveMQEmbeddedClientEvent(@NotNull Type type, @NotNull String clientId, @NotNull Instant timestamp,
+                                        @Nullable String reasonCode) {
+
+    public enum Type {
+        CONNECTED,
+        DISCONNECTED,
+        AUTHENTICATION_FAILED
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.events;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedClientListener;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes client connects, disconnects and authentication failures as {@link HiveMQEmbeddedClientEvents}.
+ * Events are buffered and published in batches from a dedicated thread, bounded by size and latency,
+ * so reconnect storms never block the broker. On overflow, the oldest pending events get dropped.
+ */
+@Slf4j
+public final class HiveMQEmbeddedClientEventPublisher implements HiveMQEmbeddedClientListener {
+
+    private static final long idleWait = TimeUnit.SECONDS.toNanos(1);
+
+    private final HiveMQEmbeddedProperties.ClientEvents properties;
+    private final ApplicationEventPublisher publisher;
+    private final BlockingQueue<HiveMQEmbeddedClientEvent> pending;
+    private final AtomicLong droppedSinceBatch = new AtomicLong();
+
+    private final Counter published;
+    private final Counter dropped;
+    private final Counter batches;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    /**
+     * Creates a client event publisher
+     * @param properties Configuration properties
+     * @param publisher Publisher of the application events
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedClientEventPublisher(final HiveMQEmbeddedProperties.ClientEvents properties,
+                                              final ApplicationEventPublisher publisher,
+                                              final MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+        this.publisher = publisher;
+        this.pending = new ArrayBlockingQueue<>(properties.getCapacity());
+
+        this.published = meterRegistry.counter("hivemq.client.events", "outcome", "published");
+        this.dropped = meterRegistry.counter("hivemq.client.events", "outcome", "dropped");
+        this.batches = meterRegistry.counter("hivemq.client.events.batches");
+        Gauge.builder("hivemq.client.events.pending", this.pending, BlockingQueue::size)
+                .description("Number of events waiting to be published")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        this.running = true;
+        this.dispatcher = Thread.ofPlatform()
+                .name("hivemq-client-events")
+                .daemon()
+                .start(this::dispatch);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        this.running = false;
+        this.dispatcher.interrupt();
+        this.dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "client-events";
+    }
+
+    @Override
+    public void onAuthenticationSuccessful(@NotNull AuthenticationSuccessfulInput authenticationSuccessfulInput) {
+        add(new HiveMQEmbeddedClientEvent(HiveMQEmbeddedClientEvent.Type.CONNECTED,
+                authenticationSuccessfulInput.getClientInformation().getClientId(), Instant.now(), null));
+    }
+
+    @Override
+    public void onAuthenticationFailedDisconnect(@NotNull AuthenticationFailedInput authenticationFailedInput) {
+        add(event(HiveMQEmbeddedClientEvent.Type.AUTHENTICATION_FAILED, authenticationFailedInput));
+    }
+
+    @Override
+    public void onDisconnect(@NotNull DisconnectEventInput disconnectEventInput) {
+        add(event(HiveMQEmbeddedClientEvent.Type.DISCONNECTED, disconnectEventInput));
+    }
+
+    void add(HiveMQEmbeddedClientEvent event) {
+        while (!this.pending.offer(event)) {
+            if (this.pending.poll() != null) {
+                this.dropped.increment();
+                this.droppedSinceBatch.incrementAndGet();
+            }
+        }
+    }
+
+    private static HiveMQEmbeddedClientEvent event(HiveMQEmbeddedClientEvent.Type type, DisconnectEventInput input) {
+        return new HiveMQEmbeddedClientEvent(type, input.getClientInformation().getClientId(), Instant.now(),
+                input.getReasonCode().map(Enum::name).orElse(null));
+    }
+
+    private void dispatch() {
+
+        final int maxBatchSize = this.properties.getMaxBatchSize();
+        final long maxLatency = this.properties.getMaxLatency().toNanos();
+
+        while (this.running || !this.pending.isEmpty()) {
+            final List<HiveMQEmbeddedClientEvent> batch = new ArrayList<>(Math.min(maxBatchSize, this.pending.size() + 1));
+            try {
+                final HiveMQEmbeddedClientEvent first = this.pending.poll(idleWait, TimeUnit.NANOSECONDS);
+                if (first == null)
+                    continue;
+
+                // Collect further events until the batch is full or the first one waited long enough
+                batch.add(first);
+                final long deadline = System.nanoTime() + maxLatency;
+                while (batch.size() < maxBatchSize) {
+                    if (this.pending.drainTo(batch, maxBatchSize - batch.size()) > 0)
+                        continue;
+
+                    final HiveMQEmbeddedClientEvent next =
+                            this.pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException ie) {
+                // Stopping, publish what is pending
+                this.pending.drainTo(batch, maxBatchSize - batch.size());
+            }
+
+            if (!batch.isEmpty())
+                publish(batch);
+        }
+    }
+
+    private void publish(List<HiveMQEmbeddedClientEvent> batch) {
+        try {
+            this.publisher.publishEvent(
+                    new HiveMQEmbeddedClientEvents(this, List.copyOf(batch), this.droppedSinceBatch.getAndSet(0)));
+            this.published.increment(batch.size());
+            this.batches.increment();
+        } catch (RuntimeException ex) {
+            log.warn("Failed to publish {} client events.", batch.size(), ex);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.events;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Application event carrying a batch of client lifecycle events in order of occurrence
+ */
+@Getter
+public class HiveMQEmbeddedClientEvents extends ApplicationEvent {
+
+    /**
+     * The client lifecycle events
+     */
+    private final transient List<HiveMQEmbeddedClientEvent> events;
+
+    /**
+     * Number of events dropped due to overflow since the previous batch
+     */
+    private final long dropped;
+
+    public HiveMQEmbeddedClientEvents(Object source, List<HiveMQEmbeddedClientEvent> events, long dropped) {
+        super(source);
+        this.events = events;
+        this.dropped = dropped;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.executor;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedLifecycleListener;
+import com.hivemq.extension.sdk.api.services.Services;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Spring task executor and scheduler backed by the broker's managed extension executor,
+ * so application and extension work share one pool. Tasks are accepted while embedded HiveMQ
+ * is running only, as the extension executor is created and shut down together with the broker.
+ * Pending and active tasks as well as task durations are measured for tasks submitted through this facade.
+ * Cancelled tasks and tasks dropped when HiveMQ stops no longer count as pending.
+ */
+public final class HiveMQEmbeddedTaskScheduler implements TaskScheduler, AsyncTaskExecutor, HiveMQEmbeddedLifecycleListener {
+
+    private final Supplier<ScheduledExecutorService> executorService;
+
+    private final Set<Instrumented<?>> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer tasks;
+    private final Counter rejected;
+
+    private volatile ConcurrentTaskScheduler delegate;
+
+    /**
+     * Creates a task scheduler
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedTaskScheduler(final MeterRegistry meterRegistry) {
+        this(meterRegistry, Services::extensionExecutorService);
+    }
+
+    HiveMQEmbeddedTaskScheduler(final MeterRegistry meterRegistry,
+                                final Supplier<ScheduledExecutorService> executorService) {
+
+        this.executorService = executorService;
+
+        this.tasks = Timer.builder("hivemq.executor.tasks")
+                .description("Duration of tasks run on the extension executor")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = meterRegistry.counter("hivemq.executor.rejected");
+        Gauge.builder("hivemq.executor.pending", this.pending, Set::size)
+                .description("Number of one-time tasks waiting to be run")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.executor.active", this.active, AtomicInteger::get)
+                .description("Number of tasks currently running")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onStarted() {
+        this.delegate = new ConcurrentTaskScheduler(this.executorService.get());
+    }
+
+    @Override
+    public void onStopping() {
+        this.delegate = null;
+
+        // The extension executor drops all tasks not run yet
+        this.pending.clear();
+    }
+
+    /**
+     * @return True, if tasks are accepted
+     */
+    public boolean isAvailable() {
+        return this.delegate != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        dispatch(new Instrumented<>(Executors.callable(task), false), (scheduler, instrumented) -> {
+            scheduler.execute(instrumented);
+            return null;
+        });
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return dispatch(new Instrumented<>(Executors.callable(task), false),
+                (scheduler, instrumented) -> tracked(scheduler.submit((Runnable) instrumented), instrumented));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return dispatch(new Instrumented<>(task, false),
+                (scheduler, instrumented) -> tracked(scheduler.submit((Callable<T>) instrumented), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        return dispatch(new Instrumented<>(Executors.callable(task), true),
+                (scheduler, instrumented) -> tracked(scheduler.schedule(instrumented, trigger), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Instant startTime) {
+        return dispatch(new Instrumented<>(Executors.callable(task), false),
+                (scheduler, instrumented) -> tracked(scheduler.schedule(instrumented, startTime), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Instant startTime, Duration period) {
+        return dispatch(new Instrumented<>(Executors.callable(task), true),
+                (scheduler, instrumented) -> tracked(scheduler.scheduleAtFixedRate(instrumented, startTime, period), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Duration period) {
+        return dispatch(new Instrumented<>(Executors.callable(task), true),
+                (scheduler, instrumented) -> tracked(scheduler.scheduleAtFixedRate(instrumented, period), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Instant startTime, Duration delay) {
+        return dispatch(new Instrumented<>(Executors.callable(task), true),
+                (scheduler, instrumented) -> tracked(scheduler.scheduleWithFixedDelay(instrumented, startTime, delay), instrumented));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Duration delay) {
+        return dispatch(new Instrumented<>(Executors.callable(task), true),
+                (scheduler, instrumented) -> tracked(scheduler.scheduleWithFixedDelay(instrumented, delay), instrumented));
+    }
+
+    private <T, R> R dispatch(Instrumented<T> task, Dispatch<T, R> dispatch) {
+        final ConcurrentTaskScheduler scheduler = this.delegate;
+        try {
+            if (scheduler == null)
+                throw new TaskRejectedException("Embedded HiveMQ is not running");
+
+            return dispatch.apply(scheduler, task);
+        } catch (TaskRejectedException tre) {
+            task.discarded();
+            this.rejected.increment();
+            throw tre;
+        }
+    }
+
+    private static <V> Tracked<V> tracked(Future<V> future, Instrumented<?> task) {
+        return future != null ? new Tracked<>(future, task) : null;
+    }
+
+    @FunctionalInterface
+    private interface Dispatch<T, R> {
+        R apply(ConcurrentTaskScheduler scheduler, Instrumented<T> task);
+    }
+
+    private final class Instrumented<T> implements Runnable, Callable<T> {
+
+        private final Callable<T> task;
+
+        Instrumented(Callable<T> task, boolean periodic) {
+            this.task = task;
+
+            if (!periodic)
+                pending.add(this);
+        }
+
+        @Override
+        public T call() throws Exception {
+            pending.remove(this);
+
+            active.incrementAndGet();
+            final long start = System.nanoTime();
+            try {
+                return this.task.call();
+            } finally {
+                tasks.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                call();
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new UndeclaredThrowableException(ex);
+            }
+        }
+
+        /**
+         * The task got rejected or cancelled before running
+         */
+        void discarded() {
+            pending.remove(this);
+        }
+    }
+
+    /**
+     * Future of a task, which no longer counts as pending once cancelled
+     */
+    private static final class Tracked<V> implements ScheduledFuture<V> {
+
+        private final Future<V> future;
+        private final Instrumented<?> task;
+
+        Tracked(Future<V> future, Instrumented<?> task) {
+            this.future = future;
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = this.future.cancel(mayInterruptIfRunning);
+            if (cancelled)
+                this.task.discarded();
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.future.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return this.future.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return this.future.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return this.future instanceof Delayed delayed ? delayed.getDelay(unit) : 0;
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
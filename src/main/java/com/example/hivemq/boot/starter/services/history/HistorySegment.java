@@ -0,0 +1,219 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.history;
+
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * A memory-mapped log segment, written by a single appender at a time and read concurrently.
+ * <p>
+ * Each record consists of its length, timestamp, topic length, topic, qos, payload length and payload.
+ * A record length of zero marks the end of the segment.
+ * Once deleted, the segment drops its mapping, so replays visit no more of its records.
+ */
+final class HistorySegment {
+
+    static final String suffix = ".log";
+
+    private static final int recordOverhead = 4 + 8 + 2 + 1 + 4;
+
+    private final Path file;
+    private final int size;
+    private final long firstTimestamp;
+
+    private volatile MappedByteBuffer buffer;
+
+    private volatile int end;
+    private volatile long lastTimestamp;
+
+    private HistorySegment(final Path file, final MappedByteBuffer buffer, final long firstTimestamp) {
+        this.file = file;
+        this.size = buffer.capacity();
+        this.buffer = buffer;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = firstTimestamp;
+    }
+
+    /**
+     * Creates a new segment for appending, named after its first timestamp
+     */
+    static HistorySegment create(Path folder, long firstTimestamp, int size) throws IOException {
+        final Path file = folder.resolve("%020d%s".formatted(firstTimestamp, suffix));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new HistorySegment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), firstTimestamp);
+        }
+    }
+
+    /**
+     * Opens an existing segment read-only, recovering its end and last timestamp
+     */
+    static HistorySegment open(Path file) throws IOException {
+        final String name = file.getFileName().toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final HistorySegment segment =
+                    new HistorySegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                            Long.parseLong(name.substring(0, name.length() - suffix.length())));
+            segment.recover();
+            return segment;
+        }
+    }
+
+    /**
+     * @return The number of bytes a record occupies, including the following end marker
+     */
+    static long requiredSize(int topicLength, int payloadLength) {
+        return (long) recordLength(topicLength, payloadLength) + 4;
+    }
+
+    /**
+     * Appends a record, must not be called concurrently
+     * @return False, if the segment has no room left for this record or got opened read-only
+     */
+    boolean append(long timestamp, byte[] topic, Qos qos, ByteBuffer payload) {
+
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null || buffer.isReadOnly())
+            return false;
+
+        final int length = recordLength(topic.length, payload.remaining());
+        final int start = this.end;
+
+        // Keep room for the end marker, which is zero in a freshly mapped segment
+        if (start + length + 4 > buffer.capacity())
+            return false;
+
+        int position = start + 4;
+        buffer.putLong(position, timestamp);
+        position += 8;
+        buffer.putShort(position, (short) topic.length);
+        position += 2;
+        buffer.put(position, topic);
+        position += topic.length;
+        buffer.put(position, (byte) qos.getQosNumber());
+        position += 1;
+        buffer.putInt(position, payload.remaining());
+        position += 4;
+        buffer.put(position, payload, payload.position(), payload.remaining());
+
+        // Publish the record to readers, length goes last
+        buffer.putInt(start, length);
+        this.lastTimestamp = timestamp;
+        this.end = start + length;
+
+        return true;
+    }
+
+    /**
+     * Visits all records received at or after the given time and matching the topic filter
+     * @return False, if the visitor stopped the iteration
+     */
+    boolean forEach(long from, TopicFilter filter, HiveMQEmbeddedHistoryRecord record,
+                    Predicate<HiveMQEmbeddedHistoryRecord> visitor) {
+
+        final int end = this.end;
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer == null)
+            return true;
+
+        final ByteBuffer view = buffer.asReadOnlyBuffer();
+
+        int position = 0;
+        while (position < end) {
+            final int length = view.getInt(position);
+            final long timestamp = view.getLong(position + 4);
+            final int topicLength = Short.toUnsignedInt(view.getShort(position + 12));
+
+            if (timestamp >= from) {
+                final byte[] topic = new byte[topicLength];
+                view.get(position + 14, topic);
+
+                final String decoded = new String(topic, StandardCharsets.UTF_8);
+                if (filter.matches(decoded)) {
+                    final int payloadAt = position + 14 + topicLength + 1;
+                    record.set(timestamp, decoded, Qos.valueOf(view.get(payloadAt - 1)),
+                            view.slice(payloadAt + 4, view.getInt(payloadAt)));
+
+                    if (!visitor.test(record))
+                        return false;
+                }
+            }
+
+            position += length;
+        }
+
+        return true;
+    }
+
+    long getFirstTimestamp() {
+        return this.firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return this.lastTimestamp;
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    boolean isDeleted() {
+        return this.buffer == null;
+    }
+
+    void force() {
+        final MappedByteBuffer buffer = this.buffer;
+        if (buffer != null)
+            buffer.force();
+    }
+
+    /**
+     * Drops the mapping, so it can get unmapped, and deletes the file
+     */
+    void delete() throws IOException {
+        this.buffer = null;
+        Files.deleteIfExists(this.file);
+    }
+
+    private static int recordLength(int topicLength, int payloadLength) {
+        return recordOverhead + topicLength + payloadLength;
+    }
+
+    private void recover() {
+        int position = 0;
+        while (position + 4 <= this.buffer.capacity()) {
+            final int length = this.buffer.getInt(position);
+            if (length < recordOverhead || position + length > this.buffer.capacity())
+                break;
+
+            this.lastTimestamp = this.buffer.getLong(position + 4);
+            position += length;
+        }
+
+        this.end = position;
+    }
+}
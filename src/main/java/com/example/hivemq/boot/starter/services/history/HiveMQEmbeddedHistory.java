@@ -0,0 +1,265 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.history;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.SneakyThrows;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Records inbound publishes matching the configured topic filters to memory-mapped,
+ * segment-rolled log files within the data folder, and replays them on demand.
+ * Segments are deleted once all their publishes exceed the retention time,
+ * or the oldest ones, if all segments exceed the maximum size.
+ */
+@Slf4j
+public final class HiveMQEmbeddedHistory implements HiveMQEmbeddedStage, PublishInboundInterceptor {
+
+    private static final ByteBuffer emptyPayload = ByteBuffer.allocate(0);
+
+    private final HiveMQEmbeddedProperties.History properties;
+    private final Path folder;
+    private final List<TopicFilter> topicFilters;
+    private final List<HistorySegment> segments = new ArrayList<>();
+
+    private final Counter appended;
+    private final Counter skipped;
+
+    private ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a history log
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedHistory(final HiveMQEmbeddedProperties properties, final MeterRegistry meterRegistry) {
+
+        this.properties = properties.getHistory();
+        this.folder = Path.of(properties.getData().getFolder(), this.properties.getFolder()).toAbsolutePath();
+        this.topicFilters = TopicFilter.compile(this.properties.getTopicFilters());
+
+        this.appended = meterRegistry.counter("hivemq.history.messages", "outcome", "appended");
+        this.skipped = meterRegistry.counter("hivemq.history.messages", "outcome", "skipped");
+        Gauge.builder("hivemq.history.segments", this, HiveMQEmbeddedHistory::getSegmentCount)
+                .description("Number of log segments")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.history.size", this, HiveMQEmbeddedHistory::getSize)
+                .description("Size of all log segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    @SneakyThrows({ IOException.class })
+    private void open() {
+
+        Files.createDirectories(this.folder);
+
+        try (Stream<Path> files = Files.list(this.folder)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(HistorySegment.suffix)).sorted().toList()) {
+                try {
+                    this.segments.add(HistorySegment.open(file));
+                } catch (IOException | RuntimeException ex) {
+                    log.warn("Skipping unreadable history segment '{}'.", file, ex);
+                }
+            }
+        }
+
+        if (!this.segments.isEmpty())
+            log.info("Recovered {} history segments from '{}'.", this.segments.size(), this.folder);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("hivemq-history-housekeeper").daemon().factory());
+        this.housekeeper.scheduleWithFixedDelay(this::enforceRetention, 10, 10, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    @Synchronized
+    private void close() {
+        this.housekeeper.shutdownNow();
+        if (!this.segments.isEmpty())
+            this.segments.getLast().force();
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "history";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        if (!TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        if (append(packet)) {
+            this.appended.increment();
+        } else {
+            this.skipped.increment();
+        }
+    }
+
+    /**
+     * Replays recorded publishes in order of arrival
+     * @param topicFilter Topic filter of publishes to replay
+     * @param from Time of the first publish to replay
+     * @param visitor Called for each publish, returns false to stop replaying
+     * @return The number of replayed publishes
+     * @throws IllegalArgumentException If the topic filter is malformed
+     */
+    public long replay(@NotNull String topicFilter, @NotNull Instant from,
+                       @NotNull Predicate<HiveMQEmbeddedHistoryRecord> visitor) {
+        return replay(TopicFilter.compile(topicFilter), from, visitor);
+    }
+
+    /**
+     * Replays recorded publishes in order of arrival
+     * @param filter Compiled topic filter of publishes to replay
+     * @param from Time of the first publish to replay
+     * @param visitor Called for each publish, returns false to stop replaying
+     * @return The number of replayed publishes
+     */
+    public long replay(@NotNull TopicFilter filter, @NotNull Instant from,
+                       @NotNull Predicate<HiveMQEmbeddedHistoryRecord> visitor) {
+
+        final long fromMillis = from.toEpochMilli();
+        final HiveMQEmbeddedHistoryRecord record = new HiveMQEmbeddedHistoryRecord();
+        final long[] count = { 0 };
+
+        for (HistorySegment segment : snapshot()) {
+            // Segments deleted by retention meanwhile are skipped
+            if (segment.isDeleted() || segment.getLastTimestamp() < fromMillis)
+                continue;
+
+            final boolean proceed = segment.forEach(fromMillis, filter, record, r -> {
+                count[0]++;
+                return visitor.test(r);
+            });
+
+            if (!proceed)
+                break;
+        }
+
+        return count[0];
+    }
+
+    @Synchronized
+    private boolean append(PublishPacket packet) {
+
+        final byte[] topic = packet.getTopic().getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer payload = packet.getPayload().orElse(emptyPayload);
+
+        if (!this.segments.isEmpty()
+                && this.segments.getLast().append(packet.getTimestamp(), topic, packet.getQos(), payload))
+            return true;
+
+        // Publishes exceeding the segment size are never recorded
+        if (HistorySegment.requiredSize(topic.length, payload.remaining()) > this.properties.getSegmentSize().toBytes())
+            return false;
+
+        // Roll over to a new segment ...
+        try {
+            if (!this.segments.isEmpty())
+                this.segments.getLast().force();
+
+            final long first = Math.max(packet.getTimestamp(),
+                    this.segments.isEmpty() ? 0 : this.segments.getLast().getFirstTimestamp() + 1);
+            final HistorySegment segment = HistorySegment.create(this.folder, first,
+                    (int) Math.min(Integer.MAX_VALUE, this.properties.getSegmentSize().toBytes()));
+            this.segments.add(segment);
+
+            return segment.append(packet.getTimestamp(), topic, packet.getQos(), payload);
+        } catch (IOException ioe) {
+            log.error("Failed to create history segment in '{}'.", this.folder, ioe);
+            return false;
+        }
+    }
+
+    @Synchronized
+    private List<HistorySegment> snapshot() {
+        return List.copyOf(this.segments);
+    }
+
+    @Synchronized
+    private void enforceRetention() {
+
+        final long expired = System.currentTimeMillis() - this.properties.getRetention().toMillis();
+        long size = getSize();
+
+        // The active segment is never deleted
+        final Iterator<HistorySegment> iterator = this.segments.iterator();
+        while (iterator.hasNext() && this.segments.size() > 1) {
+            final HistorySegment segment = iterator.next();
+            if (segment.getLastTimestamp() >= expired && size <= this.properties.getMaxSize().toBytes())
+                break;
+
+            iterator.remove();
+            size -= segment.getSize();
+            try {
+                segment.delete();
+            } catch (IOException ioe) {
+                log.warn("Failed to delete history segment, retention retries after the next startup.", ioe);
+            }
+        }
+    }
+
+    @Synchronized
+    private int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    @Synchronized
+    private long getSize() {
+        return this.segments.stream().mapToLong(HistorySegment::getSize).sum();
+    }
+}
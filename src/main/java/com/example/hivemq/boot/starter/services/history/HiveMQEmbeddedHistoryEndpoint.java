@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.history;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.OptionalParameter;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Actuator endpoint to replay the history log
+ */
+@Endpoint(id = "hivemqhistory")
+@RequiredArgsConstructor
+public class HiveMQEmbeddedHistoryEndpoint {
+
+    private static final int defaultLimit = 100;
+    private static final int maxLimit = 10_000;
+
+    private final HiveMQEmbeddedHistory history;
+    private final HiveMQEmbeddedProperties.History properties;
+
+    /**
+     * Replays recorded publishes
+     * @param topicFilter Topic filter of publishes to replay
+     * @param from ISO-8601 time of the first publish to replay, defaults to the retention time ago
+     * @param limit Maximum number of publishes to return
+     * @return The replayed publishes with base64 encoded payloads
+     */
+    @ReadOperation
+    public List<Entry> replay(String topicFilter, @OptionalParameter String from, @OptionalParameter Integer limit) {
+
+        final TopicFilter filter;
+        try {
+            filter = TopicFilter.compile(topicFilter);
+        } catch (IllegalArgumentException iae) {
+            throw new InvalidEndpointRequestException("Invalid topic filter '" + topicFilter + "'", iae.getMessage());
+        }
+
+        final Instant start;
+        try {
+            start = Optional.ofNullable(from)
+                    .map(Instant::parse)
+                    .orElseGet(() -> Instant.now().minus(this.properties.getRetention()));
+        } catch (DateTimeParseException dtpe) {
+            throw new InvalidEndpointRequestException("Invalid time '" + from + "'", "From must be an ISO-8601 instant");
+        }
+
+        final int max = Math.min(maxLimit, Optional.ofNullable(limit).orElse(defaultLimit));
+        final List<Entry> entries = new ArrayList<>(Math.min(max, defaultLimit));
+
+        this.history.replay(filter, start,
+                record -> {
+                    entries.add(new Entry(Instant.ofEpochMilli(record.getTimestamp()), record.getTopic(),
+                            record.getQos().getQosNumber(), encode(record.getPayload())));
+                    return entries.size() < max;
+                });
+
+        return entries;
+    }
+
+    private static String encode(ByteBuffer payload) {
+        return new String(Base64.getEncoder().encode(payload).array(), StandardCharsets.US_ASCII);
+    }
+
+    public record Entry(Instant timestamp, String topic, int qos, String payload) {}
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.history;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A publish read from the history log.
+ * Instances get reused while replaying, so a record is only valid during the callback.
+ */
+public final class HiveMQEmbeddedHistoryRecord {
+
+    private long timestamp;
+    private String topic;
+    private Qos qos;
+    private ByteBuffer payload;
+
+    HiveMQEmbeddedHistoryRecord() {}
+
+    /**
+     * @return The time the broker received the publish, in milliseconds since epoch
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @return The publish topic
+     */
+    public @NotNull String getTopic() {
+        return this.topic;
+    }
+
+    /**
+     * @return The publish quality of service
+     */
+    public @NotNull Qos getQos() {
+        return this.qos;
+    }
+
+    /**
+     * @return The read-only payload, directly backed by the memory-mapped log
+     */
+    public @NotNull ByteBuffer getPayload() {
+        return this.payload;
+    }
+
+    void set(long timestamp, String topic, Qos qos, ByteBuffer payload) {
+        this.timestamp = timestamp;
+        this.topic = topic;
+        this.qos = qos;
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.inventory;
+
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.general.IterationCallback;
+import com.hivemq.extension.sdk.api.services.session.SessionInformation;
+import com.hivemq.extension.sdk.api.services.subscription.SubscriptionsForClientResult;
+import com.hivemq.extension.sdk.api.services.subscription.TopicSubscription;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming inventory of client sessions and subscriptions.
+ * Sessions and subscriptions are iterated one by one and pages are collected in bounded heaps,
+ * so neither store gets materialized in memory. Pages are ordered by client id, the cursor is
+ * the last client id of the previous page, so pagination is stable while clients come and go.
+ * HiveMQ must be started to use this service.
+ */
+public final class HiveMQEmbeddedInventory {
+
+    /**
+     * Maximum number of distinct topic filters to count subscribers of
+     */
+    static final int maxFilters = 100_000;
+
+    private final Function<IterationCallback<SessionInformation>, CompletableFuture<Void>> sessions;
+    private final Function<IterationCallback<SubscriptionsForClientResult>, CompletableFuture<Void>> subscriptions;
+
+    /**
+     * Creates an inventory of embedded HiveMQ
+     */
+    public HiveMQEmbeddedInventory() {
+        this(callback -> Services.clientService().iterateAllClients(callback),
+                callback -> Services.subscriptionStore().iterateAllSubscriptions(callback));
+    }
+
+    HiveMQEmbeddedInventory(Function<IterationCallback<SessionInformation>, CompletableFuture<Void>> sessions,
+                            Function<IterationCallback<SubscriptionsForClientResult>, CompletableFuture<Void>> subscriptions) {
+        this.sessions = sessions;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Lists client sessions
+     * @param clientIdPattern Pattern of client ids to list, supporting the wildcards '*' and '?', or null for all
+     * @param cursor The next cursor of the previous page, or null for the first page
+     * @param limit Maximum number of sessions to return
+     * @return Future completing with a page of sessions
+     */
+    public @NotNull CompletableFuture<Page<Session>> sessions(@Nullable String clientIdPattern,
+                                                             @Nullable String cursor, int limit) {
+
+        final Predicate<String> clients = clientFilter(clientIdPattern, cursor);
+        final PageCollector<Session> collector = new PageCollector<>(limit);
+
+        return this.sessions.apply((context, session) -> {
+                    if (clients.test(session.getClientIdentifier()))
+                        collector.add(new Session(session.getClientIdentifier(), session.isConnected(),
+                                session.getSessionExpiryInterval()));
+                })
+                .thenApply(ignored -> collector.page());
+    }
+
+    /**
+     * Lists subscriptions per client
+     * @param clientIdPattern Pattern of client ids to list, supporting the wildcards '*' and '?', or null for all
+     * @param topicFilter Topic filter the listed subscriptions must fall within, or null for all
+     * @param cursor The next cursor of the previous page, or null for the first page
+     * @param limit Maximum number of clients to return
+     * @return Future completing with a page of clients and their matching subscriptions
+     * @throws IllegalArgumentException If the topic filter is malformed
+     */
+    public @NotNull CompletableFuture<Page<ClientSubscriptions>> subscriptions(@Nullable String clientIdPattern,
+                                                                              @Nullable String topicFilter,
+                                                                              @Nullable String cursor, int limit) {
+
+        final Predicate<String> clients = clientFilter(clientIdPattern, cursor);
+        final TopicFilter filter = topicFilter != null ? TopicFilter.compile(topicFilter) : null;
+        final PageCollector<ClientSubscriptions> collector = new PageCollector<>(limit);
+
+        return this.subscriptions.apply((context, result) -> {
+                    if (!clients.test(result.getClientId()))
+                        return;
+
+                    final List<Subscription> matching = new ArrayList<>(result.getSubscriptions().size());
+                    for (TopicSubscription subscription : result.getSubscriptions()) {
+                        if (filter == null || filter.matches(subscription.getTopicFilter()))
+                            matching.add(new Subscription(subscription.getTopicFilter(), subscription.getQos().getQosNumber()));
+                    }
+
+                    if (!matching.isEmpty())
+                        collector.add(new ClientSubscriptions(result.getClientId(), matching));
+                })
+                .thenApply(ignored -> collector.page());
+    }
+
+    /**
+     * Aggregates statistics of all subscriptions
+     * @param top Number of topic filters with most subscribers to return
+     * @return Future completing with the statistics
+     */
+    public @NotNull CompletableFuture<Statistics> statistics(int top) {
+
+        final Map<String, Long> subscriptionsPerClient = new LinkedHashMap<>();
+        final Map<String, Integer> subscribers = new HashMap<>();
+        final long[] totals = new long[2];
+        final boolean[] truncated = { false };
+
+        return this.subscriptions.apply((context, result) -> {
+                    synchronized (subscribers) {
+                        final int count = result.getSubscriptions().size();
+                        totals[0]++;
+                        totals[1] += count;
+                        subscriptionsPerClient.merge(bucket(count), 1L, Long::sum);
+
+                        for (TopicSubscription subscription : result.getSubscriptions()) {
+                            if (subscribers.size() < maxFilters || subscribers.containsKey(subscription.getTopicFilter())) {
+                                subscribers.merge(subscription.getTopicFilter(), 1, Integer::sum);
+                            } else {
+                                truncated[0] = true;
+                            }
+                        }
+                    }
+                })
+                .thenApply(ignored -> {
+                    synchronized (subscribers) {
+                        final Comparator<FanOut> bySubscribers = Comparator.comparingLong(FanOut::subscribers);
+                        final Map<String, Long> fanOut = new LinkedHashMap<>();
+                        final PriorityQueue<FanOut> heaviest = new PriorityQueue<>(bySubscribers);
+
+                        subscribers.forEach((filter, count) -> {
+                            fanOut.merge(bucket(count), 1L, Long::sum);
+                            heaviest.add(new FanOut(filter, count));
+                            if (heaviest.size() > top)
+                                heaviest.poll();
+                        });
+
+                        return new Statistics(totals[0], totals[1], subscribers.size(),
+                                sortedBuckets(subscriptionsPerClient), sortedBuckets(fanOut),
+                                heaviest.stream().sorted(bySubscribers.reversed()).toList(), truncated[0]);
+                    }
+                });
+    }
+
+    /**
+     * @param count A positive count
+     * @return Label of the power of two bucket the count falls into, e.g. '4-7'
+     */
+    static String bucket(long count) {
+        if (count <= 1)
+            return Long.toString(count);
+
+        final long lower = Long.highestOneBit(count);
+        return lower + "-" + (2 * lower - 1);
+    }
+
+    private static Map<String, Long> sortedBuckets(Map<String, Long> buckets) {
+        final Map<String, Long> sorted = new LinkedHashMap<>();
+        buckets.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> Long.parseLong(entry.getKey().split("-")[0])))
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    private static Predicate<String> clientFilter(String clientIdPattern, String cursor) {
+        final Predicate<String> afterCursor = cursor != null ? clientId -> clientId.compareTo(cursor) > 0 : clientId -> true;
+        if (clientIdPattern == null || clientIdPattern.equals("*"))
+            return afterCursor;
+
+        final StringBuilder regex = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        for (char c : clientIdPattern.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (!literal.isEmpty())
+                    regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty())
+            regex.append(Pattern.quote(literal.toString()));
+
+        final Pattern pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        return afterCursor.and(clientId -> pattern.matcher(clientId).matches());
+    }
+
+    /**
+     * Keeps the page of items with the lowest client ids
+     */
+    private static final class PageCollector<T extends Keyed> {
+
+        private final int limit;
+        private final PriorityQueue<T> heap;
+        private long matched;
+
+        PageCollector(int limit) {
+            this.limit = Math.max(1, limit);
+            this.heap = new PriorityQueue<>(Comparator.comparing(Keyed::clientId).reversed());
+        }
+
+        synchronized void add(T item) {
+            this.matched++;
+            if (this.heap.size() < this.limit) {
+                this.heap.add(item);
+            } else if (item.clientId().compareTo(this.heap.peek().clientId()) < 0) {
+                this.heap.poll();
+                this.heap.add(item);
+            }
+        }
+
+        synchronized Page<T> page() {
+            final List<T> items = this.heap.stream().sorted(Comparator.comparing(Keyed::clientId)).toList();
+            final String next = this.matched > items.size() ? items.getLast().clientId() : null;
+            return new Page<>(items, next, this.matched);
+        }
+    }
+
+    interface Keyed {
+        String clientId();
+    }
+
+    /**
+     * A page of items ordered by client id
+     * @param items The items of this page
+     * @param next Cursor of the next page, null if this is the last page
+     * @param matched Number of items matching in total, starting at the cursor
+     */
+    public record Page<T>(@NotNull List<T> items, @Nullable String next, long matched) {}
+
+    /**
+     * A client session
+     * @param clientId The client id
+     * @param connected Whether the client is connected
+     * @param sessionExpiryInterval Session expiry interval in seconds
+     */
+    public record Session(@NotNull String clientId, boolean connected, long sessionExpiryInterval) implements Keyed {}
+
+    /**
+     * Subscriptions of a client
+     * @param clientId The client id
+     * @param subscriptions The subscriptions
+     */
+    public record ClientSubscriptions(@NotNull String clientId, @NotNull List<Subscription> subscriptions) implements Keyed {}
+
+    /**
+     * A subscription
+     * @param topicFilter The topic filter
+     * @param qos The maximum quality of service
+     */
+    public record Subscription(@NotNull String topicFilter, int qos) {}
+
+    /**
+     * Subscribers of a topic filter
+     * @param topicFilter The topic filter
+     * @param subscribers Number of clients subscribed to this exact filter
+     */
+    public record FanOut(@NotNull String topicFilter, long subscribers) {}
+
+    /**
+     * Statistics of all subscriptions
+     * @param clients Number of clients with subscriptions
+     * @param subscriptions Number of subscriptions
+     * @param topicFilters Number of distinct topic filters counted
+     * @param subscriptionsPerClient Number of clients by bucket of subscriptions per client
+     * @param fanOut Number of topic filters by bucket of subscribers per filter
+     * @param top Topic filters with most subscribers
+     * @param truncated Whether there were more distinct topic filters than counted
+     */
+    public record Statistics(long clients, long subscriptions, long topicFilters,
+                             @NotNull Map<String, Long> subscriptionsPerClient, @NotNull Map<String, Long> fanOut,
+                             @NotNull List<FanOut> top, boolean truncated) {}
+}
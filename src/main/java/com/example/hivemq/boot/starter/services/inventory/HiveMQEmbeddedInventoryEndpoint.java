@@ -0,0 +1,97 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.inventory;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.OptionalParameter;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Actuator endpoint to page through client sessions and subscriptions
+ */
+@Endpoint(id = "hivemqinventory")
+@RequiredArgsConstructor
+public class HiveMQEmbeddedInventoryEndpoint {
+
+    private static final int defaultLimit = 100;
+    private static final int maxLimit = 10_000;
+    private static final int defaultTop = 10;
+    private static final long timeout = 30;
+
+    private final HiveMQEmbeddedInventory inventory;
+
+    /**
+     * Aggregates statistics of all subscriptions
+     * @param top Number of topic filters with most subscribers to return
+     * @return The statistics
+     */
+    @ReadOperation
+    public HiveMQEmbeddedInventory.Statistics statistics(@OptionalParameter Integer top) {
+        return await(this.inventory.statistics(Math.min(maxLimit, Optional.ofNullable(top).orElse(defaultTop))));
+    }
+
+    /**
+     * Lists a page of sessions or subscriptions, ordered by client id
+     * @param view Either 'sessions' or 'subscriptions'
+     * @param clientId Pattern of client ids to list, supporting the wildcards '*' and '?'
+     * @param topicFilter Topic filter the listed subscriptions must fall within
+     * @param cursor The next cursor of the previous page
+     * @param limit Maximum number of clients to return
+     * @return The page, or null for an unknown view
+     */
+    @ReadOperation
+    public HiveMQEmbeddedInventory.Page<?> list(@Selector String view,
+                                                @OptionalParameter String clientId,
+                                                @OptionalParameter String topicFilter,
+                                                @OptionalParameter String cursor,
+                                                @OptionalParameter Integer limit) {
+
+        final int max = Math.min(maxLimit, Optional.ofNullable(limit).orElse(defaultLimit));
+        return switch (view) {
+            case "sessions" -> await(this.inventory.sessions(clientId, cursor, max));
+            case "subscriptions" -> {
+                final CompletableFuture<HiveMQEmbeddedInventory.Page<HiveMQEmbeddedInventory.ClientSubscriptions>> page;
+                try {
+                    page = this.inventory.subscriptions(clientId, topicFilter, cursor, max);
+                } catch (IllegalArgumentException iae) {
+                    throw new InvalidEndpointRequestException("Invalid topic filter '" + topicFilter + "'", iae.getMessage());
+                }
+                yield await(page);
+            }
+            default -> null;
+        };
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.orTimeout(timeout, TimeUnit.SECONDS).join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof TimeoutException)
+                throw new InvalidEndpointRequestException("Iterating HiveMQ took longer than " + timeout + "s",
+                        "Narrow down the listed clients by client id or topic filter");
+            throw ce;
+        }
+    }
+}
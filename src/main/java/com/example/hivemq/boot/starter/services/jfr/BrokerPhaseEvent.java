@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Startup or shutdown of the embedded mqtt-broker
+ */
+@Name("hivemq.BrokerPhase")
+@Label("HiveMQ Broker Phase")
+@Category("HiveMQ")
+@Description("Startup or shutdown of the embedded mqtt-broker")
+@StackTrace(false)
+@Registered(false)
+public final class BrokerPhaseEvent extends Event {
+
+    public static final String start = "start";
+    public static final String stop = "stop";
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Success")
+    private boolean success;
+
+    public BrokerPhaseEvent(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Marks the phase as completed successfully
+     */
+    public void succeeded() {
+        this.success = true;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Disconnect of an mqtt client
+ */
+@Name("hivemq.ClientDisconnect")
+@Label("HiveMQ Client Disconnect")
+@Category({ "HiveMQ", "Clients" })
+@Description("Disconnect of an mqtt client")
+@StackTrace(false)
+@Registered(false)
+final class ClientDisconnectEvent extends Event {
+
+    @Label("Client Id")
+    String clientId;
+
+    @Label("Cause")
+    @Description("One of client, server, connection-lost or authentication-failed")
+    String cause;
+
+    @Label("Reason Code")
+    String reasonCode;
+}
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import com.hivemq.embedded.EmbeddedExtension;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Start or stop of an embedded extension
+ */
+@Name("hivemq.ExtensionPhase")
+@Label("HiveMQ Extension Phase")
+@Category("HiveMQ")
+@Description("Start or stop of an embedded extension")
+@StackTrace(false)
+@Registered(false)
+public final class ExtensionPhaseEvent extends Event {
+
+    public static final String start = "start";
+    public static final String stop = "stop";
+
+    @Label("Extension Id")
+    private String id;
+
+    @Label("Extension Name")
+    private String name;
+
+    @Label("Extension Version")
+    private String version;
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Success")
+    private boolean success;
+
+    /**
+     * Creates an event for an embedded extension
+     * @param extension The embedded extension
+     * @param phase Either {@link #start} or {@link #stop}
+     * @return The event, not yet begun
+     */
+    public static ExtensionPhaseEvent of(EmbeddedExtension extension, String phase) {
+        final ExtensionPhaseEvent event = new ExtensionPhaseEvent();
+        event.id = extension.getId();
+        event.name = extension.getName();
+        event.version = extension.getVersion();
+        event.phase = phase;
+        return event;
+    }
+
+    /**
+     * Marks the phase as completed successfully
+     */
+    public void succeeded() {
+        this.success = true;
+    }
+}
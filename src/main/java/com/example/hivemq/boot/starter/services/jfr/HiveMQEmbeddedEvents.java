@@ -0,0 +1,52 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Registry of all custom flight recorder events. Events are not registered by default,
+ * which makes them disabled regardless of any recording, so emitting them costs nothing.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HiveMQEmbeddedEvents {
+
+    private static final List<Class<? extends Event>> events = List.of(
+            BrokerPhaseEvent.class,
+            ExtensionPhaseEvent.class,
+            ClientConnectEvent.class,
+            ClientDisconnectEvent.class,
+            PublishDeliveryEvent.class);
+
+    /**
+     * Registers all events, so recordings can enable them
+     */
+    public static void register() {
+        events.forEach(FlightRecorder::register);
+    }
+
+    /**
+     * Unregisters all events
+     */
+    public static void unregister() {
+        events.forEach(FlightRecorder::unregister);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedClientListener;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ClientInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionLostInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionStartInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ServerInitiatedDisconnectInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.packets.connect.ConnectPacket;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import org.springframework.core.Ordered;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Emits flight recorder events for client connects and disconnects as well as sampled publish deliveries.
+ * Events for broker and extension phases are emitted by the service and the extensions collector themselves.
+ * Each event is only populated if a running recording enabled it.
+ */
+public final class HiveMQEmbeddedFlightRecorder implements HiveMQEmbeddedStage, HiveMQEmbeddedClientListener, PublishOutboundInterceptor {
+
+    private final HiveMQEmbeddedProperties.Jfr properties;
+
+    /**
+     * Creates a flight recorder stage and registers all events
+     * @param properties Flight recorder configuration
+     */
+    public HiveMQEmbeddedFlightRecorder(final HiveMQEmbeddedProperties.Jfr properties) {
+        this.properties = properties;
+
+        HiveMQEmbeddedEvents.register();
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "flight-recorder";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        if (this.properties.getPublishSampleRate() > 0)
+            clientContext.addPublishOutboundInterceptor(this);
+    }
+
+    @Override
+    public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                  @NotNull PublishOutboundOutput publishOutboundOutput) {
+
+        if (ThreadLocalRandom.current().nextDouble() >= this.properties.getPublishSampleRate())
+            return;
+
+        final PublishDeliveryEvent event = new PublishDeliveryEvent();
+        if (!event.shouldCommit())
+            return;
+
+        final PublishPacket packet = publishOutboundInput.getPublishPacket();
+        event.clientId = publishOutboundInput.getClientInformation().getClientId();
+        event.topic = packet.getTopic();
+        event.qos = packet.getQos().getQosNumber();
+        event.payloadSize = packet.getPayload().map(ByteBuffer::remaining).orElse(0);
+        event.latency = Math.max(0, System.currentTimeMillis() - packet.getTimestamp());
+        event.commit();
+    }
+
+    @Override
+    public void onMqttConnectionStart(@NotNull ConnectionStartInput connectionStartInput) {
+
+        final ClientConnectEvent event = new ClientConnectEvent();
+        if (!event.shouldCommit())
+            return;
+
+        final ConnectPacket packet = connectionStartInput.getConnectPacket();
+        event.clientId = connectionStartInput.getClientInformation().getClientId();
+        event.mqttVersion = packet.getMqttVersion().name();
+        event.cleanStart = packet.getCleanStart();
+        event.keepAlive = packet.getKeepAlive();
+        event.commit();
+    }
+
+    @Override
+    public void onClientInitiatedDisconnect(@NotNull ClientInitiatedDisconnectInput clientInitiatedDisconnectInput) {
+        disconnected(clientInitiatedDisconnectInput, "client");
+    }
+
+    @Override
+    public void onServerInitiatedDisconnect(@NotNull ServerInitiatedDisconnectInput serverInitiatedDisconnectInput) {
+        disconnected(serverInitiatedDisconnectInput, "server");
+    }
+
+    @Override
+    public void onConnectionLost(@NotNull ConnectionLostInput connectionLostInput) {
+        disconnected(connectionLostInput, "connection-lost");
+    }
+
+    @Override
+    public void onAuthenticationFailedDisconnect(@NotNull AuthenticationFailedInput authenticationFailedInput) {
+        disconnected(authenticationFailedInput, "authentication-failed");
+    }
+
+    private static void disconnected(DisconnectEventInput input, String cause) {
+
+        final ClientDisconnectEvent event = new ClientDisconnectEvent();
+        if (!event.shouldCommit())
+            return;
+
+        event.clientId = input.getClientInformation().getClientId();
+        event.cause = cause;
+        event.reasonCode = input.getReasonCode().map(Enum::name).orElse(null);
+        event.commit();
+    }
+}
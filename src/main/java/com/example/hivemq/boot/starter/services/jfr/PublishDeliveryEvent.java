@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Sampled delivery of a publish to a subscriber
+ */
+@Name("hivemq.PublishDelivery")
+@Label("HiveMQ Publish Delivery")
+@Category({ "HiveMQ", "Publishes" })
+@Description("Sampled delivery of a publish to a subscriber, with the latency since its arrival")
+@StackTrace(false)
+@Registered(false)
+final class PublishDeliveryEvent extends Event {
+
+    @Label("Client Id")
+    @Description("Client receiving the publish")
+    String clientId;
+
+    @Label("Topic")
+    String topic;
+
+    @Label("QoS")
+    int qos;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadSize;
+
+    @Label("Latency")
+    @Description("Time from arrival of the publish until its delivery")
+    @Timespan(Timespan.MILLISECONDS)
+    long latency;
+}
@@ -0,0 +1,283 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lag;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedLifecycleListener;
+import com.hivemq.extension.sdk.api.services.Services;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Watchdog detecting blocking work on the extension executor and the broker's I/O threads.
+ * <p>
+ * The extension executor is probed with a task every interval, measuring its scheduling delay.
+ * While a probe is pending longer than the threshold, the stack traces of the busy executor threads are logged.
+ * The I/O threads are not accessible through the extension SDK, so they are sampled instead:
+ * An I/O thread blocked or waiting longer than the threshold gets its stack trace logged.
+ */
+@Slf4j
+public final class HiveMQEmbeddedLagMonitor implements HiveMQEmbeddedLifecycleListener {
+
+    private static final Duration ioThreadRefresh = Duration.ofMinutes(1);
+
+    private final HiveMQEmbeddedProperties.LagMonitor properties;
+    private final Supplier<Executor> extensionExecutor;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final Timer extensionLag;
+    private final Timer ioBlocked;
+    private final Counter extensionStalls;
+    private final Counter ioStalls;
+
+    // Executor threads are learned from the probes running on them
+    private final Set<Thread> executorThreads = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> ioBlockedSince = new HashMap<>();
+    private final Set<Long> ioReported = new HashSet<>();
+
+    // The I/O threads are resolved rarely, sampling only them by id
+    private long[] ioThreadIds = new long[0];
+    private long ioThreadsResolved;
+
+    private volatile Probe probe;
+    private volatile boolean running = false;
+    private Thread watchdog;
+
+    /**
+     * Creates a lag monitor
+     * @param properties Lag monitor configuration
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedLagMonitor(final HiveMQEmbeddedProperties.LagMonitor properties,
+                                    final MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, Services::extensionExecutorService);
+    }
+
+    HiveMQEmbeddedLagMonitor(final HiveMQEmbeddedProperties.LagMonitor properties,
+                             final MeterRegistry meterRegistry,
+                             final Supplier<Executor> extensionExecutor) {
+
+        this.properties = properties;
+        this.extensionExecutor = extensionExecutor;
+
+        this.extensionLag = Timer.builder("hivemq.lag")
+                .description("Scheduling delay of probe tasks")
+                .tag("executor", "extension")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.ioBlocked = Timer.builder("hivemq.lag.blocked")
+                .description("Time I/O threads were observed blocked or waiting")
+                .tag("executor", "io")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.extensionStalls = meterRegistry.counter("hivemq.lag.stalls", "executor", "extension");
+        this.ioStalls = meterRegistry.counter("hivemq.lag.stalls", "executor", "io");
+    }
+
+    @Override
+    @Synchronized
+    public void onStarted() {
+        if (this.running)
+            return;
+
+        this.running = true;
+        this.watchdog = Thread.ofPlatform()
+                .name("hivemq-lag-monitor")
+                .daemon()
+                .start(this::watch);
+    }
+
+    @Override
+    @PreDestroy
+    @Synchronized
+    public void onStopping() {
+        if (!this.running)
+            return;
+
+        this.running = false;
+        this.watchdog.interrupt();
+    }
+
+    private void watch() {
+        while (this.running) {
+            try {
+                check();
+                Thread.sleep(this.properties.getInterval());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.warn("Lag monitor failed to check executors.", ex);
+            }
+        }
+    }
+
+    /**
+     * Probes the extension executor and samples the I/O threads once
+     */
+    void check() {
+        checkExtensionExecutor();
+        checkIoThreads();
+    }
+
+    private void checkExtensionExecutor() {
+
+        final Probe pending = this.probe;
+        if (pending == null || pending.done) {
+            final Probe next = new Probe();
+            this.probe = next;
+            try {
+                this.extensionExecutor.get().execute(next);
+            } catch (RejectedExecutionException ree) {
+                this.probe = null;
+            }
+            return;
+        }
+
+        final long lag = System.nanoTime() - pending.submitted;
+        if (lag < this.properties.getThreshold().toNanos() || pending.reported)
+            return;
+
+        pending.reported = true;
+        this.extensionStalls.increment();
+        this.executorThreads.removeIf(thread -> !thread.isAlive());
+
+        log.warn("Extension executor lags {} ms behind, busy executor threads:\n{}",
+                TimeUnit.NANOSECONDS.toMillis(lag),
+                this.executorThreads.stream()
+                        .filter(HiveMQEmbeddedLagMonitor::isBusy)
+                        .map(HiveMQEmbeddedLagMonitor::format)
+                        .collect(Collectors.joining("\n")));
+    }
+
+    private void checkIoThreads() {
+
+        if (this.properties.getIoThreadPrefixes().isEmpty())
+            return;
+
+        final long now = System.nanoTime();
+        if (this.ioThreadIds.length == 0 || now - this.ioThreadsResolved >= ioThreadRefresh.toNanos())
+            resolveIoThreads(now);
+
+        final Set<Long> seen = new HashSet<>();
+        boolean terminated = false;
+
+        for (ThreadInfo info : this.threads.getThreadInfo(this.ioThreadIds, 1)) {
+            if (info == null) {
+                terminated = true;
+                continue;
+            }
+
+            final long id = info.getThreadId();
+            seen.add(id);
+
+            // Idle event loops are runnable within their selector
+            if (info.getThreadState() == Thread.State.RUNNABLE || info.getThreadState() == Thread.State.NEW) {
+                unblocked(id, now);
+                continue;
+            }
+
+            final long since = this.ioBlockedSince.computeIfAbsent(id, ignored -> now);
+            if (now - since >= this.properties.getThreshold().toNanos() && this.ioReported.add(id)) {
+                this.ioStalls.increment();
+
+                final ThreadInfo stack = this.threads.getThreadInfo(id, Integer.MAX_VALUE);
+                log.warn("I/O thread blocked for {} ms:\n{}", TimeUnit.NANOSECONDS.toMillis(now - since),
+                        stack != null ? format(stack) : info.getThreadName());
+            }
+        }
+
+        // Forget terminated threads
+        Set.copyOf(this.ioBlockedSince.keySet()).stream()
+                .filter(id -> !seen.contains(id))
+                .forEach(id -> unblocked(id, now));
+
+        if (terminated)
+            resolveIoThreads(now);
+    }
+
+    /**
+     * Resolves the ids of the I/O threads, without their stack traces
+     */
+    private void resolveIoThreads(long now) {
+        this.ioThreadIds = Arrays.stream(this.threads.getThreadInfo(this.threads.getAllThreadIds(), 0))
+                .filter(info -> info != null && this.properties.getIoThreadPrefixes().stream()
+                        .anyMatch(info.getThreadName()::startsWith))
+                .mapToLong(ThreadInfo::getThreadId)
+                .toArray();
+        this.ioThreadsResolved = now;
+    }
+
+    private void unblocked(long id, long now) {
+        final Long since = this.ioBlockedSince.remove(id);
+        if (since != null)
+            this.ioBlocked.record(now - since, TimeUnit.NANOSECONDS);
+
+        this.ioReported.remove(id);
+    }
+
+    // Idle pool threads wait for their next task
+    private static boolean isBusy(Thread thread) {
+        return Arrays.stream(thread.getStackTrace())
+                .noneMatch(frame -> frame.getMethodName().equals("getTask"));
+    }
+
+    private static String format(Thread thread) {
+        return "\"" + thread.getName() + "\" " + thread.getState() + Arrays.stream(thread.getStackTrace())
+                .map(frame -> "\n\tat " + frame)
+                .collect(Collectors.joining());
+    }
+
+    private static String format(ThreadInfo info) {
+        return "\"" + info.getThreadName() + "\" " + info.getThreadState() + Arrays.stream(info.getStackTrace())
+                .map(frame -> "\n\tat " + frame)
+                .collect(Collectors.joining());
+    }
+
+    private final class Probe implements Runnable {
+
+        private final long submitted = System.nanoTime();
+        private volatile boolean done = false;
+        private boolean reported = false;
+
+        @Override
+        public void run() {
+            executorThreads.add(Thread.currentThread());
+            extensionLag.record(System.nanoTime() - this.submitted, TimeUnit.NANOSECONDS);
+            this.done = true;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lastvalue;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Synchronized;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the last inbound publish per topic matching the configured topic filters.
+ * Lookups are lock-free hash map reads, updates are serialized. If the configured
+ * number of entries or size is exceeded, entries are evicted in order of their last
+ * update, except recently read ones, which get a second chance (approximated LRU).
+ */
+public final class HiveMQEmbeddedLastValueCache implements LastValueCache, HiveMQEmbeddedStage, PublishInboundInterceptor {
+
+    /**
+     * Estimated heap overhead of an entry beyond its topic and payload
+     */
+    static final int entryOverhead = 128;
+
+    private static final ByteBuffer emptyPayload = ByteBuffer.allocate(0);
+
+    private final HiveMQEmbeddedProperties.LastValue properties;
+    private final List<TopicFilter> topicFilters;
+    private final long maxSize;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> updateOrder = new LinkedHashMap<>();
+    private long size = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     * Creates a last value cache
+     * @param properties Last value cache configuration
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedLastValueCache(final HiveMQEmbeddedProperties.LastValue properties,
+                                        final MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+        this.topicFilters = TopicFilter.compile(properties.getTopicFilters());
+        this.maxSize = properties.getMaxSize().toBytes();
+
+        this.hits = meterRegistry.counter("hivemq.lastvalue.lookups", "outcome", "hit");
+        this.misses = meterRegistry.counter("hivemq.lastvalue.lookups", "outcome", "miss");
+        this.evictions = meterRegistry.counter("hivemq.lastvalue.evictions");
+        Gauge.builder("hivemq.lastvalue.entries", this, HiveMQEmbeddedLastValueCache::size)
+                .description("Number of cached topics")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.lastvalue.size", this, HiveMQEmbeddedLastValueCache::getSize)
+                .description("Estimated heap size of all cached topics and payloads")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.lastvalue.hit.ratio", this, HiveMQEmbeddedLastValueCache::getHitRatio)
+                .description("Ratio of lookups finding a cached topic")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "last-value-cache";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        if (!TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        put(packet.getTopic(), packet.getQos(), packet.getTimestamp(), packet.getPayload().orElse(emptyPayload));
+    }
+
+    @Override
+    public @NotNull Optional<LastValue> get(@NotNull String topic) {
+
+        final Entry entry = this.entries.get(topic);
+        if (entry == null) {
+            this.misses.increment();
+            return Optional.empty();
+        }
+
+        entry.referenced = true;
+        this.hits.increment();
+        return Optional.of(entry.value);
+    }
+
+    @Override
+    public @NotNull List<LastValue> query(@NotNull String topicFilter) {
+
+        final TopicFilter filter = TopicFilter.compile(topicFilter);
+        if (!filter.isWildcard())
+            return get(topicFilter).map(List::of).orElseGet(List::of);
+
+        final List<LastValue> values = new ArrayList<>();
+        for (Entry entry : this.entries.values()) {
+            if (filter.matches(entry.value.topic())) {
+                entry.referenced = true;
+                values.add(entry.value);
+            }
+        }
+
+        if (values.isEmpty())
+            this.misses.increment();
+        else
+            this.hits.increment();
+
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Caches a publish, replacing the previous one of its topic
+     */
+    @Synchronized
+    void put(String topic, Qos qos, long timestamp, ByteBuffer payload) {
+
+        final Entry previous = this.updateOrder.remove(topic);
+        if (previous != null)
+            this.size -= previous.size;
+
+        final long entrySize = entryOverhead + topic.length() + payload.remaining();
+
+        // Never serve a stale publish of a topic too large to cache
+        if (entrySize > this.maxSize) {
+            this.entries.remove(topic);
+            return;
+        }
+
+        final ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate()).flip();
+
+        final Entry entry = new Entry(new LastValue(topic, qos, timestamp, copy), entrySize);
+        this.updateOrder.put(topic, entry);
+        this.entries.put(topic, entry);
+        this.size += entrySize;
+
+        evict();
+    }
+
+    private void evict() {
+
+        while (this.updateOrder.size() > this.properties.getMaxEntries() || this.size > this.maxSize) {
+
+            final Iterator<Entry> iterator = this.updateOrder.values().iterator();
+            final Entry eldest = iterator.next();
+            iterator.remove();
+
+            // Recently read entries move to the end of the eviction order once
+            if (eldest.referenced) {
+                eldest.referenced = false;
+                this.updateOrder.put(eldest.value.topic(), eldest);
+                continue;
+            }
+
+            this.entries.remove(eldest.value.topic(), eldest);
+            this.size -= eldest.size;
+            this.evictions.increment();
+        }
+    }
+
+    @Synchronized
+    private long getSize() {
+        return this.size;
+    }
+
+    private double getHitRatio() {
+        final double lookups = this.hits.count() + this.misses.count();
+        return lookups == 0 ? 0 : this.hits.count() / lookups;
+    }
+
+    private static final class Entry {
+
+        final LastValue value;
+        final long size;
+        volatile boolean referenced = false;
+
+        Entry(LastValue value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lastvalue;
+
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Last publish of a topic
+ * @param topic Topic name
+ * @param qos Quality of service of the publish
+ * @param timestamp Arrival time of the publish in milliseconds since epoch
+ * @param payload Payload of the publish
+ */
+public record LastValue(String topic, Qos qos, long timestamp, ByteBuffer payload) {
+
+    /**
+     * @return A read-only view of the payload, positioned at its start
+     */
+    @Override
+    public ByteBuffer payload() {
+        return this.payload.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lastvalue;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-process cache of the last publish per topic, independent of the retain flag
+ */
+public interface LastValueCache {
+
+    /**
+     * Looks up the last publish of a topic
+     * @param topic Topic name without wildcards
+     * @return The last publish, if cached
+     */
+    @NotNull Optional<LastValue> get(@NotNull String topic);
+
+    /**
+     * Looks up the last publishes of all topics matching a topic filter
+     * @param topicFilter Topic filter, may contain wildcards
+     * @return The last publishes in no particular order
+     */
+    @NotNull List<LastValue> query(@NotNull String topicFilter);
+
+    /**
+     * @return The number of cached topics
+     */
+    int size();
+}
@@ -0,0 +1,263 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.priority;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import com.hivemq.extension.sdk.api.services.Services;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefers publishes of higher priority lanes when deliveries back up.
+ * The broker is considered congested while the smoothed delivery latency of lanes which are not deferred
+ * exceeds the congestion latency, until neither deliveries nor inbound publishes happened for a second,
+ * so a stall of deliveries under inbound traffic keeps it congested. Then, inbound QoS 0 publishes of shedding lanes are dropped
+ * and inbound publishes of deferring lanes are delayed, leaving the broker's queues and executors
+ * to higher priority lanes. Independent of congestion, QoS 0 publishes exceeding the maximum latency
+ * of their lane are dropped on delivery, as the queue of their subscriber backed up.
+ * <p>
+ * Publishes not matching any lane belong to the lane 'default', which is neither shed nor deferred.
+ */
+public final class HiveMQEmbeddedPriorityLanes implements HiveMQEmbeddedStage, PublishInboundInterceptor, PublishOutboundInterceptor {
+
+    /**
+     * Name of the lane of publishes not matching any configured lane
+     */
+    public static final String defaultLane = "default";
+
+    // Weight of each delivery in the smoothed latency, and time without deliveries and inbound publishes to end congestion after
+    private static final double smoothing = 0.05;
+    private static final long idleMillis = 1_000;
+    private static final Duration deferTimeout = Duration.ofSeconds(10);
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final long congestionMicros;
+
+    private final AtomicLong smoothedMicros = new AtomicLong();
+    private volatile long lastDelivery;
+    private volatile long lastInbound;
+
+    /**
+     * Outcome of an inbound publish
+     */
+    enum Admission { accepted, shed, deferred }
+
+    /**
+     * Creates a priority lanes stage
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedPriorityLanes(final HiveMQEmbeddedProperties.Priority properties, final MeterRegistry meterRegistry) {
+
+        this.congestionMicros = TimeUnit.NANOSECONDS.toMicros(properties.getCongestionLatency().toNanos());
+
+        final HiveMQEmbeddedProperties.Lane fallback = new HiveMQEmbeddedProperties.Lane();
+        fallback.setName(defaultLane);
+        fallback.setTopicFilters(List.of("#"));
+
+        properties.getLanes().forEach(lane -> this.lanes.add(new Lane(lane, meterRegistry)));
+        this.lanes.add(new Lane(fallback, meterRegistry));
+
+        Gauge.builder("hivemq.priority.congested", this, stage -> stage.isCongested() ? 1 : 0)
+                .description("Whether the broker is considered congested")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "priority-lanes";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 3;
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+        clientContext.addPublishOutboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        switch (admit(packet.getTopic(), packet.getQos(), System.currentTimeMillis())) {
+            case shed -> publishInboundOutput.preventPublishDelivery();
+            case deferred -> {
+                final Duration defer = lane(packet.getTopic()).properties.getDefer();
+                final Async<PublishInboundOutput> async =
+                        publishInboundOutput.async(defer.plus(deferTimeout), TimeoutFallback.SUCCESS);
+                Services.extensionExecutorService().schedule(async::resume, defer.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            case accepted -> {}
+        }
+    }
+
+    @Override
+    public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                  @NotNull PublishOutboundOutput publishOutboundOutput) {
+
+        final PublishPacket packet = publishOutboundInput.getPublishPacket();
+        if (!deliver(packet.getTopic(), packet.getQos(), packet.getTimestamp(), System.currentTimeMillis()))
+            publishOutboundOutput.preventPublishDelivery();
+    }
+
+    /**
+     * Decides on an inbound publish
+     * @param topic The topic of the publish
+     * @param qos The quality of service of the publish
+     * @param now The current time in milliseconds
+     * @return Whether to accept, shed or defer the publish
+     */
+    Admission admit(String topic, Qos qos, long now) {
+
+        resumeIfIdle(now);
+        this.lastInbound = now;
+        if (!isCongested(now))
+            return Admission.accepted;
+
+        final Lane lane = lane(topic);
+        if (lane.properties.isShedQos0() && qos == Qos.AT_MOST_ONCE) {
+            lane.shed.increment();
+            return Admission.shed;
+        } else if (!lane.properties.getDefer().isZero()) {
+            lane.deferred.increment();
+            return Admission.deferred;
+        }
+        return Admission.accepted;
+    }
+
+    /**
+     * Records the latency of a delivery
+     * @param topic The topic of the publish
+     * @param qos The quality of service of the publish
+     * @param timestamp The time the publish arrived at in milliseconds
+     * @param now The current time in milliseconds
+     * @return False, if the publish exceeded the maximum latency of its lane and is not to be delivered
+     */
+    boolean deliver(String topic, Qos qos, long timestamp, long now) {
+
+        final Lane lane = lane(topic);
+        final long latency = Math.max(0, now - timestamp);
+
+        // Deferred lanes are delayed on purpose, so they would keep the congestion going
+        if (lane.properties.getDefer().isZero()) {
+            resumeIfIdle(now);
+            this.smoothedMicros.accumulateAndGet(TimeUnit.MILLISECONDS.toMicros(latency),
+                    (smoothed, sample) -> smoothed + (long) ((sample - smoothed) * smoothing));
+            this.lastDelivery = now;
+        }
+
+        if (qos == Qos.AT_MOST_ONCE && lane.properties.getMaxLatency() != null
+                && latency > lane.properties.getMaxLatency().toMillis()) {
+            lane.expired.increment();
+            return false;
+        }
+
+        lane.latency.record(latency, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * @return Whether the broker is considered congested
+     */
+    public boolean isCongested() {
+        return isCongested(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now The current time in milliseconds
+     * @return Whether the broker is considered congested, i.e. deliveries are slow and did not go idle
+     */
+    boolean isCongested(long now) {
+        return this.smoothedMicros.get() > this.congestionMicros
+                && now - Math.max(this.lastDelivery, this.lastInbound) < idleMillis;
+    }
+
+    /**
+     * Forgets the smoothed latency after neither deliveries nor inbound publishes happened for a while,
+     * so traffic after an idle broker does not resume an old congestion
+     */
+    private void resumeIfIdle(long now) {
+        if (now - Math.max(this.lastDelivery, this.lastInbound) >= idleMillis)
+            this.smoothedMicros.set(0);
+    }
+
+    /**
+     * @return The name of the lane a topic belongs to
+     */
+    public @NotNull String getLane(@NotNull String topic) {
+        return lane(topic).properties.getName();
+    }
+
+    private Lane lane(String topic) {
+        for (Lane lane : this.lanes) {
+            if (TopicFilter.anyMatch(lane.topicFilters, topic))
+                return lane;
+        }
+        return this.lanes.getLast();
+    }
+
+    private static final class Lane {
+
+        private final HiveMQEmbeddedProperties.Lane properties;
+        private final List<TopicFilter> topicFilters;
+        private final Timer latency;
+        private final Counter shed;
+        private final Counter deferred;
+        private final Counter expired;
+
+        private Lane(HiveMQEmbeddedProperties.Lane properties, MeterRegistry meterRegistry) {
+            this.properties = properties;
+            this.topicFilters = TopicFilter.compile(properties.getTopicFilters());
+            this.latency = Timer.builder("hivemq.priority.latency")
+                    .description("Time from arrival to delivery of publishes")
+                    .tag("lane", properties.getName())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.shed = meterRegistry.counter("hivemq.priority.publishes", "lane", properties.getName(), "outcome", "shed");
+            this.deferred = meterRegistry.counter("hivemq.priority.publishes", "lane", properties.getName(), "outcome", "deferred");
+            this.expired = meterRegistry.counter("hivemq.priority.publishes", "lane", properties.getName(), "outcome", "expired");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.profiler;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Statistics of a topic prefix over the last profiling window, extrapolated from sampled publishes and deliveries
+ * @param prefix Topic prefix
+ * @param publishRate Inbound publishes per second
+ * @param deliveryRate Outbound deliveries per second
+ * @param byteRate Inbound payload bytes per second
+ * @param payloadSize Distribution of inbound payload sizes in bytes
+ * @param fanOut Mean number of outbound deliveries per inbound publish
+ * @param latency Distribution of the time from arrival of a publish until its delivery in milliseconds
+ */
+public record HiveMQEmbeddedProfile(String prefix, double publishRate, double deliveryRate, double byteRate,
+                                    Distribution payloadSize, double fanOut, Distribution latency) {
+
+    /**
+     * Summary of a histogram
+     */
+    public record Distribution(long count, double mean, long p50, long p99, long max) {
+
+        static Distribution of(Histogram histogram) {
+            if (histogram.getTotalCount() == 0)
+                return new Distribution(0, 0, 0, 0, 0);
+
+            return new Distribution(histogram.getTotalCount(), histogram.getMean(),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99), histogram.getMaxValue());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.profiler;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Samples inbound publishes and outbound deliveries and records their rate, payload size,
+ * fan-out and delivery latency per topic prefix. At the end of each window, statistics are
+ * extrapolated by the sample rate and the top topic prefixes are published as metrics.
+ * <p>
+ * Messages not sampled cost a single random number, sampled ones a wait-free histogram record.
+ * The fan-out is derived from the sampled deliveries per sampled publish, as both are sampled at the same rate.
+ */
+@Slf4j
+public final class HiveMQEmbeddedProfiler implements HiveMQEmbeddedStage, PublishInboundInterceptor, PublishOutboundInterceptor {
+
+    /**
+     * Topic prefix aggregating all publishes beyond the maximum number of topic prefixes
+     */
+    public static final String overflowPrefix = "$overflow";
+
+    private final HiveMQEmbeddedProperties.Profiler properties;
+    private final Map<String, TopicProfile> profiles = new ConcurrentHashMap<>();
+    private final TopicProfile overflow = new TopicProfile(overflowPrefix);
+
+    private final MultiGauge publishRates;
+    private final MultiGauge deliveryRates;
+    private final MultiGauge byteRates;
+    private final MultiGauge fanOuts;
+    private final MultiGauge latencies;
+
+    private volatile List<HiveMQEmbeddedProfile> report = List.of();
+    private long windowStart = System.nanoTime();
+    private ScheduledExecutorService roller;
+
+    /**
+     * Creates a profiler
+     * @param properties Profiler configuration
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedProfiler(final HiveMQEmbeddedProperties.Profiler properties, final MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+
+        this.publishRates = MultiGauge.builder("hivemq.profiler.publish.rate")
+                .description("Inbound publishes per second of the top topic prefixes")
+                .register(meterRegistry);
+        this.deliveryRates = MultiGauge.builder("hivemq.profiler.delivery.rate")
+                .description("Outbound deliveries per second of the top topic prefixes")
+                .register(meterRegistry);
+        this.byteRates = MultiGauge.builder("hivemq.profiler.byte.rate")
+                .description("Inbound payload bytes per second of the top topic prefixes")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.fanOuts = MultiGauge.builder("hivemq.profiler.fanout")
+                .description("Mean number of deliveries per publish of the top topic prefixes")
+                .register(meterRegistry);
+        this.latencies = MultiGauge.builder("hivemq.profiler.latency")
+                .description("99th percentile of the delivery latency of the top topic prefixes")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    private void start() {
+        final long window = this.properties.getWindow().toMillis();
+
+        this.roller = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("hivemq-profiler").daemon().factory());
+        this.roller.scheduleAtFixedRate(this::roll, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void stop() {
+        this.roller.shutdownNow();
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "profiler";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+        clientContext.addPublishOutboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        if (!sample())
+            return;
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        profile(packet.getTopic()).recordPublish(packet.getPayload().map(ByteBuffer::remaining).orElse(0));
+    }
+
+    @Override
+    public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                  @NotNull PublishOutboundOutput publishOutboundOutput) {
+
+        if (!sample())
+            return;
+
+        final PublishPacket packet = publishOutboundInput.getPublishPacket();
+        profile(packet.getTopic()).recordDelivery(System.currentTimeMillis() - packet.getTimestamp());
+    }
+
+    /**
+     * @return The statistics of all topic prefixes active in the last window, by descending publish rate
+     */
+    public @NotNull List<HiveMQEmbeddedProfile> getReport() {
+        return this.report;
+    }
+
+    /**
+     * @param limit Maximum number of topic prefixes to return
+     * @param order Statistic to order topic prefixes by descending
+     * @return The top topic prefixes of the last window
+     */
+    public @NotNull List<HiveMQEmbeddedProfile> getTop(int limit, @NotNull ToDoubleFunction<HiveMQEmbeddedProfile> order) {
+        return this.report.stream()
+                .sorted(Comparator.comparingDouble(order).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private boolean sample() {
+        return ThreadLocalRandom.current().nextDouble() < this.properties.getSampleRate();
+    }
+
+    TopicProfile profile(String topic) {
+
+        final String prefix = prefix(topic, this.properties.getTopicLevels());
+        final TopicProfile profile = this.profiles.get(prefix);
+        if (profile != null)
+            return profile;
+
+        if (this.profiles.size() >= this.properties.getMaxPrefixes())
+            return this.overflow;
+
+        return this.profiles.computeIfAbsent(prefix, TopicProfile::new);
+    }
+
+    static String prefix(String topic, int levels) {
+
+        int index = -1;
+        for (int level = 0; level < levels; level++) {
+            index = topic.indexOf('/', index + 1);
+            if (index < 0)
+                return topic;
+        }
+
+        return topic.substring(0, index);
+    }
+
+    private void roll() {
+        try {
+            final long now = System.nanoTime();
+            roll(Duration.ofNanos(now - this.windowStart));
+            this.windowStart = now;
+        } catch (RuntimeException ex) {
+            log.warn("Failed to roll profiler window.", ex);
+        }
+    }
+
+    void roll(Duration elapsed) {
+
+        final double sampleRate = Math.max(Double.MIN_VALUE, this.properties.getSampleRate());
+        final List<HiveMQEmbeddedProfile> report = new ArrayList<>(this.profiles.size() + 1);
+
+        for (TopicProfile profile : this.profiles.values()) {
+            final HiveMQEmbeddedProfile window = profile.roll(elapsed, sampleRate);
+
+            // Idle topic prefixes make room for new ones
+            if (window.publishRate() == 0 && window.deliveryRate() == 0)
+                this.profiles.remove(profile.getPrefix(), profile);
+            else
+                report.add(window);
+        }
+
+        final HiveMQEmbeddedProfile overflow = this.overflow.roll(elapsed, sampleRate);
+        if (overflow.publishRate() > 0 || overflow.deliveryRate() > 0)
+            report.add(overflow);
+
+        report.sort(Comparator.comparingDouble(HiveMQEmbeddedProfile::publishRate).reversed());
+        this.report = List.copyOf(report);
+
+        register(this.publishRates, HiveMQEmbeddedProfile::publishRate);
+        register(this.deliveryRates, HiveMQEmbeddedProfile::deliveryRate);
+        register(this.byteRates, HiveMQEmbeddedProfile::byteRate);
+        register(this.fanOuts, HiveMQEmbeddedProfile::fanOut);
+        register(this.latencies, p -> p.latency().p99());
+    }
+
+    private void register(MultiGauge gauge, ToDoubleFunction<HiveMQEmbeddedProfile> statistic) {
+        gauge.register(getTop(this.properties.getTop(), statistic).stream()
+                .map(p -> MultiGauge.Row.of(Tags.of("prefix", p.prefix()), statistic.applyAsDouble(p)))
+                .toList(), true);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.profiler;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.OptionalParameter;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Actuator endpoint to report the top topic prefixes of the last profiling window
+ */
+@Endpoint(id = "hivemqprofiler")
+@RequiredArgsConstructor
+public class HiveMQEmbeddedProfilerEndpoint {
+
+    private static final int defaultLimit = 10;
+
+    private final HiveMQEmbeddedProfiler profiler;
+
+    /**
+     * Reports the top topic prefixes
+     * @param order Statistic to order by, one of publishes (default), deliveries, bytes, fanout or latency
+     * @param limit Maximum number of topic prefixes to return
+     * @return The statistics of the top topic prefixes
+     */
+    @ReadOperation
+    public List<HiveMQEmbeddedProfile> top(@OptionalParameter String order, @OptionalParameter Integer limit) {
+        return this.profiler.getTop(Optional.ofNullable(limit).orElse(defaultLimit),
+                statistic(Optional.ofNullable(order).orElse("publishes")));
+    }
+
+    private static ToDoubleFunction<HiveMQEmbeddedProfile> statistic(String order) {
+        return switch (order) {
+            case "publishes" -> HiveMQEmbeddedProfile::publishRate;
+            case "deliveries" -> HiveMQEmbeddedProfile::deliveryRate;
+            case "bytes" -> HiveMQEmbeddedProfile::byteRate;
+            case "fanout" -> HiveMQEmbeddedProfile::fanOut;
+            case "latency" -> p -> p.latency().p99();
+            default -> throw new InvalidEndpointRequestException("Unknown order '" + order + "'",
+                    "Order must be one of publishes, deliveries, bytes, fanout or latency");
+        };
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.profiler;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sampled statistics of a topic prefix. Recording is wait-free, as histograms are
+ * backed by HdrHistogram recorders, which are swapped at the end of each window.
+ */
+final class TopicProfile {
+
+    private static final int significantDigits = 2;
+
+    private final String prefix;
+
+    private final LongAdder publishes = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private final Recorder payloadSizes = new Recorder(significantDigits);
+    private final Recorder latencies = new Recorder(significantDigits);
+
+    private Histogram payloadSizeWindow;
+    private Histogram latencyWindow;
+
+    TopicProfile(String prefix) {
+        this.prefix = prefix;
+    }
+
+    String getPrefix() {
+        return this.prefix;
+    }
+
+    void recordPublish(int payloadSize) {
+        this.publishes.increment();
+        this.bytes.add(payloadSize);
+        this.payloadSizes.recordValue(payloadSize);
+    }
+
+    void recordDelivery(long latencyMillis) {
+        this.deliveries.increment();
+        this.latencies.recordValue(Math.max(0, latencyMillis));
+    }
+
+    /**
+     * Ends the current window, must not be called concurrently
+     * @param elapsed Duration of the window
+     * @param sampleRate Ratio of sampled publishes and deliveries to extrapolate rates
+     * @return The statistics of the window
+     */
+    HiveMQEmbeddedProfile roll(Duration elapsed, double sampleRate) {
+
+        final double scale = 1_000_000_000d / Math.max(1, elapsed.toNanos()) / sampleRate;
+
+        this.payloadSizeWindow = this.payloadSizes.getIntervalHistogram(this.payloadSizeWindow);
+        this.latencyWindow = this.latencies.getIntervalHistogram(this.latencyWindow);
+
+        final long publishes = this.publishes.sumThenReset();
+        final long deliveries = this.deliveries.sumThenReset();
+
+        return new HiveMQEmbeddedProfile(this.prefix,
+                publishes * scale,
+                deliveries * scale,
+                this.bytes.sumThenReset() * scale,
+                HiveMQEmbeddedProfile.Distribution.of(this.payloadSizeWindow),
+                publishes > 0 ? (double) deliveries / publishes : 0,
+                HiveMQEmbeddedProfile.Distribution.of(this.latencyWindow));
+    }
+}
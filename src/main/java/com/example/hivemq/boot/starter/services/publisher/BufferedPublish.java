@@ -0,0 +1,33 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.publisher;
+
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A publish held back until HiveMQ got started
+ */
+record BufferedPublish(String topic, Qos qos, boolean retain, byte[] payload) {
+
+    /**
+     * @return The number of bytes this publish occupies in a buffer
+     */
+    int size() {
+        return this.topic.getBytes(StandardCharsets.UTF_8).length + this.payload.length;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.publisher;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Publish buffer on the heap
+ */
+final class HeapPublishBuffer implements PublishBuffer {
+
+    private final ArrayDeque<BufferedPublish> publishes = new ArrayDeque<>();
+    private final int maxMessages;
+    private final long maxBytes;
+
+    private long bytes = 0;
+
+    HeapPublishBuffer(final int maxMessages, final long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean offer(BufferedPublish publish) {
+        if (this.publishes.size() >= this.maxMessages || this.bytes + publish.size() > this.maxBytes)
+            return false;
+
+        this.publishes.addLast(publish);
+        this.bytes += publish.size();
+        return true;
+    }
+
+    @Override
+    public boolean evictOldest() {
+        BufferedPublish publish = this.publishes.pollFirst();
+        if (publish == null)
+            return false;
+
+        this.bytes -= publish.size();
+        return true;
+    }
+
+    @Override
+    public void drainTo(Consumer<BufferedPublish> consumer) {
+        BufferedPublish publish;
+        while ((publish = this.publishes.pollFirst()) != null) {
+            consumer.accept(publish);
+        }
+
+        this.bytes = 0;
+    }
+
+    @Override
+    public int size() {
+        return this.publishes.size();
+    }
+
+    @Override
+    public long bytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public void close() {
+        this.publishes.clear();
+        this.bytes = 0;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.publisher;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedLifecycleListener;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes messages from within the application to embedded HiveMQ.
+ * Publishes can be issued at any time: Until HiveMQ is started, they are held in a bounded buffer,
+ * which gets flushed in one go as soon as HiveMQ has started successfully.
+ */
+@Slf4j
+public final class HiveMQEmbeddedPublisher implements HiveMQEmbeddedLifecycleListener {
+
+    private final HiveMQEmbeddedProperties.Publisher.Buffer properties;
+    private final PublishBuffer buffer;
+
+    private final Object lock = new Object();
+
+    private final Counter overflows;
+    private final Counter failures;
+    private final Timer flushDuration;
+    private final DistributionSummary flushSize;
+
+    private volatile boolean ready = false;
+
+    /**
+     * Creates a publisher
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedPublisher(final HiveMQEmbeddedProperties properties,
+                                   final MeterRegistry meterRegistry) {
+
+        this.properties = properties.getPublisher().getBuffer();
+        this.buffer = this.properties.isMapped()
+                ? new MappedPublishBuffer(Path.of(properties.getData().getFolder(), this.properties.getFile()).toAbsolutePath(),
+                        this.properties.getMaxMessages(), this.properties.getMaxSize().toBytes())
+                : new HeapPublishBuffer(this.properties.getMaxMessages(), this.properties.getMaxSize().toBytes());
+
+        this.overflows = meterRegistry.counter("hivemq.publisher.overflows",
+                "policy", this.properties.getOverflow().name());
+        this.failures = Counter.builder("hivemq.publisher.failures")
+                .description("Number of publishes HiveMQ failed to accept")
+                .register(meterRegistry);
+        this.flushDuration = Timer.builder("hivemq.publisher.flush.duration")
+                .description("Time to flush all buffered publishes after startup")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("hivemq.publisher.flush.size")
+                .description("Number of buffered publishes flushed after startup")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.publisher.buffered", this, HiveMQEmbeddedPublisher::getBuffered)
+                .description("Number of publishes waiting for HiveMQ to start")
+                .register(meterRegistry);
+        Gauge.builder("hivemq.publisher.buffered.bytes", this, HiveMQEmbeddedPublisher::getBufferedBytes)
+                .description("Size of publishes waiting for HiveMQ to start")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes a message with QoS 1
+     * @param topic The topic to publish to
+     * @param payload The payload to publish
+     * @return False, if HiveMQ is not started yet and the message got rejected by a full buffer
+     */
+    public boolean publish(@NotNull String topic, @NotNull byte[] payload) {
+        return publish(topic, payload, Qos.AT_LEAST_ONCE, false);
+    }
+
+    /**
+     * Publishes a message with UTF-8 encoded payload and QoS 1
+     * @param topic The topic to publish to
+     * @param payload The payload to publish
+     * @return False, if HiveMQ is not started yet and the message got rejected by a full buffer
+     */
+    public boolean publish(@NotNull String topic, @NotNull String payload) {
+        return publish(topic, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Publishes a message
+     * @param topic The topic to publish to
+     * @param payload The payload to publish
+     * @param qos The quality of service
+     * @param retain Whether the message should get retained
+     * @return False, if HiveMQ is not started yet and the message got rejected by a full buffer.
+     * Publishes HiveMQ fails to accept are counted and logged.
+     */
+    public boolean publish(@NotNull String topic, @NotNull byte[] payload, @NotNull Qos qos, boolean retain) {
+
+        final BufferedPublish publish = new BufferedPublish(topic, qos, retain, payload);
+        if (this.ready) {
+            send(publish);
+            return true;
+        }
+
+        return offer(publish);
+    }
+
+    /**
+     * Buffers a publish, or sends it, if HiveMQ got started meanwhile
+     */
+    @Synchronized("lock")
+    private boolean offer(BufferedPublish publish) {
+
+        if (this.ready) {
+            send(publish);
+            return true;
+        }
+
+        while (!this.buffer.offer(publish)) {
+            if (this.properties.getOverflow() == HiveMQEmbeddedProperties.Publisher.Buffer.Overflow.reject
+                    || !this.buffer.evictOldest()) {
+                this.overflows.increment();
+                return false;
+            }
+
+            this.overflows.increment();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return True, if publishes are currently buffered until HiveMQ got started
+     */
+    public boolean isBuffering() {
+        return !this.ready;
+    }
+
+    @Override
+    @Synchronized("lock")
+    public void onStarted() {
+
+        final int count = this.buffer.size();
+        if (count > 0) {
+            final long start = System.nanoTime();
+            final List<CompletableFuture<Void>> sent = new ArrayList<>(count);
+
+            this.buffer.drainTo(publish -> sent.add(send(publish)));
+            this.flushSize.record(count);
+
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new))
+                    .whenComplete((ignored, th) -> {
+                        this.flushDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (th != null)
+                            log.warn("Failed to flush some of {} buffered publishes.", count);
+                        else
+                            log.info("Flushed {} buffered publishes.", count);
+                    });
+        }
+
+        this.ready = true;
+    }
+
+    @Override
+    @Synchronized("lock")
+    public void onStopping() {
+        this.ready = false;
+    }
+
+    @PreDestroy
+    @Synchronized("lock")
+    private void close() {
+        this.buffer.close();
+    }
+
+    @Synchronized("lock")
+    private int getBuffered() {
+        return this.buffer.size();
+    }
+
+    @Synchronized("lock")
+    private long getBufferedBytes() {
+        return this.buffer.bytes();
+    }
+
+    private CompletableFuture<Void> send(BufferedPublish publish) {
+        return Services.publishService()
+                .publish(Builders.publish()
+                        .topic(publish.topic())
+                        .qos(publish.qos())
+                        .retain(publish.retain())
+                        .payload(ByteBuffer.wrap(publish.payload()))
+                        .build())
+                .whenComplete((ignored, th) -> {
+                    if (th != null) {
+                        this.failures.increment();
+                        log.warn("Failed to publish to topic '{}'.", publish.topic(), th);
+                    }
+                });
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.publisher;
+
+import java.util.function.Consumer;
+
+/**
+ * Bounded buffer for publishes, not thread-safe
+ */
+interface PublishBuffer extends AutoCloseable {
+
+    /**
+     * Appends a publish
+     * @return False, if the buffer has no room left
+     */
+    boolean offer(BufferedPublish publish);
+
+    /**
+     * Removes the oldest publish
+     * @return False, if the buffer is empty
+     */
+    boolean evictOldest();
+
+    /**
+     * Removes all publishes in order of arrival
+     */
+    void drainTo(Consumer<BufferedPublish> consumer);
+
+    /**
+     * @return The number of buffered publishes
+     */
+    int size();
+
+    /**
+     * @return The number of bytes occupied by buffered publishes
+     */
+    long bytes();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,180 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.reload;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.SubscribeInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.parameter.SubscribeInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.parameter.SubscribeInboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.ModifiablePublishPacket;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import com.hivemq.extension.sdk.api.packets.subscribe.ModifiableSubscription;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Enforces mqtt limits changed while HiveMQ is running on inbound publishes and subscriptions.
+ * HiveMQ keeps enforcing the limits it was started with, so only limits tighter than those take effect.
+ * Runs right after the claim-check stage, thus offloaded payloads are never rejected for their size.
+ */
+public final class HiveMQEmbeddedLimits implements HiveMQEmbeddedStage, PublishInboundInterceptor, SubscribeInboundInterceptor {
+
+    private final Counter rejected;
+    private final Counter downgraded;
+    private final Counter unretained;
+    private final Counter expiryCapped;
+
+    private volatile Limits limits = Limits.unrestricted;
+
+    /**
+     * Creates a limits stage, unrestricted until limits get applied
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedLimits(final MeterRegistry meterRegistry) {
+        this.rejected = meterRegistry.counter("hivemq.limits.publishes", "action", "rejected");
+        this.downgraded = meterRegistry.counter("hivemq.limits.publishes", "action", "downgraded");
+        this.unretained = meterRegistry.counter("hivemq.limits.publishes", "action", "unretained");
+        this.expiryCapped = meterRegistry.counter("hivemq.limits.publishes", "action", "expiry-capped");
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "limits";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 2;
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+        clientContext.addSubscribeInboundInterceptor(this);
+    }
+
+    /**
+     * @return The limits currently enforced
+     */
+    public Limits getLimits() {
+        return this.limits;
+    }
+
+    /**
+     * Enforces other limits, from the next publish or subscription on
+     * @param limits The limits to enforce
+     */
+    public void apply(Limits limits) {
+        this.limits = limits;
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final Limits limits = this.limits;
+        if (limits.equals(Limits.unrestricted))
+            return;
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+
+        // The packet size is approximated by topic and payload, which make up most of it
+        if (limits.maxPacketSize() != Long.MAX_VALUE
+                && packet.getTopic().getBytes(StandardCharsets.UTF_8).length
+                        + packet.getPayload().map(payload -> (long) payload.remaining()).orElse(0L) > limits.maxPacketSize()) {
+            publishInboundOutput.preventPublishDelivery();
+            this.rejected.increment();
+            return;
+        }
+
+        final ModifiablePublishPacket modifiable = publishInboundOutput.getPublishPacket();
+
+        if (packet.getQos().getQosNumber() > limits.maxQos()) {
+            modifiable.setQos(Qos.valueOf(limits.maxQos()));
+            this.downgraded.increment();
+        }
+
+        if (!limits.retain() && packet.getRetain()) {
+            modifiable.setRetain(false);
+            this.unretained.increment();
+        }
+
+        if (packet.getMessageExpiryInterval().orElse(Long.MAX_VALUE) > limits.maxMessageExpiry()) {
+            modifiable.setMessageExpiryInterval(limits.maxMessageExpiry());
+            this.expiryCapped.increment();
+        }
+    }
+
+    @Override
+    public void onInboundSubscribe(@NotNull SubscribeInboundInput subscribeInboundInput,
+                                   @NotNull SubscribeInboundOutput subscribeInboundOutput) {
+
+        final int maxQos = this.limits.maxQos();
+        for (ModifiableSubscription subscription : subscribeInboundOutput.getSubscribePacket().getSubscriptions()) {
+            if (subscription.getQos().getQosNumber() > maxQos)
+                subscription.setQos(Qos.valueOf(maxQos));
+        }
+    }
+
+    /**
+     * Mqtt limits which can be enforced by interceptors
+     * @param maxQos Maximum quality of service of publishes and subscriptions
+     * @param maxMessageExpiry Maximum message expiry interval
+     * @param maxPacketSize Maximum size of publishes
+     * @param retain Whether publishes may be retained
+     */
+    public record Limits(int maxQos, long maxMessageExpiry, long maxPacketSize, boolean retain) {
+
+        /**
+         * Limits not restricting anything beyond HiveMQ's own
+         */
+        public static final Limits unrestricted = new Limits(2, Long.MAX_VALUE, Long.MAX_VALUE, true);
+
+        /**
+         * @param config HiveMQ configuration
+         * @return The limits of the configuration, unset ones unrestricted
+         */
+        public static Limits of(HiveMQEmbeddedProperties.Config config) {
+            return new Limits(
+                    mqtt(config, mqtt -> mqtt.getQualityOfService() != null ? mqtt.getQualityOfService().getMaxQos() : null)
+                            .map(Long::intValue).orElse(unrestricted.maxQos()),
+                    mqtt(config, mqtt -> mqtt.getMessageExpiry() != null ? mqtt.getMessageExpiry().getMaxInterval() : null)
+                            .orElse(unrestricted.maxMessageExpiry()),
+                    mqtt(config, mqtt -> mqtt.getPackets() != null ? mqtt.getPackets().getMaxPacketSize() : null)
+                            .orElse(unrestricted.maxPacketSize()),
+                    mqtt(config, mqtt -> mqtt.getRetainedMessages() != null ? mqtt.getRetainedMessages().getEnabled() : null)
+                            .orElse(unrestricted.retain()));
+        }
+
+        private static <T> Optional<T> mqtt(HiveMQEmbeddedProperties.Config config,
+                                            Function<HiveMQEmbeddedProperties.Mqtt, T> value) {
+            return Optional.ofNullable(config.getMqtt()).map(value);
+        }
+    }
+}
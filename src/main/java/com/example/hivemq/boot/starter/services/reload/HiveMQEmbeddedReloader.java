@@ -0,0 +1,241 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.reload;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Applies changes of the HiveMQ configuration on environment changes, e.g. by a Spring Cloud refresh.
+ * Changes of mqtt limits are applied live by the {@link HiveMQEmbeddedLimits} stage, as long as they are
+ * tighter than the limits HiveMQ was started with. All other changes require a restart of HiveMQ,
+ * which disconnects all clients and is therefore only done if enabled.
+ */
+@Slf4j
+public final class HiveMQEmbeddedReloader implements ApplicationListener<ApplicationEvent> {
+
+    /**
+     * Event published by Spring Cloud after the environment changed
+     */
+    static final String environmentChangeEvent = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+
+    private static final List<Setting> settings = List.of(
+            Setting.restart("folder", HiveMQEmbeddedProperties.Config::getFolder),
+            new Setting("listeners", HiveMQEmbeddedProperties.Config::getListeners,
+                    HiveMQEmbeddedReloader::describeListeners, null),
+            Setting.restart("mqtt.session-expiry", mqtt(HiveMQEmbeddedProperties.Mqtt::getSessionExpiry)),
+            Setting.live("mqtt.message-expiry", mqtt(HiveMQEmbeddedProperties.Mqtt::getMessageExpiry),
+                    (next, started) -> next.maxMessageExpiry() <= started.maxMessageExpiry()),
+            Setting.live("mqtt.packets", mqtt(HiveMQEmbeddedProperties.Mqtt::getPackets),
+                    (next, started) -> next.maxPacketSize() <= started.maxPacketSize()),
+            Setting.restart("mqtt.receive-maximum", mqtt(HiveMQEmbeddedProperties.Mqtt::getReceiveMaximum)),
+            Setting.restart("mqtt.keep-alive", mqtt(HiveMQEmbeddedProperties.Mqtt::getKeepAlive)),
+            Setting.restart("mqtt.topic-alias", mqtt(HiveMQEmbeddedProperties.Mqtt::getTopicAlias)),
+            Setting.restart("mqtt.subscription-identifier", mqtt(HiveMQEmbeddedProperties.Mqtt::getSubscriptionIdentifier)),
+            Setting.restart("mqtt.wildcard-subscriptions", mqtt(HiveMQEmbeddedProperties.Mqtt::getWildcardSubscriptions)),
+            Setting.restart("mqtt.shared-subscriptions", mqtt(HiveMQEmbeddedProperties.Mqtt::getSharedSubscriptions)),
+            Setting.live("mqtt.retained-messages", mqtt(HiveMQEmbeddedProperties.Mqtt::getRetainedMessages),
+                    (next, started) -> !next.retain() || started.retain()),
+            Setting.live("mqtt.quality-of-service", mqtt(HiveMQEmbeddedProperties.Mqtt::getQualityOfService),
+                    (next, started) -> next.maxQos() <= started.maxQos()),
+            Setting.restart("mqtt.queued-messages", mqtt(HiveMQEmbeddedProperties.Mqtt::getQueuedMessages)),
+            Setting.restart("security", HiveMQEmbeddedProperties.Config::getSecurity),
+            Setting.restart("persistence", HiveMQEmbeddedProperties.Config::getPersistence));
+
+    private final HiveMQEmbeddedService service;
+    private final HiveMQEmbeddedLimits limits;
+    private final Environment environment;
+    private final boolean restart;
+
+    /**
+     * The configuration HiveMQ was started with
+     */
+    private HiveMQEmbeddedProperties.Config started;
+
+    /**
+     * The configuration of the last reload
+     */
+    private HiveMQEmbeddedProperties.Config applied;
+
+    /**
+     * Creates a reloader
+     * @param properties Configuration properties
+     * @param service The embedded mqtt-broker
+     * @param limits Stage enforcing limits changed live
+     * @param environment Environment to bind the changed configuration from
+     */
+    public HiveMQEmbeddedReloader(final HiveMQEmbeddedProperties properties, final HiveMQEmbeddedService service,
+                                  final HiveMQEmbeddedLimits limits, final Environment environment) {
+        this.service = service;
+        this.limits = limits;
+        this.environment = environment;
+        this.restart = properties.getReload().isRestart();
+        this.started = properties.getConfig();
+        this.applied = properties.getConfig();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event.getClass().getName().equals(environmentChangeEvent))
+            reload();
+    }
+
+    /**
+     * Binds the HiveMQ configuration from the environment and applies its changes
+     * @return The changes found
+     */
+    @Synchronized
+    public List<Change> reload() {
+
+        final HiveMQEmbeddedProperties.Config next = Binder.get(this.environment)
+                .bindOrCreate("hivemq", HiveMQEmbeddedProperties.class)
+                .getConfig();
+
+        final List<Change> changes = diff(this.started, this.applied, next);
+        if (changes.isEmpty()) {
+            log.debug("HiveMQ configuration unchanged.");
+            return changes;
+        }
+
+        final HiveMQEmbeddedProperties.Config previous = this.applied;
+        this.applied = next;
+
+        for (Change change : changes) {
+            log.info("HiveMQ setting '{}' changed from {} to {}, {}.", change.setting(), change.from(), change.to(),
+                    change.live() ? "applying it live" : "requires a restart");
+        }
+
+        // Limits above the ones HiveMQ was started with have no effect, so applying them all is safe
+        this.limits.apply(HiveMQEmbeddedLimits.Limits.of(next));
+
+        final List<String> pending = changes.stream().filter(change -> !change.live()).map(Change::setting).toList();
+        if (pending.isEmpty())
+            return changes;
+
+        if (!this.restart) {
+            log.warn("Not restarting HiveMQ for changed settings {}, as restarts are disabled by 'hivemq.reload.restart'. "
+                    + "They take effect on the next start.", pending);
+            return changes;
+        }
+
+        log.warn("Restarting HiveMQ for changed settings {}, all clients get disconnected.", pending);
+        try {
+            this.service.restart(next);
+            this.started = next;
+            this.limits.apply(HiveMQEmbeddedLimits.Limits.unrestricted);
+        } catch (IllegalStateException ise) {
+            // Not applied after all, so the next reload reports the changes again
+            this.applied = previous;
+            log.warn("Failed to restart HiveMQ for changed settings {}, they are reported again on the next reload.",
+                    pending, ise);
+        }
+
+        return changes;
+    }
+
+    /**
+     * @param started The configuration HiveMQ was started with
+     * @param applied The configuration of the last reload
+     * @param next The changed configuration
+     * @return The settings changed since the last reload, live if they can be applied without restart
+     */
+    static List<Change> diff(HiveMQEmbeddedProperties.Config started, HiveMQEmbeddedProperties.Config applied,
+                             HiveMQEmbeddedProperties.Config next) {
+
+        final HiveMQEmbeddedLimits.Limits startedLimits = HiveMQEmbeddedLimits.Limits.of(started);
+        final HiveMQEmbeddedLimits.Limits nextLimits = HiveMQEmbeddedLimits.Limits.of(next);
+        final List<Change> changes = new ArrayList<>();
+
+        for (Setting setting : settings) {
+            final Object from = setting.value().apply(applied);
+            final Object to = setting.value().apply(next);
+            if (Objects.equals(from, to))
+                continue;
+
+            final boolean live = setting.live() != null && setting.live().test(nextLimits, startedLimits);
+            changes.add(new Change(setting.name(), setting.describe().apply(from), setting.describe().apply(to), live));
+        }
+
+        return changes;
+    }
+
+    /**
+     * Listeners are described by name and address only, as their tls settings contain passwords
+     */
+    private static String describeListeners(Object value) {
+        final HiveMQEmbeddedProperties.Listeners listeners = (HiveMQEmbeddedProperties.Listeners) value;
+        if (listeners == null)
+            return "[]";
+
+        return Stream.of(
+                        Optional.ofNullable(listeners.getTcpListeners()).orElse(List.of()).stream()
+                                .map(l -> "tcp " + l.getName() + "@" + l.getBindAddress() + ":" + l.getPort()),
+                        Optional.ofNullable(listeners.getTlsTcpListeners()).orElse(List.of()).stream()
+                                .map(l -> "tls-tcp " + l.getName() + "@" + l.getBindAddress() + ":" + l.getPort()),
+                        Optional.ofNullable(listeners.getWebsocketListeners()).orElse(List.of()).stream()
+                                .map(l -> "websocket " + l.getName() + "@" + l.getBindAddress() + ":" + l.getPort()),
+                        Optional.ofNullable(listeners.getTlsWebsocketListeners()).orElse(List.of()).stream()
+                                .map(l -> "tls-websocket " + l.getName() + "@" + l.getBindAddress() + ":" + l.getPort()))
+                .flatMap(Function.identity())
+                .toList()
+                .toString();
+    }
+
+    private static Function<HiveMQEmbeddedProperties.Config, Object> mqtt(Function<HiveMQEmbeddedProperties.Mqtt, Object> value) {
+        return config -> config.getMqtt() != null ? value.apply(config.getMqtt()) : null;
+    }
+
+    /**
+     * A changed setting
+     * @param setting Name of the setting within 'hivemq.config'
+     * @param from Previous value
+     * @param to Changed value
+     * @param live Whether the change is applied without restart
+     */
+    public record Change(String setting, String from, String to, boolean live) {}
+
+    /**
+     * A setting of the HiveMQ configuration
+     * @param live Whether changed limits can be applied live, null if the setting always requires a restart
+     */
+    private record Setting(String name, Function<HiveMQEmbeddedProperties.Config, Object> value,
+                           Function<Object, String> describe,
+                           BiPredicate<HiveMQEmbeddedLimits.Limits, HiveMQEmbeddedLimits.Limits> live) {
+
+        static Setting restart(String name, Function<HiveMQEmbeddedProperties.Config, Object> value) {
+            return new Setting(name, value, String::valueOf, null);
+        }
+
+        static Setting live(String name, Function<HiveMQEmbeddedProperties.Config, Object> value,
+                            BiPredicate<HiveMQEmbeddedLimits.Limits, HiveMQEmbeddedLimits.Limits> live) {
+            return new Setting(name, value, String::valueOf, live);
+        }
+    }
+}
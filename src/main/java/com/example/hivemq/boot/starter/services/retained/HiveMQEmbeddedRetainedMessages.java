@@ -0,0 +1,132 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.publish.RetainedPublish;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming import and export of HiveMQ's retained messages.
+ * Messages are processed one by one, so the retained store never gets materialized in memory.
+ * HiveMQ must be started to use this service.
+ */
+@Slf4j
+public final class HiveMQEmbeddedRetainedMessages {
+
+    private static final int maxPendingImports = 1024;
+
+    /**
+     * Exports all retained messages
+     * @param out The stream to write to, not closed afterwards
+     * @param format The format to write
+     * @return Future completing with the number of exported messages
+     */
+    public @NotNull CompletableFuture<Long> exportTo(@NotNull OutputStream out, @NotNull RetainedMessageFormat format) {
+
+        final RetainedMessageWriter writer;
+        try {
+            writer = RetainedMessageWriter.of(format, out);
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+
+        final AtomicLong count = new AtomicLong();
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        // A single thread keeps writes to the stream in order
+        final ExecutorService executor =
+                Executors.newSingleThreadExecutor(Thread.ofPlatform().name("hivemq-retained-export").daemon().factory());
+
+        return Services.retainedMessageStore()
+                .iterateAllRetainedMessages((context, publish) -> {
+                    try {
+                        writer.write(publish);
+                        count.incrementAndGet();
+                    } catch (IOException ioe) {
+                        failure.set(ioe);
+                        context.abortIteration();
+                    }
+                }, executor)
+                .thenApplyAsync(ignored -> {
+                    try {
+                        if (failure.get() != null)
+                            throw failure.get();
+
+                        writer.finish();
+                        return count.get();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }, executor)
+                .whenComplete((ignored, th) -> executor.shutdown());
+    }
+
+    /**
+     * Imports retained messages, existing messages with the same topic get replaced.
+     * Blocks until all messages got stored.
+     * @param in The stream to read from, not closed afterwards
+     * @param format The format to read
+     * @return The number of imported messages
+     * @throws IOException If the stream could not get read
+     */
+    public long importFrom(@NotNull InputStream in, @NotNull RetainedMessageFormat format) throws IOException {
+
+        final RetainedMessageReader reader = RetainedMessageReader.of(format, in);
+        final Semaphore pending = new Semaphore(maxPendingImports);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        long count = 0;
+        try {
+            RetainedPublish publish;
+            while ((publish = reader.read()) != null && failure.get() == null) {
+                pending.acquire();
+                Services.retainedMessageStore()
+                        .addOrReplace(publish)
+                        .whenComplete((ignored, th) -> {
+                            if (th != null)
+                                failure.compareAndSet(null, th);
+
+                            pending.release();
+                        });
+                count++;
+            }
+
+            // Wait for all pending messages to be stored
+            pending.acquire(maxPendingImports);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import of retained messages got interrupted.", ie);
+        }
+
+        if (failure.get() != null)
+            throw new IOException("Failed to store retained messages.", failure.get());
+
+        return count;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedLifecycleListener;
+import com.hivemq.embedded.EmbeddedExtension;
+import com.hivemq.extension.sdk.api.ExtensionMain;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshots all retained messages to a binary file within the data folder on shutdown.
+ * As an embedded extension, it restores the snapshot on startup,
+ * before HiveMQ opens its listeners.
+ */
+@Slf4j
+public final class HiveMQEmbeddedRetainedSnapshot implements EmbeddedExtension, ExtensionMain, HiveMQEmbeddedLifecycleListener {
+
+    private final HiveMQEmbeddedRetainedMessages retainedMessages;
+    private final HiveMQEmbeddedProperties.Retained.Snapshot properties;
+    private final Path file;
+
+    /**
+     * Creates a snapshot extension
+     * @param retainedMessages Service to import and export retained messages
+     * @param properties Configuration properties
+     */
+    public HiveMQEmbeddedRetainedSnapshot(final HiveMQEmbeddedRetainedMessages retainedMessages,
+                                          final HiveMQEmbeddedProperties properties) {
+        this.retainedMessages = retainedMessages;
+        this.properties = properties.getRetained().getSnapshot();
+        this.file = Path.of(properties.getData().getFolder(), this.properties.getFile()).toAbsolutePath();
+    }
+
+    @Override
+    public void extensionStart(@NotNull ExtensionStartInput extensionStartInput,
+                               @NotNull ExtensionStartOutput extensionStartOutput) {
+
+        if (!Files.isRegularFile(this.file))
+            return;
+
+        final long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(this.file)) {
+            final long count = this.retainedMessages.importFrom(in, RetainedMessageFormat.binary);
+
+            log.info("Restored {} retained messages from '{}' in {} ms.",
+                    count, this.file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException ioe) {
+            log.error("Failed to restore retained messages from '{}'.", this.file, ioe);
+        }
+    }
+
+    @Override
+    public void extensionStop(@NotNull ExtensionStopInput extensionStopInput,
+                              @NotNull ExtensionStopOutput extensionStopOutput) {
+        // Snapshot is taken before shutdown, while HiveMQ is still fully operational
+    }
+
+    @Override
+    public void onStopping() {
+
+        final long start = System.nanoTime();
+        final Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                final long count = this.retainedMessages.exportTo(out, RetainedMessageFormat.binary)
+                        .get(this.properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+
+                log.info("Saved {} retained messages to '{}' in {} ms.",
+                        count, this.file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+
+            Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception ex) {
+            log.error("Failed to save retained messages to '{}'.", this.file, ex);
+        }
+    }
+
+    @Override
+    public @NotNull String getId() {
+        return "spring-boot-hivemq-retained-snapshot";
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "Springboot EmbeddedHiveMQ-Retained Messages Snapshot";
+    }
+
+    @Override
+    public @NotNull String getVersion() {
+        return Optional.ofNullable(getClass().getPackage().getImplementationVersion())
+                .orElse("development");
+    }
+
+    @Override
+    public @Nullable String getAuthor() {
+        return null;
+    }
+
+    @Override
+    public int getPriority() {
+        return 0;
+    }
+
+    @Override
+    public int getStartPriority() {
+        return 1000;
+    }
+
+    @Override
+    public @NotNull ExtensionMain getExtensionMain() {
+        return this;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+/**
+ * Formats to import and export retained messages
+ */
+public enum RetainedMessageFormat {
+
+    /**
+     * Compact binary format, as used for snapshots
+     */
+    binary,
+
+    /**
+     * Newline delimited JSON, one retained message per line with base64 encoded payload
+     */
+    ndjson
+}
@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.PayloadFormatIndicator;
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import com.hivemq.extension.sdk.api.services.builder.RetainedPublishBuilder;
+import com.hivemq.extension.sdk.api.services.publish.RetainedPublish;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.hivemq.boot.starter.services.retained.RetainedMessageWriter.*;
+
+/**
+ * Reads retained messages one by one from a stream, which is not closed afterwards
+ */
+abstract sealed class RetainedMessageReader {
+
+    private static final ObjectMapper mapper =
+            new ObjectMapper().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    static RetainedMessageReader of(RetainedMessageFormat format, InputStream in) throws IOException {
+        return switch (format) {
+            case binary -> new Binary(in);
+            case ndjson -> new Json(in);
+        };
+    }
+
+    /**
+     * @return The next retained message, null if there are no more
+     */
+    abstract @Nullable RetainedPublish read() throws IOException;
+
+    private static final class Binary extends RetainedMessageReader {
+
+        private final DataInputStream in;
+
+        private Binary(final InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+
+            if (this.in.readInt() != magic)
+                throw new IOException("Not a retained messages snapshot.");
+
+            if (this.in.readUnsignedByte() != version)
+                throw new IOException("Unsupported retained messages snapshot version.");
+        }
+
+        @Override
+        @Nullable RetainedPublish read() throws IOException {
+
+            if (this.in.readUnsignedByte() != recordMarker)
+                return null;
+
+            final RetainedPublishBuilder builder = Builders.retainedPublish()
+                    .topic(readString())
+                    .qos(Qos.valueOf(this.in.readUnsignedByte()));
+
+            final int flags = this.in.readUnsignedByte();
+            if ((flags & hasExpiry) != 0)
+                builder.messageExpiryInterval(this.in.readLong());
+            if ((flags & hasContentType) != 0)
+                builder.contentType(readString());
+            if ((flags & hasResponseTopic) != 0)
+                builder.responseTopic(readString());
+            if ((flags & hasCorrelationData) != 0)
+                builder.correlationData(ByteBuffer.wrap(readBytes()));
+            if ((flags & hasUtf8Payload) != 0)
+                builder.payloadFormatIndicator(PayloadFormatIndicator.UTF_8);
+
+            final int userProperties = this.in.readInt();
+            for (int i = 0; i < userProperties; i++) {
+                builder.userProperty(readString(), readString());
+            }
+
+            return builder.payload(ByteBuffer.wrap(readBytes()))
+                    .build();
+        }
+
+        private String readString() throws IOException {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes() throws IOException {
+            final byte[] bytes = new byte[this.in.readInt()];
+            this.in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static final class Json extends RetainedMessageReader {
+
+        private final MappingIterator<RetainedMessageRecord> records;
+
+        private Json(final InputStream in) throws IOException {
+            this.records = mapper.readerFor(RetainedMessageRecord.class).readValues(in);
+        }
+
+        @Override
+        @Nullable RetainedPublish read() throws IOException {
+            return this.records.hasNextValue()
+                    ? this.records.nextValue().toPublish()
+                    : null;
+        }
+    }
+}
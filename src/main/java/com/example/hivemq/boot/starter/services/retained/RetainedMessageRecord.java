@@ -0,0 +1,90 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.packets.publish.PayloadFormatIndicator;
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import com.hivemq.extension.sdk.api.services.builder.RetainedPublishBuilder;
+import com.hivemq.extension.sdk.api.services.publish.RetainedPublish;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * JSON representation of a retained message, binary data is base64 encoded
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({ "topic", "qos", "payload" })
+record RetainedMessageRecord(String topic,
+                             int qos,
+                             byte[] payload,
+                             Long messageExpiryInterval,
+                             String contentType,
+                             String responseTopic,
+                             byte[] correlationData,
+                             Boolean utf8Payload,
+                             List<Property> userProperties) {
+
+    record Property(String name, String value) {}
+
+    static RetainedMessageRecord of(RetainedPublish publish) {
+        return new RetainedMessageRecord(
+                publish.getTopic(),
+                publish.getQos().getQosNumber(),
+                publish.getPayload().map(RetainedMessageRecord::bytes).orElse(new byte[0]),
+                publish.getMessageExpiryInterval().orElse(null),
+                publish.getContentType().orElse(null),
+                publish.getResponseTopic().orElse(null),
+                publish.getCorrelationData().map(RetainedMessageRecord::bytes).orElse(null),
+                isUtf8(publish) ? Boolean.TRUE : null,
+                publish.getUserProperties().asList().isEmpty()
+                        ? null
+                        : publish.getUserProperties().asList().stream()
+                                .map(p -> new Property(p.getName(), p.getValue()))
+                                .toList());
+    }
+
+    RetainedPublish toPublish() {
+        final RetainedPublishBuilder builder = Builders.retainedPublish()
+                .topic(this.topic)
+                .qos(Qos.valueOf(this.qos))
+                .payload(ByteBuffer.wrap(this.payload == null ? new byte[0] : this.payload));
+
+        if (this.messageExpiryInterval != null) builder.messageExpiryInterval(this.messageExpiryInterval);
+        if (this.contentType != null) builder.contentType(this.contentType);
+        if (this.responseTopic != null) builder.responseTopic(this.responseTopic);
+        if (this.correlationData != null) builder.correlationData(ByteBuffer.wrap(this.correlationData));
+        if (Boolean.TRUE.equals(this.utf8Payload)) builder.payloadFormatIndicator(PayloadFormatIndicator.UTF_8);
+        if (this.userProperties != null) this.userProperties.forEach(p -> builder.userProperty(p.name(), p.value()));
+
+        return builder.build();
+    }
+
+    static boolean isUtf8(RetainedPublish publish) {
+        return publish.getPayloadFormatIndicator()
+                .filter(PayloadFormatIndicator.UTF_8::equals)
+                .isPresent();
+    }
+
+    static byte[] bytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
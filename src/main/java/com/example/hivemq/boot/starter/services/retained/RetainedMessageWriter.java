@@ -0,0 +1,143 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.hivemq.extension.sdk.api.packets.general.UserProperty;
+import com.hivemq.extension.sdk.api.services.publish.RetainedPublish;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes retained messages one by one to a stream, which is not closed afterwards
+ */
+abstract sealed class RetainedMessageWriter {
+
+    static final int magic = 0x48_4D_52_53;
+    static final int version = 1;
+
+    static final int recordMarker = 1;
+    static final int endMarker = 0;
+
+    static final int hasExpiry = 1;
+    static final int hasContentType = 1 << 1;
+    static final int hasResponseTopic = 1 << 2;
+    static final int hasCorrelationData = 1 << 3;
+    static final int hasUtf8Payload = 1 << 4;
+
+    private static final ObjectMapper mapper =
+            new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    static RetainedMessageWriter of(RetainedMessageFormat format, OutputStream out) throws IOException {
+        return switch (format) {
+            case binary -> new Binary(out);
+            case ndjson -> new Json(out);
+        };
+    }
+
+    abstract void write(RetainedPublish publish) throws IOException;
+
+    abstract void finish() throws IOException;
+
+    private static final class Binary extends RetainedMessageWriter {
+
+        private final DataOutputStream out;
+
+        private Binary(final OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.out.writeInt(magic);
+            this.out.writeByte(version);
+        }
+
+        @Override
+        void write(RetainedPublish publish) throws IOException {
+
+            int flags = 0;
+            if (publish.getMessageExpiryInterval().isPresent()) flags |= hasExpiry;
+            if (publish.getContentType().isPresent()) flags |= hasContentType;
+            if (publish.getResponseTopic().isPresent()) flags |= hasResponseTopic;
+            if (publish.getCorrelationData().isPresent()) flags |= hasCorrelationData;
+            if (RetainedMessageRecord.isUtf8(publish)) flags |= hasUtf8Payload;
+
+            this.out.writeByte(recordMarker);
+            writeString(publish.getTopic());
+            this.out.writeByte(publish.getQos().getQosNumber());
+            this.out.writeByte(flags);
+
+            if ((flags & hasExpiry) != 0)
+                this.out.writeLong(publish.getMessageExpiryInterval().get());
+            if ((flags & hasContentType) != 0)
+                writeString(publish.getContentType().get());
+            if ((flags & hasResponseTopic) != 0)
+                writeString(publish.getResponseTopic().get());
+            if ((flags & hasCorrelationData) != 0)
+                writeBytes(RetainedMessageRecord.bytes(publish.getCorrelationData().get()));
+
+            final List<UserProperty> userProperties = publish.getUserProperties().asList();
+            this.out.writeInt(userProperties.size());
+            for (UserProperty userProperty : userProperties) {
+                writeString(userProperty.getName());
+                writeString(userProperty.getValue());
+            }
+
+            writeBytes(publish.getPayload().map(RetainedMessageRecord::bytes).orElse(new byte[0]));
+        }
+
+        @Override
+        void finish() throws IOException {
+            this.out.writeByte(endMarker);
+            this.out.flush();
+        }
+
+        private void writeString(String value) throws IOException {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            this.out.writeInt(bytes.length);
+            this.out.write(bytes);
+        }
+    }
+
+    private static final class Json extends RetainedMessageWriter {
+
+        private final SequenceWriter out;
+
+        private Json(final OutputStream out) throws IOException {
+            this.out = mapper.writerFor(RetainedMessageRecord.class)
+                    .withRootValueSeparator("\n")
+                    .writeValues(out);
+        }
+
+        @Override
+        void write(RetainedPublish publish) throws IOException {
+            this.out.write(RetainedMessageRecord.of(publish));
+        }
+
+        @Override
+        void finish() throws IOException {
+            this.out.flush();
+            this.out.close();
+        }
+    }
+}
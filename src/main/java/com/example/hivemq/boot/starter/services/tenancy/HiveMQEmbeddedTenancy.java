@@ -0,0 +1,438 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.tenancy;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedAuthorizer;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedClientListener;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.auth.parameter.PublishAuthorizerInput;
+import com.hivemq.extension.sdk.api.auth.parameter.SubscriptionAuthorizerInput;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.ConnectionAttributeStore;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import com.hivemq.extension.sdk.api.interceptor.connect.ConnectInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.connect.parameter.ConnectInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.connect.parameter.ConnectInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.SubscribeInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.parameter.SubscribeInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.subscribe.parameter.SubscribeInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.unsubscribe.UnsubscribeInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.unsubscribe.parameter.UnsubscribeInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.unsubscribe.parameter.UnsubscribeInboundOutput;
+import com.hivemq.extension.sdk.api.packets.subscribe.ModifiableSubscription;
+import com.hivemq.extension.sdk.api.packets.unsubscribe.ModifiableUnsubscribePacket;
+import com.hivemq.extension.sdk.api.parameter.ClientBasedInput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Isolates tenants sharing the broker in topic namespaces below the root topic level.
+ * The tenant of a client is derived on connect, from its client id, user name or a connection attribute,
+ * and stored as connection attribute. Topics of its publishes, including its will, and topic filters of its
+ * subscriptions get prefixed with the namespace of its tenant, which is stripped again from publishes delivered to it,
+ * so clients of different tenants may use the same topics without noticing each other.
+ * <p>
+ * This stage runs first, so other stages see the topics including the namespace, while its outbound part
+ * runs last. Clients trying to access other namespaces, and clients without tenant if required, are denied.
+ * Unless restricted to known tenants, tenants are dropped together with their metrics once their last client
+ * disconnected, and new tenants are refused while the maximum number of tenants is connected.
+ */
+@Slf4j
+public final class HiveMQEmbeddedTenancy implements HiveMQEmbeddedStage, HiveMQEmbeddedClientListener,
+        HiveMQEmbeddedAuthorizer, ConnectInboundInterceptor {
+
+    // Identifies the connection a client got initialized with, as client ids are reused on session takeover
+    private static final String connectionAttribute = "hivemq-tenancy-connection";
+    private static final String sharePrefix = "$share/";
+
+    private final HiveMQEmbeddedProperties.Tenancy properties;
+    private final String root;
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final Map<String, Connection> clients = new ConcurrentHashMap<>();
+    private final AtomicLong connections = new AtomicLong();
+
+    private final Counter deniedWithoutTenant;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates a tenancy stage
+     * @param properties Configuration properties
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedTenancy(final HiveMQEmbeddedProperties.Tenancy properties, final MeterRegistry meterRegistry) {
+
+        this.properties = properties;
+        this.root = properties.getRoot() + "/";
+
+        this.meterRegistry = meterRegistry;
+        this.deniedWithoutTenant = meterRegistry.counter("hivemq.tenancy.denied", "tenant", "none");
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "tenancy";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public @NotNull ConnectInboundInterceptor getConnectInboundInterceptor() {
+        return this;
+    }
+
+    @Override
+    public void onConnect(@NotNull ConnectInboundInput connectInboundInput,
+                          @NotNull ConnectInboundOutput connectInboundOutput) {
+
+        // With source attribute, the tenant is provided later on by an authenticator
+        final String name = switch (this.properties.getSource()) {
+            case clientId -> parse(connectInboundInput.getClientInformation().getClientId());
+            case userName -> connectInboundInput.getConnectPacket().getUserName().map(this::parse).orElse(null);
+            case attribute -> null;
+        };
+
+        if (name == null || !isValid(name))
+            return;
+
+        connectInboundInput.getConnectionInformation()
+                .getConnectionAttributeStore()
+                .putAsString(this.properties.getAttribute(), name);
+        connectInboundOutput.getConnectPacket()
+                .getModifiableWillPublish()
+                .ifPresent(will -> will.setTopic(namespace(name).concat(will.getTopic())));
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+
+        final String clientId = initializerInput.getClientInformation().getClientId();
+        final ConnectionAttributeStore attributes = initializerInput.getConnectionInformation().getConnectionAttributeStore();
+        final String name = tenantName(initializerInput);
+        final Tenant tenant = name == null ? null : acquire(name);
+
+        if (tenant == null) {
+            attributes.remove(connectionAttribute);
+            log.debug("Client '{}' has no tenant.", clientId);
+            return;
+        }
+
+        final long id = this.connections.incrementAndGet();
+        attributes.putAsString(connectionAttribute, Long.toString(id));
+        this.clients.put(clientId, new Connection(id, tenant));
+
+        clientContext.addPublishInboundInterceptor(tenant);
+        clientContext.addSubscribeInboundInterceptor(tenant);
+        clientContext.addUnsubscribeInboundInterceptor(tenant);
+    }
+
+    @Override
+    public void onDisconnect(@NotNull DisconnectEventInput disconnectEventInput) {
+
+        final ConnectionAttributeStore attributes = disconnectEventInput.getConnectionInformation().getConnectionAttributeStore();
+        final Optional<String> connection = attributes.getAsString(connectionAttribute);
+        if (connection.isEmpty())
+            return;
+
+        // On session takeover, the new connection may have been initialized already
+        final long id = Long.parseLong(connection.get());
+        this.clients.computeIfPresent(disconnectEventInput.getClientInformation().getClientId(),
+                (clientId, current) -> current.id() == id ? null : current);
+
+        attributes.getAsString(this.properties.getAttribute()).ifPresent(this::release);
+    }
+
+    @Override
+    public @NotNull Decision authorizePublish(@NotNull PublishAuthorizerInput publishAuthorizerInput) {
+        return authorize(publishAuthorizerInput, publishAuthorizerInput.getPublishPacket().getTopic());
+    }
+
+    @Override
+    public @NotNull Decision authorizeSubscription(@NotNull SubscriptionAuthorizerInput subscriptionAuthorizerInput) {
+        return authorize(subscriptionAuthorizerInput, withoutShare(subscriptionAuthorizerInput.getSubscription().getTopicFilter()));
+    }
+
+    /**
+     * @return Stage adding the outbound part, which runs after all other stages
+     */
+    public @NotNull HiveMQEmbeddedStage outbound() {
+        return new HiveMQEmbeddedStage() {
+
+            @Override
+            public @NotNull String getName() {
+                return "tenancy-outbound";
+            }
+
+            @Override
+            public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+                final Connection connection = HiveMQEmbeddedTenancy.this.clients.get(initializerInput.getClientInformation().getClientId());
+                if (connection != null)
+                    clientContext.addPublishOutboundInterceptor(connection.tenant());
+            }
+        };
+    }
+
+    /**
+     * @param name The tenant name
+     * @return The tenant, or null if none of its clients is connected
+     */
+    public @Nullable Tenant getTenant(@NotNull String name) {
+        return this.tenants.get(name);
+    }
+
+    /**
+     * @return The number of tenants with connected clients, or all known tenants seen so far
+     */
+    public int getTenantCount() {
+        return this.tenants.size();
+    }
+
+    /**
+     * Inserts topic levels right below the namespace of a topic, e.g. to derive a dead letter topic
+     * tenants can subscribe to
+     * @param topic A topic, within a namespace or not
+     * @param levels The topic levels to insert
+     * @return The topic with the levels inserted below its namespace, or in front if not within a namespace
+     */
+    public @NotNull String insertBelowNamespace(@NotNull String topic, @NotNull String levels) {
+
+        final int namespace = topic.startsWith(this.root) ? topic.indexOf('/', this.root.length()) : -1;
+        return namespace < 0
+                ? levels + "/" + topic
+                : topic.substring(0, namespace + 1) + levels + "/" + topic.substring(namespace + 1);
+    }
+
+    /**
+     * Counts a connected client of a tenant
+     * @param name The tenant name
+     * @return The tenant, or null if the maximum number of tenants is reached
+     */
+    @Nullable Tenant acquire(String name) {
+
+        final Tenant tenant = this.tenants.compute(name, (key, existing) -> {
+            if (existing == null && this.tenants.size() >= this.properties.getMaxTenants())
+                return null;
+
+            final Tenant acquired = existing != null ? existing : new Tenant(key);
+            acquired.connections.incrementAndGet();
+            return acquired;
+        });
+
+        if (tenant == null)
+            log.warn("Refusing tenant '{}', the maximum of {} tenants is reached.", name, this.properties.getMaxTenants());
+
+        return tenant;
+    }
+
+    /**
+     * Counts a disconnected client of a tenant, dropping the tenant with its last client unless it is a known one
+     * @param name The tenant name
+     */
+    void release(String name) {
+        this.tenants.computeIfPresent(name, (key, tenant) -> {
+            if (tenant.connections.decrementAndGet() > 0 || !this.properties.getTenants().isEmpty())
+                return tenant;
+
+            tenant.close();
+            return null;
+        });
+    }
+
+    private Decision authorize(ClientBasedInput input, String topic) {
+
+        final Connection connection = this.clients.get(input.getClientInformation().getClientId());
+        final String name = connection != null ? connection.tenant().getName() : tenantName(input);
+
+        if (name == null) {
+            if (!this.properties.isRequired())
+                return Decision.next;
+
+            this.deniedWithoutTenant.increment();
+            return Decision.deny;
+        }
+
+        final String prefix = connection != null ? connection.tenant().getPrefix() : namespace(name);
+        if (topic.startsWith(prefix))
+            return Decision.next;
+
+        // Wills get authorized before the client is initialized, unlike other publishes they must be qualified already.
+        // Otherwise, depending on the order of interception and authorization, the topic may not be qualified yet.
+        if (connection != null && !topic.startsWith(this.root))
+            return Decision.next;
+
+        Optional.ofNullable(this.tenants.get(name))
+                .ifPresent(tenant -> tenant.denied.increment());
+        return Decision.deny;
+    }
+
+    private @Nullable String tenantName(ClientBasedInput input) {
+        return input.getConnectionInformation()
+                .getConnectionAttributeStore()
+                .getAsString(this.properties.getAttribute())
+                .filter(this::isValid)
+                .orElse(null);
+    }
+
+    private boolean isValid(String name) {
+        return !name.isEmpty() && !name.contains("/") && !name.contains("+") && !name.contains("#")
+                && (this.properties.getTenants().isEmpty() || this.properties.getTenants().contains(name));
+    }
+
+    private @Nullable String parse(String value) {
+        final int separator = value.indexOf(this.properties.getSeparator());
+        return separator > 0 ? value.substring(0, separator) : null;
+    }
+
+    private String namespace(String name) {
+        return Optional.ofNullable(this.tenants.get(name))
+                .map(Tenant::getPrefix)
+                .orElseGet(() -> this.root + name + "/");
+    }
+
+    private static String withoutShare(String topicFilter) {
+        if (!topicFilter.startsWith(sharePrefix))
+            return topicFilter;
+
+        final int group = topicFilter.indexOf('/', sharePrefix.length());
+        return group < 0 ? topicFilter : topicFilter.substring(group + 1);
+    }
+
+    private record Connection(long id, Tenant tenant) {}
+
+    /**
+     * A tenant, rewriting topics of its clients from and to its namespace
+     */
+    public final class Tenant implements PublishInboundInterceptor, PublishOutboundInterceptor,
+            SubscribeInboundInterceptor, UnsubscribeInboundInterceptor {
+
+        @Getter
+        private final String name;
+
+        @Getter
+        private final String prefix;
+
+        private final AtomicInteger connections = new AtomicInteger();
+        private final Counter inbound;
+        private final Counter outbound;
+        private final Counter denied;
+        private final Gauge connected;
+
+        private Tenant(String name) {
+
+            this.name = name;
+            this.prefix = HiveMQEmbeddedTenancy.this.root + name + "/";
+
+            final MeterRegistry meterRegistry = HiveMQEmbeddedTenancy.this.meterRegistry;
+            this.inbound = meterRegistry.counter("hivemq.tenancy.messages", "tenant", name, "direction", "inbound");
+            this.outbound = meterRegistry.counter("hivemq.tenancy.messages", "tenant", name, "direction", "outbound");
+            this.denied = meterRegistry.counter("hivemq.tenancy.denied", "tenant", name);
+            this.connected = Gauge.builder("hivemq.tenancy.connections", this.connections, AtomicInteger::get)
+                    .description("Number of connected clients of the tenant")
+                    .tag("tenant", name)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * @return The number of connected clients
+         */
+        public int getConnections() {
+            return this.connections.get();
+        }
+
+        /**
+         * @param topic A topic or topic filter as seen by clients of this tenant
+         * @return The topic or topic filter within the namespace, keeping shared subscription groups in front
+         */
+        public @NotNull String qualify(@NotNull String topic) {
+
+            if (!topic.startsWith(sharePrefix))
+                return this.prefix.concat(topic);
+
+            final int group = topic.indexOf('/', sharePrefix.length());
+            return group < 0
+                    ? this.prefix.concat(topic)
+                    : topic.substring(0, group + 1).concat(this.prefix).concat(topic.substring(group + 1));
+        }
+
+        /**
+         * @param topic A topic within the namespace
+         * @return The topic as seen by clients of this tenant, or unchanged if not within the namespace
+         */
+        public @NotNull String unqualify(@NotNull String topic) {
+            return topic.startsWith(this.prefix) ? topic.substring(this.prefix.length()) : topic;
+        }
+
+        @Override
+        public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                     @NotNull PublishInboundOutput publishInboundOutput) {
+            publishInboundOutput.getPublishPacket().setTopic(this.prefix.concat(publishInboundInput.getPublishPacket().getTopic()));
+            this.inbound.increment();
+        }
+
+        @Override
+        public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                      @NotNull PublishOutboundOutput publishOutboundOutput) {
+            final String topic = publishOutboundInput.getPublishPacket().getTopic();
+            if (topic.startsWith(this.prefix))
+                publishOutboundOutput.getPublishPacket().setTopic(topic.substring(this.prefix.length()));
+            this.outbound.increment();
+        }
+
+        @Override
+        public void onInboundSubscribe(@NotNull SubscribeInboundInput subscribeInboundInput,
+                                       @NotNull SubscribeInboundOutput subscribeInboundOutput) {
+            for (ModifiableSubscription subscription : subscribeInboundOutput.getSubscribePacket().getSubscriptions())
+                subscription.setTopicFilter(qualify(subscription.getTopicFilter()));
+        }
+
+        @Override
+        public void onInboundUnsubscribe(@NotNull UnsubscribeInboundInput unsubscribeInboundInput,
+                                         @NotNull UnsubscribeInboundOutput unsubscribeInboundOutput) {
+            final ModifiableUnsubscribePacket packet = unsubscribeInboundOutput.getUnsubscribePacket();
+            packet.setTopicFilters(packet.getTopicFilters().stream().map(this::qualify).toList());
+        }
+
+        private void close() {
+            final MeterRegistry meterRegistry = HiveMQEmbeddedTenancy.this.meterRegistry;
+            meterRegistry.remove(this.inbound);
+            meterRegistry.remove(this.outbound);
+            meterRegistry.remove(this.denied);
+            meterRegistry.remove(this.connected);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.tracing;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishOutboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishOutboundOutput;
+import com.hivemq.extension.sdk.api.packets.general.ModifiableUserProperties;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagates W3C trace context through MQTT 5 user properties and creates spans
+ * for the ingress of publishes into the broker and for each of their deliveries.
+ * <p>
+ * Publishes carrying a trace context continue its trace, if it is sampled. Publishes without
+ * trace context start a new trace at the configured sample rate, all others skip tracing entirely,
+ * so unsampled publishes cost a user property lookup and a random number only.
+ */
+public final class HiveMQEmbeddedTracing implements HiveMQEmbeddedStage, PublishInboundInterceptor, PublishOutboundInterceptor {
+
+    /**
+     * User property carrying the W3C trace context
+     */
+    public static final String traceparent = "traceparent";
+
+    static final String ingressSpan = "hivemq.ingress";
+    static final String deliverySpan = "hivemq.delivery";
+
+    private static final Propagator.Getter<ModifiableUserProperties> getter =
+            (carrier, key) -> carrier.getFirst(key).orElse(null);
+    private static final Propagator.Setter<ModifiableUserProperties> setter =
+            (carrier, key, value) -> {
+                carrier.removeName(key);
+                carrier.addUserProperty(key, value);
+            };
+
+    private final HiveMQEmbeddedProperties.Tracing properties;
+    private final Tracer tracer;
+    private final Propagator propagator;
+    private final List<TopicFilter> topicFilters;
+
+    /**
+     * Creates a tracing stage
+     * @param properties Tracing configuration
+     * @param tracer Tracer of the application
+     * @param propagator Propagator of the application, expected to support W3C trace context
+     */
+    public HiveMQEmbeddedTracing(final HiveMQEmbeddedProperties.Tracing properties,
+                                 final Tracer tracer,
+                                 final Propagator propagator) {
+        this.properties = properties;
+        this.tracer = tracer;
+        this.propagator = propagator;
+        this.topicFilters = TopicFilter.compile(properties.getTopicFilters());
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "tracing";
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+        if (this.properties.isDeliverySpans())
+            clientContext.addPublishOutboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        if (!TopicFilter.anyMatch(this.topicFilters, packet.getTopic()))
+            return;
+
+        ingress(packet.getTopic(), publishInboundInput.getClientInformation().getClientId(),
+                packet.getQos().getQosNumber(), packet.getTimestamp(),
+                publishInboundOutput.getPublishPacket().getUserProperties(), getter, setter);
+    }
+
+    @Override
+    public void onOutboundPublish(@NotNull PublishOutboundInput publishOutboundInput,
+                                  @NotNull PublishOutboundOutput publishOutboundOutput) {
+
+        final PublishPacket packet = publishOutboundInput.getPublishPacket();
+        delivery(packet.getTopic(), publishOutboundInput.getClientInformation().getClientId(),
+                packet.getQos().getQosNumber(), packet.getTimestamp(),
+                publishOutboundOutput.getPublishPacket().getUserProperties(), getter, setter);
+    }
+
+    /**
+     * Traces the ingress of a publish into the broker and replaces its trace context with the one of the ingress span
+     * @param topic Topic of the publish
+     * @param clientId Client sending the publish
+     * @param qos Quality of service of the publish
+     * @param timestamp Arrival time of the publish in milliseconds since epoch
+     * @param carrier Carrier of the trace context, e.g. user properties
+     * @param getter Reads from the carrier
+     * @param setter Writes to the carrier, replacing existing values
+     * @return True, if a span was created
+     */
+    public <C> boolean ingress(@NotNull String topic, @NotNull String clientId, int qos, long timestamp,
+                               @NotNull C carrier, @NotNull Propagator.Getter<C> getter, @NotNull Propagator.Setter<C> setter) {
+
+        final String parent = getter.get(carrier, traceparent);
+        if (parent == null ? !sample() : !isSampled(parent))
+            return false;
+
+        // New traces start without extracting anything
+        final Span.Builder builder = parent == null
+                ? this.tracer.spanBuilder().setNoParent()
+                : this.propagator.extract(carrier, getter);
+
+        final Span span = builder
+                .name(ingressSpan)
+                .kind(Span.Kind.CONSUMER)
+                .tag("messaging.system", "mqtt")
+                .tag("messaging.destination.name", topic)
+                .tag("messaging.client.id", clientId)
+                .tag("messaging.mqtt.qos", Integer.toString(qos))
+                .startTimestamp(timestamp, TimeUnit.MILLISECONDS)
+                .start();
+
+        this.propagator.inject(span.context(), carrier, setter);
+        span.end();
+        return true;
+    }
+
+    /**
+     * Traces the delivery of a publish to a subscriber and replaces its trace context with the one of the delivery span
+     * @param topic Topic of the publish
+     * @param clientId Client receiving the publish
+     * @param qos Quality of service of the delivery
+     * @param timestamp Arrival time of the publish in milliseconds since epoch
+     * @param carrier Carrier of the trace context, e.g. user properties
+     * @param getter Reads from the carrier
+     * @param setter Writes to the carrier, replacing existing values
+     * @return True, if a span was created
+     */
+    public <C> boolean delivery(@NotNull String topic, @NotNull String clientId, int qos, long timestamp,
+                                @NotNull C carrier, @NotNull Propagator.Getter<C> getter, @NotNull Propagator.Setter<C> setter) {
+
+        final String parent = getter.get(carrier, traceparent);
+        if (parent == null || !isSampled(parent))
+            return false;
+
+        final Span span = this.propagator.extract(carrier, getter)
+                .name(deliverySpan)
+                .kind(Span.Kind.PRODUCER)
+                .tag("messaging.system", "mqtt")
+                .tag("messaging.destination.name", topic)
+                .tag("messaging.client.id", clientId)
+                .tag("messaging.mqtt.qos", Integer.toString(qos))
+                .startTimestamp(timestamp, TimeUnit.MILLISECONDS)
+                .start();
+
+        this.propagator.inject(span.context(), carrier, setter);
+        span.end();
+        return true;
+    }
+
+    private boolean sample() {
+        return ThreadLocalRandom.current().nextDouble() < this.properties.getSampleRate();
+    }
+
+    /**
+     * @param traceparent W3C trace context, i.e. version-traceid-spanid-flags
+     * @return True, if the sampled flag is set
+     */
+    static boolean isSampled(@Nullable String traceparent) {
+        if (traceparent == null || traceparent.length() < 55)
+            return false;
+
+        final int flags = Character.digit(traceparent.charAt(54), 16);
+        return flags >= 0 && (flags & 1) == 1;
+    }
+}
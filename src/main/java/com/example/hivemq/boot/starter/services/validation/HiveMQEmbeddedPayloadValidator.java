@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+
+/**
+ * Validator for a type of payload schemas.
+ * Beans of this type get used by the validation stage for schemas of their type.
+ */
+public interface HiveMQEmbeddedPayloadValidator {
+
+    /**
+     * @return The type of schemas this validator compiles, as referred to by the configuration
+     */
+    @NotNull String getType();
+
+    /**
+     * Compiles a schema, this is done once per schema
+     * @param schema The schema, if one is configured
+     * @return The compiled schema
+     * @throws IOException If the schema cannot be read
+     */
+    @NotNull PayloadSchema compile(@Nullable Resource schema) throws IOException;
+}
@@ -0,0 +1,213 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.example.hivemq.boot.starter.services.claimcheck.HiveMQEmbeddedClaimCheck;
+import com.example.hivemq.boot.starter.services.tenancy.HiveMQEmbeddedTenancy;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.client.ClientContext;
+import com.hivemq.extension.sdk.api.client.parameter.InitializerInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
+import com.hivemq.extension.sdk.api.packets.publish.ModifiablePublishPacket;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Validates inbound payloads against the schema mapped to their topic, and rejects or dead-letters invalid publishes.
+ * Schemas are compiled once on creation, and shared by all mappings referring to the same one.
+ * The schema matching a topic is cached, as long as the cache does not exceed its size, otherwise it starts over.
+ * <p>
+ * Payloads offloaded by the claim-check stage are rehydrated for validation,
+ * and dead letters of tenants are kept within their namespace.
+ */
+@Slf4j
+public final class HiveMQEmbeddedValidation implements HiveMQEmbeddedStage, PublishInboundInterceptor {
+
+    /**
+     * User property carrying the violation of a dead-lettered publish
+     */
+    public static final String userProperty = "hivemq-validation-error";
+
+    private static final PayloadSchema unvalidated = payload -> null;
+    private static final int maxReasonLength = 256;
+
+    private final HiveMQEmbeddedProperties.Validation properties;
+    private final List<Mapping> mappings = new ArrayList<>();
+    private final Map<String, PayloadSchema> topics = new ConcurrentHashMap<>();
+    private final HiveMQEmbeddedClaimCheck claimCheck;
+    private final HiveMQEmbeddedTenancy tenancy;
+
+    private final Counter valid;
+    private final Counter rejected;
+    private final Counter deadLettered;
+
+    /**
+     * Creates a validation stage
+     * @param properties Configuration properties
+     * @param validators Validators by their type
+     * @param resourceLoader Loader for schema locations
+     * @param claimCheck Claim-check stage to rehydrate offloaded payloads with, if enabled
+     * @param tenancy Tenancy stage to keep dead letters within the namespace of their tenant, if enabled
+     * @param meterRegistry Registry to publish metrics to
+     */
+    public HiveMQEmbeddedValidation(final HiveMQEmbeddedProperties properties,
+                                    final List<HiveMQEmbeddedPayloadValidator> validators,
+                                    final ResourceLoader resourceLoader,
+                                    final @Nullable HiveMQEmbeddedClaimCheck claimCheck,
+                                    final @Nullable HiveMQEmbeddedTenancy tenancy,
+                                    final MeterRegistry meterRegistry) {
+
+        this.properties = properties.getValidation();
+        this.claimCheck = claimCheck;
+        this.tenancy = tenancy;
+
+        final Map<String, HiveMQEmbeddedPayloadValidator> byType = validators.stream()
+                .collect(Collectors.toMap(HiveMQEmbeddedPayloadValidator::getType, Function.identity(), (first, second) -> first));
+        final Map<String, PayloadSchema> compiled = new HashMap<>();
+
+        for (HiveMQEmbeddedProperties.Schema schema : this.properties.getSchemas()) {
+            final HiveMQEmbeddedPayloadValidator validator = Optional.ofNullable(byType.get(schema.getType()))
+                    .orElseThrow(() -> new IllegalStateException("No payload validator of type '" + schema.getType()
+                            + "', available are " + byType.keySet()));
+
+            this.mappings.add(new Mapping(TopicFilter.compile(schema.getTopicFilters()),
+                    compiled.computeIfAbsent(schema.getType() + ":" + schema.getLocation(),
+                            key -> compile(validator, resourceLoader, schema.getLocation()))));
+        }
+
+        log.debug("Compiled {} schemas for {} topic filter mappings.", compiled.size(), this.mappings.size());
+
+        this.valid = meterRegistry.counter("hivemq.validation.publishes", "outcome", "valid");
+        this.rejected = meterRegistry.counter("hivemq.validation.publishes", "outcome", "rejected");
+        this.deadLettered = meterRegistry.counter("hivemq.validation.publishes", "outcome", "dead-lettered");
+    }
+
+    @SneakyThrows({ IOException.class })
+    private static PayloadSchema compile(HiveMQEmbeddedPayloadValidator validator, ResourceLoader resourceLoader, String location) {
+        return validator.compile(location == null ? null : resourceLoader.getResource(location));
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "validation";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 4;
+    }
+
+    @Override
+    public void initialize(@NotNull InitializerInput initializerInput, @NotNull ClientContext clientContext) {
+        clientContext.addPublishInboundInterceptor(this);
+    }
+
+    @Override
+    public void onInboundPublish(@NotNull PublishInboundInput publishInboundInput,
+                                 @NotNull PublishInboundOutput publishInboundOutput) {
+
+        final PublishPacket packet = publishInboundInput.getPublishPacket();
+        final PayloadSchema schema = schema(packet.getTopic());
+        if (schema == unvalidated)
+            return;
+
+        final String violation = schema.validate(packet.getPayload()
+                .map(this::rehydrate)
+                .orElseGet(() -> ByteBuffer.allocate(0)));
+        if (violation == null) {
+            this.valid.increment();
+            return;
+        }
+
+        if (this.properties.getAction() == HiveMQEmbeddedProperties.Validation.Action.reject) {
+            publishInboundOutput.preventPublishDelivery(AckReasonCode.PAYLOAD_FORMAT_INVALID,
+                    violation.length() > maxReasonLength ? violation.substring(0, maxReasonLength) : violation);
+            this.rejected.increment();
+        } else {
+            final ModifiablePublishPacket modifiable = publishInboundOutput.getPublishPacket();
+            modifiable.setTopic(deadLetterTopic(packet.getTopic()));
+            modifiable.setRetain(false);
+            modifiable.getUserProperties().addUserProperty(userProperty, violation);
+            this.deadLettered.increment();
+        }
+    }
+
+    /**
+     * Validates a payload against the schema mapped to its topic
+     * @param topic The topic of the publish
+     * @param payload The payload of the publish
+     * @return A description of the first violation, or null if the payload is valid or no schema is mapped to the topic
+     */
+    public @Nullable String validate(@NotNull String topic, @NotNull ByteBuffer payload) {
+        return schema(topic).validate(payload);
+    }
+
+    private PayloadSchema schema(String topic) {
+        PayloadSchema schema = this.topics.get(topic);
+        if (schema == null) {
+            schema = match(topic);
+            if (this.topics.size() >= this.properties.getTopicCacheSize())
+                this.topics.clear();
+            this.topics.put(topic, schema);
+        }
+        return schema;
+    }
+
+    private PayloadSchema match(String topic) {
+        for (Mapping mapping : this.mappings) {
+            if (TopicFilter.anyMatch(mapping.topicFilters(), topic))
+                return mapping.schema();
+        }
+        return unvalidated;
+    }
+
+    private String deadLetterTopic(String topic) {
+        return this.tenancy == null
+                ? this.properties.getDeadLetterTopic() + "/" + topic
+                : this.tenancy.insertBelowNamespace(topic, this.properties.getDeadLetterTopic());
+    }
+
+    private ByteBuffer rehydrate(ByteBuffer payload) {
+        return this.claimCheck == null
+                ? payload
+                : this.claimCheck.rehydrate(payload).orElse(payload);
+    }
+
+    private record Mapping(List<TopicFilter> topicFilters, PayloadSchema schema) {}
+}
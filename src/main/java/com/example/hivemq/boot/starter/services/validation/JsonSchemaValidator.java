@@ -0,0 +1,63 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Validates JSON payloads against JSON schemas, draft 2020-12 unless the schema declares another one.
+ * Requires the networknt JSON schema validator on the classpath.
+ */
+public class JsonSchemaValidator implements HiveMQEmbeddedPayloadValidator {
+
+    private final JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012);
+
+    @Override
+    public @NotNull String getType() {
+        return "json-schema";
+    }
+
+    @Override
+    public @NotNull PayloadSchema compile(@Nullable Resource schema) throws IOException {
+        if (schema == null)
+            throw new IllegalArgumentException("A JSON schema requires a location");
+
+        final JsonSchema compiled;
+        try (InputStream in = schema.getInputStream()) {
+            compiled = this.factory.getSchema(JsonValidator.mapper.readTree(in));
+        }
+        compiled.initializeValidators();
+
+        return payload -> {
+            try {
+                final Set<ValidationMessage> messages = compiled.validate(JsonValidator.parse(payload));
+                return messages.isEmpty() ? null : messages.iterator().next().getMessage();
+            } catch (IOException ioe) {
+                return JsonValidator.message(ioe);
+            }
+        };
+    }
+}
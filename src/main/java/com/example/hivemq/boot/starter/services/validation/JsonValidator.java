@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Validates payloads to be well-formed JSON, does not require a schema
+ */
+public class JsonValidator implements HiveMQEmbeddedPayloadValidator {
+
+    static final ObjectMapper mapper = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+
+    @Override
+    public @NotNull String getType() {
+        return "json";
+    }
+
+    @Override
+    public @NotNull PayloadSchema compile(@Nullable Resource schema) {
+        return payload -> {
+            try {
+                parse(payload);
+                return null;
+            } catch (IOException ioe) {
+                return message(ioe);
+            }
+        };
+    }
+
+    /**
+     * @return The parsed payload
+     * @throws IOException If the payload is no well-formed JSON
+     */
+    static JsonNode parse(ByteBuffer payload) throws IOException {
+        final JsonNode node = mapper.readTree(new ByteBufferBackedInputStream(payload.duplicate()));
+        if (node == null || node.isMissingNode())
+            throw new IOException("Empty payload");
+        return node;
+    }
+
+    static String message(IOException ioe) {
+        return ioe instanceof JsonProcessingException jpe ? jpe.getOriginalMessage() : ioe.getMessage();
+    }
+}
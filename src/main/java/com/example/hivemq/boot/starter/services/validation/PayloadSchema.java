@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compiled schema, payloads get validated against. Implementations must be thread-safe.
+ */
+@FunctionalInterface
+public interface PayloadSchema {
+
+    /**
+     * Validates a payload
+     * @param payload The payload, must not be consumed
+     * @return A description of the first violation, or null if the payload is valid
+     */
+    @Nullable String validate(@NotNull ByteBuffer payload);
+}
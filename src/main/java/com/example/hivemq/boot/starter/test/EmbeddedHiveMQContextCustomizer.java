@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.test;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.support.DefaultSingletonBeanRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.test.context.ContextCustomizer;
+import org.springframework.test.context.MergedContextConfiguration;
+import org.springframework.test.context.support.TestPropertySourceUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Points HiveMQ to temporary folders and an ephemeral loopback listener.
+ * All instances are equal, so the customizer never prevents contexts from being cached and shared.
+ */
+@Slf4j
+final class EmbeddedHiveMQContextCustomizer implements ContextCustomizer {
+
+    private static final String propertySource = "hivemq.test";
+    private static final String cleanup = "hiveMQEmbeddedTestFolderCleanup";
+
+    @Override
+    @SneakyThrows({ IOException.class })
+    public void customizeContext(ConfigurableApplicationContext context, MergedContextConfiguration mergedConfig) {
+
+        final Path folder = Files.createTempDirectory("hivemq-test-");
+        final MapPropertySource properties = new MapPropertySource(propertySource, Map.of(
+                "hivemq.config.folder", folder.resolve("conf").toString(),
+                "hivemq.data.folder", folder.resolve("data").toString(),
+                "hivemq.extensions.folder", folder.resolve("extensions").toString(),
+                "hivemq.config.listeners.tcp-listeners[0].bind-address", "127.0.0.1",
+                "hivemq.config.listeners.tcp-listeners[0].port", "0"));
+
+        // Inlined test properties take precedence
+        final MutablePropertySources sources = context.getEnvironment().getPropertySources();
+        if (sources.contains(TestPropertySourceUtils.INLINED_PROPERTIES_PROPERTY_SOURCE_NAME)) {
+            sources.addAfter(TestPropertySourceUtils.INLINED_PROPERTIES_PROPERTY_SOURCE_NAME, properties);
+        } else {
+            sources.addFirst(properties);
+        }
+
+        // Registered before any bean, so it gets destroyed after HiveMQ has been stopped
+        if (context.getBeanFactory() instanceof DefaultSingletonBeanRegistry registry)
+            registry.registerDisposableBean(cleanup, () -> delete(folder));
+    }
+
+    private static void delete(Path folder) {
+        try {
+            FileSystemUtils.deleteRecursively(folder);
+        } catch (IOException ioe) {
+            log.warn("Failed to delete temporary HiveMQ folder '{}'.", folder, ioe);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.test;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.annotation.AliasFor;
+import org.springframework.test.context.ContextCustomizerFactories;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a test against embedded HiveMQ within a Spring Boot application context.
+ * Each context gets its own temporary HiveMQ folders, deleted when the context gets closed,
+ * and a single tcp listener on the loopback address with a free port, provided as {@link LocalHiveMQPort}.
+ * Test classes with the same configuration share one cached context and thereby one broker,
+ * while different contexts, also in parallel test JVMs, never collide on folders or ports.
+ * <p>
+ * Properties given by {@link #properties()} take precedence, e.g. to configure further listeners.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@SpringBootTest
+@ContextCustomizerFactories(EmbeddedHiveMQContextCustomizerFactory.class)
+public @interface EmbeddedHiveMQTest {
+
+    /**
+     * @return Properties in form key=value to add to the environment
+     */
+    @AliasFor(annotation = SpringBootTest.class)
+    String[] properties() default {};
+
+    /**
+     * @return The component classes to load the application context from
+     */
+    @AliasFor(annotation = SpringBootTest.class)
+    Class<?>[] classes() default {};
+}
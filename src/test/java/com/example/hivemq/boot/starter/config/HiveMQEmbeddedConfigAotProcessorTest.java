@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedConfigAotProcessorTest {
+
+    private final HiveMQEmbeddedConfigAotProcessor processor = new HiveMQEmbeddedConfigAotProcessor();
+
+    @Test
+    void shouldRenderConfigWithoutSecrets() {
+        final MockEnvironment environment = new MockEnvironment()
+                .withProperty("hivemq.config.listeners.tcp-listeners[0].bind-address", "0.0.0.0")
+                .withProperty("hivemq.config.listeners.tcp-listeners[0].port", "1883");
+
+        assertNotNull(this.processor.processAheadOfTime(beanFactory(environment)));
+    }
+
+    @Test
+    void shouldNotRenderConfigWithTlsPasswords() {
+        final MockEnvironment environment = new MockEnvironment()
+                .withProperty("hivemq.config.listeners.tls-tcp-listeners[0].bind-address", "0.0.0.0")
+                .withProperty("hivemq.config.listeners.tls-tcp-listeners[0].port", "8883")
+                .withProperty("hivemq.config.listeners.tls-tcp-listeners[0].tls.keystore.path", "keystore.jks")
+                .withProperty("hivemq.config.listeners.tls-tcp-listeners[0].tls.keystore.password", "secret");
+
+        assertNull(this.processor.processAheadOfTime(beanFactory(environment)));
+    }
+
+    private static DefaultListableBeanFactory beanFactory(MockEnvironment environment) {
+        final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("hiveMQEmbeddedService", new RootBeanDefinition(HiveMQEmbeddedService.class));
+        beanFactory.registerSingleton("environment", environment);
+        return beanFactory;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.config;
+
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    HiveMQEmbeddedRuntimeHintsTest() {
+        new HiveMQEmbeddedRuntimeHints().registerHints(this.hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void testConfigSerialization() {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(HiveMQEmbeddedProperties.Config.class).test(this.hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(HiveMQEmbeddedProperties.Listeners.class).test(this.hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(HiveMQEmbeddedProperties.TcpListener.class).test(this.hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(HiveMQEmbeddedExtensionsCollector.HiveMQEmbeddedExtensionWrapper.class).test(this.hints));
+    }
+
+    @Test
+    void testResources() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("logback-spring-hivemq.xml").test(this.hints));
+    }
+
+    @Test
+    void testHiveMQConfigurationEntities() {
+        final TypeReference entity = TypeReference.of(HiveMQEmbeddedRuntimeHints.entityPackage + ".HiveMQConfigEntity");
+
+        assertTrue(RuntimeHintsPredicates.reflection().onType(entity)
+                .withMemberCategory(MemberCategory.ACCESS_DECLARED_FIELDS)
+                .test(this.hints));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.hivemq.embedded.EmbeddedExtension;
+import com.hivemq.extension.sdk.api.ExtensionMain;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedClasspathExtensionsTest {
+
+    private static final String descriptor = "META-INF/hivemq-extension.xml";
+    private static final String serviceFile = "META-INF/services/" + ExtensionMain.class.getName();
+
+    private static Path jar(Path folder, String name, String content, String mainClass) throws Exception {
+        final Path root = folder.resolve(name);
+        Files.createDirectories(root.resolve("META-INF/services"));
+        Files.writeString(root.resolve(descriptor), content);
+        if (mainClass != null)
+            Files.writeString(root.resolve(serviceFile), "# main class\n" + mainClass + "\n");
+        return root;
+    }
+
+    private static ClassLoader classLoader(Path... roots) throws Exception {
+        final URL[] urls = new URL[roots.length];
+        for (int i = 0; i < roots.length; i++)
+            urls[i] = roots[i].toUri().toURL();
+        return new URLClassLoader(urls, HiveMQEmbeddedClasspathExtensionsTest.class.getClassLoader());
+    }
+
+    @Test
+    void testDiscover(@TempDir Path folder) throws Exception {
+        final ClassLoader classLoader = classLoader(jar(folder, "extension", """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <hivemq-extension>
+                    <id>test-extension</id>
+                    <name>Test Extension</name>
+                    <version>1.2.3</version>
+                    <priority>100</priority>
+                    <start-priority>500</start-priority>
+                    <author>Test</author>
+                </hivemq-extension>
+                """, TestExtensionMain.class.getName()));
+
+        final List<EmbeddedExtension> extensions = HiveMQEmbeddedClasspathExtensions.discover(classLoader, descriptor);
+
+        assertEquals(1, extensions.size());
+        final EmbeddedExtension extension = extensions.getFirst();
+        assertEquals("test-extension", extension.getId());
+        assertEquals("Test Extension", extension.getName());
+        assertEquals("1.2.3", extension.getVersion());
+        assertEquals("Test", extension.getAuthor());
+        assertEquals(100, extension.getPriority());
+        assertEquals(500, extension.getStartPriority());
+    }
+
+    @Test
+    void testMainClassLoadedOnStart(@TempDir Path folder) throws Exception {
+        final ClassLoader classLoader = classLoader(jar(folder, "extension", """
+                <hivemq-extension>
+                    <id>test-extension</id>
+                    <name>Test Extension</name>
+                    <version>1.0.0</version>
+                </hivemq-extension>
+                """, TestExtensionMain.class.getName()));
+
+        final EmbeddedExtension extension = HiveMQEmbeddedClasspathExtensions.discover(classLoader, descriptor).getFirst();
+        assertEquals(0, extension.getPriority());
+        assertEquals(1000, extension.getStartPriority());
+        assertNull(extension.getAuthor());
+
+        final HiveMQEmbeddedClasspathExtensions.LazyExtensionMain main =
+                assertInstanceOf(HiveMQEmbeddedClasspathExtensions.LazyExtensionMain.class, extension.getExtensionMain());
+        assertFalse(main.isLoaded());
+
+        final int started = TestExtensionMain.started.get();
+        main.extensionStart(null, null);
+        assertTrue(main.isLoaded());
+        assertEquals(started + 1, TestExtensionMain.started.get());
+
+        main.extensionStop(null, null);
+        main.extensionStart(null, null);
+        assertEquals(started + 2, TestExtensionMain.started.get());
+    }
+
+    @Test
+    void testSkipInvalid(@TempDir Path folder) throws Exception {
+        final String valid = """
+                <hivemq-extension>
+                    <id>test-extension</id>
+                    <name>Test Extension</name>
+                    <version>1.0.0</version>
+                </hivemq-extension>
+                """;
+        final ClassLoader classLoader = classLoader(
+                jar(folder, "first", valid, TestExtensionMain.class.getName()),
+                jar(folder, "duplicate", valid, TestExtensionMain.class.getName()),
+                jar(folder, "no-main", valid.replace("test-extension", "no-main"), null),
+                jar(folder, "no-version", valid.replace("<version>1.0.0</version>", ""), TestExtensionMain.class.getName()),
+                jar(folder, "malformed", "<hivemq-extension>", TestExtensionMain.class.getName()));
+
+        final List<EmbeddedExtension> extensions = HiveMQEmbeddedClasspathExtensions.discover(classLoader, descriptor);
+
+        assertEquals(List.of("test-extension"), extensions.stream().map(EmbeddedExtension::getId).toList());
+    }
+
+    @Test
+    void testNothingToDiscover() {
+        assertTrue(HiveMQEmbeddedClasspathExtensions.discover(getClass().getClassLoader(), "META-INF/none.xml").isEmpty());
+    }
+
+    public static final class TestExtensionMain implements ExtensionMain {
+
+        static final AtomicInteger started = new AtomicInteger();
+
+        @Override
+        public void extensionStart(@NotNull ExtensionStartInput extensionStartInput,
+                                   @NotNull ExtensionStartOutput extensionStartOutput) {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public void extensionStop(@NotNull ExtensionStopInput extensionStopInput,
+                                  @NotNull ExtensionStopOutput extensionStopOutput) {}
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedConfigFileTest {
+
+    private static HiveMQEmbeddedProperties.Config config(Path folder, int port) {
+        return new HiveMQEmbeddedProperties.Config(folder.toString(),
+                new HiveMQEmbeddedProperties.Listeners(
+                        List.of(new HiveMQEmbeddedProperties.TcpListener("tcp", "127.0.0.1", port)), null, null, null),
+                null, null, null);
+    }
+
+    @Test
+    void testWriteOnlyIfChanged(@TempDir Path folder) throws Exception {
+        final Path file = folder.resolve(HiveMQEmbeddedConfigFile.fileName);
+        final ClassLoader classLoader = getClass().getClassLoader();
+
+        assertTrue(HiveMQEmbeddedConfigFile.write(config(folder, 1883), classLoader));
+        assertTrue(Files.readString(file).contains("<port>1883</port>"));
+
+        assertFalse(HiveMQEmbeddedConfigFile.write(config(folder, 1883), classLoader));
+
+        assertTrue(HiveMQEmbeddedConfigFile.write(config(folder, 1884), classLoader));
+        assertTrue(Files.readString(file).contains("<port>1884</port>"));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void testRenderStartsWithDeclaration(@TempDir Path folder) {
+        final HiveMQEmbeddedProperties.Config config = config(folder, 1883);
+        final String content = HiveMQEmbeddedConfigFile.render(config);
+
+        assertTrue(content.startsWith("<?xml"));
+        assertTrue(content.contains(HiveMQEmbeddedConfigFile.fingerprint(config)));
+        assertNotEquals(HiveMQEmbeddedConfigFile.fingerprint(config), HiveMQEmbeddedConfigFile.fingerprint(config(folder, 1884)));
+    }
+
+    @Test
+    void testUsePrerenderedIfMatching(@TempDir Path folder) throws Exception {
+        final Path conf = Files.createDirectories(folder.resolve("conf"));
+        final Path resources = folder.resolve("resources");
+        final Path prerendered = resources.resolve(HiveMQEmbeddedConfigFile.prerenderedResource);
+        Files.createDirectories(prerendered.getParent());
+
+        // Marked, to tell it apart from a file rendered at runtime
+        Files.writeString(prerendered, HiveMQEmbeddedConfigFile.render(config(conf, 1883)) + "<!-- prerendered -->");
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { resources.toUri().toURL() }, null)) {
+            HiveMQEmbeddedConfigFile.write(config(conf, 1883), classLoader);
+            assertTrue(Files.readString(conf.resolve(HiveMQEmbeddedConfigFile.fileName)).endsWith("<!-- prerendered -->"));
+
+            HiveMQEmbeddedConfigFile.write(config(conf, 1884), classLoader);
+            assertFalse(Files.readString(conf.resolve(HiveMQEmbeddedConfigFile.fileName)).endsWith("<!-- prerendered -->"));
+        }
+    }
+}
@@ -16,15 +16,37 @@
 package com.example.hivemq.boot.starter.services;
 
 import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.embedded.EmbeddedExtension;
+import com.hivemq.extension.sdk.api.ExtensionMain;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
+import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.services.Services;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -109,4 +131,201 @@ class HiveMQEmbeddedServiceTest {
                     assertFalse(service.isRunning());
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testKeepAliveAcrossContexts(@TempDir Path folder) throws Exception {
+        ApplicationContextRunner keepAlive = this.contextRunner
+                .with(c -> customize(c,
+                        List.of("hivemq.devtools.keep-alive:true",
+                                "hivemq.extensions.collector.enabled:false",
+                                "hivemq.config.folder:" + folder.resolve("conf"),
+                                "hivemq.data.folder:" + folder.resolve("data"),
+                                "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                                "hivemq.config.listeners.tcp-listeners[0].port:0")));
+        AtomicInteger port = new AtomicInteger();
+
+        try {
+            keepAlive.run(context -> port.set(port(context.getBean(HiveMQEmbeddedService.class))));
+
+            // Still listening after the context got closed ...
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port.get()), 1000);
+            }
+
+            // ... and reused by the next context
+            keepAlive.run(context -> {
+                HiveMQEmbeddedService service = context.getBean(HiveMQEmbeddedService.class);
+                assertTrue(service.isRunning());
+                assertEquals(port.get(), port(service));
+            });
+        } finally {
+            RetainedHiveMQ.release();
+        }
+    }
+
+    @Test
+    void testReattachAcrossContexts(@TempDir Path folder) throws Exception {
+        ApplicationContextRunner keepAlive = this.contextRunner
+                .with(c -> customize(c,
+                        List.of("hivemq.devtools.keep-alive:true",
+                                "hivemq.config.folder:" + folder.resolve("conf"),
+                                "hivemq.data.folder:" + folder.resolve("data"),
+                                "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                                "hivemq.config.listeners.tcp-listeners[0].port:0")));
+        List<String> firstInitialized = new CopyOnWriteArrayList<>();
+        List<String> secondInitialized = new CopyOnWriteArrayList<>();
+        AtomicInteger firstPublishes = new AtomicInteger();
+        AtomicInteger secondPublishes = new AtomicInteger();
+        AtomicReference<Mqtt5BlockingClient> client = new AtomicReference<>();
+
+        try {
+            keepAlive.withBean(HiveMQEmbeddedStage.class, () -> counting(firstInitialized, firstPublishes))
+                    .run(context -> {
+                        client.set(Mqtt5Client.builder()
+                                .identifier("reattach")
+                                .serverHost("127.0.0.1")
+                                .serverPort(port(context.getBean(HiveMQEmbeddedService.class)))
+                                .buildBlocking());
+                        client.get().connect();
+                        publish(client.get());
+
+                        assertEquals(List.of("reattach"), firstInitialized);
+                        assertEquals(1, firstPublishes.get());
+                    });
+
+            // The client stays connected, gets initialized by the stage of the next context only
+            keepAlive.withBean(HiveMQEmbeddedStage.class, () -> counting(secondInitialized, secondPublishes))
+                    .run(context -> {
+                        assertEquals(List.of("reattach"), secondInitialized);
+                        publish(client.get());
+
+                        assertEquals(1, firstPublishes.get());
+                        assertEquals(1, secondPublishes.get());
+                        assertEquals(List.of("reattach"), firstInitialized);
+                    });
+        } finally {
+            if (client.get() != null)
+                client.get().disconnect();
+            RetainedHiveMQ.release();
+        }
+    }
+
+    @Test
+    void testRetryStartupOnTakenPort(@TempDir Path folder) {
+        this.contextRunner
+                .with(c -> customize(c,
+                        List.of("hivemq.auto-start:false",
+                                "hivemq.extensions.collector.enabled:false",
+                                "hivemq.config.folder:" + folder.resolve("conf"),
+                                "hivemq.data.folder:" + folder.resolve("data"),
+                                "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                                "hivemq.config.listeners.tcp-listeners[0].port:0")))
+                .run(context -> {
+                    HiveMQEmbeddedService service = context.getBean(HiveMQEmbeddedService.class);
+
+                    // Another process binds the picked port before HiveMQ does
+                    try (ServerSocket taken = new ServerSocket(port(service), 1, InetAddress.getByName("127.0.0.1"))) {
+                        service.startup();
+
+                        assertTrue(service.isRunning());
+                        assertNotEquals(taken.getLocalPort(), port(service));
+                        assertEquals(port(service), context.getEnvironment().getProperty("local.hivemq.port", Integer.class));
+                    } finally {
+                        service.shutdown();
+                    }
+                });
+    }
+
+    @Test
+    void testRejectPrivilegedPorts() {
+        this.contextRunner
+                .with(c -> customize(c,
+                        List.of("hivemq.auto-start:false",
+                                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                                "hivemq.config.listeners.tcp-listeners[0].port:80")))
+                .run(context -> assertNotNull(context.getStartupFailure()));
+
+        this.contextRunner
+                .with(c -> customize(c,
+                        List.of("hivemq.auto-start:false",
+                                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                                "hivemq.config.listeners.tcp-listeners[0].port:1025")))
+                .run(context -> assertNull(context.getStartupFailure()));
+    }
+
+    @Test
+    void testReportsReplacedRegistrations(@TempDir Path folder) {
+        this.contextRunner
+                .with(c -> customize(c, started(folder)))
+                .withBean(HiveMQEmbeddedStage.class, () -> counting(new CopyOnWriteArrayList<>(), new AtomicInteger()))
+                .withBean(EmbeddedExtension.class, () -> initializing("initializing"))
+                .run(context -> {
+                    assertTrue(context.getBean(HiveMQEmbeddedService.class).isRunning());
+                    assertEquals(List.of(ExtensionRegistrations.clientInitializer),
+                            context.getBean(HiveMQEmbeddedExtensionsCollector.class).getConflicts());
+                });
+    }
+
+    @Test
+    void testReportsRegistrationsOfSeveralExtensions(@TempDir Path folder) {
+        this.contextRunner
+                .with(c -> customize(c, started(folder)))
+                .withBean("first", EmbeddedExtension.class, () -> initializing("first"))
+                .withBean("second", EmbeddedExtension.class, () -> initializing("second"))
+                .run(context -> {
+                    assertTrue(context.getBean(HiveMQEmbeddedService.class).isRunning());
+                    assertEquals(List.of(ExtensionRegistrations.clientInitializer),
+                            context.getBean(HiveMQEmbeddedExtensionsCollector.class).getConflicts());
+                });
+    }
+
+    private static List<String> started(Path folder) {
+        return List.of("hivemq.config.folder:" + folder.resolve("conf"),
+                "hivemq.data.folder:" + folder.resolve("data"),
+                "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                "hivemq.config.listeners.tcp-listeners[0].port:0");
+    }
+
+    private static EmbeddedExtension initializing(String id) {
+        return EmbeddedExtension.builder()
+                .withId(id)
+                .withName(id)
+                .withVersion("1.0.0")
+                .withPriority(0)
+                .withStartPriority(1000)
+                .withExtensionMain(new ExtensionMain() {
+                    @Override
+                    public void extensionStart(@NotNull ExtensionStartInput input, @NotNull ExtensionStartOutput output) {
+                        Services.initializerRegistry().setClientInitializer((initializerInput, clientContext) -> {});
+                    }
+
+                    @Override
+                    public void extensionStop(@NotNull ExtensionStopInput input, @NotNull ExtensionStopOutput output) {}
+                })
+                .build();
+    }
+
+    private static HiveMQEmbeddedStage counting(List<String> initialized, AtomicInteger publishes) {
+        final PublishInboundInterceptor interceptor = (input, output) -> publishes.incrementAndGet();
+        return (initializerInput, clientContext) -> {
+            initialized.add(initializerInput.getClientInformation().getClientId());
+            clientContext.addPublishInboundInterceptor(interceptor);
+        };
+    }
+
+    private static void publish(Mqtt5BlockingClient client) {
+        client.publishWith()
+                .topic("reattach")
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .payload("ping".getBytes(StandardCharsets.UTF_8))
+                .send();
+    }
+
+    private static int port(HiveMQEmbeddedService service) {
+        return service.getConfig().getListeners().getTcpListeners().getFirst().getPort();
+    }
+}
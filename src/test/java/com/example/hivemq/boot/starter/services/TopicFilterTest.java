@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicFilterTest {
+
+    @Test
+    void testExactMatch() {
+        TopicFilter filter = TopicFilter.compile("telemetry/device");
+
+        assertTrue(filter.matches("telemetry/device"));
+        assertFalse(filter.matches("telemetry/device/1"));
+        assertFalse(filter.matches("telemetry/dev"));
+        assertFalse(filter.matches("telemetry"));
+    }
+
+    @Test
+    void testSingleLevelWildcard() {
+        TopicFilter filter = TopicFilter.compile("telemetry/+/temperature");
+
+        assertTrue(filter.matches("telemetry/device/temperature"));
+        assertTrue(filter.matches("telemetry//temperature"));
+        assertFalse(filter.matches("telemetry/device/humidity"));
+        assertFalse(filter.matches("telemetry/device"));
+    }
+
+    @Test
+    void testMultiLevelWildcard() {
+        TopicFilter filter = TopicFilter.compile("telemetry/#");
+
+        assertTrue(filter.matches("telemetry"));
+        assertTrue(filter.matches("telemetry/device"));
+        assertTrue(filter.matches("telemetry/device/temperature"));
+        assertFalse(filter.matches("telemetrics/device"));
+    }
+
+    @Test
+    void testSystemTopics() {
+        assertFalse(TopicFilter.compile("#").matches("$SYS/broker"));
+        assertFalse(TopicFilter.compile("+/broker").matches("$SYS/broker"));
+        assertTrue(TopicFilter.compile("$SYS/#").matches("$SYS/broker"));
+    }
+
+    @Test
+    void testRejectMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> TopicFilter.compile(""));
+        assertThrows(IllegalArgumentException.class, () -> TopicFilter.compile("telemetry/#/temperature"));
+        assertThrows(IllegalArgumentException.class, () -> TopicFilter.compile("telemetry/device#"));
+        assertThrows(IllegalArgumentException.class, () -> TopicFilter.compile("telemetry/device+/temperature"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.batching;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedBatchingAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedBatchingSinkTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedBatchingAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoSinkPerDefault() {
+        this.contextRunner
+                .withBean(HiveMQEmbeddedBatchConsumer.class, () -> batch -> {})
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedBatchingSink")));
+    }
+
+    @Test
+    void shouldContainNoSinkWithoutConsumer() {
+        this.contextRunner
+                .withPropertyValues("hivemq.batching.enabled:true")
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedBatchingSink")));
+    }
+
+    @Test
+    void shouldRegisterSinkAsStage() {
+        this.contextRunner
+                .withBean(HiveMQEmbeddedBatchConsumer.class, () -> batch -> {})
+                .withPropertyValues("hivemq.batching.enabled:true")
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedBatchingSink"));
+                    assertEquals(1, context.getBean(HiveMQEmbeddedExtensionsCollector.class).getStages().size());
+                });
+    }
+
+    @Test
+    void shouldFlushFullBatchImmediately() throws InterruptedException {
+        BatchRing ring = new BatchRing(8, 2, 1, TimeUnit.HOURS);
+        HiveMQEmbeddedBatch batch = new HiveMQEmbeddedBatch(2);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ring.offer("telemetry/" + i, "client", Qos.AT_MOST_ONCE, ByteBuffer.allocate(0), i, null));
+        }
+
+        assertEquals(2, ring.drainTo(batch));
+        assertEquals("telemetry/0", batch.getTopic(0));
+        assertEquals("telemetry/1", batch.getTopic(1));
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    void shouldFlushPartialBatchAfterLatency() throws InterruptedException {
+        BatchRing ring = new BatchRing(8, 4, 50, TimeUnit.MILLISECONDS);
+        HiveMQEmbeddedBatch batch = new HiveMQEmbeddedBatch(4);
+
+        assertTrue(ring.offer("telemetry/0", "client", Qos.AT_MOST_ONCE, ByteBuffer.allocate(0), 0, null));
+
+        long start = System.nanoTime();
+        assertEquals(1, ring.drainTo(batch));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    void shouldRejectWhenFull() {
+        BatchRing ring = new BatchRing(1, 1, 1, TimeUnit.SECONDS);
+
+        assertTrue(ring.offer("telemetry/0", "client", Qos.AT_MOST_ONCE, ByteBuffer.allocate(0), 0, null));
+        assertFalse(ring.offer("telemetry/1", "client", Qos.AT_MOST_ONCE, ByteBuffer.allocate(0), 0, null));
+    }
+
+    @Test
+    void shouldDrainRemainingAfterClose() throws InterruptedException {
+        BatchRing ring = new BatchRing(8, 4, 1, TimeUnit.HOURS);
+        HiveMQEmbeddedBatch batch = new HiveMQEmbeddedBatch(4);
+
+        assertTrue(ring.offer("telemetry/0", "client", Qos.AT_MOST_ONCE, ByteBuffer.allocate(0), 0, null));
+        ring.close();
+
+        assertEquals(1, ring.drainTo(batch));
+        batch.clear();
+        assertEquals(0, ring.drainTo(batch));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.bridge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BridgeSpoolTest {
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testReadAndCommitInOrder(@TempDir Path folder) {
+        try (BridgeSpool spool = new BridgeSpool(folder.resolve("spool.bin"), 1024)) {
+            assertTrue(spool.offer("a", bytes("1"), false));
+            assertTrue(spool.offer("b", bytes("2"), true));
+
+            BridgedPublish first = spool.next();
+            assertEquals("a", first.topic());
+            assertArrayEquals(bytes("1"), first.payload());
+            assertFalse(first.retain());
+
+            BridgedPublish second = spool.next();
+            assertEquals("b", second.topic());
+            assertTrue(second.retain());
+            assertNull(spool.next());
+
+            assertEquals(2, spool.size());
+            spool.commit();
+            assertEquals(1, spool.size());
+            spool.commit();
+            assertEquals(0, spool.size());
+            assertEquals(0, spool.bytes());
+        }
+    }
+
+    @Test
+    void testRecoverUncommitted(@TempDir Path folder) {
+        Path file = folder.resolve("spool.bin");
+
+        try (BridgeSpool spool = new BridgeSpool(file, 1024)) {
+            spool.offer("a", bytes("1"), false);
+            spool.offer("b", bytes("2"), false);
+            spool.next();
+            spool.next();
+            spool.commit();
+        }
+
+        // Read but not committed publishes get read again
+        try (BridgeSpool spool = new BridgeSpool(file, 1024)) {
+            assertEquals(1, spool.size());
+            assertEquals(1, spool.unread());
+            assertEquals("b", spool.next().topic());
+        }
+    }
+
+    @Test
+    void testRejectWhenFullAndWrapAround(@TempDir Path folder) {
+        // Room for two entries of 9 bytes overhead, 1 byte topic and 10 bytes payload
+        try (BridgeSpool spool = new BridgeSpool(folder.resolve("spool.bin"), 40)) {
+            assertTrue(spool.offer("a", new byte[10], false));
+            assertTrue(spool.offer("b", new byte[10], false));
+            assertFalse(spool.offer("c", new byte[10], false));
+
+            assertEquals("a", spool.next().topic());
+            spool.commit();
+
+            // Entry 'c' continues at the front, while 'b' is still unread
+            assertTrue(spool.offer("c", new byte[10], false));
+            assertFalse(spool.offer("d", new byte[10], false));
+            assertEquals(40, spool.bytes());
+            assertEquals("b", spool.next().topic());
+            assertEquals("c", spool.next().topic());
+        }
+    }
+
+    @Test
+    void testRecoverWrappedAround(@TempDir Path folder) {
+        Path file = folder.resolve("spool.bin");
+
+        // Room for three entries of 20 bytes, 'd' skips the rest of 14 bytes
+        try (BridgeSpool spool = new BridgeSpool(file, 74)) {
+            spool.offer("a", new byte[10], false);
+            spool.offer("b", new byte[10], false);
+            spool.offer("c", new byte[10], false);
+            spool.next();
+            spool.commit();
+            assertTrue(spool.offer("d", new byte[10], false));
+        }
+
+        try (BridgeSpool spool = new BridgeSpool(file, 74)) {
+            assertEquals(3, spool.size());
+            assertEquals("b", spool.next().topic());
+            assertEquals("c", spool.next().topic());
+            assertEquals("d", spool.next().topic());
+
+            spool.commit();
+            spool.commit();
+            assertEquals(1, spool.size());
+            assertEquals(20, spool.bytes());
+        }
+    }
+}
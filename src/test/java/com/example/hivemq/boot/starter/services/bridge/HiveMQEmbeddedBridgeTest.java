@@ -0,0 +1,156 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.bridge;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedBridgeAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.extension.sdk.api.services.Services;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedBridgeTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedBridgeAutoConfiguration.class, BuildProperties.class))
+                    .withBean(SimpleMeterRegistry.class);
+
+    @Test
+    void shouldContainNoBridgePerDefault() {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:false")
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedBridge")));
+    }
+
+    @Test
+    void shouldContainBridge(@TempDir Path folder) {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:false", "hivemq.bridge.enabled:true",
+                        "hivemq.data.folder:" + folder)
+                .run(context -> assertTrue(context.containsBean("hiveMQEmbeddedBridge")));
+    }
+
+    @Test
+    void testRemap() {
+        HiveMQEmbeddedProperties properties = new HiveMQEmbeddedProperties();
+        properties.getBridge().setLocalPrefix("site/");
+        properties.getBridge().setRemotePrefix("edge-1/");
+        HiveMQEmbeddedBridge bridge = new HiveMQEmbeddedBridge(properties, new SimpleMeterRegistry());
+
+        assertEquals("edge-1/sensors/1", bridge.remap("site/sensors/1"));
+        assertEquals("edge-1/other/1", bridge.remap("other/1"));
+    }
+
+    /**
+     * The embedded broker acts as remote broker as well, forwarded publishes are told apart by the remote prefix
+     */
+    @Test
+    void testStoreAndForward(@TempDir Path folder) throws Exception {
+        int port = freePort();
+        int unreachable = freePort();
+
+        ApplicationContextRunner runner = this.contextRunner
+                .withPropertyValues("hivemq.bridge.enabled:true",
+                        "hivemq.bridge.topic-filters:local/#",
+                        "hivemq.bridge.local-prefix:local/",
+                        "hivemq.bridge.remote-prefix:remote/",
+                        "hivemq.bridge.host:127.0.0.1",
+                        "hivemq.bridge.reconnect-initial-delay:100ms",
+                        "hivemq.config.folder:" + folder.resolve("conf"),
+                        "hivemq.data.folder:" + folder.resolve("data"),
+                        "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                        "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                        "hivemq.config.listeners.tcp-listeners[0].port:" + port);
+
+        // Link down, publishes get spooled ...
+        runner.withPropertyValues("hivemq.bridge.port:" + unreachable)
+                .run(context -> {
+                    HiveMQEmbeddedBridge bridge = context.getBean(HiveMQEmbeddedBridge.class);
+                    publish(port, "one", "two", "three");
+
+                    assertFalse(bridge.isConnected());
+                    assertEquals(3, bridge.getBacklog());
+                });
+
+        // ... and forwarded after restart, once the link is up
+        runner.withPropertyValues("hivemq.bridge.port:" + port)
+                .run(context -> {
+                    HiveMQEmbeddedBridge bridge = context.getBean(HiveMQEmbeddedBridge.class);
+                    MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+
+                    await(() -> bridge.getBacklog() == 0);
+                    assertEquals(3, meterRegistry.counter("hivemq.bridge.messages", "outcome", "forwarded").count());
+                    assertEquals("three", retained("remote/sensor"));
+                });
+    }
+
+    private static void publish(int port, String... payloads) {
+        Mqtt5BlockingClient client = Mqtt5Client.builder()
+                .serverHost("127.0.0.1")
+                .serverPort(port)
+                .buildBlocking();
+        client.connect();
+        for (String payload : payloads) {
+            client.publishWith()
+                    .topic("local/sensor")
+                    .qos(MqttQos.AT_LEAST_ONCE)
+                    .retain(true)
+                    .payload(payload.getBytes(StandardCharsets.UTF_8))
+                    .send();
+        }
+        client.disconnect();
+    }
+
+    private static String retained(String topic) {
+        return Services.retainedMessageStore()
+                .getRetainedMessage(topic)
+                .join()
+                .flatMap(publish -> publish.getPayload())
+                .map(payload -> StandardCharsets.UTF_8.decode(payload).toString())
+                .orElse(null);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++)
+            Thread.sleep(100);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
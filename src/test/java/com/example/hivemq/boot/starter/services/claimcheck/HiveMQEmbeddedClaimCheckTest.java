@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.claimcheck;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedClaimCheckAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedClaimCheckTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedClaimCheckAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoClaimCheckPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedClaimCheck")));
+    }
+
+    @Test
+    void shouldRehydrateReferences(@TempDir Path folder) {
+        this.contextRunner
+                .withPropertyValues("hivemq.claim-check.enabled:true", "hivemq.data.folder:" + folder)
+                .run(context -> {
+                    HiveMQEmbeddedClaimCheck claimCheck = context.getBean(HiveMQEmbeddedClaimCheck.class);
+                    ByteBuffer plain = ByteBuffer.wrap("plain".getBytes(StandardCharsets.UTF_8));
+
+                    assertTrue(claimCheck.getBlobId(plain).isEmpty());
+                    assertEquals(plain, claimCheck.rehydrate(plain).orElseThrow());
+
+                    ByteBuffer unknown = ByteBuffer.wrap((HiveMQEmbeddedClaimCheck.userProperty + ":unknown").getBytes(StandardCharsets.UTF_8));
+                    assertEquals("unknown", claimCheck.getBlobId(unknown).orElseThrow());
+                    assertTrue(claimCheck.rehydrate(unknown).isEmpty());
+                });
+    }
+
+    @Test
+    void shouldRehydrateRedeliveryUntilAcknowledged(@TempDir Path folder) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        byte[] payload = new byte[2048];
+        Arrays.fill(payload, (byte) 'x');
+
+        this.contextRunner
+                .withBean(MeterRegistry.class, () -> meterRegistry)
+                .withPropertyValues("hivemq.auto-start:true",
+                        "hivemq.claim-check.enabled:true",
+                        "hivemq.claim-check.threshold:1KB",
+                        "hivemq.config.folder:" + folder.resolve("conf"),
+                        "hivemq.data.folder:" + folder.resolve("data"),
+                        "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                        "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                        "hivemq.config.listeners.tcp-listeners[0].port:0")
+                .run(context -> {
+                    int port = context.getBean(HiveMQEmbeddedService.class)
+                            .getConfig().getListeners().getTcpListeners().getFirst().getPort();
+
+                    BlockingQueue<Mqtt5Publish> first = new LinkedBlockingQueue<>();
+                    Mqtt5AsyncClient subscriber = subscriber(port, first);
+                    subscriber.subscribeWith().topicFilter("claim-check/redelivery").qos(MqttQos.AT_LEAST_ONCE).send().join();
+
+                    Mqtt5BlockingClient publisher = Mqtt5Client.builder()
+                            .identifier("claim-check-publisher").serverHost("127.0.0.1").serverPort(port).buildBlocking();
+                    publisher.connect();
+                    publisher.publishWith().topic("claim-check/redelivery").qos(MqttQos.AT_LEAST_ONCE).payload(payload).send();
+                    publisher.disconnect();
+
+                    // Received, but disconnected before acknowledging it
+                    assertArrayEquals(payload, first.poll(10, TimeUnit.SECONDS).getPayloadAsBytes());
+                    subscriber.disconnect().join();
+                    assertEquals(1, blobs(meterRegistry));
+
+                    BlockingQueue<Mqtt5Publish> second = new LinkedBlockingQueue<>();
+                    Mqtt5AsyncClient reconnected = subscriber(port, second);
+                    Mqtt5Publish redelivered = second.poll(10, TimeUnit.SECONDS);
+                    assertArrayEquals(payload, redelivered.getPayloadAsBytes());
+
+                    redelivered.acknowledge();
+                    for (int i = 0; i < 100 && blobs(meterRegistry) > 0; i++)
+                        Thread.sleep(50);
+                    assertEquals(0, blobs(meterRegistry));
+                    reconnected.disconnect().join();
+                });
+    }
+
+    private static Mqtt5AsyncClient subscriber(int port, BlockingQueue<Mqtt5Publish> received) {
+        Mqtt5AsyncClient client = Mqtt5Client.builder()
+                .identifier("claim-check-subscriber")
+                .serverHost("127.0.0.1")
+                .serverPort(port)
+                .buildAsync();
+        client.publishes(MqttGlobalPublishFilter.ALL, received::add, true);
+        client.connectWith().cleanStart(false).sessionExpiryInterval(60).send().join();
+        return client;
+    }
+
+    private static double blobs(MeterRegistry meterRegistry) {
+        return meterRegistry.get("hivemq.claimcheck.blobs").gauge().value();
+    }
+
+    @Test
+    void shouldReleaseBlobAfterAllReferences(@TempDir Path folder) throws Exception {
+        BlobStore store = new BlobStore(folder);
+        String id = store.put(ByteBuffer.wrap(new byte[1024]), 2);
+
+        assertEquals(1024, store.get(id).orElseThrow().remaining());
+        store.release(id, "client-1/1");
+        assertTrue(store.get(id).isPresent());
+
+        // Redelivered to the same client ...
+        store.release(id, "client-1/1");
+        assertTrue(store.get(id).isPresent());
+
+        // ... and delivered to the other one
+        store.release(id, "client-2/1");
+        assertTrue(store.get(id).isEmpty());
+        assertFalse(Files.exists(folder.resolve(id + ".blob")));
+    }
+
+    @Test
+    void shouldExpireRecoveredBlobs(@TempDir Path folder) throws Exception {
+        String id = new BlobStore(folder).put(ByteBuffer.wrap(new byte[16]), 1);
+
+        BlobStore recovered = new BlobStore(folder);
+        recovered.release(id, "client-1/1");
+        assertTrue(recovered.get(id).isPresent());
+
+        assertEquals(1, recovered.expire(Long.MAX_VALUE));
+        assertTrue(recovered.get(id).isEmpty());
+    }
+}
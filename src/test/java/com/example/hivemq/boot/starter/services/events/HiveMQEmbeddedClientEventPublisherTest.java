@@ -0,0 +1,121 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.events;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedClientEventsAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedClientEventPublisherTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedClientEventsAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoClientEventPublisherPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedClientEventPublisher")));
+    }
+
+    @Test
+    void shouldRegisterClientEventPublisher() {
+        this.contextRunner
+                .withPropertyValues("hivemq.client-events.enabled:true")
+                .run(context -> assertTrue(context.getBean(HiveMQEmbeddedExtensionsCollector.class)
+                        .getClientListeners()
+                        .contains(context.getBean(HiveMQEmbeddedClientEventPublisher.class))));
+    }
+
+    @Test
+    void shouldPublishBatches() throws Exception {
+        List<HiveMQEmbeddedClientEvents> published = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        HiveMQEmbeddedClientEventPublisher publisher = new HiveMQEmbeddedClientEventPublisher(
+                properties(1000, 2, Duration.ofMillis(20)),
+                event -> {
+                    published.add((HiveMQEmbeddedClientEvents) event);
+                    latch.countDown();
+                },
+                new SimpleMeterRegistry());
+
+        for (int i = 0; i < 5; i++)
+            publisher.add(event("client-" + i));
+
+        publisher.start();
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            publisher.stop();
+        }
+
+        assertEquals(List.of(2, 2, 1), published.stream().map(batch -> batch.getEvents().size()).toList());
+        assertEquals("client-0", published.getFirst().getEvents().getFirst().clientId());
+        assertEquals("client-4", published.getLast().getEvents().getFirst().clientId());
+    }
+
+    @Test
+    void shouldDropOldestOnOverflow() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        List<HiveMQEmbeddedClientEvents> published = new CopyOnWriteArrayList<>();
+        HiveMQEmbeddedClientEventPublisher publisher = new HiveMQEmbeddedClientEventPublisher(
+                properties(3, 100, Duration.ofMillis(10)),
+                event -> published.add((HiveMQEmbeddedClientEvents) event),
+                meterRegistry);
+
+        for (int i = 0; i < 5; i++)
+            publisher.add(event("client-" + i));
+
+        publisher.start();
+        publisher.stop();
+
+        assertEquals(1, published.size());
+        assertEquals(List.of("client-2", "client-3", "client-4"),
+                published.getFirst().getEvents().stream().map(HiveMQEmbeddedClientEvent::clientId).toList());
+        assertEquals(2, published.getFirst().getDropped());
+        assertEquals(2, meterRegistry.get("hivemq.client.events").tag("outcome", "dropped").counter().count());
+        assertEquals(3, meterRegistry.get("hivemq.client.events").tag("outcome", "published").counter().count());
+    }
+
+    private static HiveMQEmbeddedClientEvent event(String clientId) {
+        return new HiveMQEmbeddedClientEvent(HiveMQEmbeddedClientEvent.Type.CONNECTED, clientId, Instant.now(), null);
+    }
+
+    private static HiveMQEmbeddedProperties.ClientEvents properties(int capacity, int maxBatchSize, Duration maxLatency) {
+        HiveMQEmbeddedProperties.ClientEvents properties = new HiveMQEmbeddedProperties.ClientEvents();
+        properties.setCapacity(capacity);
+        properties.setMaxBatchSize(maxBatchSize);
+        properties.setMaxLatency(maxLatency);
+        return properties;
+    }
+}
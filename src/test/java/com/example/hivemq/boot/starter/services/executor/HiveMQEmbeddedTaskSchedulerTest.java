@@ -0,0 +1,160 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.executor;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedExecutorAutoConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedTaskSchedulerTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedExecutorAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoTaskSchedulerPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedTaskScheduler")));
+    }
+
+    @Test
+    void shouldContainTaskScheduler() {
+        this.contextRunner
+                .withPropertyValues("hivemq.executor.enabled:true")
+                .run(context -> assertTrue(context.containsBean("hiveMQEmbeddedTaskScheduler")));
+    }
+
+    @Test
+    void shouldRejectTasksUnlessStarted() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            HiveMQEmbeddedTaskScheduler scheduler = new HiveMQEmbeddedTaskScheduler(meterRegistry, () -> executor);
+            assertThrows(TaskRejectedException.class, () -> scheduler.execute(() -> {}));
+
+            scheduler.onStarted();
+            scheduler.onStopping();
+            assertThrows(TaskRejectedException.class, () -> scheduler.submit(() -> 1));
+
+            assertEquals(2, meterRegistry.get("hivemq.executor.rejected").counter().count());
+            assertEquals(0, meterRegistry.get("hivemq.executor.pending").gauge().value());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldMeasureTasks() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        try {
+            HiveMQEmbeddedTaskScheduler scheduler = new HiveMQEmbeddedTaskScheduler(meterRegistry, () -> executor);
+            scheduler.onStarted();
+
+            Future<?> blocking = scheduler.submit(() -> {
+                blocker.await();
+                return null;
+            });
+            Future<Integer> queued = scheduler.submit(() -> 42);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (meterRegistry.get("hivemq.executor.active").gauge().value() < 1 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertEquals(1, meterRegistry.get("hivemq.executor.active").gauge().value());
+            assertEquals(1, meterRegistry.get("hivemq.executor.pending").gauge().value());
+
+            blocker.countDown();
+            blocking.get(5, TimeUnit.SECONDS);
+            assertEquals(42, queued.get(5, TimeUnit.SECONDS));
+
+            assertEquals(0, meterRegistry.get("hivemq.executor.active").gauge().value());
+            assertEquals(0, meterRegistry.get("hivemq.executor.pending").gauge().value());
+            assertEquals(2, meterRegistry.get("hivemq.executor.tasks").timer().count());
+        } finally {
+            blocker.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotCountCancelledOrDroppedTasksAsPending() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            HiveMQEmbeddedTaskScheduler scheduler = new HiveMQEmbeddedTaskScheduler(meterRegistry, () -> executor);
+            scheduler.onStarted();
+
+            ScheduledFuture<?> cancelled = scheduler.schedule(() -> {}, Instant.now().plus(Duration.ofHours(1)));
+            scheduler.schedule(() -> {}, Instant.now().plus(Duration.ofHours(1)));
+            assertEquals(2, meterRegistry.get("hivemq.executor.pending").gauge().value());
+
+            assertTrue(cancelled.cancel(false));
+            assertTrue(cancelled.isCancelled());
+            assertEquals(1, meterRegistry.get("hivemq.executor.pending").gauge().value());
+
+            // The remaining task is dropped together with the extension executor
+            scheduler.onStopping();
+            assertEquals(0, meterRegistry.get("hivemq.executor.pending").gauge().value());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRunPeriodicTasks() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch runs = new CountDownLatch(3);
+
+        try {
+            HiveMQEmbeddedTaskScheduler scheduler = new HiveMQEmbeddedTaskScheduler(meterRegistry, () -> executor);
+            scheduler.onStarted();
+
+            ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(runs::countDown, Duration.ofMillis(5));
+            assertTrue(runs.await(5, TimeUnit.SECONDS));
+            future.cancel(false);
+
+            assertTrue(meterRegistry.get("hivemq.executor.tasks").timer().count() >= 3);
+            assertEquals(0, meterRegistry.get("hivemq.executor.pending").gauge().value());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.history;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedHistoryAutoConfiguration;
+import com.example.hivemq.boot.starter.services.TopicFilter;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedHistoryTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedHistoryAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoHistoryPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedHistory")));
+    }
+
+    @Test
+    void shouldContainHistoryAndEndpoint(@TempDir Path folder) {
+        this.contextRunner
+                .withPropertyValues("hivemq.history.enabled:true", "hivemq.data.folder:" + folder)
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedHistory"));
+                    assertTrue(context.containsBean("hiveMQEmbeddedHistoryEndpoint"));
+                });
+    }
+
+    @Test
+    void shouldReplayMatchingRecords(@TempDir Path folder) throws Exception {
+        HistorySegment segment = HistorySegment.create(folder, 1000, 4096);
+
+        assertTrue(segment.append(1000, bytes("telemetry/1"), Qos.AT_MOST_ONCE, payload("a")));
+        assertTrue(segment.append(2000, bytes("alarms/1"), Qos.AT_LEAST_ONCE, payload("b")));
+        assertTrue(segment.append(3000, bytes("telemetry/2"), Qos.AT_LEAST_ONCE, payload("c")));
+
+        assertEquals(List.of("c"), replay(segment, 1500, "telemetry/#"));
+        assertEquals(List.of("a", "c"), replay(segment, 0, "telemetry/+"));
+    }
+
+    @Test
+    void shouldRecoverSegment(@TempDir Path folder) throws Exception {
+        HistorySegment segment = HistorySegment.create(folder, 1000, 4096);
+        assertTrue(segment.append(1000, bytes("telemetry/1"), Qos.AT_MOST_ONCE, payload("a")));
+        assertTrue(segment.append(2000, bytes("telemetry/2"), Qos.AT_MOST_ONCE, payload("b")));
+        segment.force();
+
+        HistorySegment recovered = HistorySegment.open(folder.resolve("%020d.log".formatted(1000)));
+        assertEquals(1000, recovered.getFirstTimestamp());
+        assertEquals(2000, recovered.getLastTimestamp());
+        assertEquals(List.of("a", "b"), replay(recovered, 0, "#"));
+        assertFalse(recovered.append(3000, bytes("telemetry/3"), Qos.AT_MOST_ONCE, payload("c")));
+    }
+
+    @Test
+    void shouldRejectWhenSegmentIsFull(@TempDir Path folder) throws Exception {
+        HistorySegment segment = HistorySegment.create(folder, 1000, 64);
+
+        assertTrue(segment.append(1000, bytes("telemetry/1"), Qos.AT_MOST_ONCE, payload("a")));
+        assertFalse(segment.append(1000, bytes("telemetry/2"), Qos.AT_MOST_ONCE, payload("b")));
+    }
+
+    @Test
+    void shouldReplayNothingOfDeletedSegment(@TempDir Path folder) throws Exception {
+        HistorySegment segment = HistorySegment.create(folder, 1000, 4096);
+        assertTrue(segment.append(1000, bytes("telemetry/1"), Qos.AT_MOST_ONCE, payload("a")));
+
+        segment.delete();
+        assertTrue(segment.isDeleted());
+        assertEquals(4096, segment.getSize());
+        assertFalse(folder.resolve("%020d.log".formatted(1000)).toFile().exists());
+        assertEquals(List.of(), replay(segment, 0, "#"));
+        assertFalse(segment.append(2000, bytes("telemetry/2"), Qos.AT_MOST_ONCE, payload("b")));
+    }
+
+    @Test
+    void shouldRejectMalformedTopicFilterOnEndpoint(@TempDir Path folder) {
+        this.contextRunner
+                .withPropertyValues("hivemq.history.enabled:true", "hivemq.data.folder:" + folder)
+                .run(context -> {
+                    HiveMQEmbeddedHistoryEndpoint endpoint = context.getBean(HiveMQEmbeddedHistoryEndpoint.class);
+
+                    assertThrows(InvalidEndpointRequestException.class, () -> endpoint.replay("telemetry/#/1", null, null));
+                    assertThrows(InvalidEndpointRequestException.class, () -> endpoint.replay("telemetry/#", "yesterday", null));
+                    assertEquals(List.of(), endpoint.replay("telemetry/#", null, null));
+                });
+    }
+
+    private static List<String> replay(HistorySegment segment, long from, String filter) {
+        List<String> payloads = new ArrayList<>();
+        segment.forEach(from, TopicFilter.compile(filter), new HiveMQEmbeddedHistoryRecord(), record -> {
+            payloads.add(StandardCharsets.UTF_8.decode(record.getPayload()).toString());
+            return true;
+        });
+        return payloads;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer payload(String value) {
+        return ByteBuffer.wrap(bytes(value));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.inventory;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedInventoryAutoConfiguration;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.services.general.IterationCallback;
+import com.hivemq.extension.sdk.api.services.session.SessionInformation;
+import com.hivemq.extension.sdk.api.services.subscription.SubscriptionsForClientResult;
+import com.hivemq.extension.sdk.api.services.subscription.TopicSubscription;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedInventoryTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedInventoryAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainInventory() {
+        this.contextRunner
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedInventory"));
+                    assertTrue(context.containsBean("hiveMQEmbeddedInventoryEndpoint"));
+                });
+    }
+
+    @Test
+    void shouldPageSessionsByClientId() {
+        HiveMQEmbeddedInventory inventory = inventory(
+                List.of(session("d"), session("b"), session("sensor-2"), session("a"), session("sensor-1"), session("c")),
+                List.of());
+
+        HiveMQEmbeddedInventory.Page<HiveMQEmbeddedInventory.Session> first = inventory.sessions(null, null, 4).join();
+        assertEquals(List.of("a", "b", "c", "d"), clientIds(first.items()));
+        assertEquals("d", first.next());
+        assertEquals(6, first.matched());
+
+        HiveMQEmbeddedInventory.Page<HiveMQEmbeddedInventory.Session> second = inventory.sessions(null, first.next(), 4).join();
+        assertEquals(List.of("sensor-1", "sensor-2"), clientIds(second.items()));
+        assertNull(second.next());
+
+        HiveMQEmbeddedInventory.Page<HiveMQEmbeddedInventory.Session> sensors = inventory.sessions("sensor-?", null, 10).join();
+        assertEquals(List.of("sensor-1", "sensor-2"), clientIds(sensors.items()));
+    }
+
+    @Test
+    void shouldFilterSubscriptionsByTopicFilter() {
+        HiveMQEmbeddedInventory inventory = inventory(List.of(), List.of(
+                subscriptions("a", "sensors/+/temperature", "alerts/#"),
+                subscriptions("b", "alerts/#"),
+                subscriptions("c", "sensors/1/temperature")));
+
+        HiveMQEmbeddedInventory.Page<HiveMQEmbeddedInventory.ClientSubscriptions> page =
+                inventory.subscriptions(null, "sensors/#", null, 10).join();
+
+        assertEquals(List.of("a", "c"), clientIds(page.items()));
+        assertEquals(List.of(new HiveMQEmbeddedInventory.Subscription("sensors/+/temperature", 1)),
+                page.items().getFirst().subscriptions());
+    }
+
+    @Test
+    void shouldRejectInvalidRequests() {
+        HiveMQEmbeddedInventoryEndpoint endpoint = new HiveMQEmbeddedInventoryEndpoint(inventory(List.of(), List.of(
+                subscriptions("a", "alerts/#"))));
+
+        assertThrows(InvalidEndpointRequestException.class,
+                () -> endpoint.list("subscriptions", null, "alerts/#/critical", null, null));
+        assertEquals(1, endpoint.list("subscriptions", null, "alerts/#", null, null).items().size());
+
+        HiveMQEmbeddedInventoryEndpoint timingOut = new HiveMQEmbeddedInventoryEndpoint(new HiveMQEmbeddedInventory(
+                callback -> CompletableFuture.failedFuture(new TimeoutException()),
+                callback -> CompletableFuture.failedFuture(new TimeoutException())));
+
+        assertThrows(InvalidEndpointRequestException.class, () -> timingOut.list("sessions", null, null, null, null));
+        assertThrows(InvalidEndpointRequestException.class, () -> timingOut.statistics(null));
+    }
+
+    @Test
+    void shouldAggregateStatistics() {
+        HiveMQEmbeddedInventory inventory = inventory(List.of(), List.of(
+                subscriptions("a", "alerts/#", "sensors/1", "sensors/2", "sensors/3"),
+                subscriptions("b", "alerts/#", "sensors/1"),
+                subscriptions("c", "alerts/#")));
+
+        HiveMQEmbeddedInventory.Statistics statistics = inventory.statistics(2).join();
+
+        assertEquals(3, statistics.clients());
+        assertEquals(7, statistics.subscriptions());
+        assertEquals(4, statistics.topicFilters());
+        assertEquals(Map.of("1", 1L, "2-3", 1L, "4-7", 1L), statistics.subscriptionsPerClient());
+        assertEquals(Map.of("1", 2L, "2-3", 2L), statistics.fanOut());
+        assertEquals(List.of(new HiveMQEmbeddedInventory.FanOut("alerts/#", 3),
+                new HiveMQEmbeddedInventory.FanOut("sensors/1", 2)), statistics.top());
+        assertFalse(statistics.truncated());
+    }
+
+    @Test
+    void shouldLabelBuckets() {
+        assertEquals("1", HiveMQEmbeddedInventory.bucket(1));
+        assertEquals("2-3", HiveMQEmbeddedInventory.bucket(3));
+        assertEquals("64-127", HiveMQEmbeddedInventory.bucket(100));
+    }
+
+    private static List<String> clientIds(List<? extends HiveMQEmbeddedInventory.Keyed> items) {
+        return items.stream().map(HiveMQEmbeddedInventory.Keyed::clientId).toList();
+    }
+
+    private static HiveMQEmbeddedInventory inventory(List<SessionInformation> sessions,
+                                                     List<SubscriptionsForClientResult> subscriptions) {
+        return new HiveMQEmbeddedInventory(callback -> iterate(sessions, callback),
+                callback -> iterate(subscriptions, callback));
+    }
+
+    private static <T> CompletableFuture<Void> iterate(List<T> items, IterationCallback<T> callback) {
+        for (T item : new ArrayList<>(items))
+            callback.iterate(() -> {}, item);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static SessionInformation session(String clientId) {
+        return new SessionInformation() {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public long getSessionExpiryInterval() {
+                return 0;
+            }
+
+            @Override
+            public @NotNull String getClientIdentifier() {
+                return clientId;
+            }
+        };
+    }
+
+    private static SubscriptionsForClientResult subscriptions(String clientId, String... topicFilters) {
+        Set<TopicSubscription> subscriptions = Arrays.stream(topicFilters)
+                .map(HiveMQEmbeddedInventoryTest::subscription)
+                .collect(Collectors.toSet());
+
+        return new SubscriptionsForClientResult() {
+            @Override
+            public @NotNull String getClientId() {
+                return clientId;
+            }
+
+            @Override
+            public @NotNull Set<TopicSubscription> getSubscriptions() {
+                return subscriptions;
+            }
+        };
+    }
+
+    private static TopicSubscription subscription(String topicFilter) {
+        return new TopicSubscription() {
+            @Override
+            public @NotNull String getTopicFilter() {
+                return topicFilter;
+            }
+
+            @Override
+            public @NotNull Qos getQos() {
+                return Qos.AT_LEAST_ONCE;
+            }
+
+            @Override
+            public boolean getRetainAsPublished() {
+                return false;
+            }
+
+            @Override
+            public boolean getNoLocal() {
+                return false;
+            }
+
+            @Override
+            public @NotNull Optional<Integer> getSubscriptionIdentifier() {
+                return Optional.empty();
+            }
+        };
+    }
+}
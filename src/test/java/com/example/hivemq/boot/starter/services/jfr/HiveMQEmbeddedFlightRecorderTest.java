@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.jfr;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedJfrAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedFlightRecorderTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedJfrAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoFlightRecorderPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedFlightRecorder")));
+    }
+
+    @Test
+    void shouldRegisterFlightRecorderAsStageAndClientListener() {
+        this.contextRunner
+                .withPropertyValues("hivemq.jfr.enabled:true")
+                .run(context -> {
+                    HiveMQEmbeddedExtensionsCollector collector = context.getBean(HiveMQEmbeddedExtensionsCollector.class);
+                    assertEquals(1, collector.getStages().size());
+                    assertEquals(1, collector.getClientListeners().size());
+                });
+    }
+
+    @Test
+    void shouldRecordOnlyRegisteredEvents(@TempDir Path folder) throws Exception {
+        Path file = folder.resolve("recording.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("hivemq.BrokerPhase");
+            recording.start();
+
+            HiveMQEmbeddedEvents.unregister();
+            assertFalse(new BrokerPhaseEvent(BrokerPhaseEvent.start).isEnabled());
+
+            HiveMQEmbeddedEvents.register();
+            BrokerPhaseEvent event = new BrokerPhaseEvent(BrokerPhaseEvent.start);
+            assertTrue(event.isEnabled());
+            event.begin();
+            event.succeeded();
+            event.commit();
+
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            HiveMQEmbeddedEvents.unregister();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("hivemq.BrokerPhase"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals("start", events.getFirst().getString("phase"));
+        assertTrue(events.getFirst().getBoolean("success"));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lag;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedLagMonitorAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedLagMonitorTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedLagMonitorAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoLagMonitorPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedLagMonitor")));
+    }
+
+    @Test
+    void shouldContainLagMonitor() {
+        this.contextRunner
+                .withPropertyValues("hivemq.lag-monitor.enabled:true")
+                .run(context -> assertTrue(context.containsBean("hiveMQEmbeddedLagMonitor")));
+    }
+
+    @Test
+    void shouldDetectBlockedExecutor() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        try {
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            HiveMQEmbeddedLagMonitor monitor = new HiveMQEmbeddedLagMonitor(properties(), meterRegistry, () -> executor);
+            monitor.check();
+            Thread.sleep(50);
+            monitor.check();
+            monitor.check();
+
+            assertEquals(1, meterRegistry.get("hivemq.lag.stalls").tag("executor", "extension").counter().count());
+
+            blocker.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (meterRegistry.get("hivemq.lag").timer().count() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertTrue(meterRegistry.get("hivemq.lag").timer().max(TimeUnit.MILLISECONDS) >= 50);
+        } finally {
+            blocker.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldDetectBlockedIoThread() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CountDownLatch blocker = new CountDownLatch(1);
+        Thread io = Thread.ofPlatform().name("hivemq-eventloop-test").start(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            HiveMQEmbeddedLagMonitor monitor = new HiveMQEmbeddedLagMonitor(properties(), meterRegistry, () -> Runnable::run);
+            while (io.getState() != Thread.State.WAITING)
+                Thread.sleep(1);
+
+            monitor.check();
+            Thread.sleep(50);
+            monitor.check();
+
+            assertEquals(1, meterRegistry.get("hivemq.lag.stalls").tag("executor", "io").counter().count());
+
+            blocker.countDown();
+            io.join();
+            monitor.check();
+
+            assertEquals(1, meterRegistry.get("hivemq.lag.blocked").timer().count());
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    private static HiveMQEmbeddedProperties.LagMonitor properties() {
+        HiveMQEmbeddedProperties.LagMonitor properties = new HiveMQEmbeddedProperties.LagMonitor();
+        properties.setThreshold(Duration.ofMillis(20));
+        properties.setIoThreadPrefixes(List.of("hivemq-eventloop-test"));
+        return properties;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.lastvalue;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedLastValueAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedLastValueCacheTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedLastValueAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoCachePerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedLastValueCache")));
+    }
+
+    @Test
+    void shouldRegisterCacheAsStage() {
+        this.contextRunner
+                .withPropertyValues("hivemq.last-value.enabled:true")
+                .run(context -> {
+                    assertNotNull(context.getBean(LastValueCache.class));
+                    assertEquals(1, context.getBean(HiveMQEmbeddedExtensionsCollector.class).getStages().size());
+                });
+    }
+
+    @Test
+    void shouldKeepLastValuePerTopic() {
+        HiveMQEmbeddedLastValueCache cache = cache(10, DataSize.ofMegabytes(1));
+
+        cache.put("telemetry/device-1/temperature", Qos.AT_MOST_ONCE, 1, payload("20.5"));
+        cache.put("telemetry/device-1/temperature", Qos.AT_LEAST_ONCE, 2, payload("21.0"));
+        cache.put("telemetry/device-2/temperature", Qos.AT_MOST_ONCE, 3, payload("19.0"));
+
+        LastValue value = cache.get("telemetry/device-1/temperature").orElseThrow();
+        assertEquals(2, value.timestamp());
+        assertEquals(Qos.AT_LEAST_ONCE, value.qos());
+        assertEquals("21.0", StandardCharsets.UTF_8.decode(value.payload()).toString());
+        assertTrue(cache.get("telemetry/device-3/temperature").isEmpty());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void shouldQueryWildcards() {
+        HiveMQEmbeddedLastValueCache cache = cache(10, DataSize.ofMegabytes(1));
+
+        cache.put("telemetry/device-1/temperature", Qos.AT_MOST_ONCE, 1, payload("20.5"));
+        cache.put("telemetry/device-2/temperature", Qos.AT_MOST_ONCE, 2, payload("19.0"));
+        cache.put("telemetry/device-2/humidity", Qos.AT_MOST_ONCE, 3, payload("40"));
+
+        assertEquals(2, cache.query("telemetry/+/temperature").size());
+        assertEquals(3, cache.query("telemetry/#").size());
+        assertEquals(List.of(), cache.query("status/#"));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed() {
+        HiveMQEmbeddedLastValueCache cache = cache(2, DataSize.ofMegabytes(1));
+
+        cache.put("a", Qos.AT_MOST_ONCE, 1, payload("1"));
+        cache.put("b", Qos.AT_MOST_ONCE, 2, payload("2"));
+        assertTrue(cache.get("a").isPresent());
+        cache.put("c", Qos.AT_MOST_ONCE, 3, payload("3"));
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    @Test
+    void shouldEvictBySize() {
+        int entrySize = HiveMQEmbeddedLastValueCache.entryOverhead + 1 + 100;
+        HiveMQEmbeddedLastValueCache cache = cache(100, DataSize.ofBytes(2L * entrySize));
+
+        cache.put("a", Qos.AT_MOST_ONCE, 1, ByteBuffer.allocate(100));
+        cache.put("b", Qos.AT_MOST_ONCE, 2, ByteBuffer.allocate(100));
+        cache.put("c", Qos.AT_MOST_ONCE, 3, ByteBuffer.allocate(100));
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("a").isEmpty());
+
+        // A payload too large to cache replaces a stale one
+        cache.put("b", Qos.AT_MOST_ONCE, 4, ByteBuffer.allocate(1000));
+        assertTrue(cache.get("b").isEmpty());
+    }
+
+    private static HiveMQEmbeddedLastValueCache cache(int maxEntries, DataSize maxSize) {
+        HiveMQEmbeddedProperties.LastValue properties = new HiveMQEmbeddedProperties.LastValue();
+        properties.setMaxEntries(maxEntries);
+        properties.setMaxSize(maxSize);
+        return new HiveMQEmbeddedLastValueCache(properties, new SimpleMeterRegistry());
+    }
+
+    private static ByteBuffer payload(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
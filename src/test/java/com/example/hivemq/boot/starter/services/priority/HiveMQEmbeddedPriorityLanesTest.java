@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.priority;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedPriorityAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedPriorityLanesTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedPriorityAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoPriorityLanesPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedPriorityLanes")));
+    }
+
+    @Test
+    void shouldRegisterPriorityLanesAsStage() {
+        this.contextRunner
+                .withPropertyValues("hivemq.mqtt.priority.enabled:true",
+                        "hivemq.mqtt.priority.congestion-latency:50ms",
+                        "hivemq.mqtt.priority.lanes[0].name:alarms",
+                        "hivemq.mqtt.priority.lanes[0].topic-filters:alarms/#",
+                        "hivemq.mqtt.priority.lanes[1].name:telemetry",
+                        "hivemq.mqtt.priority.lanes[1].topic-filters:telemetry/#",
+                        "hivemq.mqtt.priority.lanes[1].shed-qos0:true",
+                        "hivemq.mqtt.priority.lanes[1].max-latency:2s")
+                .run(context -> {
+                    final HiveMQEmbeddedProperties.Priority priority =
+                            context.getBean(HiveMQEmbeddedProperties.class).getMqtt().getPriority();
+                    assertEquals(Duration.ofMillis(50), priority.getCongestionLatency());
+                    assertEquals(List.of("alarms", "telemetry"),
+                            priority.getLanes().stream().map(HiveMQEmbeddedProperties.Lane::getName).toList());
+                    assertTrue(priority.getLanes().get(1).isShedQos0());
+                    assertEquals(Duration.ofSeconds(2), priority.getLanes().get(1).getMaxLatency());
+
+                    final HiveMQEmbeddedPriorityLanes lanes = context.getBean(HiveMQEmbeddedPriorityLanes.class);
+                    assertEquals(List.of(lanes), context.getBean(HiveMQEmbeddedExtensionsCollector.class).getStages());
+                    assertFalse(lanes.isCongested());
+                });
+    }
+
+    @Test
+    void shouldAssignTopicsToFirstMatchingLane() {
+        final HiveMQEmbeddedProperties.Priority properties = new HiveMQEmbeddedProperties.Priority();
+        properties.setLanes(List.of(lane("alarms", "alarms/#", "+/+/alarm"), lane("telemetry", "telemetry/#", "+/+/alarm")));
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final HiveMQEmbeddedPriorityLanes lanes = new HiveMQEmbeddedPriorityLanes(properties, meterRegistry);
+
+        assertEquals("alarms", lanes.getLane("alarms/fire"));
+        assertEquals("alarms", lanes.getLane("telemetry/device-1/alarm"));
+        assertEquals("telemetry", lanes.getLane("telemetry/device-1/temperature"));
+        assertEquals(HiveMQEmbeddedPriorityLanes.defaultLane, lanes.getLane("status/device-1"));
+
+        assertNotNull(meterRegistry.find("hivemq.priority.latency").tag("lane", "alarms").timer());
+        assertNotNull(meterRegistry.find("hivemq.priority.publishes")
+                .tags("lane", HiveMQEmbeddedPriorityLanes.defaultLane, "outcome", "shed").counter());
+        assertEquals(0, meterRegistry.get("hivemq.priority.congested").gauge().value());
+    }
+
+    @Test
+    void shouldShedAndDeferUnderCongestion() {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final HiveMQEmbeddedPriorityLanes lanes = new HiveMQEmbeddedPriorityLanes(congestible(), meterRegistry);
+        final long now = System.currentTimeMillis();
+
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.accepted, lanes.admit("telemetry/device-1", Qos.AT_MOST_ONCE, now));
+
+        congest(lanes, now);
+        assertTrue(lanes.isCongested(now));
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.shed, lanes.admit("telemetry/device-1", Qos.AT_MOST_ONCE, now));
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.accepted, lanes.admit("telemetry/device-1", Qos.AT_LEAST_ONCE, now));
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.deferred, lanes.admit("bulk/device-1", Qos.AT_LEAST_ONCE, now));
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.accepted, lanes.admit("alarms/fire", Qos.AT_MOST_ONCE, now));
+
+        assertEquals(1, meterRegistry.get("hivemq.priority.publishes").tags("lane", "telemetry", "outcome", "shed").counter().count());
+        assertEquals(1, meterRegistry.get("hivemq.priority.publishes").tags("lane", "bulk", "outcome", "deferred").counter().count());
+    }
+
+    @Test
+    void shouldStayCongestedWhileDeliveriesStall() {
+        final HiveMQEmbeddedPriorityLanes lanes = new HiveMQEmbeddedPriorityLanes(congestible(), new SimpleMeterRegistry());
+        final long now = System.currentTimeMillis();
+
+        congest(lanes, now);
+
+        // No deliveries anymore, but publishes keep arriving
+        for (long time = now; time <= now + 5_000; time += 500)
+            lanes.admit("telemetry/device-1", Qos.AT_LEAST_ONCE, time);
+        assertTrue(lanes.isCongested(now + 5_000));
+
+        // Neither deliveries nor publishes for more than a second
+        assertFalse(lanes.isCongested(now + 6_500));
+        assertEquals(HiveMQEmbeddedPriorityLanes.Admission.accepted, lanes.admit("telemetry/device-1", Qos.AT_MOST_ONCE, now + 6_500));
+    }
+
+    @Test
+    void shouldExpireQos0ExceedingMaxLatency() {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final HiveMQEmbeddedPriorityLanes lanes = new HiveMQEmbeddedPriorityLanes(congestible(), meterRegistry);
+        final long now = System.currentTimeMillis();
+
+        assertTrue(lanes.deliver("telemetry/device-1", Qos.AT_MOST_ONCE, now - 500, now));
+        assertFalse(lanes.deliver("telemetry/device-1", Qos.AT_MOST_ONCE, now - 3_000, now));
+        assertTrue(lanes.deliver("telemetry/device-1", Qos.AT_LEAST_ONCE, now - 3_000, now));
+        assertTrue(lanes.deliver("alarms/fire", Qos.AT_MOST_ONCE, now - 3_000, now));
+
+        assertEquals(1, meterRegistry.get("hivemq.priority.publishes").tags("lane", "telemetry", "outcome", "expired").counter().count());
+        assertEquals(3, meterRegistry.get("hivemq.priority.latency").tag("lane", "telemetry").timer().count()
+                + meterRegistry.get("hivemq.priority.latency").tag("lane", "alarms").timer().count());
+    }
+
+    /**
+     * @return Lanes alarms, telemetry shedding QoS 0 and expiring it after 2s, and bulk deferred by 100ms, congested at 50ms
+     */
+    private static HiveMQEmbeddedProperties.Priority congestible() {
+        final HiveMQEmbeddedProperties.Lane telemetry = lane("telemetry", "telemetry/#");
+        telemetry.setShedQos0(true);
+        telemetry.setMaxLatency(Duration.ofSeconds(2));
+        final HiveMQEmbeddedProperties.Lane bulk = lane("bulk", "bulk/#");
+        bulk.setDefer(Duration.ofMillis(100));
+
+        final HiveMQEmbeddedProperties.Priority properties = new HiveMQEmbeddedProperties.Priority();
+        properties.setCongestionLatency(Duration.ofMillis(50));
+        properties.setLanes(List.of(lane("alarms", "alarms/#"), telemetry, bulk));
+        return properties;
+    }
+
+    /**
+     * Delivers publishes of the highest lane a second after their arrival, until congested
+     */
+    private static void congest(HiveMQEmbeddedPriorityLanes lanes, long now) {
+        for (int i = 0; i < 200; i++)
+            lanes.deliver("alarms/fire", Qos.AT_LEAST_ONCE, now - 1_000, now);
+    }
+
+    private static HiveMQEmbeddedProperties.Lane lane(String name, String... topicFilters) {
+        final HiveMQEmbeddedProperties.Lane lane = new HiveMQEmbeddedProperties.Lane();
+        lane.setName(name);
+        lane.setTopicFilters(List.of(topicFilters));
+        return lane;
+    }
+}
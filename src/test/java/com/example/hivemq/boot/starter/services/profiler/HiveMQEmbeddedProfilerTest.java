@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.profiler;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProfilerAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedProfilerTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedProfilerAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoProfilerPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedProfiler")));
+    }
+
+    @Test
+    void shouldContainProfilerAndEndpoint() {
+        this.contextRunner
+                .withPropertyValues("hivemq.profiler.enabled:true")
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedProfiler"));
+                    assertTrue(context.containsBean("hiveMQEmbeddedProfilerEndpoint"));
+                });
+    }
+
+    @Test
+    void shouldExtractTopicPrefix() {
+        assertEquals("telemetry/device-1", HiveMQEmbeddedProfiler.prefix("telemetry/device-1/temperature", 2));
+        assertEquals("telemetry", HiveMQEmbeddedProfiler.prefix("telemetry/device-1/temperature", 1));
+        assertEquals("telemetry/device-1", HiveMQEmbeddedProfiler.prefix("telemetry/device-1", 3));
+        assertEquals("", HiveMQEmbeddedProfiler.prefix("/device-1", 1));
+    }
+
+    @Test
+    void shouldExtrapolateSampledStatistics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HiveMQEmbeddedProfiler profiler = profiler(0.5, 10, meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            profiler.profile("telemetry/device-1/temperature").recordPublish(100);
+            for (int j = 0; j < 3; j++)
+                profiler.profile("telemetry/device-1/temperature").recordDelivery(5);
+        }
+        profiler.profile("alarms/device-1/fire").recordPublish(10);
+        profiler.roll(Duration.ofSeconds(1));
+
+        List<HiveMQEmbeddedProfile> report = profiler.getReport();
+        assertEquals(2, report.size());
+
+        HiveMQEmbeddedProfile telemetry = report.getFirst();
+        assertEquals("telemetry/device-1", telemetry.prefix());
+        assertEquals(20, telemetry.publishRate(), 0.001);
+        assertEquals(2000, telemetry.byteRate(), 0.001);
+        assertEquals(3, telemetry.fanOut(), 0.001);
+        assertEquals(5, telemetry.latency().max());
+
+        assertEquals(20, meterRegistry.get("hivemq.profiler.publish.rate")
+                .tag("prefix", "telemetry/device-1").gauge().value(), 0.001);
+
+        // Idle topic prefixes are dropped with the next window
+        profiler.roll(Duration.ofSeconds(1));
+        assertEquals(List.of(), profiler.getReport());
+    }
+
+    @Test
+    void shouldRejectUnknownOrder() {
+        HiveMQEmbeddedProfilerEndpoint endpoint =
+                new HiveMQEmbeddedProfilerEndpoint(profiler(1, 10, new SimpleMeterRegistry()));
+
+        assertEquals(List.of(), endpoint.top("fanout", 5));
+        assertThrows(InvalidEndpointRequestException.class, () -> endpoint.top("subscribers", 5));
+    }
+
+    @Test
+    void shouldAggregateBeyondMaxPrefixes() {
+        HiveMQEmbeddedProfiler profiler = profiler(1, 1, new SimpleMeterRegistry());
+
+        profiler.profile("telemetry/device-1").recordPublish(1);
+        profiler.profile("telemetry/device-2").recordPublish(1);
+        profiler.roll(Duration.ofSeconds(1));
+
+        assertEquals(List.of("telemetry/device-1", HiveMQEmbeddedProfiler.overflowPrefix),
+                profiler.getReport().stream().map(HiveMQEmbeddedProfile::prefix).toList());
+    }
+
+    private static HiveMQEmbeddedProfiler profiler(double sampleRate, int maxPrefixes, SimpleMeterRegistry meterRegistry) {
+        HiveMQEmbeddedProperties.Profiler properties = new HiveMQEmbeddedProperties.Profiler();
+        properties.setSampleRate(sampleRate);
+        properties.setMaxPrefixes(maxPrefixes);
+        return new HiveMQEmbeddedProfiler(properties, meterRegistry);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.publisher;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedPublisherAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedPublisherTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedPublisherAutoConfiguration.class, BuildProperties.class));
+
+    @Test
+    void shouldBufferUntilStarted() {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:false", "hivemq.extensions.collector.enabled:false")
+                .run(context -> {
+                    HiveMQEmbeddedPublisher publisher = context.getBean(HiveMQEmbeddedPublisher.class);
+                    HiveMQEmbeddedService service = context.getBean(HiveMQEmbeddedService.class);
+
+                    assertTrue(publisher.isBuffering());
+                    assertTrue(publisher.publish("boot/early", "hello"));
+
+                    service.startup();
+                    assertFalse(publisher.isBuffering());
+                    assertTrue(publisher.publish("boot/late", "hello"));
+
+                    service.shutdown();
+                    assertTrue(publisher.isBuffering());
+                });
+    }
+
+    @Test
+    void shouldRejectWhenFull() {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:false", "hivemq.publisher.buffer.max-messages:1")
+                .run(context -> {
+                    HiveMQEmbeddedPublisher publisher = context.getBean(HiveMQEmbeddedPublisher.class);
+
+                    assertTrue(publisher.publish("boot/first", "hello"));
+                    assertFalse(publisher.publish("boot/second", "hello"));
+                });
+    }
+
+    @Test
+    void shouldDropOldestWhenFull() {
+        HeapPublishBuffer buffer = new HeapPublishBuffer(2, 1024);
+
+        assertTrue(buffer.offer(publish("boot/1")));
+        assertTrue(buffer.offer(publish("boot/2")));
+        assertFalse(buffer.offer(publish("boot/3")));
+        assertTrue(buffer.evictOldest());
+        assertTrue(buffer.offer(publish("boot/3")));
+
+        assertEquals(List.of("boot/2", "boot/3"), drain(buffer));
+    }
+
+    @Test
+    void shouldRecoverMappedBuffer(@TempDir Path folder) {
+        Path file = folder.resolve("buffer.bin");
+
+        try (MappedPublishBuffer buffer = new MappedPublishBuffer(file, 10, 1024)) {
+            assertTrue(buffer.offer(publish("boot/1")));
+            assertTrue(buffer.offer(publish("boot/2")));
+        }
+
+        try (MappedPublishBuffer buffer = new MappedPublishBuffer(file, 10, 1024)) {
+            assertEquals(2, buffer.size());
+            assertEquals(List.of("boot/1", "boot/2"), drain(buffer));
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    @Test
+    void shouldWrapAroundMappedBuffer(@TempDir Path folder) {
+        try (MappedPublishBuffer buffer = new MappedPublishBuffer(folder.resolve("buffer.bin"), 10, 64)) {
+            assertTrue(buffer.offer(publish("boot/1")));
+            assertTrue(buffer.offer(publish("boot/2")));
+            assertTrue(buffer.offer(publish("boot/3")));
+            assertFalse(buffer.offer(publish("boot/4")));
+
+            // Entry 'boot/4' continues at the front, in the room of the evicted 'boot/1'
+            assertTrue(buffer.evictOldest());
+            assertTrue(buffer.offer(publish("boot/4")));
+            assertFalse(buffer.offer(publish("boot/5")));
+            assertEquals(64, buffer.bytes());
+            assertEquals(List.of("boot/2", "boot/3", "boot/4"), drain(buffer));
+        }
+    }
+
+    @Test
+    void shouldRecoverWrappedAroundMappedBuffer(@TempDir Path folder) {
+        Path file = folder.resolve("buffer.bin");
+
+        // Room for three entries of 21 bytes, 'boot/4' skips the rest of 17 bytes
+        try (MappedPublishBuffer buffer = new MappedPublishBuffer(file, 10, 80)) {
+            assertTrue(buffer.offer(publish("boot/1")));
+            assertTrue(buffer.offer(publish("boot/2")));
+            assertTrue(buffer.offer(publish("boot/3")));
+            assertTrue(buffer.evictOldest());
+            assertTrue(buffer.offer(publish("boot/4")));
+        }
+
+        try (MappedPublishBuffer buffer = new MappedPublishBuffer(file, 10, 80)) {
+            assertEquals(3, buffer.size());
+            assertEquals(List.of("boot/2", "boot/3", "boot/4"), drain(buffer));
+        }
+    }
+
+    private static BufferedPublish publish(String topic) {
+        return new BufferedPublish(topic, Qos.AT_LEAST_ONCE, false, "hello".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> drain(PublishBuffer buffer) {
+        List<String> topics = new ArrayList<>();
+        buffer.drainTo(publish -> topics.add(publish.topic()));
+        return topics;
+    }
+}
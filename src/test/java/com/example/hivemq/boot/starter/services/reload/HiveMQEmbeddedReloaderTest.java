@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.reload;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedReloadAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedReloaderTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedReloadAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    private static HiveMQEmbeddedProperties.Config config(int port, Long maxQos) {
+        return new HiveMQEmbeddedProperties.Config(".hivemq/conf",
+                new HiveMQEmbeddedProperties.Listeners(
+                        List.of(new HiveMQEmbeddedProperties.TcpListener("tcp", "127.0.0.1", port)), null, null, null),
+                new HiveMQEmbeddedProperties.Mqtt(null, null, null, null, null, null, null, null, null, null,
+                        new HiveMQEmbeddedProperties.Mqtt.QualityOfService(maxQos), null),
+                null, null);
+    }
+
+    @Test
+    void shouldContainNoReloaderPerDefault() {
+        this.contextRunner
+                .run(context -> {
+                    assertFalse(context.containsBean("hiveMQEmbeddedLimits"));
+                    assertFalse(context.containsBean("hiveMQEmbeddedReloader"));
+                });
+    }
+
+    @Test
+    void shouldContainReloader() {
+        this.contextRunner
+                .withPropertyValues("hivemq.reload.enabled:true")
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedLimits"));
+                    assertTrue(context.containsBean("hiveMQEmbeddedReloader"));
+                });
+    }
+
+    @Test
+    void testUnchanged() {
+        assertEquals(List.of(), HiveMQEmbeddedReloader.diff(config(1883, 2L), config(1883, 2L), config(1883, 2L)));
+    }
+
+    @Test
+    void testTighterLimitsAreLive() {
+        List<HiveMQEmbeddedReloader.Change> changes =
+                HiveMQEmbeddedReloader.diff(config(1883, 2L), config(1883, 2L), config(1883, 1L));
+
+        assertEquals(1, changes.size());
+        assertEquals("mqtt.quality-of-service", changes.getFirst().setting());
+        assertTrue(changes.getFirst().live());
+
+        // Back to the started value is live as well
+        assertTrue(HiveMQEmbeddedReloader.diff(config(1883, 2L), config(1883, 1L), config(1883, 2L)).getFirst().live());
+    }
+
+    @Test
+    void testLooserLimitsRequireRestart() {
+        List<HiveMQEmbeddedReloader.Change> changes =
+                HiveMQEmbeddedReloader.diff(config(1883, 1L), config(1883, 1L), config(1883, 2L));
+
+        assertEquals(1, changes.size());
+        assertFalse(changes.getFirst().live());
+    }
+
+    @Test
+    void testListenersRequireRestart() {
+        List<HiveMQEmbeddedReloader.Change> changes =
+                HiveMQEmbeddedReloader.diff(config(1883, 2L), config(1883, 2L), config(1884, 2L));
+
+        assertEquals(1, changes.size());
+        assertEquals("listeners", changes.getFirst().setting());
+        assertEquals("[tcp tcp@127.0.0.1:1884]", changes.getFirst().to());
+        assertFalse(changes.getFirst().live());
+    }
+
+    @Test
+    void testRestartRepublishesPorts(@TempDir Path folder) {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:true",
+                        "hivemq.reload.enabled:true",
+                        "hivemq.reload.restart:true",
+                        "hivemq.config.folder:" + folder.resolve("conf"),
+                        "hivemq.data.folder:" + folder.resolve("data"),
+                        "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                        "hivemq.config.listeners.tcp-listeners[0].name:tcp",
+                        "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                        "hivemq.config.listeners.tcp-listeners[0].port:0")
+                .run(context -> {
+                    HiveMQEmbeddedService service = context.getBean(HiveMQEmbeddedService.class);
+
+                    // Listeners can't be changed live, so HiveMQ gets restarted and republishes its port
+                    context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("changed",
+                            Map.of("hivemq.config.listeners.tcp-listeners[0].name", "mqtt")));
+                    context.getBean(HiveMQEmbeddedReloader.class).reload();
+
+                    int restarted = service.getConfig().getListeners().getTcpListeners().getFirst().getPort();
+                    assertTrue(service.isRunning());
+                    assertEquals(restarted, context.getEnvironment().getProperty("local.hivemq.port", Integer.class));
+                });
+    }
+
+    @Test
+    void testReloadAppliesLimits() {
+        HiveMQEmbeddedProperties properties = new HiveMQEmbeddedProperties();
+        HiveMQEmbeddedLimits limits = new HiveMQEmbeddedLimits(new SimpleMeterRegistry());
+        MockEnvironment environment = new MockEnvironment();
+
+        // Without restarts, no service is required
+        HiveMQEmbeddedReloader reloader = new HiveMQEmbeddedReloader(properties, null, limits, environment);
+        assertEquals(List.of(), reloader.reload());
+
+        environment.setProperty("hivemq.config.mqtt.quality-of-service.max-qos", "1");
+        environment.setProperty("hivemq.config.folder", ".hivemq/conf");
+        environment.setProperty("hivemq.config.listeners.tcp-listeners[0].bind-address", "0.0.0.0");
+        environment.setProperty("hivemq.config.listeners.tcp-listeners[0].port", "1884");
+
+        List<HiveMQEmbeddedReloader.Change> changes = reloader.reload();
+        assertEquals(List.of("listeners", "mqtt.quality-of-service"),
+                changes.stream().map(HiveMQEmbeddedReloader.Change::setting).toList());
+        assertEquals(1, limits.getLimits().maxQos());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.retained;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedRetainedAutoConfiguration;
+import com.hivemq.extension.sdk.api.packets.general.Qos;
+import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedRetainedMessagesTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedRetainedAutoConfiguration.class, BuildProperties.class));
+
+    @Test
+    void shouldContainNoSnapshotPerDefault() {
+        this.contextRunner
+                .withPropertyValues("hivemq.auto-start:false")
+                .run(context -> {
+                    assertTrue(context.containsBean("hiveMQEmbeddedRetainedMessages"));
+                    assertFalse(context.containsBean("hiveMQEmbeddedRetainedSnapshot"));
+                });
+    }
+
+    @Test
+    void shouldExportAndImport() {
+        this.contextRunner
+                .run(context -> {
+                    HiveMQEmbeddedRetainedMessages retainedMessages = context.getBean(HiveMQEmbeddedRetainedMessages.class);
+                    store("boot/retained/1", "one");
+                    store("boot/retained/2", "two");
+
+                    for (RetainedMessageFormat format : RetainedMessageFormat.values()) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        assertTrue(retainedMessages.exportTo(out, format).join() >= 2);
+
+                        Services.retainedMessageStore().clear().join();
+                        assertTrue(retainedMessages.importFrom(new ByteArrayInputStream(out.toByteArray()), format) >= 2);
+                        assertEquals("two", load("boot/retained/2"));
+                    }
+                });
+    }
+
+    @Test
+    void shouldExportStringsBeyondModifiedUtf8Limit() {
+        // 64000 bytes of UTF-8, but 96000 bytes of modified UTF-8
+        String emojis = "\uD83D\uDE00".repeat(16_000);
+
+        this.contextRunner
+                .run(context -> {
+                    HiveMQEmbeddedRetainedMessages retainedMessages = context.getBean(HiveMQEmbeddedRetainedMessages.class);
+                    Services.retainedMessageStore()
+                            .addOrReplace(Builders.retainedPublish()
+                                    .topic("boot/retained/emojis")
+                                    .qos(Qos.AT_LEAST_ONCE)
+                                    .userProperty("emojis", emojis)
+                                    .payload(ByteBuffer.wrap(new byte[0]))
+                                    .build())
+                            .join();
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    retainedMessages.exportTo(out, RetainedMessageFormat.binary).join();
+
+                    Services.retainedMessageStore().clear().join();
+                    retainedMessages.importFrom(new ByteArrayInputStream(out.toByteArray()), RetainedMessageFormat.binary);
+                    assertEquals(emojis, Services.retainedMessageStore()
+                            .getRetainedMessage("boot/retained/emojis")
+                            .join()
+                            .flatMap(publish -> publish.getUserProperties().getFirst("emojis"))
+                            .orElse(null));
+                });
+    }
+
+    @Test
+    void shouldRestoreSnapshot(@TempDir Path folder) {
+        ApplicationContextRunner runner = this.contextRunner
+                .withPropertyValues("hivemq.retained.snapshot.enabled:true", "hivemq.data.folder:" + folder);
+
+        runner.run(context -> store("boot/retained/snapshot", "persisted"));
+        assertTrue(Files.isRegularFile(folder.resolve("retained-messages.bin")));
+
+        runner.run(context -> assertEquals("persisted", load("boot/retained/snapshot")));
+    }
+
+    private static void store(String topic, String payload) {
+        Services.retainedMessageStore()
+                .addOrReplace(Builders.retainedPublish()
+                        .topic(topic)
+                        .qos(Qos.AT_LEAST_ONCE)
+                        .payload(ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8)))
+                        .build())
+                .join();
+    }
+
+    private static String load(String topic) {
+        return Services.retainedMessageStore()
+                .getRetainedMessage(topic)
+                .join()
+                .flatMap(publish -> publish.getPayload())
+                .map(payload -> StandardCharsets.UTF_8.decode(payload).toString())
+                .orElse(null);
+    }
+}
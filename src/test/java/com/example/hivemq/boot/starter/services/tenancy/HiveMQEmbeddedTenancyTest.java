@@ -0,0 +1,329 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.tenancy;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedTenancyAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedStage;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.exceptions.Mqtt5SubAckException;
+import com.hivemq.client.mqtt.mqtt5.message.disconnect.Mqtt5DisconnectReasonCode;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
+import com.hivemq.client.mqtt.mqtt5.message.publish.puback.Mqtt5PubAckReasonCode;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckReasonCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedTenancyTest {
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedTenancyAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoTenancyPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedTenancy")));
+    }
+
+    @Test
+    void shouldRegisterTenancyAsStageClientListenerAndAuthorizer() {
+        this.contextRunner
+                .withPropertyValues("hivemq.tenancy.enabled:true",
+                        "hivemq.tenancy.source:user-name",
+                        "hivemq.tenancy.tenants:acme,globex")
+                .run(context -> {
+                    assertEquals(HiveMQEmbeddedProperties.Tenancy.Source.userName,
+                            context.getBean(HiveMQEmbeddedProperties.class).getTenancy().getSource());
+
+                    final HiveMQEmbeddedTenancy tenancy = context.getBean(HiveMQEmbeddedTenancy.class);
+                    final HiveMQEmbeddedExtensionsCollector collector = context.getBean(HiveMQEmbeddedExtensionsCollector.class);
+
+                    assertEquals(List.of("tenancy", "tenancy-outbound"),
+                            collector.getStages().stream().map(HiveMQEmbeddedStage::getName).toList());
+                    assertEquals(List.of(tenancy), collector.getClientListeners());
+                    assertEquals(List.of(tenancy), collector.getAuthorizers());
+                });
+    }
+
+    @Test
+    void shouldIsolateTenantsOnTheSameTopic(@TempDir Path folder) {
+        started(folder).run(context -> {
+            final int port = port(context.getBean(HiveMQEmbeddedService.class));
+            final BlockingQueue<Mqtt5Publish> acmeReceived = new LinkedBlockingQueue<>();
+            final BlockingQueue<Mqtt5Publish> globexReceived = new LinkedBlockingQueue<>();
+            final Mqtt5AsyncClient acme = subscriber(port, "acme:sensor-1", acmeReceived);
+            final Mqtt5AsyncClient globex = subscriber(port, "globex:sensor-1", globexReceived);
+
+            try {
+                acme.subscribeWith().topicFilter("sensors/#").qos(MqttQos.AT_LEAST_ONCE).send().join();
+                globex.subscribeWith().topicFilter("sensors/#").qos(MqttQos.AT_LEAST_ONCE).send().join();
+
+                publish(acme, "sensors/1", "acme");
+                final Mqtt5Publish received = acmeReceived.poll(10, TimeUnit.SECONDS);
+                assertNotNull(received);
+                assertEquals("sensors/1", received.getTopic().toString());
+                assertEquals("acme", payload(received));
+
+                publish(globex, "sensors/1", "globex");
+                assertEquals("globex", payload(globexReceived.poll(10, TimeUnit.SECONDS)));
+
+                assertNull(acmeReceived.poll(500, TimeUnit.MILLISECONDS));
+                assertNull(globexReceived.poll(500, TimeUnit.MILLISECONDS));
+            } finally {
+                acme.disconnect().join();
+                globex.disconnect().join();
+            }
+        });
+    }
+
+    @Test
+    void shouldKeepClientsOutOfOtherNamespaces(@TempDir Path folder) {
+        started(folder).run(context -> {
+            final int port = port(context.getBean(HiveMQEmbeddedService.class));
+            final BlockingQueue<Mqtt5Publish> acmeReceived = new LinkedBlockingQueue<>();
+            final BlockingQueue<Mqtt5Publish> globexReceived = new LinkedBlockingQueue<>();
+            final Mqtt5AsyncClient acme = subscriber(port, "acme:sensor-1", acmeReceived);
+            final Mqtt5AsyncClient globex = subscriber(port, "globex:sensor-1", globexReceived);
+
+            try {
+                // Subscribing to the namespace of another tenant is either denied or stays within the own namespace
+                subscribe(acme, "tenants/globex/#");
+                subscribe(acme, "#");
+                globex.subscribeWith().topicFilter("#").qos(MqttQos.AT_LEAST_ONCE).send().join();
+
+                // Publishing to the namespace of another tenant is either denied or stays within the own namespace
+                acme.publishWith().topic("tenants/globex/sensors/1").qos(MqttQos.AT_LEAST_ONCE)
+                        .payload("intruder".getBytes(StandardCharsets.UTF_8)).send().join();
+                publish(globex, "sensors/1", "globex");
+
+                assertEquals("globex", payload(globexReceived.poll(10, TimeUnit.SECONDS)));
+                assertNull(globexReceived.poll(500, TimeUnit.MILLISECONDS));
+                assertTrue(acmeReceived.stream().map(HiveMQEmbeddedTenancyTest::payload).noneMatch("globex"::equals));
+            } finally {
+                acme.disconnect().join();
+                globex.disconnect().join();
+            }
+        });
+    }
+
+    @Test
+    void shouldQualifyWillsToTheNamespaceOfTheirTenant(@TempDir Path folder) {
+        started(folder).run(context -> {
+            final int port = port(context.getBean(HiveMQEmbeddedService.class));
+            final BlockingQueue<Mqtt5Publish> acmeReceived = new LinkedBlockingQueue<>();
+            final BlockingQueue<Mqtt5Publish> globexReceived = new LinkedBlockingQueue<>();
+            final Mqtt5AsyncClient acme = subscriber(port, "acme:monitor", acmeReceived);
+            final Mqtt5AsyncClient globex = subscriber(port, "globex:monitor", globexReceived);
+
+            try {
+                acme.subscribeWith().topicFilter("status").qos(MqttQos.AT_LEAST_ONCE).send().join();
+                globex.subscribeWith().topicFilter("status").qos(MqttQos.AT_LEAST_ONCE).send().join();
+
+                final Mqtt5BlockingClient dying = Mqtt5Client.builder()
+                        .identifier("acme:sensor-1")
+                        .serverHost("127.0.0.1")
+                        .serverPort(port)
+                        .buildBlocking();
+                dying.connectWith()
+                        .willPublish()
+                        .topic("status")
+                        .qos(MqttQos.AT_LEAST_ONCE)
+                        .payload("offline".getBytes(StandardCharsets.UTF_8))
+                        .applyWillPublish()
+                        .send();
+                dying.disconnectWith().reasonCode(Mqtt5DisconnectReasonCode.DISCONNECT_WITH_WILL_MESSAGE).send();
+
+                final Mqtt5Publish will = acmeReceived.poll(10, TimeUnit.SECONDS);
+                assertNotNull(will);
+                assertEquals("status", will.getTopic().toString());
+                assertEquals("offline", payload(will));
+                assertNull(globexReceived.poll(500, TimeUnit.MILLISECONDS));
+            } finally {
+                acme.disconnect().join();
+                globex.disconnect().join();
+            }
+        });
+    }
+
+    @Test
+    void shouldDenyClientsWithoutTenantIfRequired(@TempDir Path folder) {
+        started(folder).run(context -> {
+            final int port = port(context.getBean(HiveMQEmbeddedService.class));
+            final Mqtt5BlockingClient client = Mqtt5Client.builder()
+                    .identifier("no-tenant")
+                    .serverHost("127.0.0.1")
+                    .serverPort(port)
+                    .buildBlocking();
+            client.connect();
+
+            try {
+                final Mqtt5PublishResult result = client.publishWith()
+                        .topic("sensors/1")
+                        .qos(MqttQos.AT_LEAST_ONCE)
+                        .payload("anonymous".getBytes(StandardCharsets.UTF_8))
+                        .send();
+                assertTrue(result.getError().isPresent());
+                assertEquals(Mqtt5PubAckReasonCode.NOT_AUTHORIZED,
+                        ((Mqtt5PublishResult.Mqtt5Qos1Result) result).getPubAck().getReasonCode());
+
+                assertEquals(Mqtt5SubAckReasonCode.NOT_AUTHORIZED, subscribe(client.toAsync(), "sensors/#"));
+                assertEquals(2, context.getBean(MeterRegistry.class)
+                        .get("hivemq.tenancy.denied").tag("tenant", "none").counter().count());
+            } finally {
+                client.disconnect();
+            }
+        });
+    }
+
+    @Test
+    void shouldDropIdleTenantsWithTheirMetrics() {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final HiveMQEmbeddedProperties.Tenancy properties = new HiveMQEmbeddedProperties.Tenancy();
+        properties.setMaxTenants(2);
+
+        final HiveMQEmbeddedTenancy tenancy = new HiveMQEmbeddedTenancy(properties, meterRegistry);
+
+        assertSame(tenancy.acquire("acme"), tenancy.acquire("acme"));
+        assertNotNull(tenancy.acquire("globex"));
+        assertNull(tenancy.acquire("initech"));
+        assertEquals(2, tenancy.getTenant("acme").getConnections());
+
+        tenancy.release("acme");
+        assertNotNull(tenancy.getTenant("acme"));
+        tenancy.release("acme");
+        assertNull(tenancy.getTenant("acme"));
+        assertNull(meterRegistry.find("hivemq.tenancy.connections").tag("tenant", "acme").gauge());
+        assertNull(meterRegistry.find("hivemq.tenancy.messages").tag("tenant", "acme").counter());
+
+        assertNotNull(tenancy.acquire("initech"));
+        assertEquals(2, tenancy.getTenantCount());
+    }
+
+    @Test
+    void shouldKeepKnownTenants() {
+        final HiveMQEmbeddedProperties.Tenancy properties = new HiveMQEmbeddedProperties.Tenancy();
+        properties.setTenants(Set.of("acme"));
+
+        final HiveMQEmbeddedTenancy tenancy = new HiveMQEmbeddedTenancy(properties, new SimpleMeterRegistry());
+
+        tenancy.release(tenancy.acquire("acme").getName());
+        assertNotNull(tenancy.getTenant("acme"));
+        assertEquals(0, tenancy.getTenant("acme").getConnections());
+    }
+
+    @Test
+    void shouldRewriteTopicsToTenantNamespace() {
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final HiveMQEmbeddedTenancy tenancy = new HiveMQEmbeddedTenancy(new HiveMQEmbeddedProperties.Tenancy(), meterRegistry);
+        final HiveMQEmbeddedTenancy.Tenant tenant = tenancy.acquire("acme");
+
+        assertNotNull(tenant);
+        assertEquals("tenants/acme/", tenant.getPrefix());
+        assertEquals("tenants/acme/sensors/1", tenant.qualify("sensors/1"));
+        assertEquals("tenants/acme/#", tenant.qualify("#"));
+        assertEquals("$share/group/tenants/acme/sensors/+", tenant.qualify("$share/group/sensors/+"));
+        assertEquals("sensors/1", tenant.unqualify("tenants/acme/sensors/1"));
+        assertEquals("tenants/globex/sensors/1", tenant.unqualify("tenants/globex/sensors/1"));
+
+        assertEquals("tenants/acme/dead-letter/sensors/1", tenancy.insertBelowNamespace("tenants/acme/sensors/1", "dead-letter"));
+        assertEquals("dead-letter/sensors/1", tenancy.insertBelowNamespace("sensors/1", "dead-letter"));
+
+        assertEquals(1, tenant.getConnections());
+        assertNotNull(meterRegistry.find("hivemq.tenancy.connections").tag("tenant", "acme").gauge());
+        assertNotNull(meterRegistry.find("hivemq.tenancy.messages").tags("tenant", "acme", "direction", "inbound").counter());
+    }
+
+    private ApplicationContextRunner started(Path folder) {
+        return this.contextRunner
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withPropertyValues("hivemq.auto-start:true",
+                        "hivemq.tenancy.enabled:true",
+                        "hivemq.config.folder:" + folder.resolve("conf"),
+                        "hivemq.data.folder:" + folder.resolve("data"),
+                        "hivemq.extensions.folder:" + folder.resolve("extensions"),
+                        "hivemq.config.listeners.tcp-listeners[0].bind-address:127.0.0.1",
+                        "hivemq.config.listeners.tcp-listeners[0].port:0");
+    }
+
+    private static Mqtt5AsyncClient subscriber(int port, String clientId, BlockingQueue<Mqtt5Publish> received) {
+        final Mqtt5AsyncClient client = Mqtt5Client.builder()
+                .identifier(clientId)
+                .serverHost("127.0.0.1")
+                .serverPort(port)
+                .buildAsync();
+        client.publishes(MqttGlobalPublishFilter.ALL, received::add);
+        client.connect().join();
+        return client;
+    }
+
+    /**
+     * @return The reason code of the subscription, whether granted or not
+     */
+    private static Mqtt5SubAckReasonCode subscribe(Mqtt5AsyncClient client, String topicFilter) {
+        try {
+            return client.subscribeWith().topicFilter(topicFilter).qos(MqttQos.AT_LEAST_ONCE).send().join()
+                    .getReasonCodes().getFirst();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof Mqtt5SubAckException subAckException)
+                return subAckException.getMqttMessage().getReasonCodes().getFirst();
+            throw ce;
+        }
+    }
+
+    private static void publish(Mqtt5AsyncClient client, String topic, String payload) {
+        client.publishWith()
+                .topic(topic)
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .payload(payload.getBytes(StandardCharsets.UTF_8))
+                .send()
+                .join();
+    }
+
+    private static String payload(Mqtt5Publish publish) {
+        return publish == null ? null : new String(publish.getPayloadAsBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static int port(HiveMQEmbeddedService service) {
+        return service.getConfig().getListeners().getTcpListeners().getFirst().getPort();
+    }
+}
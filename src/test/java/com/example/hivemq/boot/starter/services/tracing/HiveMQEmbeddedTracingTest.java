@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.tracing;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedTracingAutoConfiguration;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelPropagator;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.micrometer.tracing.propagation.Propagator;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedTracingTest {
+
+    private static final String sampledParent = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+    private static final String unsampledParent = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00";
+
+    private static final Propagator.Getter<Map<String, String>> getter = Map::get;
+    private static final Propagator.Setter<Map<String, String>> setter = Map::put;
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedTracingAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    private final SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+            .addSpanProcessor(SimpleSpanProcessor.create(this.exporter))
+            .build();
+
+    @AfterEach
+    void close() {
+        this.tracerProvider.close();
+    }
+
+    @Test
+    void shouldContainNoTracingPerDefault() {
+        this.contextRunner
+                .withBean(Tracer.class, () -> Tracer.NOOP)
+                .withBean(Propagator.class, () -> Propagator.NOOP)
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedTracing")));
+    }
+
+    @Test
+    void shouldContainTracingWithTracer() {
+        this.contextRunner
+                .withBean(Tracer.class, () -> Tracer.NOOP)
+                .withBean(Propagator.class, () -> Propagator.NOOP)
+                .withPropertyValues("hivemq.tracing.enabled:true")
+                .run(context -> assertTrue(context.containsBean("hiveMQEmbeddedTracing")));
+    }
+
+    @Test
+    void shouldParseSampledFlag() {
+        assertTrue(HiveMQEmbeddedTracing.isSampled(sampledParent));
+        assertFalse(HiveMQEmbeddedTracing.isSampled(unsampledParent));
+        assertFalse(HiveMQEmbeddedTracing.isSampled("00-invalid"));
+        assertFalse(HiveMQEmbeddedTracing.isSampled(null));
+    }
+
+    @Test
+    void shouldSkipUnsampledPublishes() {
+        HiveMQEmbeddedTracing tracing = tracing(0);
+
+        Map<String, String> carrier = new HashMap<>();
+        assertFalse(tracing.ingress("telemetry", "sender", 1, System.currentTimeMillis(), carrier, getter, setter));
+        assertTrue(carrier.isEmpty());
+
+        carrier.put(HiveMQEmbeddedTracing.traceparent, unsampledParent);
+        assertFalse(tracing.ingress("telemetry", "sender", 1, System.currentTimeMillis(), carrier, getter, setter));
+        assertFalse(tracing.delivery("telemetry", "receiver", 1, System.currentTimeMillis(), carrier, getter, setter));
+        assertEquals(unsampledParent, carrier.get(HiveMQEmbeddedTracing.traceparent));
+        assertEquals(List.of(), this.exporter.getFinishedSpanItems());
+    }
+
+    @Test
+    void shouldStartNewTrace() {
+        HiveMQEmbeddedTracing tracing = tracing(1);
+
+        Map<String, String> carrier = new HashMap<>();
+        assertTrue(tracing.ingress("telemetry", "sender", 1, System.currentTimeMillis(), carrier, getter, setter));
+
+        SpanData ingress = this.exporter.getFinishedSpanItems().getFirst();
+        assertEquals(HiveMQEmbeddedTracing.ingressSpan, ingress.getName());
+        assertTrue(carrier.get(HiveMQEmbeddedTracing.traceparent).contains(ingress.getSpanId()));
+    }
+
+    @Test
+    void shouldContinueTraceThroughDelivery() {
+        HiveMQEmbeddedTracing tracing = tracing(0);
+
+        Map<String, String> carrier = new HashMap<>(Map.of(HiveMQEmbeddedTracing.traceparent, sampledParent));
+        assertTrue(tracing.ingress("telemetry", "sender", 1, System.currentTimeMillis(), carrier, getter, setter));
+        assertTrue(tracing.delivery("telemetry", "receiver", 1, System.currentTimeMillis(), carrier, getter, setter));
+
+        List<SpanData> spans = this.exporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        assertEquals("b7ad6b7169203331", spans.get(0).getParentSpanId());
+        assertEquals(spans.get(0).getSpanId(), spans.get(1).getParentSpanId());
+        assertEquals("0af7651916cd43dd8448eb211c80319c", spans.get(1).getTraceId());
+        assertTrue(carrier.get(HiveMQEmbeddedTracing.traceparent).contains(spans.get(1).getSpanId()));
+    }
+
+    private HiveMQEmbeddedTracing tracing(double sampleRate) {
+        HiveMQEmbeddedProperties.Tracing properties = new HiveMQEmbeddedProperties.Tracing();
+        properties.setSampleRate(sampleRate);
+
+        io.opentelemetry.api.trace.Tracer otelTracer = this.tracerProvider.get("test");
+        return new HiveMQEmbeddedTracing(properties,
+                new OtelTracer(otelTracer, new OtelCurrentTraceContext(), event -> {}),
+                new OtelPropagator(ContextPropagators.create(W3CTraceContextPropagator.getInstance()), otelTracer));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.services.validation;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedAutoConfiguration;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedValidationAutoConfiguration;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedExtensionsCollector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HiveMQEmbeddedValidationTest {
+
+    private static final String schema = """
+            {
+              "$schema": "https://json-schema.org/draft/2020-12/schema",
+              "type": "object",
+              "properties": {
+                "temperature": { "type": "number" }
+              },
+              "required": [ "temperature" ]
+            }
+            """;
+
+    private final ApplicationContextRunner contextRunner =
+            new ApplicationContextRunner()
+                    .withConfiguration(AutoConfigurations.of(HiveMQEmbeddedAutoConfiguration.class,
+                            HiveMQEmbeddedValidationAutoConfiguration.class, BuildProperties.class))
+                    .withPropertyValues("hivemq.auto-start:false");
+
+    @Test
+    void shouldContainNoValidationPerDefault() {
+        this.contextRunner
+                .run(context -> assertFalse(context.containsBean("hiveMQEmbeddedValidation")));
+    }
+
+    @Test
+    void shouldRegisterValidationAsStage(@TempDir Path folder) throws Exception {
+        final Path file = Files.writeString(folder.resolve("temperature.json"), schema);
+
+        this.contextRunner
+                .withPropertyValues("hivemq.validation.enabled:true",
+                        "hivemq.validation.action:dead-letter",
+                        "hivemq.validation.schemas[0].topic-filters:sensors/+/temperature",
+                        "hivemq.validation.schemas[0].location:" + file.toUri(),
+                        "hivemq.validation.schemas[1].topic-filters:sensors/#",
+                        "hivemq.validation.schemas[1].type:json")
+                .run(context -> {
+                    assertEquals(HiveMQEmbeddedProperties.Validation.Action.deadLetter,
+                            context.getBean(HiveMQEmbeddedProperties.class).getValidation().getAction());
+                    assertNotNull(context.getBean(JsonValidator.class));
+                    assertNotNull(context.getBean(JsonSchemaValidator.class));
+
+                    final HiveMQEmbeddedValidation validation = context.getBean(HiveMQEmbeddedValidation.class);
+                    assertEquals(List.of(validation), context.getBean(HiveMQEmbeddedExtensionsCollector.class).getStages());
+
+                    assertNull(validation.validate("sensors/1/temperature", payload("{\"temperature\": 21.5}")));
+                    assertNotNull(validation.validate("sensors/1/temperature", payload("{\"humidity\": 40}")));
+                    assertNull(validation.validate("sensors/1/humidity", payload("{\"humidity\": 40}")));
+                    assertNotNull(validation.validate("sensors/1/humidity", payload("{\"humidity\": ")));
+                    assertNull(validation.validate("status/1", payload("not json")));
+                });
+    }
+
+    @Test
+    void shouldFailForUnknownValidatorType() {
+        this.contextRunner
+                .withPropertyValues("hivemq.validation.enabled:true",
+                        "hivemq.validation.schemas[0].topic-filters:#",
+                        "hivemq.validation.schemas[0].type:avro")
+                .run(context -> assertNotNull(context.getStartupFailure()));
+    }
+
+    @Test
+    void testJsonValidator() throws Exception {
+        final PayloadSchema json = new JsonValidator().compile(null);
+
+        assertNull(json.validate(payload("{\"a\": [1, 2, 3]}")));
+        assertNull(json.validate(payload("42")));
+        assertNotNull(json.validate(payload("{\"a\": 1} trailing")));
+        assertNotNull(json.validate(payload("")));
+
+        // The payload must not be consumed
+        final ByteBuffer payload = payload("{}");
+        json.validate(payload);
+        assertEquals(2, payload.remaining());
+    }
+
+    private static ByteBuffer payload(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2024-present Jan Haenel
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.example.hivemq.boot.starter.test;
+
+import com.example.hivemq.boot.starter.config.HiveMQEmbeddedProperties;
+import com.example.hivemq.boot.starter.services.HiveMQEmbeddedService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EmbeddedHiveMQTest(classes = EmbeddedHiveMQTestTest.Application.class,
+        properties = "hivemq.extensions.collector.enabled:false")
+class EmbeddedHiveMQTestTest {
+
+    @LocalHiveMQPort
+    private int port;
+
+    @Autowired
+    private HiveMQEmbeddedService service;
+
+    @Autowired
+    private HiveMQEmbeddedProperties properties;
+
+    @Test
+    void shouldListenOnEphemeralPort() throws Exception {
+        assertTrue(this.service.isRunning());
+        assertNotEquals(0, this.port);
+        assertEquals(this.port, this.service.getConfig().getListeners().getTcpListeners().getFirst().getPort());
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", this.port), 1000);
+            assertTrue(socket.isConnected());
+        }
+    }
+
+    @Test
+    void shouldUseTemporaryFolders() {
+        Path config = Path.of(this.properties.getConfig().getFolder());
+
+        assertTrue(config.getParent().getFileName().toString().startsWith("hivemq-test-"));
+        assertTrue(Files.isRegularFile(config.resolve("config.xml")));
+        assertEquals(config.getParent(), Path.of(this.properties.getData().getFolder()).getParent());
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class Application {}
+}